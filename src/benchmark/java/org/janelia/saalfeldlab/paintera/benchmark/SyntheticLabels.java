@@ -0,0 +1,108 @@
+package org.janelia.saalfeldlab.paintera.benchmark;
+
+import net.imglib2.Cursor;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.type.label.Label;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+
+import java.util.Random;
+
+/**
+ * Synthetic label volumes for benchmarks, generated in-process so that benchmarks do not depend on external data.
+ */
+public class SyntheticLabels
+{
+
+	/**
+	 * Voronoi tessellation of {@code dimensions} with one seed per cell of a regular grid with spacing
+	 * {@code cellSize}, jittered within its cell. Produces compact, irregularly shaped segments of roughly
+	 * {@code cellSize^3} voxels each, similar to a neuron over-segmentation. Labels are {@code 1, 2, ...}.
+	 *
+	 * @param seed seed for the random jitter, results are deterministic for the same seed
+	 */
+	public static ArrayImg<UnsignedLongType, LongArray> voronoi(final long[] dimensions, final int cellSize, final long seed)
+	{
+		assert dimensions.length == 3;
+		final Random rng = new Random(seed);
+		final int[] numCells = new int[3];
+		for (int d = 0; d < 3; ++d)
+			numCells[d] = (int) ((dimensions[d] + cellSize - 1) / cellSize);
+		final int totalCells = numCells[0] * numCells[1] * numCells[2];
+		final double[][] seeds = new double[totalCells][3];
+		for (int i = 0; i < totalCells; ++i)
+		{
+			final int x = i % numCells[0];
+			final int y = i / numCells[0] % numCells[1];
+			final int z = i / (numCells[0] * numCells[1]);
+			seeds[i][0] = (x + rng.nextDouble()) * cellSize;
+			seeds[i][1] = (y + rng.nextDouble()) * cellSize;
+			seeds[i][2] = (z + rng.nextDouble()) * cellSize;
+		}
+
+		final ArrayImg<UnsignedLongType, LongArray> labels = ArrayImgs.unsignedLongs(dimensions);
+		final long[] position = new long[3];
+		final int[] cell = new int[3];
+		for (final Cursor<UnsignedLongType> c = labels.localizingCursor(); c.hasNext(); )
+		{
+			final UnsignedLongType label = c.next();
+			c.localize(position);
+			for (int d = 0; d < 3; ++d)
+				cell[d] = (int) (position[d] / cellSize);
+			double minDistance = Double.POSITIVE_INFINITY;
+			int nearest = 0;
+			for (int dz = -1; dz <= 1; ++dz)
+				for (int dy = -1; dy <= 1; ++dy)
+					for (int dx = -1; dx <= 1; ++dx)
+					{
+						final int x = cell[0] + dx;
+						final int y = cell[1] + dy;
+						final int z = cell[2] + dz;
+						if (x < 0 || y < 0 || z < 0 || x >= numCells[0] || y >= numCells[1] || z >= numCells[2])
+							continue;
+						final int index = (z * numCells[1] + y) * numCells[0] + x;
+						final double distance = squaredDistance(position, seeds[index]);
+						if (distance < minDistance)
+						{
+							minDistance = distance;
+							nearest = index;
+						}
+					}
+			label.set(nearest + 1);
+		}
+		return labels;
+	}
+
+	/**
+	 * Sparse canvas of the same size as {@code dimensions}: a ball of label {@code paintedLabel} at the center, all
+	 * other voxels {@link Label#INVALID}, i.e. not painted.
+	 */
+	public static ArrayImg<UnsignedLongType, LongArray> paintedBall(final long[] dimensions, final double radius, final long paintedLabel)
+	{
+		final ArrayImg<UnsignedLongType, LongArray> canvas = ArrayImgs.unsignedLongs(dimensions);
+		final double[] center = new double[dimensions.length];
+		for (int d = 0; d < center.length; ++d)
+			center[d] = dimensions[d] / 2.0;
+		final long[] position = new long[dimensions.length];
+		for (final Cursor<UnsignedLongType> c = canvas.localizingCursor(); c.hasNext(); )
+		{
+			final UnsignedLongType t = c.next();
+			c.localize(position);
+			t.set(squaredDistance(position, center) <= radius * radius ? paintedLabel : Label.INVALID);
+		}
+		return canvas;
+	}
+
+	private static double squaredDistance(final long[] position, final double[] point)
+	{
+		double sum = 0.0;
+		for (int d = 0; d < position.length; ++d)
+		{
+			final double diff = position[d] + 0.5 - point[d];
+			sum += diff * diff;
+		}
+		return sum;
+	}
+
+}
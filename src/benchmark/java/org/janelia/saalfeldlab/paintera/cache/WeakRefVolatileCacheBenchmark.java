@@ -0,0 +1,89 @@
+package org.janelia.saalfeldlab.paintera.cache;
+
+import bdv.util.volatiles.SharedQueue;
+import net.imglib2.cache.ref.SoftRefLoaderCache;
+import net.imglib2.cache.volatiles.CacheHints;
+import net.imglib2.cache.volatiles.LoadingStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link WeakRefVolatileCache#get(Object, CacheHints)} for entries that are loaded already, i.e. the path
+ * taken by every cell access of a volatile source during rendering, from several rendering threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class WeakRefVolatileCacheBenchmark
+{
+
+	private static final int NUM_LOOKUPS = 1 << 16;
+
+	private static final CacheHints HINTS = new CacheHints(LoadingStrategy.VOLATILE, 0, true);
+
+	@Param({"1000", "100000"})
+	public int numKeys;
+
+	private WeakRefVolatileCache<Long, long[]> cache;
+
+	// strong references so that cached values are not collected
+	private long[][] values;
+
+	private Long[] lookups;
+
+	@State(Scope.Thread)
+	public static class LookupIndex
+	{
+		private int index = 0;
+
+		private Long next(final Long[] lookups)
+		{
+			index = (index + 1) & (NUM_LOOKUPS - 1);
+			return lookups[index];
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setup() throws ExecutionException
+	{
+		cache = WeakRefVolatileCache.fromCache(
+				new SoftRefLoaderCache<Long, long[]>().withLoader(key -> new long[] {key}),
+				new SharedQueue(1, 1),
+				key -> new long[] {-1});
+		values = new long[numKeys][];
+		final CacheHints blocking = new CacheHints(LoadingStrategy.BLOCKING, 0, true);
+		for (int key = 0; key < numKeys; ++key)
+			values[key] = cache.get((long) key, blocking);
+
+		final Random rng = new Random(100);
+		lookups = new Long[NUM_LOOKUPS];
+		for (int i = 0; i < NUM_LOOKUPS; ++i)
+			lookups[i] = (long) rng.nextInt(numKeys);
+	}
+
+	@Benchmark
+	public long[] get(final LookupIndex index) throws ExecutionException
+	{
+		return cache.get(index.next(lookups), HINTS);
+	}
+
+}
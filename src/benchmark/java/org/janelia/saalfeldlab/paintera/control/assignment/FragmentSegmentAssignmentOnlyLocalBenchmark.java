@@ -0,0 +1,131 @@
+package org.janelia.saalfeldlab.paintera.control.assignment;
+
+import gnu.trove.map.hash.TLongLongHashMap;
+import org.janelia.saalfeldlab.paintera.control.assignment.action.Merge;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-lookup cost of {@link FragmentSegmentAssignmentOnlyLocal#getSegment(long)} from concurrent rendering threads,
+ * with and without a thread that merges and detaches fragments at the same time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FragmentSegmentAssignmentOnlyLocalBenchmark
+{
+
+	private static final int NUM_LOOKUPS = 1 << 16;
+
+	private static final int FRAGMENTS_PER_SEGMENT = 10;
+
+	@Param({"100000", "1000000"})
+	public int numFragments;
+
+	private FragmentSegmentAssignmentOnlyLocal assignment;
+
+	private long[] lookups;
+
+	@State(Scope.Thread)
+	public static class LookupIndex
+	{
+		private int index = 0;
+
+		private long next(final long[] lookups)
+		{
+			index = (index + 1) & (NUM_LOOKUPS - 1);
+			return lookups[index];
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Editor
+	{
+		private final Random rng = new Random(1);
+
+		private long nextSegmentId = Long.MAX_VALUE / 2;
+	}
+
+	@Setup(Level.Trial)
+	public void setup()
+	{
+		final TLongLongHashMap initialLut = new TLongLongHashMap();
+		for (long fragmentId = 1; fragmentId <= numFragments; ++fragmentId)
+			initialLut.put(fragmentId, numFragments + 1 + fragmentId / FRAGMENTS_PER_SEGMENT);
+		assignment = new FragmentSegmentAssignmentOnlyLocal(
+				() -> initialLut,
+				FragmentSegmentAssignmentOnlyLocal.doesNotPersist("Benchmark does not persist"));
+
+		final Random rng = new Random(100);
+		lookups = new long[NUM_LOOKUPS];
+		for (int i = 0; i < NUM_LOOKUPS; ++i)
+			lookups[i] = 1 + rng.nextInt(numFragments);
+	}
+
+	@Benchmark
+	public long getSegment(final LookupIndex index)
+	{
+		return assignment.getSegment(index.next(lookups));
+	}
+
+	@Benchmark
+	@Group("getSegmentWhileEditing")
+	@GroupThreads(3)
+	public long getSegmentWhileEditingReader(final LookupIndex index)
+	{
+		return assignment.getSegment(index.next(lookups));
+	}
+
+	@Benchmark
+	@Group("getSegmentWhileEditing")
+	@GroupThreads(1)
+	public void getSegmentWhileEditingWriter(final Editor editor)
+	{
+		final long from = 1 + editor.rng.nextInt(numFragments);
+		final long into = 1 + editor.rng.nextInt(numFragments);
+		final Optional<Merge> merge = assignment.getMergeAction(from, into, () -> editor.nextSegmentId++);
+		merge.ifPresent(assignment::apply);
+		assignment.getDetachAction(from, into).ifPresent(assignment::apply);
+	}
+
+	public static void main(final String... args) throws RunnerException
+	{
+		for (final int numThreads : new int[] {1, 2, 4, 8})
+		{
+			final Options options = new OptionsBuilder()
+					.include(FragmentSegmentAssignmentOnlyLocalBenchmark.class.getSimpleName() + ".getSegment$")
+					.threads(numThreads)
+					.build();
+			new Runner(options).run();
+		}
+
+		final Options options = new OptionsBuilder()
+				.include(FragmentSegmentAssignmentOnlyLocalBenchmark.class.getSimpleName() + ".getSegmentWhileEditing")
+				.build();
+		new Runner(options).run();
+	}
+
+}
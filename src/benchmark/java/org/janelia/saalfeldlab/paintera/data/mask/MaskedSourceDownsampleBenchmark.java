@@ -0,0 +1,62 @@
+package org.janelia.saalfeldlab.paintera.data.mask;
+
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import org.janelia.saalfeldlab.paintera.benchmark.SyntheticLabels;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Winner-takes-all downsampling of a painted canvas block with {@link MaskedSource#downsample}, as done when
+ * propagating painted masks to lower resolution levels.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MaskedSourceDownsampleBenchmark
+{
+
+	private static final int BLOCK_SIZE = 64;
+
+	@Param({"2", "4"})
+	public int factor;
+
+	private ArrayImg<UnsignedLongType, LongArray> source;
+
+	private ArrayImg<UnsignedLongType, LongArray> target;
+
+	private int[] steps;
+
+	@Setup(Level.Trial)
+	public void setup()
+	{
+		source = SyntheticLabels.voronoi(new long[] {BLOCK_SIZE, BLOCK_SIZE, BLOCK_SIZE}, 16, 100);
+		target = ArrayImgs.unsignedLongs(BLOCK_SIZE / factor, BLOCK_SIZE / factor, BLOCK_SIZE / factor);
+		steps = new int[] {factor, factor, factor};
+	}
+
+	@Benchmark
+	public ArrayImg<UnsignedLongType, LongArray> downsample()
+	{
+		MaskedSource.downsample(source, target, steps);
+		return target;
+	}
+
+}
@@ -0,0 +1,77 @@
+package org.janelia.saalfeldlab.paintera.data.n5;
+
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.type.label.FromIntegerTypeConverter;
+import net.imglib2.type.label.LabelMultisetType;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.util.Pair;
+import net.imglib2.util.ValuePair;
+import net.imglib2.view.Views;
+import org.janelia.saalfeldlab.paintera.benchmark.SyntheticLabels;
+import org.janelia.saalfeldlab.paintera.data.mask.persist.PersistCanvas.BlockDiff;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creation of the {@link BlockDiff} of a single block when committing a canvas into integer type and label multiset
+ * backgrounds. The canvas contains a painted ball that covers about half of the block.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommitCanvasN5BlockDiffBenchmark
+{
+
+	private static final long[] BLOCK_SIZE = {64, 64, 64};
+
+	private Iterable<Pair<UnsignedLongType, UnsignedLongType>> integerBackgroundWithCanvas;
+
+	private List<Pair<LabelMultisetType, UnsignedLongType>> labelMultisetBackgroundWithCanvas;
+
+	@Setup(Level.Trial)
+	public void setup()
+	{
+		final ArrayImg<UnsignedLongType, LongArray> background = SyntheticLabels.voronoi(BLOCK_SIZE, 16, 100);
+		final ArrayImg<UnsignedLongType, LongArray> canvas = SyntheticLabels.paintedBall(BLOCK_SIZE, 25.0, 1 << 20);
+		integerBackgroundWithCanvas = Views.flatIterable(Views.interval(Views.pair(background, canvas), background));
+
+		final FromIntegerTypeConverter<UnsignedLongType> converter = new FromIntegerTypeConverter<>();
+		labelMultisetBackgroundWithCanvas = new ArrayList<>();
+		for (final Pair<UnsignedLongType, UnsignedLongType> p : integerBackgroundWithCanvas)
+		{
+			final LabelMultisetType labelMultiset = FromIntegerTypeConverter.getAppropriateType();
+			converter.convert(p.getA(), labelMultiset);
+			labelMultisetBackgroundWithCanvas.add(new ValuePair<>(labelMultiset, p.getB().copy()));
+		}
+	}
+
+	@Benchmark
+	public BlockDiff integerType()
+	{
+		return CommitCanvasN5.createBlockDiffFromCanvasIntegerType(integerBackgroundWithCanvas);
+	}
+
+	@Benchmark
+	public BlockDiff labelMultisetType()
+	{
+		return CommitCanvasN5.createBlockDiffFromCanvas(labelMultisetBackgroundWithCanvas);
+	}
+
+}
@@ -0,0 +1,137 @@
+package org.janelia.saalfeldlab.paintera.meshes;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.converter.Converters;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.logic.BoolType;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Pair;
+import net.imglib2.view.Views;
+import org.janelia.saalfeldlab.paintera.benchmark.SyntheticLabels;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mesh generation for a single block of a synthetic segmentation: marching cubes, smoothing and normals, both for
+ * triangle soups and for indexed meshes as used by the mesh cache loaders. Indexed meshes are generated both on the
+ * common pool and on a single thread to measure the speed-up of processing z-slabs in parallel.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MeshGenerationBenchmark
+{
+
+	private static final double SMOOTHING_LAMBDA = 1.0;
+
+	private static final int SMOOTHING_ITERATIONS = 5;
+
+	@Param({"32", "64"})
+	public int blockSize;
+
+	private RandomAccessibleInterval<BoolType> mask;
+
+	private FinalInterval interval;
+
+	private final AffineTransform3D transform = new AffineTransform3D();
+
+	private final ForkJoinPool singleThreadedPool = new ForkJoinPool(1);
+
+	private float[] triangles;
+
+	private float[] vertices;
+
+	private int[] indices;
+
+	private float[] faceNormals;
+
+	@Setup(Level.Trial)
+	public void setup()
+	{
+		final long[] dimensions = {blockSize + 2, blockSize + 2, blockSize + 2};
+		final RandomAccessibleInterval<UnsignedLongType> labels = SyntheticLabels.voronoi(dimensions, blockSize / 2, 100);
+		// segment at the center of the block is (mostly) contained in the block
+		final long id = Views.interval(labels, Intervals.createMinSize(blockSize / 2, blockSize / 2, blockSize / 2, 1, 1, 1)).firstElement().getIntegerLong();
+		this.mask = Converters.convert(labels, (s, t) -> t.set(s.getIntegerLong() == id), new BoolType());
+		this.interval = new FinalInterval(blockSize, blockSize, blockSize);
+
+		this.triangles = new MarchingCubes<>(Views.extendZero(mask), interval, transform).generateMesh();
+		final Pair<float[], int[]> indexed = new MarchingCubes<>(Views.extendZero(mask), interval, transform).generateIndexedMesh();
+		this.vertices = indexed.getA();
+		this.indices = indexed.getB();
+		this.faceNormals = new float[indices.length];
+		Normals.faceNormals(vertices, indices, faceNormals);
+	}
+
+	@Benchmark
+	public float[] generateMesh()
+	{
+		return new MarchingCubes<>(Views.extendZero(mask), interval, transform).generateMesh();
+	}
+
+	@Benchmark
+	public Pair<float[], int[]> generateIndexedMesh()
+	{
+		return new MarchingCubes<>(Views.extendZero(mask), interval, transform).generateIndexedMesh();
+	}
+
+	@Benchmark
+	public Pair<float[], int[]> generateIndexedMeshSingleThreaded()
+	{
+		return new MarchingCubes<>(Views.extendZero(mask), interval, transform, singleThreadedPool).generateIndexedMesh();
+	}
+
+	@Benchmark
+	public float[] smooth()
+	{
+		return Smooth.smooth(triangles, SMOOTHING_LAMBDA, SMOOTHING_ITERATIONS);
+	}
+
+	@Benchmark
+	public float[] smoothIndexed()
+	{
+		return Smooth.smooth(vertices, indices, SMOOTHING_LAMBDA, SMOOTHING_ITERATIONS);
+	}
+
+	@Benchmark
+	public float[] averagedNormals()
+	{
+		final float[] normals = new float[triangles.length];
+		AverageNormals.averagedNormals(triangles, normals);
+		return normals;
+	}
+
+	@Benchmark
+	public float[] averagedNormalsIndexed()
+	{
+		final float[] normals = new float[vertices.length];
+		AverageNormals.averagedNormals(indices, faceNormals, normals);
+		return normals;
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		singleThreadedPool.shutdown();
+	}
+
+}
@@ -0,0 +1,115 @@
+package org.janelia.saalfeldlab.paintera.stream;
+
+import net.imglib2.img.basictypeaccess.LongMappedAccessData;
+import net.imglib2.type.label.LabelMultisetEntry;
+import net.imglib2.type.label.LabelMultisetEntryList;
+import net.imglib2.type.label.LabelMultisetType;
+import net.imglib2.type.label.VolatileLabelMultisetType;
+import net.imglib2.type.numeric.ARGBType;
+import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignmentOnlyLocal;
+import org.janelia.saalfeldlab.paintera.control.lock.LockedSegmentsOnlyLocal;
+import org.janelia.saalfeldlab.paintera.control.selection.SelectedIds;
+import org.janelia.saalfeldlab.paintera.control.selection.SelectedSegments;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-pixel cost of {@link HighlightingStreamConverterLabelMultisetType#convert(VolatileLabelMultisetType, ARGBType)}
+ * for label multisets with one entry (highest resolution) or several entries (downsampled levels). A few fragments
+ * are selected so that highlighting is exercised as well. {@link #convert()} requests every color from the stream, as
+ * done when the converter is not driven by a frame aware projector, {@link #convertWithLookupTable()} starts a new
+ * frame for each screen of pixels, as done by the projectors.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HighlightingStreamConverterBenchmark
+{
+
+	private static final int NUM_PIXELS = 1 << 12;
+
+	private static final int NUM_FRAGMENTS = 1000;
+
+	@Param({"1", "8"})
+	public int entriesPerPixel;
+
+	private HighlightingStreamConverterLabelMultisetType converter;
+
+	private HighlightingStreamConverterLabelMultisetType frameAwareConverter;
+
+	private VolatileLabelMultisetType[] pixels;
+
+	private final ARGBType output = new ARGBType();
+
+	@Setup(Level.Trial)
+	public void setup()
+	{
+		final SelectedIds selectedIds = new SelectedIds();
+		final FragmentSegmentAssignmentOnlyLocal assignment = new FragmentSegmentAssignmentOnlyLocal((k, v) -> {});
+		final ModalGoldenAngleSaturatedHighlightingARGBStream stream = new ModalGoldenAngleSaturatedHighlightingARGBStream(
+				new SelectedSegments(selectedIds, assignment),
+				new LockedSegmentsOnlyLocal(locked -> {}));
+		selectedIds.activate(1, 2, 3);
+		converter = new HighlightingStreamConverterLabelMultisetType(stream);
+		frameAwareConverter = new HighlightingStreamConverterLabelMultisetType(stream);
+
+		final Random rng = new Random(100);
+		pixels = new VolatileLabelMultisetType[NUM_PIXELS];
+		for (int i = 0; i < NUM_PIXELS; ++i)
+		{
+			final LongMappedAccessData listData = LongMappedAccessData.factory.createStorage(16 * entriesPerPixel + 8);
+			final LabelMultisetEntryList list = new LabelMultisetEntryList(listData, 0);
+			list.createListAt(listData, 0);
+			final long first = 1 + rng.nextInt(NUM_FRAGMENTS);
+			// neighboring ids: entries of downsampled pixels are sorted and usually close to each other
+			for (int e = 0; e < entriesPerPixel; ++e)
+				list.add(new LabelMultisetEntry(first + e, 1 + rng.nextInt(8)));
+			pixels[i] = new VolatileLabelMultisetType(new LabelMultisetType(list), true);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_PIXELS)
+	public int convert()
+	{
+		int checksum = 0;
+		for (final VolatileLabelMultisetType pixel : pixels)
+		{
+			converter.convert(pixel, output);
+			checksum += output.get();
+		}
+		return checksum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_PIXELS)
+	public int convertWithLookupTable()
+	{
+		frameAwareConverter.newFrame();
+		int checksum = 0;
+		for (final VolatileLabelMultisetType pixel : pixels)
+		{
+			frameAwareConverter.convert(pixel, output);
+			checksum += output.get();
+		}
+		return checksum;
+	}
+
+}
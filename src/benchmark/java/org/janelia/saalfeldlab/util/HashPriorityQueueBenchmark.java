@@ -0,0 +1,143 @@
+package org.janelia.saalfeldlab.util;
+
+import org.janelia.saalfeldlab.paintera.meshes.MeshWorkerPriority;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mesh worker queue under camera movement: all pending block tasks are re-prioritized at once, as done by
+ * {@link org.janelia.saalfeldlab.paintera.meshes.MeshGeneratorJobManager}, and workers poll the highest priority
+ * tasks. Compares the indexed heap of {@link HashPriorityQueue} to the previous {@link TreeMapHashPriorityQueue}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashPriorityQueueBenchmark
+{
+
+	private static final int NUM_SCALE_LEVELS = 4;
+
+	private static final int NUM_POLLED = 1000;
+
+	/**
+	 * Distinct instances with identity hash codes, like the mesh worker tasks. Non-capturing lambdas would all be
+	 * the same instance.
+	 */
+	private static final class Task implements Runnable
+	{
+		@Override
+		public void run()
+		{
+		}
+	}
+
+	@Param({"10000", "100000"})
+	public int numTasks;
+
+	private Runnable[] tasks;
+
+	private Map<Runnable, MeshWorkerPriority>[] reprioritizations;
+
+	private int nextReprioritization = 0;
+
+	private HashPriorityQueue<MeshWorkerPriority, Runnable> heap;
+
+	private TreeMapHashPriorityQueue<MeshWorkerPriority, Runnable> treeMap;
+
+	@SuppressWarnings("unchecked")
+	@Setup(Level.Trial)
+	public void setup()
+	{
+		final Random rng = new Random(100);
+		tasks = new Runnable[numTasks];
+		for (int i = 0; i < numTasks; ++i)
+			tasks[i] = new Task();
+
+		// camera positions along a path: distances change smoothly and many blocks share a scale level
+		reprioritizations = new Map[8];
+		final double[] positions = rng.doubles(numTasks, 0, 1000).toArray();
+		for (int r = 0; r < reprioritizations.length; ++r)
+		{
+			final double camera = 100.0 * r;
+			reprioritizations[r] = new HashMap<>();
+			for (int i = 0; i < numTasks; ++i)
+			{
+				final double distance = Math.abs(positions[i] - camera);
+				reprioritizations[r].put(tasks[i], new MeshWorkerPriority(distance, (int) Math.min(distance / 250, NUM_SCALE_LEVELS - 1)));
+			}
+		}
+
+		heap = new HashPriorityQueue<>(Comparator.naturalOrder());
+		treeMap = new TreeMapHashPriorityQueue<>(Comparator.naturalOrder());
+		reprioritizations[0].forEach((task, priority) -> {
+			heap.addOrUpdate(priority, task);
+			treeMap.addOrUpdate(priority, task);
+		});
+	}
+
+	private Map<Runnable, MeshWorkerPriority> nextReprioritization()
+	{
+		nextReprioritization = (nextReprioritization + 1) % reprioritizations.length;
+		return reprioritizations[nextReprioritization];
+	}
+
+	@Benchmark
+	public int reprioritizeAllHeapBatch()
+	{
+		heap.addOrUpdateAll(nextReprioritization());
+		return heap.size();
+	}
+
+	@Benchmark
+	public int reprioritizeAllHeap()
+	{
+		nextReprioritization().forEach((task, priority) -> heap.addOrUpdate(priority, task));
+		return heap.size();
+	}
+
+	@Benchmark
+	public int reprioritizeAllTreeMap()
+	{
+		nextReprioritization().forEach((task, priority) -> treeMap.addOrUpdate(priority, task));
+		return treeMap.size();
+	}
+
+	@Benchmark
+	public int pollAndResubmitHeap()
+	{
+		final Map<Runnable, MeshWorkerPriority> priorities = reprioritizations[nextReprioritization];
+		final List<Runnable> polled = heap.poll(NUM_POLLED);
+		polled.forEach(task -> heap.addOrUpdate(priorities.get(task), task));
+		return polled.size();
+	}
+
+	@Benchmark
+	public int pollAndResubmitTreeMap()
+	{
+		final Map<Runnable, MeshWorkerPriority> priorities = reprioritizations[nextReprioritization];
+		final List<Runnable> polled = treeMap.poll(NUM_POLLED);
+		polled.forEach(task -> treeMap.addOrUpdate(priorities.get(task), task));
+		return polled.size();
+	}
+
+}
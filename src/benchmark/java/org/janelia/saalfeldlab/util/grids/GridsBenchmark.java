@@ -0,0 +1,67 @@
+package org.janelia.saalfeldlab.util.grids;
+
+import gnu.trove.set.TLongSet;
+import net.imglib2.img.cell.CellGrid;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+/**
+ * Mapping of affected blocks at full resolution to a lower resolution level with
+ * {@link Grids#getRelevantBlocksInTargetGrid(long[], CellGrid, CellGrid, double[])}, as done for every commit and
+ * every painted mask.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GridsBenchmark
+{
+
+	@Param({"100", "10000"})
+	public int numBlocks;
+
+	private final CellGrid sourceGrid = new CellGrid(new long[] {4096, 4096, 4096}, new int[] {64, 64, 64});
+
+	private final CellGrid targetGrid = new CellGrid(new long[] {512, 512, 512}, new int[] {64, 64, 64});
+
+	private final double[] relativeScale = {8.0, 8.0, 8.0};
+
+	private long[] sourceBlocks;
+
+	@Setup(Level.Trial)
+	public void setup()
+	{
+		// random walk through the grid: painted blocks are spatially coherent
+		final Random rng = new Random(100);
+		final long[] gridDimensions = sourceGrid.getGridDimensions();
+		final long[] position = {gridDimensions[0] / 2, gridDimensions[1] / 2, gridDimensions[2] / 2};
+		sourceBlocks = LongStream.generate(() -> {
+			final int d = rng.nextInt(3);
+			position[d] = Math.max(0, Math.min(gridDimensions[d] - 1, position[d] + (rng.nextBoolean() ? 1 : -1)));
+			return (position[2] * gridDimensions[1] + position[1]) * gridDimensions[0] + position[0];
+		}).limit(numBlocks).distinct().toArray();
+	}
+
+	@Benchmark
+	public TLongSet getRelevantBlocksInTargetGrid()
+	{
+		return Grids.getRelevantBlocksInTargetGrid(sourceBlocks, sourceGrid, targetGrid, relativeScale);
+	}
+
+}
@@ -213,6 +213,7 @@ public class ViewerPanelFX
 
 		// TODO why is this necessary?
 		transformListeners.add(tf -> getDisplay().drawOverlays());
+		transformListeners.add(renderUnit.getPredictivePrefetcher());
 
 		this.state = new ViewerState(axisOrder, numTimepoints);
 		state.addListener(obs -> requestRepaint());
@@ -0,0 +1,25 @@
+package bdv.fx.viewer.project;
+
+import net.imglib2.converter.Converter;
+
+/**
+ * {@link Converter} that caches state for the duration of a rendered frame, e.g. a lookup table of the colors of
+ * the labels that are visible. The state is kept per thread: projectors call {@link #newFrame()} on each rendering
+ * thread before it converts its part of a frame, so frames of other viewers that share the converter are not affected.
+ */
+public interface FrameAwareConverter
+{
+	/**
+	 * Invalidate everything the calling thread cached for its previous frame.
+	 */
+	void newFrame();
+
+	/**
+	 * Call {@link #newFrame()} on {@code converter} if it is a {@link FrameAwareConverter}.
+	 */
+	static void newFrame(final Object converter)
+	{
+		if (converter instanceof FrameAwareConverter)
+			((FrameAwareConverter) converter).newFrame();
+	}
+}
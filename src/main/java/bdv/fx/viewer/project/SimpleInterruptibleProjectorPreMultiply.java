@@ -130,6 +130,8 @@ public class SimpleInterruptibleProjectorPreMultiply<A> extends AbstractInterrup
 				if (interrupted.get())
 					return null;
 
+				FrameAwareConverter.newFrame(converter);
+
 				System.out.println("WTF!");
 				final RandomAccess<A>        sourceRandomAccess = source.randomAccess(
 						SimpleInterruptibleProjectorPreMultiply.this);
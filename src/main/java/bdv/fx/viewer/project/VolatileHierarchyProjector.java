@@ -271,6 +271,8 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends Nume
 						if ( interrupted.get() )
 							return null;
 
+						FrameAwareConverter.newFrame( converter );
+
 						final RandomAccess< B > targetRandomAccess = target.randomAccess( target );
 						final Cursor< ByteType > maskCursor = Views.iterable( mask ).cursor();
 						final RandomAccess< A > sourceRandomAccess = sources.get( iFinal ).randomAccess( sourceInterval );
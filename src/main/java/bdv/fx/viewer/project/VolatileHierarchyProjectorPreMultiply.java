@@ -251,6 +251,8 @@ public class VolatileHierarchyProjectorPreMultiply<A extends Volatile<?>>
 					if (interrupted.get())
 						return null;
 
+					FrameAwareConverter.newFrame(converter);
+
 					final RandomAccess<ARGBType> targetRandomAccess = target.randomAccess(target);
 					final Cursor<ByteType>       maskCursor         = Views.iterable(mask).cursor();
 					final RandomAccess<A>        sourceRandomAccess = sources.get(iFinal).randomAccess(sourceInterval);
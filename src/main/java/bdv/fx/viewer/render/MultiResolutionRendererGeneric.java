@@ -57,6 +57,7 @@ import net.imglib2.RealInterval;
 import net.imglib2.RealRandomAccessible;
 import net.imglib2.Volatile;
 import net.imglib2.cache.iotiming.CacheIoTiming;
+import net.imglib2.cache.iotiming.IoStatistics;
 import net.imglib2.cache.volatiles.CacheHints;
 import net.imglib2.cache.volatiles.LoadingStrategy;
 import net.imglib2.converter.Converter;
@@ -81,8 +82,10 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.function.Function;
 import java.util.function.ToIntFunction;
 
@@ -261,6 +264,22 @@ public class MultiResolutionRendererGeneric<T>
 
 	private boolean prefetchCells = true;
 
+	/**
+	 * If not {@code null}, cells along the predicted navigation path are prefetched as well.
+	 */
+	private volatile PredictivePrefetcher predictivePrefetcher;
+
+	/**
+	 * If not {@code null}, timings of each frame are recorded.
+	 */
+	private volatile RenderTrace renderTrace;
+
+	/**
+	 * {@link System#nanoTime()} of the first {@link #requestRepaint(Interval) request} of a new frame that has not
+	 * been rendered yet, {@code -1} if there is none.
+	 */
+	private long frameRequestNanos = -1;
+
 	private final Function<T, ArrayImg<ARGBType, ? extends IntAccess>> wrapAsArrayImg;
 
 	private final ToIntFunction<T> width;
@@ -470,6 +489,12 @@ public class MultiResolutionRendererGeneric<T>
 
 		final boolean resized = checkResize();
 
+		final RenderTrace renderTrace = this.renderTrace;
+		final boolean isTracing = renderTrace != null && renderTrace.isEnabled();
+		final long startNanos = System.nanoTime();
+		final int renderQueueDepth = isTracing ? getRenderQueueDepth() : -1;
+		long createProjectorNanos = -1;
+
 		// the BufferedImage that is rendered to (to paint to the canvas)
 		final T bufferedImage;
 
@@ -547,6 +572,7 @@ public class MultiResolutionRendererGeneric<T>
 
 					final RandomAccessibleInterval<ARGBType> renderTargetRoi = Views.interval(wrapAsArrayImg.apply(renderTarget), renderTargetPaddedInterval);
 
+					final long createProjectorStartNanos = System.nanoTime();
 					p = createProjector(
 						sacs,
 						axisOrders,
@@ -556,6 +582,7 @@ public class MultiResolutionRendererGeneric<T>
 						renderTargetRoi,
 						interpolationForSource
 					);
+					createProjectorNanos = System.nanoTime() - createProjectorStartNanos;
 
 					lastRenderedScreenInterval = repaintScreenInterval;
 					lastRenderTargetRealInterval = renderTargetRealInterval;
@@ -572,11 +599,25 @@ public class MultiResolutionRendererGeneric<T>
 		}
 
 		// try rendering
+		final IoStatistics iostat = CacheIoTiming.getIoStatistics();
+		final long startIoNanos = iostat.getIoNanoTime();
+		final long startMapNanos = System.nanoTime();
 		final boolean success = p.map(createProjector);
+		final long endMapNanos = System.nanoTime();
+		final long ioNanos = iostat.getIoNanoTime() - startIoNanos;
 //		final long rendertime = p.getLastFrameRenderNanoTime();
 
 		synchronized (this)
 		{
+			final long timeToFirstPixelNanos;
+			if (success && createProjector && frameRequestNanos >= 0)
+			{
+				timeToFirstPixelNanos = endMapNanos - frameRequestNanos;
+				frameRequestNanos = -1;
+			}
+			else
+				timeToFirstPixelNanos = -1;
+
 			// if rendering was not cancelled...
 			if (success)
 			{
@@ -643,6 +684,23 @@ public class MultiResolutionRendererGeneric<T>
 					pendingRepaintRequests[currentScreenScaleIndex] = Intervals.union(pendingRepaintRequests[currentScreenScaleIndex], repaintScreenInterval);
 			}
 
+			if (isTracing)
+				renderTrace.record(new RenderTrace.Frame(
+						renderTrace.nextSequence(),
+						startNanos,
+						currentScreenScaleIndex,
+						sources.size(),
+						createProjector,
+						success,
+						p.isValid(),
+						createProjectorNanos,
+						endMapNanos - startMapNanos,
+						p.getLastFrameRenderNanoTime(),
+						ioNanos,
+						timeToFirstPixelNanos,
+						(int) Arrays.stream(pendingRepaintRequests).filter(Objects::nonNull).count(),
+						renderQueueDepth));
+
 			return success ? currentScreenScaleIndex : -1;
 		}
 	}
@@ -663,6 +721,8 @@ public class MultiResolutionRendererGeneric<T>
 	public synchronized void requestRepaint(final Interval interval)
 	{
 		newFrameRequest = true;
+		if (frameRequestNanos < 0)
+			frameRequestNanos = System.nanoTime();
 		requestRepaint(interval, maxScreenScaleIndex);
 	}
 
@@ -931,6 +991,7 @@ public class MultiResolutionRendererGeneric<T>
 							interpolation
 					        );
 			}
+			prefetchPredicted(spimSource, ordering, t, viewerTransform, screenScaleTransform, levels, screenImage);
 		}
 
 		Collections.sort(levels, MipmapOrdering.renderOrderComparator);
@@ -1056,6 +1117,69 @@ public class MultiResolutionRendererGeneric<T>
 		}
 	}
 
+	/**
+	 * Prefetch the cells of {@code source} that will be visible after the steps predicted by
+	 * {@link #predictivePrefetcher}, at the best mipmap level for each predicted transform and with a lower priority
+	 * than all {@code levels} of the current transform.
+	 */
+	private void prefetchPredicted(
+			final Source<?> source,
+			final MipmapOrdering ordering,
+			final int timepoint,
+			final AffineTransform3D viewerTransform,
+			final AffineTransform3D screenScaleTransform,
+			final List<Level> levels,
+			final Dimensions screenInterval)
+	{
+		final PredictivePrefetcher predictivePrefetcher = this.predictivePrefetcher;
+		if (predictivePrefetcher == null)
+			return;
+
+		final int queuePriority = PredictivePrefetcher.lowerPriorityThan(levels);
+		int budget = predictivePrefetcher.getCellBudget();
+		for (final AffineTransform3D step : predictivePrefetcher.getPredictedSteps())
+		{
+			final AffineTransform3D predictedViewerTransform = viewerTransform.copy().concatenate(step);
+			final AffineTransform3D predictedScreenTransform = predictedViewerTransform.copy().preConcatenate(screenScaleTransform);
+			final List<Level> predictedLevels = ordering.getMipmapHints(predictedScreenTransform, timepoint, previousTimepoint).getLevels();
+			if (predictedLevels.isEmpty())
+				continue;
+			Collections.sort(predictedLevels, MipmapOrdering.renderOrderComparator);
+			budget -= predictivePrefetcher.prefetch(
+					source,
+					timepoint,
+					predictedViewerTransform,
+					screenScaleTransform,
+					predictedLevels.get(0).getMipmapLevel(),
+					queuePriority,
+					screenInterval,
+					budget);
+		}
+	}
+
+	/**
+	 * @param predictivePrefetcher prefetch along the predicted navigation path, or {@code null} to disable
+	 */
+	public void setPredictivePrefetcher(final PredictivePrefetcher predictivePrefetcher)
+	{
+		this.predictivePrefetcher = predictivePrefetcher;
+	}
+
+	/**
+	 * @param renderTrace record timings of each frame, or {@code null} to disable
+	 */
+	public void setRenderTrace(final RenderTrace renderTrace)
+	{
+		this.renderTrace = renderTrace;
+	}
+
+	private int getRenderQueueDepth()
+	{
+		return renderingExecutorService instanceof ThreadPoolExecutor
+				? ((ThreadPoolExecutor) renderingExecutorService).getQueue().size()
+				: -1;
+	}
+
 	public synchronized void setScreenScales(final double[] screenScales)
 	{
 		this.screenScales = screenScales.clone();
@@ -44,8 +44,9 @@ public final class PainterThread extends Thread {
 				if (b) {
 					try {
 						this.paintable.paint();
-					} catch (RejectedExecutionException var5) {
-						;
+					} catch (RejectedExecutionException e) {
+						// the rendering executor is shut down, e.g. when the viewer is closed
+						LOG.debug("Rendering task was rejected", e);
 					}
 				}
 
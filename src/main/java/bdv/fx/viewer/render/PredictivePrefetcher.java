@@ -0,0 +1,404 @@
+package bdv.fx.viewer.render;
+
+import bdv.img.cache.VolatileCachedCellImg;
+import bdv.viewer.Source;
+import bdv.viewer.render.MipmapOrdering.Level;
+import net.imglib2.Dimensions;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.cache.volatiles.CacheHints;
+import net.imglib2.cache.volatiles.LoadingStrategy;
+import net.imglib2.img.basictypeaccess.volatiles.VolatileAccess;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.ui.TransformListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Prefetch the cells that will be visible after the next few navigation steps, e.g. while scrolling through sections
+ * or zooming. Observes the viewer transform as a {@link TransformListener} and extrapolates the last change of the
+ * transform if it is a translation, or a translation combined with isotropic scaling. The renderer
+ * {@link #prefetch(Source, int, AffineTransform3D, AffineTransform3D, int, int, Dimensions, int) prefetches} the
+ * cells of the {@link #getPredictedSteps() predicted transforms} at a lower queue priority than the cells on screen,
+ * up to {@link #getCellBudget()} cells per source and frame.
+ *
+ * {@link #getStatistics() Statistics} record how many predictions were visited eventually and how many prefetched
+ * cells had to be loaded.
+ */
+public class PredictivePrefetcher implements TransformListener<AffineTransform3D>
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	private static final double EPSILON = 1e-6;
+
+	/**
+	 * Do not predict from transform changes that are older than this: navigation has most likely stopped.
+	 */
+	private static final long DEFAULT_MAX_AGE_MILLIS = 2000;
+
+	public static class Statistics
+	{
+
+		public final long numPredictions;
+
+		public final long numPredictionHits;
+
+		public final long numPrefetchedCells;
+
+		public final long numPrefetchedCellsInCache;
+
+		private Statistics(
+				final long numPredictions,
+				final long numPredictionHits,
+				final long numPrefetchedCells,
+				final long numPrefetchedCellsInCache)
+		{
+			this.numPredictions = numPredictions;
+			this.numPredictionHits = numPredictionHits;
+			this.numPrefetchedCells = numPrefetchedCells;
+			this.numPrefetchedCellsInCache = numPrefetchedCellsInCache;
+		}
+
+		/**
+		 * @return fraction of transform changes that were predicted, {@code NaN} if nothing was predicted yet
+		 */
+		public double hitRate()
+		{
+			return numPredictions == 0 ? Double.NaN : numPredictionHits / (double) numPredictions;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format(
+					"{predictions=%d hits=%d hitRate=%.3f prefetchedCells=%d alreadyCached=%d}",
+					numPredictions,
+					numPredictionHits,
+					hitRate(),
+					numPrefetchedCells,
+					numPrefetchedCellsInCache);
+		}
+	}
+
+	private final LongSupplier currentTimeMillis;
+
+	private final AffineTransform3D previous = new AffineTransform3D();
+
+	private final AffineTransform3D current = new AffineTransform3D();
+
+	private final AffineTransform3D previousStep = new AffineTransform3D();
+
+	private long lastChangeMillis;
+
+	private int numTransforms = 0;
+
+	private boolean hasPreviousStep = false;
+
+	/**
+	 * Predicted steps, relative to {@link #current}, in increasing distance.
+	 */
+	private final List<AffineTransform3D> predictedSteps = new ArrayList<>();
+
+	/**
+	 * Predicted viewer transforms, to be compared with the next transform.
+	 */
+	private final List<AffineTransform3D> predictedTransforms = new ArrayList<>();
+
+	private volatile boolean isEnabled = true;
+
+	private volatile int numSteps = 3;
+
+	private volatile int cellBudget = 256;
+
+	private final AtomicLong numPredictions = new AtomicLong();
+
+	private final AtomicLong numPredictionHits = new AtomicLong();
+
+	private final AtomicLong numPrefetchedCells = new AtomicLong();
+
+	private final AtomicLong numPrefetchedCellsInCache = new AtomicLong();
+
+	public PredictivePrefetcher()
+	{
+		this(System::currentTimeMillis);
+	}
+
+	PredictivePrefetcher(final LongSupplier currentTimeMillis)
+	{
+		this.currentTimeMillis = currentTimeMillis;
+	}
+
+	@Override
+	public synchronized void transformChanged(final AffineTransform3D transform)
+	{
+		if (numTransforms > 0 && equals(transform, current))
+			return;
+
+		if (!predictedTransforms.isEmpty())
+		{
+			numPredictions.incrementAndGet();
+			if (predictedTransforms.stream().anyMatch(predicted -> equals(predicted, transform)))
+				numPredictionHits.incrementAndGet();
+		}
+
+		previous.set(current);
+		current.set(transform);
+		lastChangeMillis = currentTimeMillis.getAsLong();
+		numTransforms = Math.min(numTransforms + 1, 2);
+		predict();
+	}
+
+	/**
+	 * @return steps {@code S} in global space, such that the predicted viewer transforms are {@code T * S} for the current
+	 * viewer transform {@code T}. Empty if navigation cannot be extrapolated or stopped a while ago.
+	 */
+	public synchronized List<AffineTransform3D> getPredictedSteps()
+	{
+		final List<AffineTransform3D> steps = new ArrayList<>();
+		if (isEnabled && currentTimeMillis.getAsLong() - lastChangeMillis <= DEFAULT_MAX_AGE_MILLIS)
+			predictedSteps.forEach(step -> steps.add(step.copy()));
+		return steps;
+	}
+
+	/**
+	 * Prefetch the cells of {@code source} at {@code mipmapIndex} that would be visible with {@code viewerTransform}.
+	 *
+	 * @param queuePriority should be lower (i.e. numerically larger) than the priorities of the cells on screen, and
+	 * less than the number of priorities of the fetcher queue
+	 * @param budget maximum number of cells
+	 * @return number of cells that were prefetched
+	 */
+	public <T> int prefetch(
+			final Source<T> source,
+			final int timepoint,
+			final AffineTransform3D viewerTransform,
+			final AffineTransform3D screenScaleTransform,
+			final int mipmapIndex,
+			final int queuePriority,
+			final Dimensions screenInterval,
+			final int budget)
+	{
+		final RandomAccessibleInterval<T> img = source.getSource(timepoint, mipmapIndex);
+		if (budget <= 0 || !(img instanceof VolatileCachedCellImg<?, ?>))
+			return 0;
+
+		final VolatileCachedCellImg<?, ?> cellImg = (VolatileCachedCellImg<?, ?>) img;
+		cellImg.setCacheHints(new CacheHints(LoadingStrategy.VOLATILE, queuePriority, false));
+
+		final AffineTransform3D sourceToScreen = viewerTransform.copy();
+		final AffineTransform3D sourceTransform = new AffineTransform3D();
+		source.getSourceTransform(timepoint, mipmapIndex, sourceTransform);
+		sourceToScreen.concatenate(sourceTransform);
+		sourceToScreen.preConcatenate(screenScaleTransform);
+
+		final long[] cellMin = new long[3];
+		final long[] cellMax = new long[3];
+		if (!visibleCells(sourceToScreen, screenInterval, cellImg, cellMin, cellMax))
+			return 0;
+
+		final RandomAccess<?> cells = cellImg.getCells().randomAccess();
+		final long[] position = cellMin.clone();
+		int numCells = 0;
+		int numCellsInCache = 0;
+		while (numCells < budget)
+		{
+			cells.setPosition(position);
+			// accessing a cell with volatile hints enqueues it unless it is cached already
+			final Object cell = cells.get();
+			++numCells;
+			if (cell instanceof Cell<?> && ((Cell<?>) cell).getData() instanceof VolatileAccess && ((VolatileAccess) ((Cell<?>) cell).getData()).isValid())
+				++numCellsInCache;
+
+			int d = 0;
+			for (; d < 3 && ++position[d] > cellMax[d]; ++d)
+				position[d] = cellMin[d];
+			if (d == 3)
+				break;
+		}
+		numPrefetchedCells.addAndGet(numCells);
+		numPrefetchedCellsInCache.addAndGet(numCellsInCache);
+		LOG.trace("Prefetched {} cells ({} cached) of {} at level {}", numCells, numCellsInCache, source.getName(), mipmapIndex);
+		return numCells;
+	}
+
+	/**
+	 * @return a priority that is lower than the render and prefetch priorities of all {@code levels}
+	 */
+	public static int lowerPriorityThan(final List<Level> levels)
+	{
+		int priority = 0;
+		for (final Level level : levels)
+		{
+			if (level.getPrefetchCacheHints() != null)
+				priority = Math.max(priority, level.getPrefetchCacheHints().getQueuePriority());
+			if (level.getRenderCacheHints() != null)
+				priority = Math.max(priority, level.getRenderCacheHints().getQueuePriority());
+		}
+		return priority + 1;
+	}
+
+	public boolean isEnabled()
+	{
+		return isEnabled;
+	}
+
+	public void setEnabled(final boolean isEnabled)
+	{
+		this.isEnabled = isEnabled;
+	}
+
+	public int getNumSteps()
+	{
+		return numSteps;
+	}
+
+	/**
+	 * @param numSteps number of navigation steps to predict when navigation is steady
+	 */
+	public synchronized void setNumSteps(final int numSteps)
+	{
+		this.numSteps = Math.max(numSteps, 0);
+		predict();
+	}
+
+	public int getCellBudget()
+	{
+		return cellBudget;
+	}
+
+	/**
+	 * @param cellBudget maximum number of cells prefetched per source and frame
+	 */
+	public void setCellBudget(final int cellBudget)
+	{
+		this.cellBudget = Math.max(cellBudget, 0);
+	}
+
+	public Statistics getStatistics()
+	{
+		return new Statistics(
+				numPredictions.get(),
+				numPredictionHits.get(),
+				numPrefetchedCells.get(),
+				numPrefetchedCellsInCache.get());
+	}
+
+	public void resetStatistics()
+	{
+		numPredictions.set(0);
+		numPredictionHits.set(0);
+		numPrefetchedCells.set(0);
+		numPrefetchedCellsInCache.set(0);
+	}
+
+	private void predict()
+	{
+		predictedSteps.clear();
+		predictedTransforms.clear();
+		if (numTransforms < 2)
+			return;
+
+		// step in global space: current = previous * step
+		final AffineTransform3D step = previous.inverse().concatenate(current);
+
+		final boolean isExtrapolatable = isScaledTranslation(step);
+		// predict further ahead if the same step was taken twice in a row
+		final int numPredictedSteps = !isExtrapolatable
+				? 0
+				: hasPreviousStep && equals(step, previousStep) ? numSteps : Math.min(1, numSteps);
+		previousStep.set(step);
+		hasPreviousStep = isExtrapolatable;
+
+		final AffineTransform3D accumulated = new AffineTransform3D();
+		for (int i = 0; i < numPredictedSteps; ++i)
+		{
+			accumulated.concatenate(step);
+			predictedSteps.add(accumulated.copy());
+			predictedTransforms.add(current.copy().concatenate(accumulated));
+		}
+		LOG.trace("Predicted {} steps of {}", numPredictedSteps, step);
+	}
+
+	/**
+	 * Compute the range of cells of {@code cellImg} that intersect the screen after transforming to screen space with
+	 * {@code sourceToScreen}.
+	 *
+	 * @return {@code false} if no cell is visible
+	 */
+	private static boolean visibleCells(
+			final AffineTransform3D sourceToScreen,
+			final Dimensions screenInterval,
+			final VolatileCachedCellImg<?, ?> cellImg,
+			final long[] cellMin,
+			final long[] cellMax)
+	{
+		final int[] cellDimensions = new int[3];
+		cellImg.getCellGrid().cellDimensions(cellDimensions);
+
+		// screen bounding box with one pixel padding for interpolation
+		final double[] screenMin = {-1, -1, -0.5};
+		final double[] screenMax = {screenInterval.dimension(0), screenInterval.dimension(1), 0.5};
+		final double[] sourceMin = new double[3];
+		final double[] sourceMax = new double[3];
+		Arrays.fill(sourceMin, Double.POSITIVE_INFINITY);
+		Arrays.fill(sourceMax, Double.NEGATIVE_INFINITY);
+		final double[] corner = new double[3];
+		for (int c = 0; c < 8; ++c)
+		{
+			for (int d = 0; d < 3; ++d)
+				corner[d] = (c & 1 << d) == 0 ? screenMin[d] : screenMax[d];
+			sourceToScreen.applyInverse(corner, corner);
+			for (int d = 0; d < 3; ++d)
+			{
+				sourceMin[d] = Math.min(sourceMin[d], corner[d]);
+				sourceMax[d] = Math.max(sourceMax[d], corner[d]);
+			}
+		}
+
+		for (int d = 0; d < 3; ++d)
+		{
+			final long min = Math.max((long) Math.floor(sourceMin[d]), cellImg.min(d));
+			final long max = Math.min((long) Math.ceil(sourceMax[d]), cellImg.max(d));
+			if (min > max)
+				return false;
+			cellMin[d] = (min - cellImg.min(d)) / cellDimensions[d];
+			cellMax[d] = (max - cellImg.min(d)) / cellDimensions[d];
+		}
+		return true;
+	}
+
+	/**
+	 * @return {@code true} if the linear part of {@code step} is an isotropic scaling, i.e. {@code step} does not
+	 * rotate or shear
+	 */
+	private static boolean isScaledTranslation(final AffineTransform3D step)
+	{
+		final double scale = step.get(0, 0);
+		if (scale <= 0)
+			return false;
+		for (int r = 0; r < 3; ++r)
+			for (int c = 0; c < 3; ++c)
+				if (Math.abs(step.get(r, c) - (r == c ? scale : 0.0)) > EPSILON * scale)
+					return false;
+		return true;
+	}
+
+	private static boolean equals(final AffineTransform3D t1, final AffineTransform3D t2)
+	{
+		for (int r = 0; r < 3; ++r)
+			for (int c = 0; c < 4; ++c)
+				if (Math.abs(t1.get(r, c) - t2.get(r, c)) > EPSILON * Math.max(1.0, Math.abs(t2.get(r, c))))
+					return false;
+		return true;
+	}
+
+}
@@ -0,0 +1,383 @@
+package bdv.fx.viewer.render;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Records timings of the most recent frames that were rendered by a {@link MultiResolutionRendererGeneric} in a
+ * lock-free ring buffer. Writing a {@link Frame} is a single increment and a single array store, so that the painter
+ * thread is not slowed down by the trace, and readers (the overlay or the {@link #exportCsv(Path) CSV export}) only
+ * see complete frames.
+ *
+ * The upload of a rendered image to the JavaFX scene happens asynchronously on the JavaFX application thread and is
+ * {@link #recordUpload(long) added} to the last frame after the fact.
+ */
+public class RenderTrace
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	private static final String CSV_HEADER = String.join(
+			",",
+			"sequence",
+			"startNanos",
+			"screenScaleIndex",
+			"numSources",
+			"createdProjector",
+			"success",
+			"complete",
+			"createProjectorNanos",
+			"mapNanos",
+			"renderNanos",
+			"ioNanos",
+			"timeToFirstPixelNanos",
+			"pendingRepaints",
+			"renderQueueDepth",
+			"uploadNanos");
+
+	/**
+	 * Timings of a single call to {@link MultiResolutionRendererGeneric#paint}. All durations are in nanoseconds,
+	 * {@code -1} if they were not measured for this frame.
+	 */
+	public static class Frame
+	{
+
+		public final long sequence;
+
+		/**
+		 * {@link System#nanoTime()} at the beginning of the frame.
+		 */
+		public final long startNanos;
+
+		public final int screenScaleIndex;
+
+		public final int numSources;
+
+		public final boolean createdProjector;
+
+		/**
+		 * The projector was not cancelled.
+		 */
+		public final boolean success;
+
+		/**
+		 * All data at the requested mipmap levels was present, i.e. all cells that were needed for this frame were
+		 * in the cache.
+		 */
+		public final boolean complete;
+
+		public final long createProjectorNanos;
+
+		/**
+		 * Wall time of the projection: block fetch waits, conversion and compositing.
+		 */
+		public final long mapNanos;
+
+		/**
+		 * Conversion and compositing, i.e. {@link #mapNanos} without time spent waiting for blocks.
+		 */
+		public final long renderNanos;
+
+		/**
+		 * Time spent waiting for blocks to be fetched.
+		 */
+		public final long ioNanos;
+
+		/**
+		 * Time between the first {@link MultiResolutionRendererGeneric#requestRepaint(net.imglib2.Interval) request}
+		 * of a new frame and the end of its first successful projection, {@code -1} for frames that refine an
+		 * already displayed image.
+		 */
+		public final long timeToFirstPixelNanos;
+
+		/**
+		 * Number of screen scales with pending repaint requests after this frame.
+		 */
+		public final int pendingRepaints;
+
+		/**
+		 * Number of tasks waiting for a rendering thread at the beginning of the frame, {@code -1} if unknown.
+		 */
+		public final int renderQueueDepth;
+
+		private volatile long uploadNanos = -1;
+
+		public Frame(
+				final long sequence,
+				final long startNanos,
+				final int screenScaleIndex,
+				final int numSources,
+				final boolean createdProjector,
+				final boolean success,
+				final boolean complete,
+				final long createProjectorNanos,
+				final long mapNanos,
+				final long renderNanos,
+				final long ioNanos,
+				final long timeToFirstPixelNanos,
+				final int pendingRepaints,
+				final int renderQueueDepth)
+		{
+			this.sequence = sequence;
+			this.startNanos = startNanos;
+			this.screenScaleIndex = screenScaleIndex;
+			this.numSources = numSources;
+			this.createdProjector = createdProjector;
+			this.success = success;
+			this.complete = complete;
+			this.createProjectorNanos = createProjectorNanos;
+			this.mapNanos = mapNanos;
+			this.renderNanos = renderNanos;
+			this.ioNanos = ioNanos;
+			this.timeToFirstPixelNanos = timeToFirstPixelNanos;
+			this.pendingRepaints = pendingRepaints;
+			this.renderQueueDepth = renderQueueDepth;
+		}
+
+		/**
+		 * @return time it took to upload the rendered image to the JavaFX scene, {@code -1} if it was not uploaded
+		 * (yet)
+		 */
+		public long getUploadNanos()
+		{
+			return uploadNanos;
+		}
+
+		private String toCsv()
+		{
+			return String.join(
+					",",
+					Long.toString(sequence),
+					Long.toString(startNanos),
+					Integer.toString(screenScaleIndex),
+					Integer.toString(numSources),
+					Boolean.toString(createdProjector),
+					Boolean.toString(success),
+					Boolean.toString(complete),
+					Long.toString(createProjectorNanos),
+					Long.toString(mapNanos),
+					Long.toString(renderNanos),
+					Long.toString(ioNanos),
+					Long.toString(timeToFirstPixelNanos),
+					Integer.toString(pendingRepaints),
+					Integer.toString(renderQueueDepth),
+					Long.toString(uploadNanos));
+		}
+	}
+
+	/**
+	 * Aggregate of the frames that are currently in the trace.
+	 */
+	public static class Summary
+	{
+
+		public final int numFrames;
+
+		/**
+		 * Fraction of successful frames that were {@link Frame#complete complete}, {@code NaN} if there were none.
+		 */
+		public final double completeRatio;
+
+		public final double meanMapMillis;
+
+		public final double meanIoMillis;
+
+		public final double meanUploadMillis;
+
+		public final double meanTimeToFirstPixelMillis;
+
+		public final long maxTimeToFirstPixelNanos;
+
+		public final Frame last;
+
+		private Summary(final List<Frame> frames)
+		{
+			int numSuccessful = 0, numComplete = 0, numUploads = 0, numFirstPixels = 0;
+			long mapNanos = 0, ioNanos = 0, uploadNanos = 0, timeToFirstPixelNanos = 0, maxTimeToFirstPixelNanos = -1;
+			for (final Frame frame : frames)
+			{
+				mapNanos += frame.mapNanos;
+				ioNanos += frame.ioNanos;
+				if (frame.success)
+				{
+					++numSuccessful;
+					if (frame.complete)
+						++numComplete;
+				}
+				final long upload = frame.getUploadNanos();
+				if (upload >= 0)
+				{
+					++numUploads;
+					uploadNanos += upload;
+				}
+				if (frame.timeToFirstPixelNanos >= 0)
+				{
+					++numFirstPixels;
+					timeToFirstPixelNanos += frame.timeToFirstPixelNanos;
+					maxTimeToFirstPixelNanos = Math.max(maxTimeToFirstPixelNanos, frame.timeToFirstPixelNanos);
+				}
+			}
+			this.numFrames = frames.size();
+			this.completeRatio = numSuccessful == 0 ? Double.NaN : numComplete / (double) numSuccessful;
+			this.meanMapMillis = meanMillis(mapNanos, numFrames);
+			this.meanIoMillis = meanMillis(ioNanos, numFrames);
+			this.meanUploadMillis = meanMillis(uploadNanos, numUploads);
+			this.meanTimeToFirstPixelMillis = meanMillis(timeToFirstPixelNanos, numFirstPixels);
+			this.maxTimeToFirstPixelNanos = maxTimeToFirstPixelNanos;
+			this.last = frames.isEmpty() ? null : frames.get(frames.size() - 1);
+		}
+
+		private static double meanMillis(final long nanos, final int count)
+		{
+			return count == 0 ? Double.NaN : nanos * 1e-6 / count;
+		}
+	}
+
+	private final AtomicReferenceArray<Frame> frames;
+
+	private final AtomicLong nextSequence = new AtomicLong();
+
+	private final AtomicLong numRejectedExecutions = new AtomicLong();
+
+	private volatile boolean isEnabled = true;
+
+	public RenderTrace()
+	{
+		this(DEFAULT_CAPACITY);
+	}
+
+	public RenderTrace(final int capacity)
+	{
+		if (capacity <= 0)
+			throw new IllegalArgumentException("Capacity must be positive but got " + capacity);
+		this.frames = new AtomicReferenceArray<>(capacity);
+	}
+
+	public boolean isEnabled()
+	{
+		return isEnabled;
+	}
+
+	/**
+	 * @param isEnabled if {@code false}, do not record any frames (existing frames are kept)
+	 */
+	public void setEnabled(final boolean isEnabled)
+	{
+		this.isEnabled = isEnabled;
+	}
+
+	public int getCapacity()
+	{
+		return frames.length();
+	}
+
+	/**
+	 * @return the next sequence number, to be passed into the {@link Frame} that is {@link #record(Frame) recorded}
+	 * next
+	 */
+	public long nextSequence()
+	{
+		return nextSequence.getAndIncrement();
+	}
+
+	/**
+	 * Overwrites the oldest frame if the trace is full.
+	 *
+	 * @param frame with a sequence number that was generated by {@link #nextSequence()}
+	 */
+	public void record(final Frame frame)
+	{
+		frames.set(index(frame.sequence), frame);
+		LOG.trace("Recorded frame {}", frame.sequence);
+	}
+
+	/**
+	 * Set the time it took to upload the most recently {@link #record(Frame) recorded} frame.
+	 */
+	public void recordUpload(final long uploadNanos)
+	{
+		final long sequence = nextSequence.get() - 1;
+		if (sequence < 0)
+			return;
+		final Frame frame = frames.get(index(sequence));
+		if (frame != null)
+			frame.uploadNanos = uploadNanos;
+	}
+
+	/**
+	 * The painter thread ignores {@link java.util.concurrent.RejectedExecutionException}s that occur when the
+	 * rendering executor is shut down. Count them to tell them apart from dropped frames.
+	 */
+	public void recordRejectedExecution()
+	{
+		numRejectedExecutions.incrementAndGet();
+	}
+
+	public long getNumRejectedExecutions()
+	{
+		return numRejectedExecutions.get();
+	}
+
+	/**
+	 * @return frames that are currently in the trace, from oldest to newest. Frames that are concurrently
+	 * overwritten are skipped.
+	 */
+	public List<Frame> getFrames()
+	{
+		final long end = nextSequence.get();
+		final long start = Math.max(end - frames.length(), 0);
+		final List<Frame> list = new ArrayList<>((int) (end - start));
+		for (long sequence = start; sequence < end; ++sequence)
+		{
+			final Frame frame = frames.get(index(sequence));
+			// not recorded yet or overwritten already
+			if (frame != null && frame.sequence == sequence)
+				list.add(frame);
+		}
+		return list;
+	}
+
+	public Summary summarize()
+	{
+		return new Summary(getFrames());
+	}
+
+	public void writeCsv(final Writer writer) throws IOException
+	{
+		writer.write(CSV_HEADER);
+		writer.write('\n');
+		for (final Frame frame : getFrames())
+		{
+			writer.write(frame.toCsv());
+			writer.write('\n');
+		}
+	}
+
+	public void exportCsv(final Path path) throws IOException
+	{
+		LOG.debug("Exporting render trace to {}", path);
+		try (final Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8))
+		{
+			writeCsv(writer);
+		}
+	}
+
+	private int index(final long sequence)
+	{
+		return (int) (sequence % frames.length());
+	}
+
+}
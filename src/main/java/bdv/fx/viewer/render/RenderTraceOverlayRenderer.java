@@ -0,0 +1,80 @@
+package bdv.fx.viewer.render;
+
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+
+/**
+ * Show a {@link RenderTrace.Summary summary} of a {@link RenderTrace} in the top left corner of a viewer.
+ */
+public class RenderTraceOverlayRenderer implements OverlayRendererGeneric<GraphicsContext>
+{
+
+	private static final Font FONT = Font.font("Monospaced", 12.0);
+
+	private static final Color BACKGROUND = Color.BLACK.deriveColor(0.0, 1.0, 1.0, 0.6);
+
+	private static final double LINE_HEIGHT = 15.0;
+
+	private static final double MARGIN = 10.0;
+
+	private final RenderTrace renderTrace;
+
+	private volatile boolean isVisible = false;
+
+	private int width = 0;
+
+	private int height = 0;
+
+	public RenderTraceOverlayRenderer(final RenderTrace renderTrace)
+	{
+		this.renderTrace = renderTrace;
+	}
+
+	public boolean isVisible()
+	{
+		return isVisible;
+	}
+
+	public void setVisible(final boolean isVisible)
+	{
+		this.isVisible = isVisible;
+	}
+
+	@Override
+	public synchronized void drawOverlays(final GraphicsContext g)
+	{
+		if (!isVisible || width <= 0 || height <= 0)
+			return;
+
+		final RenderTrace.Summary summary = renderTrace.summarize();
+		final RenderTrace.Frame last = summary.last;
+		final String[] lines = {
+				String.format("frames        %d/%d", summary.numFrames, renderTrace.getCapacity()),
+				String.format("complete      %.1f%%", 100.0 * summary.completeRatio),
+				String.format("map           %.2f ms", summary.meanMapMillis),
+				String.format("io            %.2f ms", summary.meanIoMillis),
+				String.format("upload        %.2f ms", summary.meanUploadMillis),
+				String.format("first pixel   %.2f ms (max %.2f ms)", summary.meanTimeToFirstPixelMillis, summary.maxTimeToFirstPixelNanos * 1e-6),
+				last == null
+						? "last frame    -"
+						: String.format("last frame    scale %d, %d sources, %d pending, %d queued", last.screenScaleIndex, last.numSources, last.pendingRepaints, last.renderQueueDepth),
+				String.format("rejected      %d", renderTrace.getNumRejectedExecutions())
+		};
+
+		g.setFill(BACKGROUND);
+		g.fillRect(MARGIN, MARGIN, 360.0, lines.length * LINE_HEIGHT + MARGIN);
+		g.setFill(Color.WHITE);
+		g.setFont(FONT);
+		for (int i = 0; i < lines.length; ++i)
+			g.fillText(lines[i], 1.5 * MARGIN, MARGIN + (i + 1) * LINE_HEIGHT);
+	}
+
+	@Override
+	public synchronized void setCanvasSize(final int width, final int height)
+	{
+		this.width = width;
+		this.height = height;
+	}
+
+}
@@ -26,6 +26,7 @@ import java.lang.invoke.MethodHandles;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.Function;
 import java.util.function.IntSupplier;
 import java.util.function.Supplier;
@@ -69,6 +70,10 @@ public class RenderUnit implements PainterThread.Paintable {
 
 	private final List<Runnable> updateListeners = new ArrayList<>();
 
+	private final PredictivePrefetcher predictivePrefetcher = new PredictivePrefetcher();
+
+	private final RenderTrace renderTrace = new RenderTrace();
+
 	public RenderUnit(
 			final ThreadGroup threadGroup,
 			final Supplier<ViewerState> viewerState,
@@ -175,6 +180,7 @@ public class RenderUnit implements PainterThread.Paintable {
 
 		renderTarget = new TransformAwareBufferedImageOverlayRendererFX();
 		renderTarget.setCanvasSize((int) dimensions[0], (int) dimensions[1]);
+		renderTarget.setRenderTrace(renderTrace);
 
 		painterThread = new PainterThread(threadGroup, "painter-thread", this);
 		painterThread.setDaemon(true);
@@ -192,10 +198,30 @@ public class RenderUnit implements PainterThread.Paintable {
 				accumulateProjectorFactory,
 				cacheControl
 		);
+		renderer.setPredictivePrefetcher(predictivePrefetcher);
+		renderer.setRenderTrace(renderTrace);
 
 		notifyUpdated();
 	}
 
+	/**
+	 * Needs to be notified about changes of the viewer transform to predict navigation.
+	 *
+	 * @return prefetcher for cells along the predicted navigation path
+	 */
+	public PredictivePrefetcher getPredictivePrefetcher()
+	{
+		return predictivePrefetcher;
+	}
+
+	/**
+	 * @return timings of the most recently rendered frames
+	 */
+	public RenderTrace getRenderTrace()
+	{
+		return renderTrace;
+	}
+
 	public synchronized ReadOnlyObjectProperty<RenderResult> getRenderedImageProperty()
 	{
 		return renderResultProperty;
@@ -246,14 +272,23 @@ public class RenderUnit implements PainterThread.Paintable {
 			}
 		}
 
-		final int renderedScreenScaleIndex = renderer.paint(
-			sacs,
-			axisOrder,
-			timepoint,
-			viewerTransform,
-			interpolation,
-			null
-		);
+		final int renderedScreenScaleIndex;
+		try
+		{
+			renderedScreenScaleIndex = renderer.paint(
+				sacs,
+				axisOrder,
+				timepoint,
+				viewerTransform,
+				interpolation,
+				null
+			);
+		}
+		catch (final RejectedExecutionException e)
+		{
+			renderTrace.recordRejectedExecution();
+			throw e;
+		}
 
 		if (renderedScreenScaleIndex != -1)
 		{
@@ -61,6 +61,8 @@ public class TransformAwareBufferedImageOverlayRendererFX
 	 */
 	protected final CopyOnWriteArrayList<TransformListener<AffineTransform3D>> paintedTransformListeners;
 
+	private volatile RenderTrace renderTrace;
+
 	public TransformAwareBufferedImageOverlayRendererFX()
 	{
 		super();
@@ -98,9 +100,11 @@ public class TransformAwareBufferedImageOverlayRendererFX
 		if (sourceImage != null)
 		{
 			final boolean notify = notifyTransformListeners;
+			final RenderTrace renderTrace = this.renderTrace;
 			InvokeOnJavaFXApplicationThread.invoke(() -> {
 
 				LOG.trace("Setting image to {}", sourceImage);
+				final long startNanos = System.nanoTime();
 				g.accept(null);
 
 				/*
@@ -121,6 +125,8 @@ public class TransformAwareBufferedImageOverlayRendererFX
 
 				sourceImage.setPixelsDirty();
 				g.accept(sourceImage);
+				if (renderTrace != null)
+					renderTrace.recordUpload(System.nanoTime() - startNanos);
 				// TODO add countdown latch to wait for setImage to return
 				// before
 				// notifying listeners
@@ -132,6 +138,15 @@ public class TransformAwareBufferedImageOverlayRendererFX
 		}
 	}
 
+	/**
+	 * @param renderTrace
+	 * 		record the time it takes to upload rendered images to the JavaFX scene, or {@code null} to disable.
+	 */
+	public void setRenderTrace(final RenderTrace renderTrace)
+	{
+		this.renderTrace = renderTrace;
+	}
+
 	/**
 	 * Add a {@link TransformListener} to notify about viewer transformation changes. Listeners will be notified when a
 	 * new image has been rendered (immediately before that image is displayed) with the viewer transform used to
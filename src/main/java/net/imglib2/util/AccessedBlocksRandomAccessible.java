@@ -73,6 +73,14 @@ public class AccessedBlocksRandomAccessible<T> extends AbstractWrappedInterval<R
 		this.visitedBlocks.add(id);
 	}
 
+	/**
+	 * Mark blocks as accessed, e.g. after writing into {@link #getSource()} directly.
+	 */
+	public void addBlockIds(final long... ids)
+	{
+		this.visitedBlocks.addAll(ids);
+	}
+
 	public long[] listBlocks()
 	{
 		return visitedBlocks.toArray();
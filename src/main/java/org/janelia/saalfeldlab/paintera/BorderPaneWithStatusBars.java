@@ -72,6 +72,8 @@ public class BorderPaneWithStatusBars
 
 	private final ScreenScalesConfigNode screenScaleConfigNode = new ScreenScalesConfigNode();
 
+	private final BlockCacheConfigNode blockCacheConfigNode = new BlockCacheConfigNode();
+
 	private final ScaleBarOverlayConfigNode scaleBarConfigNode = new ScaleBarOverlayConfigNode();
 
 	private final BookmarkConfigNode bookmarkConfigNode;
@@ -231,7 +233,8 @@ public class BorderPaneWithStatusBars
 				this.scaleBarConfigNode,
 				this.bookmarkConfigNode,
 				this.arbitraryMeshConfigNode,
-				this.screenScaleConfigNode.getContents());
+				this.screenScaleConfigNode.getContents(),
+				this.blockCacheConfigNode.getContents());
 		final TitledPane settings = new TitledPane("settings", settingsContents);
 		settings.setExpanded(false);
 
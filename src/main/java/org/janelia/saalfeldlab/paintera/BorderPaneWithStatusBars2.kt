@@ -212,6 +212,8 @@ class BorderPaneWithStatusBars2(private val paintera: PainteraMainWindow) {
 
     private val screenScaleConfigNode = ScreenScalesConfigNode(properties.screenScalesConfig)
 
+    private val blockCacheConfigNode = BlockCacheConfigNode()
+
     private val scaleBarConfigNode = ScaleBarOverlayConfigNode(properties.scaleBarOverlayConfig)
 
     private val bookmarkConfigNode = BookmarkConfigNode(
@@ -351,7 +353,8 @@ class BorderPaneWithStatusBars2(private val paintera: PainteraMainWindow) {
             this.scaleBarConfigNode,
             this.bookmarkConfigNode,
             this.arbitraryMeshConfigNode,
-            this.screenScaleConfigNode.contents)
+            this.screenScaleConfigNode.contents,
+            this.blockCacheConfigNode.contents)
         val settings = TitledPane("Settings", settingsContents)
         settings.isExpanded = false
 
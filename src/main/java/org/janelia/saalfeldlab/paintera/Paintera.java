@@ -21,6 +21,7 @@ import org.janelia.saalfeldlab.fx.event.MouseTracker;
 import org.janelia.saalfeldlab.fx.ortho.GridConstraintsManager;
 import org.janelia.saalfeldlab.fx.ortho.OrthogonalViews;
 import org.janelia.saalfeldlab.paintera.SaveProject.ProjectUndefined;
+import org.janelia.saalfeldlab.paintera.cache.GlobalBlockCache;
 import org.janelia.saalfeldlab.paintera.config.BookmarkConfig;
 import org.janelia.saalfeldlab.paintera.config.CoordinateConfigNode;
 import org.janelia.saalfeldlab.paintera.config.NavigationConfigNode;
@@ -132,6 +133,8 @@ public class Paintera extends Application
 			return;
 		}
 
+		GlobalBlockCache.global().setMaxBytes(painteraArgs.blockCacheSize(GlobalBlockCache.global().getMaxBytes()));
+
 		stage.setTitle("Paintera");
 		stage.getIcons().addAll(
 			new Image(getClass().getResourceAsStream("/icon-16.png")),
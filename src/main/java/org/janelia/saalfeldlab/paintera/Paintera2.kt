@@ -7,6 +7,7 @@ import javafx.scene.Scene
 import javafx.scene.input.MouseEvent
 import javafx.stage.Modality
 import javafx.stage.Stage
+import org.janelia.saalfeldlab.paintera.cache.GlobalBlockCache
 import org.janelia.saalfeldlab.paintera.config.ScreenScalesConfig
 import org.janelia.saalfeldlab.paintera.ui.PainteraAlerts
 import org.slf4j.LoggerFactory
@@ -30,6 +31,8 @@ class Paintera2 : Application() {
 		}
 		Platform.setImplicitExit(true)
 
+		GlobalBlockCache.global().let { it.maxBytes = painteraArgs.blockCacheSize(it.maxBytes) }
+
 		val projectPath = painteraArgs.project()?.let { File(it).absoluteFile }
 		if (!PainteraAlerts.ignoreLockFileDialog(mainWindow.projectDirectory, projectPath, "_Quit", false)) {
 			LOG.info("Paintera project `$projectPath' is locked, will exit.")
@@ -5,6 +5,7 @@ import bdv.viewer.Interpolation;
 import bdv.viewer.SourceAndConverter;
 import bdv.viewer.ViewerOptions;
 import com.pivovarit.function.ThrowingSupplier;
+import javafx.application.Platform;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.collections.ListChangeListener;
@@ -50,6 +51,7 @@ import org.janelia.saalfeldlab.paintera.stream.AbstractHighlightingARGBStream;
 import org.janelia.saalfeldlab.paintera.viewer3d.Viewer3DFX;
 import org.janelia.saalfeldlab.util.NamedThreadFactory;
 import org.janelia.saalfeldlab.util.concurrent.HashPriorityQueueBasedTaskExecutor;
+import org.janelia.saalfeldlab.util.concurrent.PaintTaskScheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -82,6 +84,13 @@ public class PainteraBaseView
 	// set this absurdly high
 	private static final int MAX_NUM_MIPMAP_LEVELS = 100;
 
+	/**
+	 * Maximum number of queued paint and propagation tasks. Consecutive brush strokes are coalesced, so this is only
+	 * reached if painting is much faster than the propagation of painted labels. Submissions from the JavaFX
+	 * application thread never wait for space in the queues, so that the UI does not freeze.
+	 */
+	private static final int PAINT_QUEUE_CAPACITY = 64;
+
 	private static final AllowedActions DEFAULT_ALLOWED_ACTIONS = AllowedActionsBuilder.all();
 
 	private final SourceInfo sourceInfo = new SourceInfo();
@@ -114,9 +123,26 @@ public class PainteraBaseView
 			Math.min(10, Runtime.getRuntime().availableProcessors() - 1),
 			new NamedThreadFactory("paintera-mesh-worker-%d", true, Thread.MIN_PRIORITY));
 
-	private final ExecutorService paintQueue = Executors.newFixedThreadPool(1);
+	private final PaintTaskScheduler paintQueue = new PaintTaskScheduler(
+			"paint queue",
+			1,
+			PAINT_QUEUE_CAPACITY,
+			new NamedThreadFactory("paintera-paint-%d", true),
+			() -> !Platform.isFxApplicationThread());
+
+	private final PaintTaskScheduler propagationQueue = new PaintTaskScheduler(
+			"propagation queue",
+			1,
+			PAINT_QUEUE_CAPACITY,
+			new NamedThreadFactory("paintera-propagation-%d", true),
+			() -> !Platform.isFxApplicationThread());
+
+	private final ExecutorService floodFillExecutorService = Executors.newFixedThreadPool(
+			Runtime.getRuntime().availableProcessors(),
+			new NamedThreadFactory("paintera-flood-fill-%d", true));
 
-	private final ExecutorService propagationQueue = Executors.newFixedThreadPool(1);
+	private final ExecutorService backgroundExecutorService = Executors.newSingleThreadExecutor(
+			new NamedThreadFactory("paintera-background-%d", true, Thread.MIN_PRIORITY));
 
 	private final SharedQueue sharedQueue;
 
@@ -457,9 +483,9 @@ public class PainteraBaseView
 
 	/**
 	 *
-	 * @return {@link ExecutorService} for painting related computations
+	 * @return {@link PaintTaskScheduler} for painting related computations
 	 */
-	public ExecutorService getPaintQueue()
+	public PaintTaskScheduler getPaintQueue()
 	{
 		return this.paintQueue;
 	}
@@ -473,6 +499,25 @@ public class PainteraBaseView
 		return this.propagationQueue;
 	}
 
+	/**
+	 *
+	 * @return {@link ExecutorService} for the block workers of flood fills
+	 */
+	public ExecutorService getFloodFillExecutorService()
+	{
+		return this.floodFillExecutorService;
+	}
+
+	/**
+	 *
+	 * @return {@link ExecutorService} for low priority work that anticipates user requests, e.g. generating cells of
+	 * an interpolated shape before the shape is applied
+	 */
+	public ExecutorService getBackgroundExecutorService()
+	{
+		return this.backgroundExecutorService;
+	}
+
 	/**
 	 * shut down {@link ExecutorService executors} and {@link Thread threads}.
 	 * TODO this can probably be removed, because everything should be daemon threads!
@@ -487,6 +532,10 @@ public class PainteraBaseView
 		this.meshWorkerExecutorService.shutdown();
 		this.paintQueue.shutdown();
 		this.propagationQueue.shutdown();
+		this.floodFillExecutorService.shutdown();
+		this.backgroundExecutorService.shutdownNow();
+		LOG.debug("Paint queue statistics: {}", this.paintQueue.getStatistics());
+		LOG.debug("Propagation queue statistics: {}", this.propagationQueue.getStatistics());
 		this.orthogonalViews().topLeft().viewer().stop();
 		this.orthogonalViews().topRight().viewer().stop();
 		this.orthogonalViews().bottomLeft().viewer().stop();
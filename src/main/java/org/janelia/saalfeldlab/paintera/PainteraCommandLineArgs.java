@@ -428,6 +428,10 @@ public class PainteraCommandLineArgs implements Callable<Boolean>
 					"DEPRECATED: This flag will have no effect and will be removed in a future release.")
 	private Boolean defaultToTempDirectory;
 
+	@Option(names = "--block-cache-size", paramLabel = "BLOCK_CACHE_SIZE", required = false, description = "Maximum size " +
+			"of the block cache shared by all sources, in megabytes. Defaults to half of the maximum heap size.")
+	private long blockCacheSize = -1;
+
 	@Option(names = "--version", paramLabel = "PRINT_VERSION_STRING", required = false, description = "Print version string and exit")
 	private Boolean printVersionString;
 
@@ -441,6 +445,7 @@ public class PainteraCommandLineArgs implements Callable<Boolean>
 	{
 		width = width <= 0 ? -1 : width;
 		height = height <= 0 ? -1 : height;
+		blockCacheSize = blockCacheSize <= 0 ? -1 : blockCacheSize;
 
 		screenScalesProvided = screenScales != null || numScreenScales != null || highestScreenScale != null || screenScaleFactor != null;
 
@@ -492,6 +497,15 @@ public class PainteraCommandLineArgs implements Callable<Boolean>
 		return height <= 0 ? defaultHeight : height;
 	}
 
+	/**
+	 * @param defaultBytes returned if no block cache size was specified
+	 * @return block cache size in bytes
+	 */
+	public long blockCacheSize(final long defaultBytes)
+	{
+		return blockCacheSize <= 0 ? defaultBytes : blockCacheSize * 1024 * 1024;
+	}
+
 	public String project()
 	{
 		final String returnedProject = this.project == null ? this.project : new File(project).getAbsolutePath();
@@ -3,6 +3,7 @@ package org.janelia.saalfeldlab.paintera
 import bdv.fx.viewer.ViewerPanelFX
 import bdv.fx.viewer.multibox.MultiBoxOverlayConfig
 import bdv.fx.viewer.multibox.MultiBoxOverlayRendererFX
+import bdv.fx.viewer.render.RenderTraceOverlayRenderer
 import bdv.fx.viewer.scalebar.ScaleBarOverlayRenderer
 import bdv.viewer.Interpolation
 import bdv.viewer.Source
@@ -44,7 +45,9 @@ import org.janelia.saalfeldlab.paintera.control.navigation.DisplayTransformUpdat
 import org.janelia.saalfeldlab.paintera.ui.ToggleMaximize
 import org.janelia.saalfeldlab.paintera.ui.opendialog.menu.OpenDialogMenu
 import org.slf4j.LoggerFactory
+import java.io.IOException
 import java.lang.invoke.MethodHandles
+import java.nio.file.Files
 import java.util.*
 import java.util.concurrent.Callable
 import java.util.function.Consumer
@@ -135,6 +138,8 @@ class PainteraDefaultHandlers2(
 
     private val viewerToTransforms = HashMap<ViewerPanelFX, ViewerAndTransforms>()
 
+    private val renderTraceOverlays = LinkedHashMap<ViewerPanelFX, RenderTraceOverlayRenderer>()
+
     fun getSourceSpecificGlobalEventHandler() = DelegateEventHandlers.fromSupplier { sourceSpecificGlobalEventHandler.get() }
 
     fun getSourceSpecificGlobalEventFilter() = DelegateEventHandlers.fromSupplier { sourceSpecificGlobalEventFilter.get() }
@@ -329,6 +334,21 @@ class PainteraDefaultHandlers2(
         this.baseView.orthogonalViews().bottomLeft().viewer().display.addOverlayRenderer(scaleBarOverlays[2])
 		properties.scaleBarOverlayConfig.change.addListener { this.baseView.orthogonalViews().applyToAll { vp -> vp.display.drawOverlays() } }
 
+		this.baseView.orthogonalViews().applyToAll { vp ->
+			val overlay = RenderTraceOverlayRenderer(vp.renderUnit.renderTrace)
+			renderTraceOverlays[vp] = overlay
+			vp.display.addOverlayRenderer(overlay)
+			vp.renderUnit.renderedImageProperty.addListener { _, _, _ -> if (overlay.isVisible) vp.display.drawOverlays() }
+		}
+		EventFX.KEY_PRESSED(
+				bindingKeys.TOGGLE_RENDER_TRACE_OVERLAY,
+				Consumer { toggleRenderTraceOverlays() },
+				Predicate { keyCombinations.matches(bindingKeys.TOGGLE_RENDER_TRACE_OVERLAY, it) }).installInto(borderPane)
+		EventFX.KEY_PRESSED(
+				bindingKeys.EXPORT_RENDER_TRACE,
+				Consumer { exportRenderTraces() },
+				Predicate { keyCombinations.matches(bindingKeys.EXPORT_RENDER_TRACE, it) }).installInto(borderPane)
+
         val addBookmarkKeyCode = KeyCodeCombination(KeyCode.B)
         val addBookmarkWithCommentKeyCode = KeyCodeCombination(KeyCode.B, KeyCombination.SHIFT_DOWN)
         val applyBookmarkKeyCode = KeyCodeCombination(KeyCode.B, KeyCombination.CONTROL_DOWN)
@@ -370,6 +390,26 @@ class PainteraDefaultHandlers2(
         }
     }
 
+    private fun toggleRenderTraceOverlays() {
+        val isVisible = renderTraceOverlays.values.none { it.isVisible }
+        renderTraceOverlays.forEach { (vp, overlay) ->
+            overlay.isVisible = isVisible
+            vp.display.drawOverlays()
+        }
+    }
+
+    private fun exportRenderTraces() {
+        renderTraceOverlays.keys.forEachIndexed { index, vp ->
+            try {
+                val path = Files.createTempFile("paintera-render-trace-$index-", ".csv")
+                vp.renderUnit.renderTrace.exportCsv(path)
+                LOG.info("Exported render trace of viewer {} to {}", index, path)
+            } catch (e: IOException) {
+                LOG.error("Unable to export render trace of viewer {}", index, e)
+            }
+        }
+    }
+
     private fun createSourcesInterpolationListener(): InvalidationListener {
         return InvalidationListener {
             if (globalInterpolationProperty.get() == null && !sourceInfo.trackSources().isEmpty()) {
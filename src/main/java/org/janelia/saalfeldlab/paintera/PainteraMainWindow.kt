@@ -362,6 +362,8 @@ class PainteraMainWindow(val gateway: PainteraGateway = PainteraGateway()) {
 		const val CREATE_NEW_LABEL_DATASET = "create new label dataset"
 		const val SHOW_REPL_TABS = "open repl"
 		const val TOGGLE_FULL_SCREEN = "toggle full screen"
+		const val TOGGLE_RENDER_TRACE_OVERLAY = "toggle render trace overlay"
+		const val EXPORT_RENDER_TRACE = "export render trace"
 	}
 
 
@@ -408,7 +410,9 @@ class PainteraMainWindow(val gateway: PainteraGateway = PainteraGateway()) {
 				NamedKeyCombination(BindingKeys.MAXIMIZE_VIEWER_AND_3D, KeyCodeCombination(KeyCode.M, KeyCombination.SHIFT_DOWN)),
 				NamedKeyCombination(BindingKeys.CREATE_NEW_LABEL_DATASET, KeyCodeCombination(KeyCode.N, KeyCombination.CONTROL_DOWN, KeyCombination.SHIFT_DOWN)),
 				NamedKeyCombination(BindingKeys.SHOW_REPL_TABS, KeyCodeCombination(KeyCode.T, KeyCombination.SHORTCUT_DOWN, KeyCombination.ALT_DOWN)),
-				NamedKeyCombination(BindingKeys.TOGGLE_FULL_SCREEN, KeyCodeCombination(KeyCode.F11)))
+				NamedKeyCombination(BindingKeys.TOGGLE_FULL_SCREEN, KeyCodeCombination(KeyCode.F11)),
+				NamedKeyCombination(BindingKeys.TOGGLE_RENDER_TRACE_OVERLAY, KeyCodeCombination(KeyCode.F4)),
+				NamedKeyCombination(BindingKeys.EXPORT_RENDER_TRACE, KeyCodeCombination(KeyCode.F4, KeyCombination.SHIFT_DOWN)))
 
 
 		@JvmStatic
@@ -0,0 +1,542 @@
+package org.janelia.saalfeldlab.paintera.cache;
+
+import net.imglib2.cache.CacheLoader;
+import net.imglib2.cache.LoaderCache;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.type.label.VolatileLabelMultisetArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Array;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Process-wide block cache with a single memory budget. Each data source obtains its own {@link LoaderCache} view
+ * through {@link #createCache(String, ToLongFunction, double)}, and the entries of all views compete for the same budget in
+ * least-recently-used order. In contrast to a {@link net.imglib2.cache.ref.SoftRefLoaderCache SoftRefLoaderCache}
+ * per source, memory usage is bounded independently of garbage collector heuristics.
+ *
+ * Blocks are accounted by an estimate of their size in bytes, scaled by a per-source weight: A weight greater than
+ * one evicts blocks of that source earlier, e.g. for sources that are cheap to reload, a weight less than one keeps
+ * them longer. Entries are spread over {@link #NUM_SEGMENTS} segments,
+ * each an access ordered map with its own lock, so that concurrent lookups of different blocks rarely contend. The
+ * byte count is updated outside of the segment locks, and eviction removes the least recently used block among the
+ * eldest blocks of all segments.
+ */
+public class GlobalBlockCache
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	public static final long DEFAULT_MAX_BYTES = Runtime.getRuntime().maxMemory() / 2;
+
+	/**
+	 * Number of lock stripes, a power of two.
+	 */
+	private static final int NUM_SEGMENTS = 16;
+
+	private static final GlobalBlockCache GLOBAL = new GlobalBlockCache(DEFAULT_MAX_BYTES);
+
+	/**
+	 * @return the cache shared by all sources
+	 */
+	public static GlobalBlockCache global()
+	{
+		return GLOBAL;
+	}
+
+	private final Segment[] segments = new Segment[NUM_SEGMENTS];
+
+	private volatile long maxBytes;
+
+	private final AtomicLong usedBytes = new AtomicLong();
+
+	// only one thread evicts at a time, other threads that exceed the budget leave the eviction to it
+	private final ReentrantLock evictionLock = new ReentrantLock();
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	private final LongAdder evictions = new LongAdder();
+
+	public GlobalBlockCache(final long maxBytes)
+	{
+		this.maxBytes = maxBytes;
+		for (int i = 0; i < segments.length; ++i)
+			segments[i] = new Segment();
+	}
+
+	/**
+	 * @param name identifies the source in log messages
+	 * @param bytes estimates the size of a block in bytes
+	 * @param weight scales the accounted size of each block of the source, must be positive
+	 */
+	public <K, V> LoaderCache<K, V> createCache(final String name, final ToLongFunction<? super V> bytes, final double weight)
+	{
+		if (!(weight > 0))
+			throw new IllegalArgumentException("Weight must be positive but was " + weight);
+		return new SourceCache<>(name, bytes, weight);
+	}
+
+	/**
+	 * Create a cache view with unit weight.
+	 */
+	public <K, V> LoaderCache<K, V> createCache(final String name, final ToLongFunction<? super V> bytes)
+	{
+		return createCache(name, bytes, 1.0);
+	}
+
+	/**
+	 * Create a cache view for blocks of {@link Cell cells}, sized by {@link #estimateBytes(Object)}.
+	 */
+	public <K, V> LoaderCache<K, V> createCache(final String name, final double weight)
+	{
+		return createCache(name, GlobalBlockCache::estimateBytes, weight);
+	}
+
+	/**
+	 * Create a cache view for blocks of {@link Cell cells} with unit weight, sized by {@link #estimateBytes(Object)}.
+	 */
+	public <K, V> LoaderCache<K, V> createCache(final String name)
+	{
+		return createCache(name, 1.0);
+	}
+
+	public long getMaxBytes()
+	{
+		return maxBytes;
+	}
+
+	/**
+	 * Update the budget. Least recently used blocks are evicted immediately if the new budget is exceeded.
+	 */
+	public void setMaxBytes(final long maxBytes)
+	{
+		LOG.debug("Setting block cache budget to {} bytes", maxBytes);
+		this.maxBytes = maxBytes;
+		evictIfNecessary();
+	}
+
+	public long getUsedBytes()
+	{
+		return usedBytes.get();
+	}
+
+	public int getNumBlocks()
+	{
+		int numBlocks = 0;
+		for (final Segment segment : segments)
+			numBlocks += segment.size();
+		return numBlocks;
+	}
+
+	public long getHits()
+	{
+		return hits.sum();
+	}
+
+	public long getMisses()
+	{
+		return misses.sum();
+	}
+
+	public long getEvictions()
+	{
+		return evictions.sum();
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format(
+				"{GlobalBlockCache: blocks=%d, used=%d, max=%d, hits=%d, misses=%d, evictions=%d}",
+				getNumBlocks(),
+				getUsedBytes(),
+				getMaxBytes(),
+				getHits(),
+				getMisses(),
+				getEvictions());
+	}
+
+	/**
+	 * Estimate the size of a {@link Cell} (or of its data) in bytes from its storage array. Label multiset data also
+	 * includes its list data. Falls back to {@code 1} for unknown types, i.e. the budget effectively limits the number
+	 * of such blocks.
+	 */
+	public static long estimateBytes(final Object value)
+	{
+		final Object data = value instanceof Cell<?> ? ((Cell<?>) value).getData() : value;
+		if (data instanceof VolatileLabelMultisetArray)
+		{
+			final VolatileLabelMultisetArray labelData = (VolatileLabelMultisetArray) data;
+			return arrayBytes(labelData.getCurrentStorageArray()) + labelData.getListDataUsedSizeInBytes();
+		}
+		if (data instanceof ArrayDataAccess<?>)
+			return arrayBytes(((ArrayDataAccess<?>) data).getCurrentStorageArray());
+		return 1;
+	}
+
+	private static long arrayBytes(final Object array)
+	{
+		if (array == null || !array.getClass().isArray())
+			return 1;
+		final long length = Array.getLength(array);
+		final Class<?> componentType = array.getClass().getComponentType();
+		if (componentType == byte.class || componentType == boolean.class)
+			return length;
+		if (componentType == short.class || componentType == char.class)
+			return 2 * length;
+		if (componentType == int.class || componentType == float.class)
+			return 4 * length;
+		return 8 * length;
+	}
+
+	private Segment segmentFor(final Key key)
+	{
+		final int hash = key.hashCode;
+		return segments[(hash ^ (hash >>> 16)) & (NUM_SEGMENTS - 1)];
+	}
+
+	private void evictIfNecessary()
+	{
+		// re-check after releasing the lock: blocks added while another thread was evicting may exceed the budget
+		while (usedBytes.get() > maxBytes && evictionLock.tryLock())
+		{
+			try
+			{
+				while (usedBytes.get() > maxBytes)
+					if (!evictLeastRecentlyUsed())
+						return;
+			}
+			finally
+			{
+				evictionLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * @return {@code false} if no loaded block is left
+	 */
+	private boolean evictLeastRecentlyUsed()
+	{
+		Segment oldestSegment = null;
+		long oldestAccess = Long.MAX_VALUE;
+		for (final Segment segment : segments)
+		{
+			final long access = segment.eldestAccess();
+			if (access < oldestAccess)
+			{
+				oldestAccess = access;
+				oldestSegment = segment;
+			}
+		}
+		if (oldestSegment == null)
+			return false;
+		// the segment may have changed since its eldest block was inspected, which only makes eviction less exact
+		final long bytes = oldestSegment.removeEldest();
+		if (bytes > 0)
+		{
+			usedBytes.addAndGet(-bytes);
+			evictions.increment();
+		}
+		return true;
+	}
+
+	private static Object awaitLoaded(final Entry entry) throws ExecutionException
+	{
+		try
+		{
+			return entry.future.get();
+		}
+		catch (final InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new ExecutionException(e);
+		}
+		catch (final ExecutionException e)
+		{
+			throw new ExecutionException(e.getCause());
+		}
+	}
+
+	private static final class Key
+	{
+		private final SourceCache<?, ?> source;
+
+		private final Object key;
+
+		private final int hashCode;
+
+		private Key(final SourceCache<?, ?> source, final Object key)
+		{
+			this.source = source;
+			this.key = key;
+			this.hashCode = 31 * System.identityHashCode(source) + key.hashCode();
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(final Object other)
+		{
+			return other instanceof Key && ((Key) other).source == source && ((Key) other).key.equals(key);
+		}
+	}
+
+	private static final class Entry
+	{
+		private final CompletableFuture<Object> future = new CompletableFuture<>();
+
+		// null while loading
+		private volatile Object value = null;
+
+		private long bytes = 0;
+
+		// System.nanoTime() of the last access, orders blocks across segments
+		private long lastAccess = System.nanoTime();
+	}
+
+	/**
+	 * Access ordered map of a subset of all blocks. All methods lock the segment, none of them touches
+	 * {@link #usedBytes}: Callers account for the bytes of added and removed entries.
+	 */
+	private static final class Segment
+	{
+		private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+		private synchronized Entry get(final Key key)
+		{
+			final Entry entry = entries.get(key);
+			if (entry != null)
+				entry.lastAccess = System.nanoTime();
+			return entry;
+		}
+
+		private synchronized Entry getOrAdd(final Key key, final Entry newEntry)
+		{
+			final Entry entry = entries.get(key);
+			if (entry != null)
+			{
+				entry.lastAccess = System.nanoTime();
+				return entry;
+			}
+			entries.put(key, newEntry);
+			return newEntry;
+		}
+
+		/**
+		 * @return {@code true} if {@code entry} is still mapped to {@code key}
+		 */
+		private synchronized boolean setLoaded(final Key key, final Entry entry, final Object value, final long bytes)
+		{
+			if (entries.get(key) != entry)
+				return false;
+			entry.value = value;
+			entry.bytes = bytes;
+			return true;
+		}
+
+		/**
+		 * @return accounted bytes of the removed entry
+		 */
+		private synchronized long remove(final Key key)
+		{
+			final Entry entry = entries.remove(key);
+			return entry == null ? 0 : entry.bytes;
+		}
+
+		private synchronized void remove(final Key key, final Entry entry)
+		{
+			entries.remove(key, entry);
+		}
+
+		/**
+		 * @return accounted bytes of all removed entries
+		 */
+		private synchronized <K> long removeIf(final SourceCache<K, ?> source, final Predicate<K> condition)
+		{
+			long removedBytes = 0;
+			for (final Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator(); it.hasNext(); )
+			{
+				final Map.Entry<Key, Entry> entry = it.next();
+				final Key key = entry.getKey();
+				@SuppressWarnings("unchecked") final K sourceKey = (K) key.key;
+				if (key.source == source && condition.test(sourceKey))
+				{
+					it.remove();
+					removedBytes += entry.getValue().bytes;
+				}
+			}
+			return removedBytes;
+		}
+
+		/**
+		 * @return last access of the least recently used loaded block, {@link Long#MAX_VALUE} if there is none
+		 */
+		private synchronized long eldestAccess()
+		{
+			final Entry eldest = eldestLoaded();
+			return eldest == null ? Long.MAX_VALUE : eldest.lastAccess;
+		}
+
+		/**
+		 * @return accounted bytes of the removed least recently used loaded block
+		 */
+		private synchronized long removeEldest()
+		{
+			for (final Iterator<Entry> it = entries.values().iterator(); it.hasNext(); )
+			{
+				final Entry entry = it.next();
+				// blocks that are still loading are not accounted yet
+				if (entry.value != null)
+				{
+					it.remove();
+					return entry.bytes;
+				}
+			}
+			return 0;
+		}
+
+		private synchronized int size()
+		{
+			return entries.size();
+		}
+
+		private Entry eldestLoaded()
+		{
+			for (final Entry entry : entries.values())
+				if (entry.value != null)
+					return entry;
+			return null;
+		}
+	}
+
+	private final class SourceCache<K, V> implements LoaderCache<K, V>
+	{
+
+		private final String name;
+
+		private final ToLongFunction<? super V> bytes;
+
+		private final double weight;
+
+		private SourceCache(final String name, final ToLongFunction<? super V> bytes, final double weight)
+		{
+			this.name = name;
+			this.bytes = bytes;
+			this.weight = weight;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public V getIfPresent(final K key)
+		{
+			final Key globalKey = new Key(this, key);
+			final Entry entry = segmentFor(globalKey).get(globalKey);
+			return entry == null ? null : (V) entry.value;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public V get(final K key, final CacheLoader<? super K, ? extends V> loader) throws ExecutionException
+		{
+			final Key globalKey = new Key(this, key);
+			final Segment segment = segmentFor(globalKey);
+			final Entry newEntry = new Entry();
+			final Entry entry = segment.getOrAdd(globalKey, newEntry);
+
+			if (entry != newEntry)
+			{
+				hits.increment();
+				// another thread is loading this block already if the value is not set yet
+				final Object value = entry.value;
+				return value == null ? (V) awaitLoaded(entry) : (V) value;
+			}
+			misses.increment();
+
+			final V value;
+			final long entryBytes;
+			try
+			{
+				value = loader.get(key);
+				entryBytes = Math.max((long) Math.ceil(bytes.applyAsLong(value) * weight), 1);
+			}
+			catch (final Throwable e)
+			{
+				// release the key and the threads waiting for it, also for errors, or the key stays loading forever
+				segment.remove(globalKey, entry);
+				entry.future.completeExceptionally(e);
+				if (e instanceof Error)
+					throw (Error) e;
+				throw new ExecutionException(String.format("Unable to load block %s of %s", key, name), e);
+			}
+
+			// the entry may have been invalidated while loading, it is not re-inserted in that case
+			if (segment.setLoaded(globalKey, entry, value, entryBytes))
+			{
+				usedBytes.addAndGet(entryBytes);
+				evictIfNecessary();
+			}
+			entry.future.complete(value);
+			return value;
+		}
+
+		@Override
+		public void invalidate(final K key)
+		{
+			final Key globalKey = new Key(this, key);
+			usedBytes.addAndGet(-segmentFor(globalKey).remove(globalKey));
+		}
+
+		@Override
+		public void invalidateIf(final long parallelismThreshold, final Predicate<K> condition)
+		{
+			for (final Segment segment : segments)
+				usedBytes.addAndGet(-segment.removeIf(this, condition));
+		}
+
+		@Override
+		public void invalidateAll(final long parallelismThreshold)
+		{
+			invalidateIf(parallelismThreshold, key -> true);
+		}
+
+		public void persist(final K key)
+		{
+			// read-only blocks do not need to be persisted
+		}
+
+		public void persistIf(final Predicate<K> condition)
+		{
+			// read-only blocks do not need to be persisted
+		}
+
+		public void persistAll()
+		{
+			// read-only blocks do not need to be persisted
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format("{SourceCache: %s, weight=%f}", name, weight);
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package org.janelia.saalfeldlab.paintera.config
+
+import javafx.scene.Node
+import javafx.scene.control.Button
+import javafx.scene.control.Label
+import javafx.scene.control.TitledPane
+import javafx.scene.control.Tooltip
+import javafx.scene.layout.GridPane
+import javafx.scene.layout.Priority
+import org.janelia.saalfeldlab.fx.ui.NumberField
+import org.janelia.saalfeldlab.fx.ui.ObjectField
+import org.janelia.saalfeldlab.paintera.cache.GlobalBlockCache
+import java.util.function.IntPredicate
+
+/**
+ * Set the memory budget of the [GlobalBlockCache] and show its statistics. The budget is a property of the machine
+ * rather than of the project and is not serialized.
+ */
+class BlockCacheConfigNode @JvmOverloads constructor(private val cache: GlobalBlockCache = GlobalBlockCache.global()) {
+
+    private val maxMegabytes = NumberField.intField(
+        toMegabytes(cache.maxBytes),
+        IntPredicate { it > 0 },
+        *ObjectField.SubmitOn.values())
+
+    private val statistics = Label()
+
+    val contents: Node
+
+    init {
+        maxMegabytes.valueProperty().addListener { _, _, new ->
+            if (new.toInt() != toMegabytes(cache.maxBytes))
+                cache.maxBytes = new.toLong() * MEGABYTE
+        }
+        maxMegabytes.textField().tooltip = Tooltip("Maximum size of the block cache shared by all sources, in megabytes.")
+
+        val refresh = Button("Refresh")
+        refresh.setOnAction { updateStatistics() }
+        refresh.tooltip = Tooltip("Refresh block cache statistics")
+
+        val grid = GridPane()
+        grid.hgap = 5.0
+        grid.vgap = 5.0
+        grid.add(Label("Size (MB)"), 0, 0)
+        grid.add(maxMegabytes.textField(), 1, 0)
+        grid.add(statistics, 0, 1)
+        grid.add(refresh, 1, 1)
+        GridPane.setHgrow(maxMegabytes.textField(), Priority.ALWAYS)
+        GridPane.setHgrow(statistics, Priority.ALWAYS)
+
+        val tp = TitledPane("Block Cache", grid)
+        tp.isExpanded = false
+        tp.expandedProperty().addListener { _, _, new -> if (new) updateStatistics() }
+        contents = tp
+    }
+
+    private fun updateStatistics() {
+        maxMegabytes.valueProperty().set(toMegabytes(cache.maxBytes))
+        statistics.text = String.format(
+            "%d blocks, %d/%d MB%nhits: %d misses: %d evictions: %d",
+            cache.numBlocks,
+            cache.usedBytes / MEGABYTE,
+            cache.maxBytes / MEGABYTE,
+            cache.hits,
+            cache.misses,
+            cache.evictions)
+    }
+
+    companion object {
+        private const val MEGABYTE = 1024L * 1024L
+
+        private fun toMegabytes(bytes: Long) = Math.max(bytes / MEGABYTE, 1L).toInt()
+    }
+
+}
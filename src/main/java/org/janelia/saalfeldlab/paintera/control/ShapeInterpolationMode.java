@@ -18,17 +18,28 @@ import javafx.scene.input.MouseEvent;
 import javafx.scene.paint.Color;
 import net.imglib2.Cursor;
 import net.imglib2.FinalInterval;
+import net.imglib2.FinalRealInterval;
 import net.imglib2.Interval;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.RealInterval;
+import net.imglib2.RealLocalizable;
 import net.imglib2.RealPoint;
+import net.imglib2.RealRandomAccess;
 import net.imglib2.RealRandomAccessible;
 import net.imglib2.algorithm.morphology.distance.DistanceTransform;
 import net.imglib2.algorithm.morphology.distance.DistanceTransform.DISTANCE_TYPE;
+import net.imglib2.cache.Cache;
+import net.imglib2.cache.img.CachedCellImg;
+import net.imglib2.cache.img.CellLoader;
+import net.imglib2.cache.img.LoadedCellCacheLoader;
 import net.imglib2.converter.Converters;
 import net.imglib2.converter.logical.Logical;
 import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.basictypeaccess.AccessFlags;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileLongArray;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
 import net.imglib2.interpolation.randomaccess.NLinearInterpolatorFactory;
 import net.imglib2.interpolation.randomaccess.NearestNeighborInterpolatorFactory;
 import net.imglib2.loops.LoopBuilder;
@@ -44,7 +55,6 @@ import net.imglib2.type.numeric.IntegerType;
 import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.numeric.integer.UnsignedLongType;
 import net.imglib2.type.numeric.real.FloatType;
-import net.imglib2.type.volatiles.VolatileUnsignedLongType;
 import net.imglib2.util.Intervals;
 import net.imglib2.util.Pair;
 import net.imglib2.util.Util;
@@ -57,6 +67,7 @@ import org.janelia.saalfeldlab.fx.event.MouseClickFX;
 import org.janelia.saalfeldlab.fx.util.InvokeOnJavaFXApplicationThread;
 import org.janelia.saalfeldlab.paintera.NamedKeyCombination;
 import org.janelia.saalfeldlab.paintera.PainteraBaseView;
+import org.janelia.saalfeldlab.paintera.cache.GlobalBlockCache;
 import org.janelia.saalfeldlab.paintera.config.input.KeyAndMouseBindings;
 import org.janelia.saalfeldlab.paintera.control.actions.AllowedActions;
 import org.janelia.saalfeldlab.paintera.control.actions.AllowedActions.AllowedActionsBuilder;
@@ -74,11 +85,21 @@ import org.janelia.saalfeldlab.paintera.data.mask.MaskedSource;
 import org.janelia.saalfeldlab.paintera.data.mask.exception.MaskInUse;
 import org.janelia.saalfeldlab.paintera.id.IdService;
 import org.janelia.saalfeldlab.paintera.stream.HighlightingStreamConverter;
+import org.janelia.saalfeldlab.util.concurrent.PaintTaskScheduler;
+import org.janelia.saalfeldlab.util.concurrent.PaintTaskScheduler.CancellationToken;
+import org.janelia.saalfeldlab.util.grids.Grids;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.function.Predicate;
 
 public class ShapeInterpolationMode<D extends IntegerType<D>>
@@ -184,9 +205,10 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 	private final ObjectProperty<ModeState> modeState = new SimpleObjectProperty<>();
 	private final ObjectProperty<ActiveSection> activeSection = new SimpleObjectProperty<>();
 
-	private Thread workerThread;
+	private PaintTaskScheduler.ScheduledTask<?> interpolationTask;
+	private volatile Future<?> cellGenerationTask;
 	private Runnable onInterpolationFinished;
-	private Pair<RealRandomAccessible<UnsignedLongType>, RealRandomAccessible<VolatileUnsignedLongType>> interpolatedMaskImgs;
+	private Mask<UnsignedLongType> interpolatedMask;
 
 	public ShapeInterpolationMode(
 			final MaskedSource<D, ?> source,
@@ -337,6 +359,12 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 			interruptInterpolation();
 			resetMask();
 		}
+		else
+		{
+			if (interpolationTask != null)
+				interpolationTask.cancel(false);
+			cancelCellGeneration();
+		}
 
 		converter.removeColor(newLabelId);
 		newLabelId = Label.INVALID;
@@ -358,9 +386,9 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 		activeSection.set(null);
 		mask = null;
 
-		workerThread = null;
+		interpolationTask = null;
 		onInterpolationFinished = null;
-		interpolatedMaskImgs = null;
+		interpolatedMask = null;
 		lastSelectedId = Label.INVALID;
 		lastActiveIds = null;
 
@@ -505,13 +533,16 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 		{
 			// wait until the interpolation is done
 			try {
-				workerThread.join();
+				interpolationTask.join();
 			} catch (final InterruptedException e) {
 				e.printStackTrace();
 			};
 			runOnInterpolationFinished();
 		}
 
+		// applying the mask generates the cells that were not generated in the background yet
+		cancelCellGeneration();
+
 		assert modeState.get() == ModeState.Preview;
 
 		final Interval sectionsUnionSourceInterval = Intervals.union(
@@ -529,7 +560,14 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 				);
 			resetMask();
 			try {
-				source.setMask(maskInfoWithLastSelectedLabelId, interpolatedMaskImgs.getA(), interpolatedMaskImgs.getB(), null, null, null, FOREGROUND_CHECK);
+				source.setMask(
+						new Mask<>(
+								maskInfoWithLastSelectedLabelId,
+								interpolatedMask.mask,
+								interpolatedMask.invalidate,
+								interpolatedMask.invalidateVolatile,
+								interpolatedMask.shutdown),
+						FOREGROUND_CHECK);
 			} catch (final MaskInUse e) {
 				e.printStackTrace();
 			}
@@ -579,7 +617,9 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 	@SuppressWarnings("unchecked")
 	private void interpolateBetweenSections(final PainteraBaseView paintera)
 	{
-		workerThread = new Thread(() ->
+		// cells of the interpolated mask that are not on screen are generated starting from the center of the viewer
+		final RealPoint viewerCenter = getSourceCoordinates(activeViewer.getWidth() / 2, activeViewer.getHeight() / 2);
+		interpolationTask = paintera.getPaintQueue().submit("shape interpolation", token ->
 		{
 			final SectionInfo[] sectionInfoPair = {sectionInfo1.get(), sectionInfo2.get()};
 
@@ -610,7 +650,7 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 			final Interval[] boundingBoxPair = new Interval[2];
 			for (int i = 0; i < 2; ++i)
 			{
-				if (Thread.currentThread().isInterrupted())
+				if (token.isCancelled())
 					return;
 
 				final long[] min = new long[2], max = new long[2], position = new long[2];
@@ -640,12 +680,30 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 			final RandomAccessibleInterval<FloatType>[] distanceTransformPair = new RandomAccessibleInterval[2];
 			for (int i = 0; i < 2; ++i)
 			{
-				if (Thread.currentThread().isInterrupted())
+				if (token.isCancelled())
 					return;
 
 				distanceTransformPair[i] = new ArrayImgFactory<>(new FloatType()).create(sectionPair[i]);
 				final RandomAccessibleInterval<BoolType> binarySection = Converters.convert(sectionPair[i], new PredicateConverter<>(FOREGROUND_CHECK), new BoolType());
-				computeSignedDistanceTransform(binarySection, distanceTransformPair[i], DISTANCE_TYPE.EUCLIDIAN);
+				try
+				{
+					computeSignedDistanceTransform(
+							binarySection,
+							distanceTransformPair[i],
+							DISTANCE_TYPE.EUCLIDIAN,
+							ForkJoinPool.commonPool(),
+							ForkJoinPool.commonPool().getParallelism());
+				}
+				catch (final InterruptedException e)
+				{
+					LOG.debug("Interrupted while computing distance transform");
+					return;
+				}
+				catch (final ExecutionException e)
+				{
+					LOG.error("Unable to compute distance transform", e);
+					return;
+				}
 			}
 
 			final double distanceBetweenSections = computeDistanceBetweenSections(sectionInfoPair[0], sectionInfoPair[1]);
@@ -663,35 +721,27 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 					transformToSource
 				);
 
-			final RealRandomAccessible<VolatileUnsignedLongType> volatileInterpolatedShapeMask = getInterpolatedDistanceTransformMask(
-					distanceTransformPair[0],
-					distanceTransformPair[1],
-					distanceBetweenSections,
-					new VolatileUnsignedLongType(1),
-					transformToSource
-				);
+			final Interval shapeSourceInterval = interpolatedShapeSourceInterval(boundingBox, distanceBetweenSections, transformToSource);
+			final CachedCellImg<UnsignedLongType, VolatileLongArray> interpolatedShapeImg = rasterizeInterpolatedMask(
+					interpolatedShapeMask,
+					shapeSourceInterval,
+					source.getCanvasGrid(MASK_SCALE_LEVEL));
 
-			if (Thread.currentThread().isInterrupted())
+			if (token.isCancelled())
 				return;
 
 			try
 			{
-				synchronized (source)
-				{
-					final MaskInfo<UnsignedLongType> maskInfo = mask.info;
-					resetMask();
-					source.setMask(
-							maskInfo,
-							interpolatedShapeMask,
-							volatileInterpolatedShapeMask,
-							null,
-							null,
-							null,
-							FOREGROUND_CHECK);
-					interpolatedMaskImgs = new ValuePair<>(interpolatedShapeMask, volatileInterpolatedShapeMask);
-				}
-
+				setInterpolatedMask(mask.info, interpolatedShapeImg);
 				paintera.orthogonalViews().requestRepaint();
+				// the renderer requests the cells on screen through the fetcher queue, generate the remaining cells in
+				// the background ahead of applyMask, without holding up the paint queue
+				if (!token.isCancelled())
+					cellGenerationTask = paintera.getBackgroundExecutorService().submit(() -> generateCells(
+							interpolatedShapeImg,
+							shapeSourceInterval,
+							viewerCenter,
+							() -> Thread.currentThread().isInterrupted()));
 			}
 			catch (final MaskInUse e)
 			{
@@ -700,7 +750,23 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 
 			InvokeOnJavaFXApplicationThread.invoke(this::runOnInterpolationFinished);
 		});
-		workerThread.start();
+	}
+
+	/**
+	 * Replace the current mask with {@code interpolatedShapeImg}. Its cached cells are released when the interpolation
+	 * is {@link #interruptInterpolation() discarded}, or by the {@link MaskedSource} after the mask was applied.
+	 */
+	void setInterpolatedMask(
+			final MaskInfo<UnsignedLongType> maskInfo,
+			final CachedCellImg<UnsignedLongType, ?> interpolatedShapeImg) throws MaskInUse
+	{
+		synchronized (source)
+		{
+			final Mask<UnsignedLongType> interpolatedMask = new Mask<>(maskInfo, interpolatedShapeImg, interpolatedShapeImg.getCache(), null, null);
+			resetMask();
+			source.setMask(interpolatedMask, FOREGROUND_CHECK);
+			this.interpolatedMask = interpolatedMask;
+		}
 	}
 
 	private void runOnInterpolationFinished()
@@ -712,30 +778,48 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 		}
 	}
 
-	private void interruptInterpolation()
+	void interruptInterpolation()
 	{
-		if (workerThread != null)
+		if (interpolationTask != null)
 		{
-			workerThread.interrupt();
+			interpolationTask.cancel(true);
 			try {
-				workerThread.join();
+				interpolationTask.join();
 			} catch (final InterruptedException e) {
 				e.printStackTrace();
 			}
 		}
+		cancelCellGeneration();
 		onInterpolationFinished = null;
+		if (interpolatedMask != null)
+		{
+			interpolatedMask.invalidate.invalidateAll();
+			interpolatedMask = null;
+		}
+	}
+
+	private void cancelCellGeneration()
+	{
+		final Future<?> cellGenerationTask = this.cellGenerationTask;
+		if (cellGenerationTask != null)
+		{
+			cellGenerationTask.cancel(true);
+			this.cellGenerationTask = null;
+		}
 	}
 
 	private static <R extends RealType<R> & NativeType<R>, B extends BooleanType<B>> void computeSignedDistanceTransform(
 			final RandomAccessibleInterval<B> mask,
 			final RandomAccessibleInterval<R> target,
 			final DISTANCE_TYPE distanceType,
-			final double... weights)
+			final ExecutorService es,
+			final int numTasks,
+			final double... weights) throws InterruptedException, ExecutionException
 	{
 		final RandomAccessibleInterval<R> distanceOutside = target;
 		final RandomAccessibleInterval<R> distanceInside = new ArrayImgFactory<>(Util.getTypeFromInterval(target)).create(target);
-		DistanceTransform.binaryTransform(mask, distanceOutside, distanceType, weights);
-		DistanceTransform.binaryTransform(Logical.complement(mask), distanceInside, distanceType, weights);
+		DistanceTransform.binaryTransform(mask, distanceOutside, distanceType, es, numTasks, weights);
+		DistanceTransform.binaryTransform(Logical.complement(mask), distanceInside, distanceType, es, numTasks, weights);
 		LoopBuilder.setImages(distanceOutside, distanceInside, target).forEachPixel((outside, inside, result) -> {
 			switch (distanceType)
 			{
@@ -749,7 +833,7 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 		});
 	}
 
-	private static <R extends RealType<R>, T extends NativeType<T> & RealType<T>> RealRandomAccessible<T> getInterpolatedDistanceTransformMask(
+	static <R extends RealType<R>, T extends NativeType<T> & RealType<T>> RealRandomAccessible<T> getInterpolatedDistanceTransformMask(
 			final RandomAccessibleInterval<R> dt1,
 			final RandomAccessibleInterval<R> dt2,
 			final double distance,
@@ -780,6 +864,95 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 		return RealViews.affineReal(interpolatedShape, transformToSource);
 	}
 
+	/**
+	 * @return bounds in source space of the shape that is interpolated between two sections of size {@code boundingBox}:
+	 * the interpolated distance transforms are negative only between the sections and within the bounding box
+	 */
+	static Interval interpolatedShapeSourceInterval(
+			final Interval boundingBox,
+			final double distanceBetweenSections,
+			final AffineTransform3D transformToSource)
+	{
+		return Intervals.smallestContainingInterval(transformToSource.estimateBounds(new FinalRealInterval(
+				new double[] {-1, -1, Math.min(0, -distanceBetweenSections) - 1},
+				new double[] {boundingBox.dimension(0), boundingBox.dimension(1), Math.max(0, -distanceBetweenSections) + 1})));
+	}
+
+	/**
+	 * Rasterize {@code interpolatedShape} into an image that is aligned with the canvas grid. Cells are generated on
+	 * first access and kept in the {@link GlobalBlockCache}, so that rendering and applying the mask evaluate the
+	 * interpolated distance transforms only once per voxel. Cells outside of {@code shapeSourceInterval} are empty.
+	 */
+	static CachedCellImg<UnsignedLongType, VolatileLongArray> rasterizeInterpolatedMask(
+			final RealRandomAccessible<UnsignedLongType> interpolatedShape,
+			final Interval shapeSourceInterval,
+			final CellGrid grid)
+	{
+		final CellLoader<UnsignedLongType> loader = cell -> {
+			final Interval intersection = Intervals.intersect(cell, shapeSourceInterval);
+			if (Intervals.isEmpty(intersection))
+				return;
+			final RealRandomAccess<UnsignedLongType> access = interpolatedShape.realRandomAccess();
+			final Cursor<UnsignedLongType> cursor = Views.interval(cell, intersection).localizingCursor();
+			while (cursor.hasNext())
+			{
+				cursor.fwd();
+				access.setPosition(cursor);
+				cursor.get().set(access.get());
+			}
+		};
+		final LoadedCellCacheLoader<UnsignedLongType, VolatileLongArray> cacheLoader = LoadedCellCacheLoader.get(grid, loader, new UnsignedLongType(), AccessFlags.setOf(AccessFlags.VOLATILE));
+		final Cache<Long, Cell<VolatileLongArray>> cache = GlobalBlockCache
+				.global()
+				.<Long, Cell<VolatileLongArray>>createCache("shape interpolation")
+				.withLoader(cacheLoader);
+		return new CachedCellImg<>(grid, new UnsignedLongType(), cache, new VolatileLongArray(1, true));
+	}
+
+	/**
+	 * Generate all cells of {@code img} that intersect {@code interval}, closest to {@code center} first.
+	 */
+	private static void generateCells(
+			final CachedCellImg<?, ?> img,
+			final Interval interval,
+			final RealLocalizable center,
+			final CancellationToken token)
+	{
+		final CellGrid grid = img.getCellGrid();
+		final long[] cellMin = new long[grid.numDimensions()];
+		final int[] cellDims = new int[grid.numDimensions()];
+		final List<ValuePair<Long, Double>> cellsByDistance = new ArrayList<>();
+		for (final long cell : Grids.getIntersectingBlocks(interval, grid))
+		{
+			grid.getCellDimensions(cell, cellMin, cellDims);
+			double squaredDistance = 0;
+			for (int d = 0; d < cellMin.length; ++d)
+			{
+				final double diff = cellMin[d] + 0.5 * cellDims[d] - center.getDoublePosition(d);
+				squaredDistance += diff * diff;
+			}
+			cellsByDistance.add(new ValuePair<>(cell, squaredDistance));
+		}
+		cellsByDistance.sort(Comparator.comparingDouble(ValuePair::getB));
+
+		for (final ValuePair<Long, Double> cell : cellsByDistance)
+		{
+			if (token.isCancelled())
+				return;
+			try
+			{
+				img.getCache().get(cell.getA());
+			}
+			catch (final ExecutionException e)
+			{
+				if (!token.isCancelled())
+					LOG.error("Unable to generate cell {} of interpolated mask", cell.getA(), e);
+				return;
+			}
+		}
+		LOG.debug("Generated {} cells of interpolated mask", cellsByDistance.size());
+	}
+
 	private RandomAccessibleInterval<UnsignedLongType> getTransformedMaskSection(final SectionInfo sectionInfo)
 	{
 		final RealInterval sectionBounds = sectionInfo.sourceToDisplayTransform.estimateBounds(sectionInfo.sourceBoundingBox);
@@ -3,11 +3,14 @@ package org.janelia.saalfeldlab.paintera.control.assignment;
 import com.google.gson.annotations.Expose;
 import gnu.trove.impl.Constants;
 import gnu.trove.iterator.TLongLongIterator;
+import gnu.trove.list.array.TByteArrayList;
+import gnu.trove.list.array.TLongArrayList;
 import gnu.trove.map.TLongLongMap;
 import gnu.trove.map.hash.TLongLongHashMap;
 import gnu.trove.map.hash.TLongObjectHashMap;
 import gnu.trove.set.TLongSet;
 import gnu.trove.set.hash.TLongHashSet;
+import javafx.beans.property.BooleanProperty;
 import javafx.util.Pair;
 import net.imglib2.type.label.Label;
 import org.janelia.saalfeldlab.paintera.control.assignment.action.AssignmentAction;
@@ -17,17 +20,53 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 import java.util.function.LongSupplier;
 import java.util.function.Supplier;
 
+/**
+ * Fragment-segment assignment that is held in memory and written through a {@link Persister} on {@link #persist()}.
+ *
+ * {@link #getSegment(long)} is called per voxel from the rendering and meshing threads and does not lock: it reads an
+ * immutable {@link Snapshot} of the fragment-to-segment map that is re-published atomically whenever merges or detaches
+ * were applied. A snapshot is an immutable base map with a chain of immutable {@link Layer layers} of the fragments that
+ * changed since the base was created. Publishing a new version after a merge or detach adds a layer with only the
+ * changed fragments, and layers of similar size are merged so that the chain stays logarithmically short. The layers
+ * are folded into a new base once they grow too large.
+ *
+ * The fragments that changed with a snapshot are passed on to {@link #addFragmentsChangedListener(Consumer) fragments
+ * changed listeners}, so that dependent state can be updated incrementally.
+ *
+ * The initial lookup table is loaded only once. Every applied action records a {@link Delta} of its changes, so that
+ * undoing, redoing or toggling an action only reverts and re-applies the actions from that action onwards, in time
+ * proportional to the number of fragments they touched.
+ */
 public class FragmentSegmentAssignmentOnlyLocal extends FragmentSegmentAssignmentStateWithActionTracker
 {
 
 	public interface Persister
 	{
 		public void persist(long[] keys, long[] values) throws UnableToPersist;
+
+		/**
+		 * Persist the fragments that changed since the last successful call to {@code persist}. Persisters that cannot
+		 * persist incrementally write the complete {@code lut}.
+		 *
+		 * @param lut complete fragment-to-segment lookup table, must not be modified
+		 * @param changedKeys fragments that changed since the last successful call to {@code persist}
+		 * @param changedValues segments of {@code changedKeys}, fragments that are not assigned to any segment map
+		 * onto themselves
+		 */
+		public default void persist(final TLongLongMap lut, final long[] changedKeys, final long[] changedValues) throws UnableToPersist
+		{
+			persist(lut.keys(), lut.values());
+		}
 	}
 
 	public static class DoesNotPersist implements Persister
@@ -50,6 +89,12 @@ public class FragmentSegmentAssignmentOnlyLocal extends FragmentSegmentAssignmen
 			throw new UnableToPersist(this.persistError);
 		}
 
+		@Override
+		public void persist(final TLongLongMap lut, final long[] changedKeys, final long[] changedValues) throws UnableToPersist
+		{
+			throw new UnableToPersist(this.persistError);
+		}
+
 	}
 
 	public static class NoInitialLutAvailable implements Supplier<TLongLongMap> {
@@ -68,12 +113,127 @@ public class FragmentSegmentAssignmentOnlyLocal extends FragmentSegmentAssignmen
 
 	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
-	private final TLongLongHashMap fragmentToSegmentMap = new TLongLongHashMap(
-			Constants.DEFAULT_CAPACITY,
-			Constants.DEFAULT_LOAD_FACTOR,
-			Label.TRANSPARENT,
-			Label.TRANSPARENT
-	);
+	private static final int MIN_LAYERS_SIZE_FOR_COMPACTION = 4096;
+
+	/**
+	 * Assignments of the fragments that changed with one or more consecutive publishes, shadowing all older layers and
+	 * the base.
+	 */
+	private static final class Layer
+	{
+		private final TLongLongHashMap assignments;
+
+		private final Layer older;
+
+		private Layer(final TLongLongHashMap assignments, final Layer older)
+		{
+			this.assignments = assignments;
+			this.older = older;
+		}
+	}
+
+	private static final class Snapshot
+	{
+		private static final Snapshot EMPTY = new Snapshot(newFragmentToSegmentMap(), null, 0);
+
+		private final TLongLongHashMap base;
+
+		/**
+		 * Newest layer, {@code null} if no fragment changed since the base was created.
+		 */
+		private final Layer layers;
+
+		/**
+		 * Sum of the sizes of all layers.
+		 */
+		private final int layersSize;
+
+		private Snapshot(final TLongLongHashMap base, final Layer layers, final int layersSize)
+		{
+			this.base = base;
+			this.layers = layers;
+			this.layersSize = layersSize;
+		}
+
+		private long getSegment(final long fragmentId)
+		{
+			for (Layer layer = layers; layer != null; layer = layer.older)
+			{
+				final long layerSegmentId = layer.assignments.get(fragmentId);
+				if (layerSegmentId != Label.TRANSPARENT)
+					return layerSegmentId;
+			}
+			final long segmentId = base.get(fragmentId);
+			return segmentId == Label.TRANSPARENT ? fragmentId : segmentId;
+		}
+	}
+
+	/**
+	 * Changes that a single action made to {@link #fragmentToSegmentMap} and {@link #segmentToFragmentsMap}, in the
+	 * order they were made.
+	 */
+	private static final class Delta
+	{
+		private static final byte ASSIGN = 0;
+
+		private static final byte ADD_FRAGMENT = 1;
+
+		private static final byte REMOVE_FRAGMENT = 2;
+
+		private static final byte ADD_SEGMENT = 3;
+
+		private static final byte REMOVE_SEGMENT = 4;
+
+		private final TByteArrayList types = new TByteArrayList();
+
+		/**
+		 * Fragment for {@link #ASSIGN}, segment otherwise.
+		 */
+		private final TLongArrayList ids = new TLongArrayList();
+
+		/**
+		 * Previous segment (or {@link Label#TRANSPARENT} if unassigned) for {@link #ASSIGN}, fragment for
+		 * {@link #ADD_FRAGMENT} and {@link #REMOVE_FRAGMENT}, index into {@link #removedSegments} for
+		 * {@link #REMOVE_SEGMENT}.
+		 */
+		private final TLongArrayList values = new TLongArrayList();
+
+		private final List<TLongHashSet> removedSegments = new ArrayList<>();
+
+		private void add(final byte type, final long id, final long value)
+		{
+			types.add(type);
+			ids.add(id);
+			values.add(value);
+		}
+	}
+
+	private final TLongLongHashMap fragmentToSegmentMap = newFragmentToSegmentMap();
+
+	/**
+	 * Fragments that were (un-)assigned in {@link #fragmentToSegmentMap} since {@link #snapshot} was published.
+	 */
+	private final TLongHashSet changedSinceSnapshot = new TLongHashSet();
+
+	/**
+	 * Fragments that were (un-)assigned in {@link #fragmentToSegmentMap} since the last {@link #persist()}. This is a
+	 * superset of the fragments that differ from the persisted assignment, e.g. if an action was undone.
+	 */
+	private final TLongHashSet changedSincePersist = new TLongHashSet();
+
+	private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+	/**
+	 * Deltas of all actions that are currently applied.
+	 */
+	private final Map<AssignmentAction, Delta> deltas = new IdentityHashMap<>();
+
+	/**
+	 * Records all changes while an action is applied.
+	 */
+	private Delta currentDelta = null;
+
+	private final List<Consumer<long[]>> fragmentsChangedListeners = new ArrayList<>();
 
 	private final TLongObjectHashMap<TLongHashSet> segmentToFragmentsMap = new TLongObjectHashMap<>(
 			Constants.DEFAULT_CAPACITY,
@@ -100,8 +260,7 @@ public class FragmentSegmentAssignmentOnlyLocal extends FragmentSegmentAssignmen
 		this.initialLut = initialLut;
 		this.persister = persister;
 		LOG.debug("Assignment map: {}", fragmentToSegmentMap);
-		// TODO should reset lut also forget about all actions? I think not.
-		resetLut();
+		loadInitialLut();
 	}
 
 	public Persister getPersister() {
@@ -127,29 +286,204 @@ public class FragmentSegmentAssignmentOnlyLocal extends FragmentSegmentAssignmen
 			// TODO changes were loaded?
 			LOG.debug("Persisting assignment {}", this.fragmentToSegmentMap);
 			LOG.debug("Committing actions {}", this.actions);
-			this.persister.persist(this.fragmentToSegmentMap.keys(), this.fragmentToSegmentMap.values());
+			final long[] changedKeys = this.changedSincePersist.toArray();
+			final long[] changedValues = new long[changedKeys.length];
+			Arrays.setAll(changedValues, i -> getSegmentFromCurrentMap(changedKeys[i]));
+			this.persister.persist(this.fragmentToSegmentMap, changedKeys, changedValues);
 			this.actions.clear();
+			this.deltas.clear();
+			this.changedSincePersist.clear();
 		} catch (final Exception e)
 		{
 			throw e instanceof UnableToPersist ? (UnableToPersist) e : new UnableToPersist(e);
 		}
 	}
 
+	/**
+	 * Does not lock and reflects all actions that were applied before the last notification of listeners.
+	 */
 	@Override
-	public synchronized long getSegment(final long fragmentId)
+	public long getSegment(final long fragmentId)
+	{
+		return snapshot.getSegment(fragmentId);
+	}
+
+	private long getSegmentFromCurrentMap(final long fragmentId)
 	{
-		final long id;
 		final long segmentId = fragmentToSegmentMap.get(fragmentId);
-		if (segmentId == fragmentToSegmentMap.getNoEntryValue())
+		return segmentId == fragmentToSegmentMap.getNoEntryValue() ? fragmentId : segmentId;
+	}
+
+	private void assign(final long fragmentId, final long segmentId)
+	{
+		final long previousSegmentId = fragmentToSegmentMap.put(fragmentId, segmentId);
+		fragmentChanged(fragmentId, previousSegmentId);
+	}
+
+	private void unassign(final long fragmentId)
+	{
+		final long previousSegmentId = fragmentToSegmentMap.remove(fragmentId);
+		fragmentChanged(fragmentId, previousSegmentId);
+	}
+
+	private void fragmentChanged(final long fragmentId, final long previousSegmentId)
+	{
+		changedSinceSnapshot.add(fragmentId);
+		changedSincePersist.add(fragmentId);
+		if (currentDelta != null)
+			currentDelta.add(Delta.ASSIGN, fragmentId, previousSegmentId);
+	}
+
+	private void addFragment(final long segmentId, final long fragmentId)
+	{
+		if (segmentToFragmentsMap.get(segmentId).add(fragmentId) && currentDelta != null)
+			currentDelta.add(Delta.ADD_FRAGMENT, segmentId, fragmentId);
+	}
+
+	private void removeFragment(final long segmentId, final long fragmentId)
+	{
+		if (segmentToFragmentsMap.get(segmentId).remove(fragmentId) && currentDelta != null)
+			currentDelta.add(Delta.REMOVE_FRAGMENT, segmentId, fragmentId);
+	}
+
+	private void addSegment(final long segmentId, final TLongHashSet fragments)
+	{
+		segmentToFragmentsMap.put(segmentId, fragments);
+		if (currentDelta != null)
+			currentDelta.add(Delta.ADD_SEGMENT, segmentId, Label.TRANSPARENT);
+	}
+
+	private TLongHashSet removeSegment(final long segmentId)
+	{
+		final TLongHashSet fragments = segmentToFragmentsMap.remove(segmentId);
+		if (fragments != null && currentDelta != null)
 		{
-			id = fragmentId;
+			currentDelta.add(Delta.REMOVE_SEGMENT, segmentId, currentDelta.removedSegments.size());
+			currentDelta.removedSegments.add(fragments);
 		}
-		else
+		return fragments;
+	}
+
+	/**
+	 * Undo all changes of {@code action} in reverse order, if it is currently applied.
+	 */
+	private void revert(final AssignmentAction action)
+	{
+		final Delta delta = deltas.remove(action);
+		if (delta == null)
+			return;
+		LOG.debug("Reverting action {} with {} changes", action, delta.types.size());
+		for (int i = delta.types.size() - 1; i >= 0; --i)
 		{
-			id = segmentId;
+			final long id = delta.ids.get(i);
+			final long value = delta.values.get(i);
+			switch (delta.types.get(i))
+			{
+				case Delta.ASSIGN:
+					if (value == Label.TRANSPARENT)
+						fragmentToSegmentMap.remove(id);
+					else
+						fragmentToSegmentMap.put(id, value);
+					fragmentChanged(id, Label.TRANSPARENT);
+					break;
+				case Delta.ADD_FRAGMENT:
+					segmentToFragmentsMap.get(id).remove(value);
+					break;
+				case Delta.REMOVE_FRAGMENT:
+					segmentToFragmentsMap.get(id).add(value);
+					break;
+				case Delta.ADD_SEGMENT:
+					segmentToFragmentsMap.remove(id);
+					break;
+				case Delta.REMOVE_SEGMENT:
+					segmentToFragmentsMap.put(id, delta.removedSegments.get((int) value));
+					break;
+			}
+		}
+	}
+
+	/**
+	 * Publish all changes to {@link #fragmentToSegmentMap} since the last snapshot. Only the changed fragments are
+	 * copied into a new layer. The new layer absorbs older layers that are at most twice its size, so that each
+	 * fragment is copied a logarithmic number of times before the layers are folded into a new base. The entire map is
+	 * copied into a new base once the layers grow larger than a quarter of the base.
+	 *
+	 * @return fragments that changed since the last snapshot
+	 */
+	private synchronized long[] publishSnapshot()
+	{
+		final long[] changedFragments = changedSinceSnapshot.toArray();
+		if (changedFragments.length == 0)
+			return changedFragments;
+
+		final Snapshot current = this.snapshot;
+		final int layersSize = current.layersSize + changedFragments.length;
+		if (layersSize > Math.max(MIN_LAYERS_SIZE_FOR_COMPACTION, current.base.size() / 4))
+		{
+			publishFullSnapshot();
+			return changedFragments;
+		}
+
+		TLongLongHashMap assignments = newFragmentToSegmentMap(changedFragments.length);
+		for (final long fragmentId : changedFragments)
+			// unassigned fragments map onto themselves so that they shadow their entry in older layers and the base
+			assignments.put(fragmentId, getSegmentFromCurrentMap(fragmentId));
+		Layer older = current.layers;
+		int mergedLayersSize = layersSize;
+		while (older != null && older.assignments.size() <= 2 * assignments.size())
+		{
+			final TLongLongHashMap merged = newFragmentToSegmentMap(older.assignments.size() + assignments.size());
+			merged.putAll(older.assignments);
+			merged.putAll(assignments);
+			mergedLayersSize -= older.assignments.size() + assignments.size() - merged.size();
+			assignments = merged;
+			older = older.older;
 		}
-		LOG.trace("Returning {} for fragment {}: ", id, fragmentId);
-		return id;
+		changedSinceSnapshot.clear();
+		this.snapshot = new Snapshot(current.base, new Layer(assignments, older), mergedLayersSize);
+		LOG.trace("Published snapshot with newest layer of size {}", assignments.size());
+		return changedFragments;
+	}
+
+	private synchronized void publishFullSnapshot()
+	{
+		final TLongLongHashMap base = newFragmentToSegmentMap();
+		base.putAll(fragmentToSegmentMap);
+		changedSinceSnapshot.clear();
+		this.snapshot = new Snapshot(base, null, 0);
+		LOG.debug("Published snapshot with {} assignments", base.size());
+	}
+
+	@Override
+	protected void actionsApplied()
+	{
+		final long[] changedFragments = publishSnapshot();
+		fragmentsChangedListeners.forEach(l -> l.accept(changedFragments));
+	}
+
+	/**
+	 * Listeners are notified after the changes were published to {@link #getSegment(long)} and before
+	 * {@link #addListener(javafx.beans.InvalidationListener) invalidation listeners} are notified.
+	 */
+	@Override
+	public void addFragmentsChangedListener(final Consumer<long[]> listener)
+	{
+		fragmentsChangedListeners.add(listener);
+	}
+
+	private static TLongLongHashMap newFragmentToSegmentMap()
+	{
+		return newFragmentToSegmentMap(Constants.DEFAULT_CAPACITY);
+	}
+
+	private static TLongLongHashMap newFragmentToSegmentMap(final int capacity)
+	{
+		return new TLongLongHashMap(
+				capacity,
+				Constants.DEFAULT_LOAD_FACTOR,
+				Label.TRANSPARENT,
+				Label.TRANSPARENT
+		);
 	}
 
 	@Override
@@ -172,19 +506,19 @@ public class FragmentSegmentAssignmentOnlyLocal extends FragmentSegmentAssignmen
 		final long fragmentId   = detach.fragmentId;
 		final long fragmentFrom = detach.fragmentFrom;
 
-		this.fragmentToSegmentMap.remove(fragmentId);
+		unassign(fragmentId);
 		LOG.debug("Removed {} from {}", fragmentId, this.fragmentToSegmentMap);
 
 		LOG.debug("Removing fragment={} from segment={}", fragmentId, segmentFrom);
 		final TLongHashSet fragments = this.segmentToFragmentsMap.get(segmentFrom);
 		if (fragments != null)
 		{
-			fragments.remove(fragmentId);
+			removeFragment(segmentFrom, fragmentId);
 			LOG.debug("Removed {} from {}", fragmentId, fragments);
 			if (fragments.size() == 1)
 			{
-				this.fragmentToSegmentMap.remove(fragmentFrom);
-				this.segmentToFragmentsMap.remove(segmentFrom);
+				unassign(fragmentFrom);
+				removeSegment(segmentFrom);
 			}
 		}
 		LOG.debug("Fragment-to-segment map after detach: {}", this.fragmentToSegmentMap);
@@ -198,7 +532,9 @@ public class FragmentSegmentAssignmentOnlyLocal extends FragmentSegmentAssignmen
 
 		final long into        = merge.intoFragmentId;
 		final long from        = merge.fromFragmentId;
-		final long segmentInto = merge.segmentId;
+		// merge.segmentId is stale if an earlier action was undone after the merge was created: merge into the current
+		// segment of into instead, so that into and from end up in the same segment
+		final long segmentInto = getSegmentFromCurrentMap(into) == into ? merge.segmentId : fragmentToSegmentMap.get(into);
 
 		LOG.trace("Current fragmentToSegmentMap {}", fragmentToSegmentMap);
 
@@ -214,13 +550,13 @@ public class FragmentSegmentAssignmentOnlyLocal extends FragmentSegmentAssignmen
 		}
 
 		final long         segmentFrom   = fragmentToSegmentMap.contains(from) ? fragmentToSegmentMap.get(from) : from;
-		final TLongHashSet fragmentsFrom = segmentToFragmentsMap.remove(segmentFrom);
+		final TLongHashSet fragmentsFrom = removeSegment(segmentFrom);
 		LOG.debug("From segment: {} To segment: {}", segmentFrom, segmentInto);
 
-		if (!fragmentToSegmentMap.contains(into))
+		if (getSegmentFromCurrentMap(into) == into)
 		{
 			LOG.debug("Adding segment {} to framgent {}", segmentInto, into);
-			fragmentToSegmentMap.put(into, segmentInto);
+			assign(into, segmentInto);
 		}
 
 		if (!segmentToFragmentsMap.contains(segmentInto))
@@ -228,38 +564,61 @@ public class FragmentSegmentAssignmentOnlyLocal extends FragmentSegmentAssignmen
 			final TLongHashSet fragmentOnly = new TLongHashSet();
 			fragmentOnly.add(into);
 			LOG.debug("Adding fragments {} for segmentInto {}", fragmentOnly, segmentInto);
-			segmentToFragmentsMap.put(segmentInto, fragmentOnly);
+			addSegment(segmentInto, fragmentOnly);
 		}
+		else
+			addFragment(segmentInto, into);
 		LOG.debug("Framgents for from segment: {}", fragmentsFrom);
 
 		if (fragmentsFrom != null)
 		{
-			final TLongHashSet fragmentsInto = segmentToFragmentsMap.get(segmentInto);
-			LOG.debug("Fragments into {}", fragmentsInto);
-			fragmentsInto.addAll(fragmentsFrom);
-			Arrays.stream(fragmentsFrom.toArray()).forEach(id -> fragmentToSegmentMap.put(id, segmentInto));
+			LOG.debug("Fragments into {}", segmentToFragmentsMap.get(segmentInto));
+			fragmentsFrom.forEach(id -> {
+				addFragment(segmentInto, id);
+				assign(id, segmentInto);
+				return true;
+			});
 		}
 		else
 		{
-			segmentToFragmentsMap.get(segmentInto).add(from);
-			fragmentToSegmentMap.put(from, segmentInto);
+			addFragment(segmentInto, from);
+			assign(from, segmentInto);
 		}
 	}
 
-	private void resetLut()
+	private synchronized void loadInitialLut()
 	{
-		fragmentToSegmentMap.clear();
 		fragmentToSegmentMap.putAll(initialLut.get());
 		syncILut();
-
-		this.actions.stream().filter(p -> p.getValue().get()).map(Pair::getKey).forEach(this::applyImpl);
-
+		publishFullSnapshot();
 	}
 
+	/**
+	 * Apply {@code action} and record its {@link Delta}. Actions are identified by reference, the same instance cannot
+	 * be applied twice without reverting it first.
+	 */
 	@Override
-	protected void applyImpl(final AssignmentAction action)
+	protected synchronized void applyImpl(final AssignmentAction action)
 	{
+		if (deltas.containsKey(action))
+		{
+			LOG.debug("Action {} is applied already", action);
+			return;
+		}
 		LOG.debug("Applying action {}", action);
+		currentDelta = new Delta();
+		try
+		{
+			applyAndRecord(action);
+			deltas.put(action, currentDelta);
+		} finally
+		{
+			currentDelta = null;
+		}
+	}
+
+	private void applyAndRecord(final AssignmentAction action)
+	{
 		switch (action.getType())
 		{
 			case MERGE:
@@ -275,10 +634,32 @@ public class FragmentSegmentAssignmentOnlyLocal extends FragmentSegmentAssignmen
 		}
 	}
 
+	/**
+	 * Revert all actions after the toggled action, toggle it, and re-apply all enabled actions after it.
+	 */
+	@Override
+	protected synchronized void actionToggled(final int index)
+	{
+		if (index < 0)
+			return;
+		for (int i = actions.size() - 1; i > index; --i)
+			revert(actions.get(i).getKey());
+		final Pair<AssignmentAction, BooleanProperty> toggled = actions.get(index);
+		if (toggled.getValue().get())
+			applyImpl(toggled.getKey());
+		else
+			revert(toggled.getKey());
+		for (int i = index + 1; i < actions.size(); ++i)
+			if (actions.get(i).getValue().get())
+				applyImpl(actions.get(i).getKey());
+	}
+
 	@Override
-	protected void reapplyActions()
+	protected synchronized void reapplyActions()
 	{
-		resetLut();
+		for (int i = actions.size() - 1; i >= 0; --i)
+			revert(actions.get(i).getKey());
+		actions.stream().filter(p -> p.getValue().get()).map(Pair::getKey).forEach(this::applyImpl);
 	}
 
 	private synchronized void syncILut()
@@ -301,19 +682,19 @@ public class FragmentSegmentAssignmentOnlyLocal extends FragmentSegmentAssignmen
 		}
 	}
 
-	public int size()
+	public synchronized int size()
 	{
 		return this.fragmentToSegmentMap.size();
 	}
 
-	public void persist(final long[] keys, final long[] values)
+	public synchronized void persist(final long[] keys, final long[] values)
 	{
 		this.fragmentToSegmentMap.keys(keys);
 		this.fragmentToSegmentMap.values(values);
 	}
 
 	@Override
-	public Optional<Merge> getMergeAction(
+	public synchronized Optional<Merge> getMergeAction(
 			final long from,
 			final long into,
 			final LongSupplier newSegmentId)
@@ -324,26 +705,21 @@ public class FragmentSegmentAssignmentOnlyLocal extends FragmentSegmentAssignmen
 			return Optional.empty();
 		}
 
-		if (getSegment(from) == getSegment(into))
+		if (getSegmentFromCurrentMap(from) == getSegmentFromCurrentMap(into))
 		{
 			LOG.debug(
 					"fragments {} {} are in the same segment {} {} -- no action necessary",
 					from,
 					into,
-					getSegment(from),
-					getSegment(into)
+					getSegmentFromCurrentMap(from),
+					getSegmentFromCurrentMap(into)
 			         );
 			return Optional.empty();
 		}
 
-		// TODO do not add to fragmentToSegmentMap here. Have the mergeImpl take
-		// care of it instead.
-		if (getSegment(into) == into)
-		{
-			fragmentToSegmentMap.put(into, newSegmentId.getAsLong());
-		}
-
-		final Merge merge = new Merge(from, into, fragmentToSegmentMap.get(into));
+		// mergeFragmentsImpl assigns into to the new segment, so that it is reverted with the merge
+		final long segmentInto = getSegmentFromCurrentMap(into) == into ? newSegmentId.getAsLong() : fragmentToSegmentMap.get(into);
+		final Merge merge = new Merge(from, into, segmentInto);
 		return Optional.of(merge);
 	}
 
@@ -362,7 +738,7 @@ public class FragmentSegmentAssignmentOnlyLocal extends FragmentSegmentAssignmen
 	}
 
 	@Override
-	public boolean isSegmentConsistent(final long segmentId, final TLongSet containedFragments) {
+	public synchronized boolean isSegmentConsistent(final long segmentId, final TLongSet containedFragments) {
 		final TLongHashSet actualFragments = segmentToFragmentsMap.get(segmentId);
 		// if actualFragments is null, no assignment available for fragment/segment, that means
 		// fragmentId == segmentId and fragmentId is the only fragment in this segmet.
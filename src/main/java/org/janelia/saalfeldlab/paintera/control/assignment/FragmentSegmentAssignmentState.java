@@ -1,7 +1,10 @@
 package org.janelia.saalfeldlab.paintera.control.assignment;
 
+import javafx.beans.InvalidationListener;
 import javafx.beans.Observable;
 
+import java.util.function.Consumer;
+
 public interface FragmentSegmentAssignmentState extends FragmentSegmentAssignment, Observable
 {
 	void persist() throws UnableToPersist;
@@ -9,4 +12,13 @@ public interface FragmentSegmentAssignmentState extends FragmentSegmentAssignmen
 	default boolean hasPersistableData() {
 		return true;
 	}
+
+	/**
+	 * Add a listener that is notified with the fragments whose segment changed whenever the assignment changes, or
+	 * with {@code null} if the segment of any fragment may have changed. The default implementation notifies with
+	 * {@code null} on every {@link #addListener(InvalidationListener) invalidation}.
+	 */
+	default void addFragmentsChangedListener(final Consumer<long[]> listener) {
+		addListener(obs -> listener.accept(null));
+	}
 }
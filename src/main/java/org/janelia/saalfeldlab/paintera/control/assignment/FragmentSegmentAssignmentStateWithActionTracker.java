@@ -33,6 +33,19 @@ public abstract class FragmentSegmentAssignmentStateWithActionTracker extends Ob
 
 	protected abstract void applyImpl(final AssignmentAction action);
 
+	/**
+	 * Called after one or more actions were applied (or re-applied) and before listeners are notified.
+	 */
+	protected void actionsApplied()
+	{
+	}
+
+	private void actionsAppliedAndStateChanged()
+	{
+		actionsApplied();
+		stateChanged();
+	}
+
 	private void removeDisabledActions()
 	{
 		List<Pair<AssignmentAction, BooleanProperty>> onlyEnabledActions = actions
@@ -53,11 +66,12 @@ public abstract class FragmentSegmentAssignmentStateWithActionTracker extends Ob
 	private void applyNoStateChange(final AssignmentAction action, final boolean isEnabled)
 	{
 		removeDisabledActions();
-		applyImpl(action);
+		if (isEnabled)
+			applyImpl(action);
 		Pair<AssignmentAction, BooleanProperty> toggleableAction = new Pair<>(
 				action,
 				new SimpleBooleanProperty(isEnabled));
-		toggleableAction.getValue().addListener(obs -> reapplyActionsAndNotify());
+		toggleableAction.getValue().addListener(obs -> actionToggledAndNotify(toggleableAction));
 		this.actions.add(toggleableAction);
 	}
 
@@ -66,7 +80,7 @@ public abstract class FragmentSegmentAssignmentStateWithActionTracker extends Ob
 	{
 		removeDisabledActions();
 		applyNoStateChange(action, true);
-		stateChanged();
+		actionsAppliedAndStateChanged();
 	}
 
 	@Override
@@ -74,13 +88,13 @@ public abstract class FragmentSegmentAssignmentStateWithActionTracker extends Ob
 	{
 		removeDisabledActions();
 		actions.forEach(this::applyNoStateChange);
-		stateChanged();
+		actionsAppliedAndStateChanged();
 	}
 
 	public void applyWithEnabledFlag(final Collection<? extends Pair<? extends AssignmentAction, Boolean>> actions) {
 		removeDisabledActions();
 		actions.forEach(p -> this.applyNoStateChange(p.getKey(), p.getValue()));
-		stateChanged();
+		actionsAppliedAndStateChanged();
 	}
 
 	@Override
@@ -93,10 +107,19 @@ public abstract class FragmentSegmentAssignmentStateWithActionTracker extends Ob
 		return readOnlyActions;
 	}
 
-	private void reapplyActionsAndNotify()
+	private void actionToggledAndNotify(final Pair<AssignmentAction, BooleanProperty> action)
+	{
+		actionToggled(actions.indexOf(action));
+		actionsAppliedAndStateChanged();
+	}
+
+	/**
+	 * Called when the action at {@code index} in {@link #events()} was enabled or disabled. Re-applies all actions
+	 * unless overridden.
+	 */
+	protected void actionToggled(final int index)
 	{
 		reapplyActions();
-		stateChanged();
 	}
 
 	protected abstract void reapplyActions();
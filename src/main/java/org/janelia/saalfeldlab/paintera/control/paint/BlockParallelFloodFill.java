@@ -0,0 +1,343 @@
+package org.janelia.saalfeldlab.paintera.control.paint;
+
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.hash.TLongHashSet;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.Localizable;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Intervals;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Flood fill that processes the image in blocks of a {@link CellGrid} in parallel. Each block is filled by a single
+ * worker at a time; voxels on the frontier to a neighboring block are handed over to that block, which is (re-)scheduled
+ * on the executor. Filled voxels are marked with {@code 1} in the output, i.e. the output doubles as the visited set
+ * and should be initialized with {@code 0}. Uses 6-connectivity, equivalent to a {@code DiamondShape(1)}.
+ *
+ * Input and output must have the same zero-min interval, and the grid should be the cell grid of the output so that
+ * no two workers write into the same cell.
+ *
+ * @param <T> input type
+ */
+public class BlockParallelFloodFill<T>
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	private static final int CANCEL_CHECK_INTERVAL = 4096;
+
+	private final RandomAccessibleInterval<T> input;
+
+	private final RandomAccessibleInterval<UnsignedLongType> output;
+
+	private final Predicate<T> fillCondition;
+
+	private final long[] dimensions;
+
+	private final long[] gridDimensions;
+
+	private final int[] blockSize;
+
+	private final TLongObjectHashMap<Block> blocks = new TLongObjectHashMap<>();
+
+	private final TLongHashSet touchedBlocks = new TLongHashSet();
+
+	private final LongAdder numFilledVoxels = new LongAdder();
+
+	private final AtomicInteger numScheduledBlocks = new AtomicInteger();
+
+	private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+	private final long[] filledMin;
+
+	private final long[] filledMax;
+
+	private volatile boolean isCanceled = false;
+
+	/**
+	 * @param fillCondition voxels that pass this test are filled. Called concurrently from multiple workers.
+	 */
+	public BlockParallelFloodFill(
+			final RandomAccessibleInterval<T> input,
+			final RandomAccessibleInterval<UnsignedLongType> output,
+			final CellGrid grid,
+			final Predicate<T> fillCondition)
+	{
+		this.input = input;
+		this.output = output;
+		this.fillCondition = fillCondition;
+		this.dimensions = Intervals.dimensionsAsLongArray(input);
+		this.gridDimensions = grid.getGridDimensions();
+		this.blockSize = new int[grid.numDimensions()];
+		grid.cellDimensions(this.blockSize);
+		this.filledMin = new long[dimensions.length];
+		this.filledMax = new long[dimensions.length];
+		Arrays.fill(this.filledMin, Long.MAX_VALUE);
+		Arrays.fill(this.filledMax, Long.MIN_VALUE);
+	}
+
+	/**
+	 * Start filling at {@code seed}. Must be called only once.
+	 *
+	 * @return completes when all connected voxels are filled, or exceptionally if canceled or a worker failed
+	 */
+	public CompletableFuture<Void> fill(final Localizable seed, final ExecutorService executor)
+	{
+		final long[] position = new long[dimensions.length];
+		seed.localize(position);
+		if (!Intervals.contains(input, seed))
+		{
+			LOG.debug("Seed {} outside of interval -- nothing to fill", position);
+			completion.complete(null);
+			return completion;
+		}
+		submitSeeds(blockIndex(position), TLongArrayList.wrap(new long[] {IntervalIndexer.positionToIndex(position, dimensions)}), executor);
+		return completion;
+	}
+
+	/**
+	 * Stop all workers as soon as possible. Already filled voxels are not reset.
+	 */
+	public void cancel()
+	{
+		isCanceled = true;
+		completion.completeExceptionally(new CancellationException("Flood fill canceled"));
+	}
+
+	public long getNumFilledVoxels()
+	{
+		return numFilledVoxels.sum();
+	}
+
+	public int getNumTouchedBlocks()
+	{
+		synchronized (touchedBlocks)
+		{
+			return touchedBlocks.size();
+		}
+	}
+
+	/**
+	 * @return indices of all blocks of the grid that contain filled voxels
+	 */
+	public long[] getTouchedBlocks()
+	{
+		synchronized (touchedBlocks)
+		{
+			return touchedBlocks.toArray();
+		}
+	}
+
+	/**
+	 * @return bounding box of all filled voxels, or {@code null} if nothing was filled
+	 */
+	public synchronized Interval getFilledInterval()
+	{
+		return filledMin[0] > filledMax[0] ? null : new FinalInterval(filledMin, filledMax);
+	}
+
+	private long blockIndex(final long[] position)
+	{
+		long index = 0;
+		for (int d = dimensions.length - 1; d >= 0; --d)
+			index = index * gridDimensions[d] + position[d] / blockSize[d];
+		return index;
+	}
+
+	private void submitSeeds(final long blockIndex, final TLongArrayList seeds, final ExecutorService executor)
+	{
+		final Block block;
+		synchronized (blocks)
+		{
+			final Block existing = blocks.get(blockIndex);
+			block = existing == null ? new Block(blockIndex) : existing;
+			if (existing == null)
+				blocks.put(blockIndex, block);
+		}
+		final boolean schedule;
+		synchronized (block)
+		{
+			block.pending.addAll(seeds);
+			schedule = !block.isScheduled;
+			block.isScheduled = true;
+		}
+		if (!schedule)
+			return;
+
+		numScheduledBlocks.incrementAndGet();
+		try
+		{
+			executor.submit(() -> run(block, executor));
+		}
+		catch (final RejectedExecutionException e)
+		{
+			completion.completeExceptionally(e);
+		}
+	}
+
+	private void run(final Block block, final ExecutorService executor)
+	{
+		try
+		{
+			while (!isCanceled)
+			{
+				final TLongArrayList seeds;
+				synchronized (block)
+				{
+					if (block.pending.isEmpty())
+					{
+						block.isScheduled = false;
+						break;
+					}
+					seeds = block.pending;
+					block.pending = new TLongArrayList();
+				}
+				fillBlock(block, seeds, executor);
+			}
+		}
+		catch (final Throwable e)
+		{
+			LOG.error("Flood fill failed in block {}", block.index, e);
+			isCanceled = true;
+			completion.completeExceptionally(e);
+		}
+		finally
+		{
+			if (numScheduledBlocks.decrementAndGet() == 0)
+				completion.complete(null);
+		}
+	}
+
+	private void fillBlock(final Block block, final TLongArrayList stack, final ExecutorService executor)
+	{
+		final int n = dimensions.length;
+		final RandomAccess<T> inputAccess = input.randomAccess();
+		final RandomAccess<UnsignedLongType> outputAccess = output.randomAccess();
+		final long[] position = new long[n];
+		final long[] localMin = new long[n];
+		final long[] localMax = new long[n];
+		Arrays.fill(localMin, Long.MAX_VALUE);
+		Arrays.fill(localMax, Long.MIN_VALUE);
+		final TLongObjectHashMap<TLongArrayList> frontier = new TLongObjectHashMap<>();
+		long numFilled = 0;
+
+		while (!stack.isEmpty())
+		{
+			if (numFilled % CANCEL_CHECK_INTERVAL == 0 && isCanceled)
+				return;
+
+			final long index = stack.removeAt(stack.size() - 1);
+			IntervalIndexer.indexToPosition(index, dimensions, position);
+			outputAccess.setPosition(position);
+			final UnsignedLongType filled = outputAccess.get();
+			if (filled.getIntegerLong() != 0)
+				continue;
+			inputAccess.setPosition(position);
+			if (!fillCondition.test(inputAccess.get()))
+				continue;
+
+			filled.set(1);
+			++numFilled;
+			for (int d = 0; d < n; ++d)
+			{
+				localMin[d] = Math.min(localMin[d], position[d]);
+				localMax[d] = Math.max(localMax[d], position[d]);
+			}
+
+			long stride = 1;
+			for (int d = 0; d < n; ++d)
+			{
+				final long p = position[d];
+				if (p > 0)
+					push(index - stride, p - 1, d, block, stack, frontier);
+				if (p < dimensions[d] - 1)
+					push(index + stride, p + 1, d, block, stack, frontier);
+				stride *= dimensions[d];
+			}
+		}
+
+		if (numFilled > 0)
+		{
+			numFilledVoxels.add(numFilled);
+			synchronized (touchedBlocks)
+			{
+				touchedBlocks.add(block.index);
+			}
+			synchronized (this)
+			{
+				for (int d = 0; d < n; ++d)
+				{
+					filledMin[d] = Math.min(filledMin[d], localMin[d]);
+					filledMax[d] = Math.max(filledMax[d], localMax[d]);
+				}
+			}
+		}
+
+		frontier.forEachEntry((neighbor, seeds) -> {
+			submitSeeds(neighbor, seeds, executor);
+			return !isCanceled;
+		});
+	}
+
+	private void push(
+			final long index,
+			final long coordinate,
+			final int dimension,
+			final Block block,
+			final TLongArrayList stack,
+			final TLongObjectHashMap<TLongArrayList> frontier)
+	{
+		final long blockPosition = coordinate / blockSize[dimension];
+		if (blockPosition == block.position[dimension])
+		{
+			stack.add(index);
+			return;
+		}
+		long neighbor = 0;
+		for (int d = block.position.length - 1; d >= 0; --d)
+			neighbor = neighbor * gridDimensions[d] + (d == dimension ? blockPosition : block.position[d]);
+		TLongArrayList seeds = frontier.get(neighbor);
+		if (seeds == null)
+		{
+			seeds = new TLongArrayList();
+			frontier.put(neighbor, seeds);
+		}
+		seeds.add(index);
+	}
+
+	private final class Block
+	{
+		private final long index;
+
+		private final long[] position;
+
+		private TLongArrayList pending = new TLongArrayList();
+
+		private boolean isScheduled = false;
+
+		private Block(final long index)
+		{
+			this.index = index;
+			this.position = new long[gridDimensions.length];
+			IntervalIndexer.indexToPosition(index, gridDimensions, this.position);
+		}
+	}
+
+}
@@ -7,13 +7,12 @@ import net.imglib2.Interval;
 import net.imglib2.Localizable;
 import net.imglib2.Point;
 import net.imglib2.RandomAccess;
-import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.RealLocalizable;
 import net.imglib2.RealPoint;
 import net.imglib2.RealPositionable;
-import net.imglib2.algorithm.neighborhood.DiamondShape;
 import net.imglib2.converter.Converter;
+import net.imglib2.img.cell.CellGrid;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.type.Type;
 import net.imglib2.type.label.Label;
@@ -21,10 +20,8 @@ import net.imglib2.type.label.LabelMultisetType;
 import net.imglib2.type.logic.BoolType;
 import net.imglib2.type.numeric.IntegerType;
 import net.imglib2.type.numeric.integer.UnsignedLongType;
-import net.imglib2.util.AccessBoxRandomAccessible;
+import net.imglib2.util.AccessedBlocksRandomAccessible;
 import net.imglib2.util.Intervals;
-import net.imglib2.util.Util;
-import net.imglib2.view.Views;
 import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignment;
 import org.janelia.saalfeldlab.paintera.data.mask.Mask;
 import org.janelia.saalfeldlab.paintera.data.mask.MaskInfo;
@@ -35,6 +32,7 @@ import org.janelia.saalfeldlab.paintera.state.HasFloodFillState.FloodFillState;
 import org.janelia.saalfeldlab.paintera.state.HasFragmentSegmentAssignments;
 import org.janelia.saalfeldlab.paintera.state.SourceInfo;
 import org.janelia.saalfeldlab.paintera.state.SourceState;
+import org.janelia.saalfeldlab.util.concurrent.PaintTaskScheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -43,7 +41,13 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
-import java.util.function.BiPredicate;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 import java.util.function.LongFunction;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
@@ -61,6 +65,10 @@ public class FloodFill
 
 	private final LongFunction<Converter<?, BoolType>> maskForLabel;
 
+	private final PaintTaskScheduler paintQueue;
+
+	private final ExecutorService floodFillExecutor;
+
 	private final AffineTransform3D viewerTransform = new AffineTransform3D();
 
 	private static final class ForegroundCheck implements Predicate<UnsignedLongType>
@@ -76,17 +84,25 @@ public class FloodFill
 
 	private static final ForegroundCheck FOREGROUND_CHECK = new ForegroundCheck();
 
+	/**
+	 * @param paintQueue runs the task that monitors and applies a flood fill
+	 * @param floodFillExecutor runs the block-wise workers of a flood fill; shared between flood fills, never shut down
+	 */
 	public FloodFill(
 			final ViewerPanelFX viewer,
 			final SourceInfo sourceInfo,
 			final Runnable requestRepaint,
-			final LongFunction<Converter<?, BoolType>> maskForLabel)
+			final LongFunction<Converter<?, BoolType>> maskForLabel,
+			final PaintTaskScheduler paintQueue,
+			final ExecutorService floodFillExecutor)
 	{
 		super();
 		this.viewer = viewer;
 		this.sourceInfo = sourceInfo;
 		this.requestRepaint = requestRepaint;
 		this.maskForLabel = maskForLabel;
+		this.paintQueue = paintQueue;
+		this.floodFillExecutor = floodFillExecutor;
 		viewer.addTransformListener(viewerTransform::set);
 	}
 
@@ -240,110 +256,85 @@ public class FloodFill
 				new UnsignedLongType(fill)
 		);
 		final Mask<UnsignedLongType>  mask = source.generateMask(maskInfo, FOREGROUND_CHECK);
-		final AccessBoxRandomAccessible<UnsignedLongType> accessTracker = new AccessBoxRandomAccessible<>(Views
-				.extendValue(mask.mask, new UnsignedLongType(1)));
 
+		// write into the mask store directly, the access tracker is not thread safe
 		@SuppressWarnings("unchecked")
-		final Thread floodFillThread = new Thread(() -> {
-			try {
-				if (seedValue instanceof LabelMultisetType) {
-					fillMultisetType((RandomAccessibleInterval<LabelMultisetType>) data, accessTracker, seed, seedLabel, assignment);
-				} else {
-					fillPrimitiveType(data, accessTracker, seed, seedLabel, assignment);
-				}
-			} catch (final Exception e) {
-				// got an exception, ignore it if the operation has been canceled, or re-throw otherwise
-				if (!Thread.currentThread().isInterrupted())
-					throw e;
-			}
-			LOG.debug(Thread.currentThread().isInterrupted() ? "FloodFill has been interrupted" : "FloodFill has been completed");
-		});
+		final AccessedBlocksRandomAccessible<UnsignedLongType> accessTracker = mask.mask instanceof AccessedBlocksRandomAccessible<?>
+				? (AccessedBlocksRandomAccessible<UnsignedLongType>) mask.mask
+				: null;
+		final RandomAccessibleInterval<UnsignedLongType> maskStore = accessTracker == null ? mask.mask : accessTracker.getSource();
+		final CellGrid grid = accessTracker == null ? source.getCellGrid(time, level) : accessTracker.getGrid();
 
-		final Thread floodFillResultCheckerThread = new Thread(() -> {
-			while (floodFillThread.isAlive())
+		final BlockParallelFloodFill<T> floodFill = new BlockParallelFloodFill<>(data, maskStore, grid, makePredicate(seedLabel, assignment));
+		final FloodFillState floodFillState = new FloodFillState(fill, floodFill::cancel);
+
+		final Consumer<PaintTaskScheduler.CancellationToken> floodFillResultChecker = token -> {
+			try
 			{
-				try
+				final CompletableFuture<Void> completion = floodFill.fill(seed, floodFillExecutor);
+				while (true)
+				{
+					try
+					{
+						completion.get(100, TimeUnit.MILLISECONDS);
+						break;
+					}
+					catch (final TimeoutException e)
+					{
+						if (token.isCancelled())
+							floodFill.cancel();
+						floodFillState.setProgress(floodFill.getNumFilledVoxels(), floodFill.getNumTouchedBlocks());
+						LOG.debug("Updating current view!");
+						requestRepaint.run();
+					}
+				}
+				floodFillState.setProgress(floodFill.getNumFilledVoxels(), floodFill.getNumTouchedBlocks());
+				LOG.debug("FloodFill has been completed: {} voxels in {} blocks", floodFill.getNumFilledVoxels(), floodFill.getNumTouchedBlocks());
+
+				final Interval interval = floodFill.getFilledInterval();
+				if (interval == null)
 				{
-					Thread.sleep(100);
+					source.resetMasks();
 				}
-				catch (final InterruptedException e)
+				else
 				{
-					Thread.currentThread().interrupt(); // restore interrupted status
+					if (accessTracker != null)
+						accessTracker.addBlockIds(floodFill.getTouchedBlocks());
+					LOG.debug(
+							"Applying mask for interval {} {}",
+							Arrays.toString(Intervals.minAsLongArray(interval)),
+							Arrays.toString(Intervals.maxAsLongArray(interval))
+					         );
+					source.applyMask(mask, interval, FOREGROUND_CHECK);
 				}
-
-				if (Thread.currentThread().isInterrupted())
-					break;
-
-				LOG.debug("Updating current view!");
-				requestRepaint.run();
 			}
-
-			resetFloodFillState(source);
-
-			if (Thread.interrupted())
+			catch (final InterruptedException | ExecutionException | CancellationException e)
 			{
-				floodFillThread.interrupt();
+				if (e instanceof CancellationException)
+					LOG.debug("FloodFill has been interrupted");
+				else
+					LOG.error("FloodFill failed", e);
+				floodFill.cancel();
 				try {
 					source.resetMasks();
-				} catch (final MaskInUse e) {
-					e.printStackTrace();
+				} catch (final MaskInUse ex) {
+					ex.printStackTrace();
 				}
 			}
-			else
+			catch (final MaskInUse e)
 			{
-				final Interval interval = accessTracker.createAccessInterval();
-				LOG.debug(
-						"Applying mask for interval {} {}",
-						Arrays.toString(Intervals.minAsLongArray(interval)),
-						Arrays.toString(Intervals.maxAsLongArray(interval))
-				         );
-				source.applyMask(mask, interval, FOREGROUND_CHECK);
+				e.printStackTrace();
 			}
+			finally
+			{
+				resetFloodFillState(source);
+				requestRepaint.run();
+			}
+		};
 
-			requestRepaint.run();
-		});
-
-		setFloodFillState(source, new FloodFillState(fill, floodFillResultCheckerThread::interrupt));
-
-		floodFillThread.start();
-		floodFillResultCheckerThread.start();
-	}
-
-	private static void fillMultisetType(
-			final RandomAccessibleInterval<LabelMultisetType> input,
-			final RandomAccessible<UnsignedLongType> output,
-			final Localizable seed,
-			final long seedLabel,
-			final FragmentSegmentAssignment assignment)
-	{
-		net.imglib2.algorithm.fill.FloodFill.fill(
-				Views.extendValue(input, new LabelMultisetType()),
-				output,
-				seed,
-				new UnsignedLongType(1),
-				new DiamondShape(1),
-				makePredicate(seedLabel, assignment)
-			);
-	}
+		setFloodFillState(source, floodFillState);
 
-	private static <T extends IntegerType<T>> void fillPrimitiveType(
-			final RandomAccessibleInterval<T> input,
-			final RandomAccessible<UnsignedLongType> output,
-			final Localizable seed,
-			final long seedLabel,
-			final FragmentSegmentAssignment assignment)
-	{
-		final T extension = Util.getTypeFromInterval(input).createVariable();
-		extension.setInteger(Label.OUTSIDE);
-
-		net.imglib2.algorithm.fill.FloodFill.fill(
-				Views.extendValue(input, extension),
-				output,
-				seed,
-				new UnsignedLongType(1),
-				new DiamondShape(1),
-				makePredicate(seedLabel, assignment)
-			);
+		paintQueue.submit("flood fill", floodFillResultChecker);
 	}
 
 	private void setFloodFillState(final Source<?> source, final FloodFillState state)
@@ -358,9 +349,9 @@ public class FloodFill
 		setFloodFillState(source, null);
 	}
 
-	private static <T extends IntegerType<T>> BiPredicate<T, UnsignedLongType> makePredicate(final long id, final FragmentSegmentAssignment assignment)
+	private static <T extends IntegerType<T>> Predicate<T> makePredicate(final long id, final FragmentSegmentAssignment assignment)
 	{
-		return (t, u) -> !Thread.currentThread().isInterrupted() && u.getInteger() == 0 && (assignment != null ? assignment.getSegment(t.getIntegerLong()) : t.getIntegerLong()) == id;
+		return t -> (assignment != null ? assignment.getSegment(t.getIntegerLong()) : t.getIntegerLong()) == id;
 	}
 
 	public static class RunAll implements Runnable
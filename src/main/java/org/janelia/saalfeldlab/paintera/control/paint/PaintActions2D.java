@@ -25,12 +25,15 @@ import org.janelia.saalfeldlab.paintera.data.mask.exception.MaskInUse;
 import org.janelia.saalfeldlab.paintera.state.GlobalTransformManager;
 import org.janelia.saalfeldlab.paintera.state.SourceInfo;
 import org.janelia.saalfeldlab.paintera.state.SourceState;
+import org.janelia.saalfeldlab.util.concurrent.PaintTaskScheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.ExecutorService;
 import java.util.function.BiConsumer;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
@@ -56,6 +59,11 @@ public class PaintActions2D
 
 		protected final SimpleObjectProperty<Interval> interval = new SimpleObjectProperty<>();
 
+		/**
+		 * Queued paint tasks with equal keys are coalesced: source, label, and mask level.
+		 */
+		private List<Object> coalescingKey = null;
+
 		private int fillLabel = 1;
 
 		public void prepareForPainting(final Long id) throws MaskInUse
@@ -71,6 +79,7 @@ public class PaintActions2D
 			this.canvas.set(null);
 			this.maskedSource.set(null);
 			this.interval.set(null);
+			this.coalescingKey = null;
 
 			LOG.debug("Prepare for painting with source {}", viewerSource);
 
@@ -109,10 +118,23 @@ public class PaintActions2D
 			LOG.debug("Setting canvas to {}", canvas);
 			this.canvas.set(canvas);
 			this.maskedSource.set(maskedSource);
+			this.coalescingKey = Arrays.asList(maskedSource, id, level);
 			this.fillLabel = 1;
 		}
 
 		public void paint(final double viewerX, final double viewerY)
+		{
+			final long[] repaintMin = {Long.MAX_VALUE, Long.MAX_VALUE};
+			final long[] repaintMax = {Long.MIN_VALUE, Long.MIN_VALUE};
+			paint(viewerX, viewerY, repaintMin, repaintMax);
+			requestRepaint(repaintMin, repaintMax);
+		}
+
+		/**
+		 * Paint without requesting a repaint, and grow {@code repaintMin} and {@code repaintMax} by the painted
+		 * area in viewer coordinates instead.
+		 */
+		private void paint(final double viewerX, final double viewerY, final long[] repaintMin, final long[] repaintMax)
 		{
 
 			LOG.debug( "At {} {}", viewerX, viewerY );
@@ -148,8 +170,18 @@ public class PaintActions2D
 
 			LOG.debug("Painted sphere with radius {} at ({}, {}): ({} {})", viewerRadius, viewerX, viewerY, viewerMin, viewerMax);
 
-			repaintRequest.accept(viewerMin, viewerMax);
+			for (int d = 0; d < repaintMin.length; ++d)
+			{
+				repaintMin[d] = Math.min(repaintMin[d], viewerMin[d]);
+				repaintMax[d] = Math.max(repaintMax[d], viewerMax[d]);
+			}
+
+		}
 
+		private void requestRepaint(final long[] repaintMin, final long[] repaintMax)
+		{
+			if (repaintMin[0] <= repaintMax[0])
+				repaintRequest.accept(repaintMin, repaintMax);
 		}
 
 		public void applyMask()
@@ -178,14 +210,14 @@ public class PaintActions2D
 
 	private final BiConsumer<long[], long[]> repaintRequest;
 
-	private final ExecutorService paintQueue;
+	private final PaintTaskScheduler paintQueue;
 
 	public PaintActions2D(
 			final ViewerPanelFX viewer,
 			final SourceInfo sourceInfo,
 			final GlobalTransformManager manager,
 			final BiConsumer<long[], long[]> repaintRequest,
-			final ExecutorService paintQueue)
+			final PaintTaskScheduler paintQueue)
 	{
 		super();
 		this.viewer = viewer;
@@ -317,7 +349,9 @@ public class PaintActions2D
 				LOG.info("{} -- will not paint.", e.getMessage());
 				return;
 			}
-			paintQueue.submit(() -> handler.paint(event.getX(), event.getY()));
+			final double x = event.getX();
+			final double y = event.getY();
+			paintQueue.submit("paint", token -> handler.paint(x, y));
 		}
 
 		@Override
@@ -330,32 +364,23 @@ public class PaintActions2D
 
 			if (x != getStartX() || y != getStartY())
 			{
-				final double[] p1 = new double[] {getStartX(), getStartY()};
-
 				LOG.debug( "Drag: paint at screen=({},{}) / start=({},{})", x, y, getStartX(), getStartY());
 
-				final double[] d = new double[] {x, y};
-
-				LinAlgHelpers.subtract(d, p1, d);
-
-				final double l = LinAlgHelpers.length(d);
-				LinAlgHelpers.normalize(d);
-
-				LOG.debug("Number of paintings triggered {}", l + 1);
-				paintQueue.submit(() -> {
-
+				final List<double[]> segment = new ArrayList<>();
+				segment.add(new double[] {getStartX(), getStartY(), x, y});
+				// segments that were dragged while the paint queue was busy are painted in a single task and repainted once
+				paintQueue.submit("paint stroke", handler.coalescingKey, segment, PaintActions2D::append, (segments, token) -> {
 					final long t0 = System.currentTimeMillis();
-					for (int i = 0; i < l; ++i)
-					{
-						handler.paint(p1[0], p1[1]);
-						LinAlgHelpers.add(p1, d, p1);
-					}
-					handler.paint(x, y);
+					final long[] repaintMin = {Long.MAX_VALUE, Long.MAX_VALUE};
+					final long[] repaintMax = {Long.MIN_VALUE, Long.MIN_VALUE};
+					final int numPaintings = segments.stream().mapToInt(s -> paintSegment(s, repaintMin, repaintMax)).sum();
+					handler.requestRepaint(repaintMin, repaintMax);
 					final long t1 = System.currentTimeMillis();
 					LOG.debug(
-							"Painting {} times with radius {} took a total of {}ms",
-							l + 1,
+							"Painting {} times with radius {} in {} coalesced segments took a total of {}ms",
+							numPaintings,
 							brushRadius.get(),
+							segments.size(),
 							t1 - t0
 					         );
 				});
@@ -367,9 +392,44 @@ public class PaintActions2D
 		@Override
 		public void endDrag(final MouseEvent event)
 		{
-			paintQueue.submit(() -> handler.applyMask());
+			paintQueue.submit("apply mask", token -> handler.applyMask());
 		}
 
+		/**
+		 * @param segment start and end point of the segment: {@code {x1, y1, x2, y2}}
+		 * @param repaintMin grown by the painted area in viewer coordinates
+		 * @param repaintMax grown by the painted area in viewer coordinates
+		 * @return number of brush paintings along {@code segment}
+		 */
+		private int paintSegment(final double[] segment, final long[] repaintMin, final long[] repaintMax)
+		{
+			final double[] p1 = new double[] {segment[0], segment[1]};
+			final double[] d = new double[] {segment[2], segment[3]};
+
+			LinAlgHelpers.subtract(d, p1, d);
+
+			final double l = LinAlgHelpers.length(d);
+			LinAlgHelpers.normalize(d);
+
+			for (int i = 0; i < l; ++i)
+			{
+				handler.paint(p1[0], p1[1], repaintMin, repaintMax);
+				LinAlgHelpers.add(p1, d, p1);
+			}
+			handler.paint(segment[2], segment[3], repaintMin, repaintMax);
+			return (int) Math.ceil(l) + 1;
+		}
+
+	}
+
+	/**
+	 * Append {@code l2} to {@code l1} in place: payloads of queued tasks are owned by the queue, and copying would
+	 * make coalescing quadratic in the number of queued segments.
+	 */
+	private static <T> List<T> append(final List<T> l1, final List<T> l2)
+	{
+		l1.addAll(l2);
+		return l1;
 	}
 
 	public DoubleProperty brushRadiusProperty()
@@ -4,42 +4,101 @@ import org.janelia.saalfeldlab.fx.ObservableWithListenersList;
 
 import gnu.trove.set.hash.TLongHashSet;
 
+/**
+ * Fragments of all {@link SelectedSegments selected segments}.
+ *
+ * {@link #contains(long)} looks up the segment of a fragment and does not need the set of fragments. The set of
+ * fragments is materialized lazily by {@link #getFragments()}: changes of the selected segments and re-assigned
+ * fragments are only recorded, and applied incrementally the next time the fragments are requested.
+ */
 public class FragmentsInSelectedSegments extends ObservableWithListenersList
 {
 
 	private final SelectedSegments activeSegments;
 
-	private TLongHashSet selectedFragments = new TLongHashSet();
+	private final TLongHashSet selectedFragments = new TLongHashSet();
+
+	/**
+	 * Segments that were added to or removed from the selection since {@link #selectedFragments} was updated.
+	 */
+	private final TLongHashSet changedSegments = new TLongHashSet();
+
+	/**
+	 * Fragments that were re-assigned since {@link #selectedFragments} was updated.
+	 */
+	private final TLongHashSet changedFragments = new TLongHashSet();
+
+	/**
+	 * {@link #selectedFragments} needs to be re-generated from scratch.
+	 */
+	private boolean isInvalid = true;
 
 	public FragmentsInSelectedSegments(final SelectedSegments activeSegments)
 	{
 		super();
 		this.activeSegments = activeSegments;
-		this.activeSegments.addListener(a -> update());
-		this.activeSegments.getAssignment().addListener(a -> update());
+		this.activeSegments.addSelectionChangedListener(this::selectionChanged);
 	}
 
-	public long[] getFragments()
+	public synchronized long[] getFragments()
 	{
+		update();
 		return this.selectedFragments.toArray();
 	}
 
-	private void update()
+	private void selectionChanged(final long[] changedSegments, final long[] changedFragments)
 	{
-		final TLongHashSet newSelectedFragments = new TLongHashSet();
-		synchronized (activeSegments.getSet()) {
-			activeSegments.getSet().forEach(id -> {
-				newSelectedFragments.addAll(activeSegments.getAssignment().getFragments(id));
-				return true;
-			});
+		synchronized (this)
+		{
+			if (changedSegments == null || changedFragments == null)
+			{
+				this.isInvalid = true;
+				this.changedSegments.clear();
+				this.changedFragments.clear();
+			}
+			else if (!isInvalid)
+			{
+				this.changedSegments.addAll(changedSegments);
+				this.changedFragments.addAll(changedFragments);
+			}
 		}
-		this.selectedFragments = newSelectedFragments;
 		stateChanged();
 	}
 
+	private void update()
+	{
+		if (isInvalid)
+		{
+			selectedFragments.clear();
+			for (final long segment : activeSegments.getSelectedSegmentsCopyAsArray())
+				selectedFragments.addAll(activeSegments.getAssignment().getFragments(segment));
+			isInvalid = false;
+		}
+		else
+		{
+			// fragments that were moved out of a changed segment are in changedFragments
+			changedSegments.forEach(segment -> activeSegments.getAssignment().getFragments(segment).forEach(this::updateFragment));
+			changedFragments.forEach(this::updateFragment);
+		}
+		changedSegments.clear();
+		changedFragments.clear();
+	}
+
+	private boolean updateFragment(final long id)
+	{
+		if (contains(id))
+			selectedFragments.add(id);
+		else
+			selectedFragments.remove(id);
+		return true;
+	}
+
+	/**
+	 * Does not lock and is consistent with {@link SelectedSegments#isSegmentSelected(long)}.
+	 */
 	public boolean contains(final long id)
 	{
-		return this.selectedFragments.contains(id);
+		return activeSegments.isSegmentSelected(activeSegments.getAssignment().getSegment(id));
 	}
 
 }
@@ -1,9 +1,12 @@
 package org.janelia.saalfeldlab.paintera.control.selection;
 
 import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import gnu.trove.TCollections;
+import gnu.trove.list.array.TLongArrayList;
 import gnu.trove.set.TLongSet;
 import org.janelia.saalfeldlab.fx.ObservableWithListenersList;
 import org.slf4j.Logger;
@@ -17,8 +20,24 @@ public class SelectedIds extends ObservableWithListenersList
 
 	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+	/**
+	 * Package protected for {@link SelectedSegments} internal use.
+	 */
+	interface SelectionChangedListener
+	{
+		/**
+		 * Called before listeners are notified. An id that was deactivated and activated again within the same change,
+		 * e.g. by {@link SelectedIds#activate(long...)}, is contained in both arrays and is active afterwards.
+		 */
+		void selectionChanged(long[] activated, long[] deactivated);
+	}
+
+	private static final long[] NONE = {};
+
 	private final TLongHashSet selectedIds;
 
+	private final List<SelectionChangedListener> selectionChangedListeners = new ArrayList<>();
+
 	private long lastSelection = Label.INVALID;
 
 	public SelectedIds()
@@ -40,42 +59,58 @@ public class SelectedIds extends ObservableWithListenersList
 
 	public void activate(final long... ids)
 	{
-		deactivateAll(false);
-		activateAlso(ids);
-		LOG.debug("Activated " + Arrays.toString(ids) + " " + selectedIds);
+		final long[] deactivated = clear();
+		final long[] activated = add(ids);
+		LOG.debug("Activated {} {}", Arrays.toString(ids), selectedIds);
+		selectionChanged(activated, deactivated);
 	}
 
 	public void activateAlso(final long... ids)
 	{
-		for (final long id : ids)
-			selectedIds.add(id);
-		if (ids.length > 0)
-			this.lastSelection = ids[0];
-		stateChanged();
+		selectionChanged(add(ids), NONE);
 	}
 
 	public void deactivateAll()
 	{
-		deactivateAll(true);
-	}
-
-	private void deactivateAll(final boolean notify)
-	{
-		selectedIds.clear();
-		lastSelection = Label.INVALID;
-		if (notify)
-			stateChanged();
+		selectionChanged(NONE, clear());
 	}
 
 	public void deactivate(final long... ids)
 	{
+		final TLongArrayList deactivated = new TLongArrayList();
 		for (final long id : ids)
 		{
-			selectedIds.remove(id);
+			if (selectedIds.remove(id))
+				deactivated.add(id);
 			if (id == lastSelection)
 				lastSelection = Label.INVALID;
 		}
 		LOG.debug("Deactivated {}, {}", Arrays.toString(ids), selectedIds);
+		selectionChanged(NONE, deactivated.toArray());
+	}
+
+	private long[] add(final long[] ids)
+	{
+		final TLongArrayList activated = new TLongArrayList();
+		for (final long id : ids)
+			if (selectedIds.add(id))
+				activated.add(id);
+		if (ids.length > 0)
+			this.lastSelection = ids[0];
+		return activated.toArray();
+	}
+
+	private long[] clear()
+	{
+		final long[] deactivated = selectedIds.toArray();
+		selectedIds.clear();
+		lastSelection = Label.INVALID;
+		return deactivated;
+	}
+
+	private void selectionChanged(final long[] activated, final long[] deactivated)
+	{
+		selectionChangedListeners.forEach(l -> l.selectionChanged(activated, deactivated));
 		stateChanged();
 	}
 
@@ -129,11 +164,9 @@ public class SelectedIds extends ObservableWithListenersList
 
 	/**
 	 * Package protected for {@link SelectedSegments} internal use.
-	 *
-	 * @return
 	 */
-	TLongHashSet getSet()
+	void addSelectionChangedListener(final SelectionChangedListener listener)
 	{
-		return selectedIds;
+		selectionChangedListeners.add(listener);
 	}
 }
@@ -1,31 +1,64 @@
 package org.janelia.saalfeldlab.paintera.control.selection;
 
 import gnu.trove.TCollections;
+import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.map.hash.TLongLongHashMap;
 import gnu.trove.set.TLongSet;
 import org.janelia.saalfeldlab.fx.ObservableWithListenersList;
 import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignmentState;
 
 import gnu.trove.set.hash.TLongHashSet;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
- * TODO
- *
- * The update mechanism for this class regenerates the entire segment set
- * for each update which is inefficient for small edits on large selections.
- * Eventually, this should be unified with SelectedIds such that
- * small updates can be implemented as small updates.
- *
- * Alternatively, SelectedIds can pass both the old state and the new state
- * to its listeners and then a diff can be easily generated from that.
+ * Segments of all {@link SelectedIds selected ids}. The selection is updated incrementally from the ids that were
+ * (de-)activated and from the fragments that were re-assigned (see
+ * {@link FragmentSegmentAssignmentState#addFragmentsChangedListener}), instead of re-generating the entire segment set
+ * for each update. Only if the assignment does not know which fragments changed, all selected ids are looked up again.
  *
+ * {@link #isSegmentSelected(long)} is called per voxel from the rendering threads and does not lock: it reads an
+ * immutable copy of the selected segments that is re-published whenever segments are added to or removed from the
+ * selection.
  */
 public class SelectedSegments extends ObservableWithListenersList
 {
+
+	/**
+	 * Package protected for {@link FragmentsInSelectedSegments} internal use.
+	 */
+	interface SelectionChangedListener
+	{
+		/**
+		 * Called before listeners are notified.
+		 *
+		 * @param changedSegments segments that were added to or removed from the selection, or {@code null} if all
+		 *                        segments may have changed
+		 * @param changedFragments fragments that were re-assigned, or {@code null} if all fragments may have changed
+		 */
+		void selectionChanged(long[] changedSegments, long[] changedFragments);
+	}
+
+	private static final long[] NONE = {};
+
 	private final SelectedIds selectedIds;
 
 	private final FragmentSegmentAssignmentState assignment;
 
-	private final TLongHashSet selectedSegments = new TLongHashSet();
+	/**
+	 * Segment of each selected id as of the last update.
+	 */
+	private final TLongLongHashMap segmentOfSelectedId = new TLongLongHashMap();
+
+	/**
+	 * Number of selected ids that are part of each selected segment.
+	 */
+	private final TLongIntHashMap numSelectedIdsInSegment = new TLongIntHashMap();
+
+	private volatile TLongHashSet selectedSegments = new TLongHashSet();
+
+	private final List<SelectionChangedListener> selectionChangedListeners = new ArrayList<>();
 
 	public SelectedSegments(final SelectedIds selectedIds, final FragmentSegmentAssignmentState assignment)
 	{
@@ -33,9 +66,9 @@ public class SelectedSegments extends ObservableWithListenersList
 		this.selectedIds = selectedIds;
 		this.assignment = assignment;
 
-		/* TODO the following updates the set twice which is unnecessary */
-		this.selectedIds.addListener(a -> update());
-		this.assignment.addListener(a -> update());
+		this.selectedIds.addSelectionChangedListener(this::idsChanged);
+		this.assignment.addFragmentsChangedListener(this::fragmentsChanged);
+		reset();
 	}
 
 	public TLongSet getSelectedSegments()
@@ -45,10 +78,7 @@ public class SelectedSegments extends ObservableWithListenersList
 
 	public long[] getSelectedSegmentsCopyAsArray()
 	{
-		synchronized (selectedSegments)
-		{
-			return selectedSegments.toArray();
-		}
+		return selectedSegments.toArray();
 	}
 
 	public boolean isSegmentSelected(final long id)
@@ -56,19 +86,90 @@ public class SelectedSegments extends ObservableWithListenersList
 		return selectedSegments.contains(id);
 	}
 
-	private void update()
+	private void idsChanged(final long[] activated, final long[] deactivated)
 	{
-		synchronized (selectedSegments)
+		final long[] changedSegments;
+		synchronized (this)
 		{
-			selectedSegments.clear();
-			synchronized(selectedIds.getSet())
+			final TLongHashSet changed = new TLongHashSet();
+			for (final long id : deactivated)
+				remove(id, changed);
+			for (final long id : activated)
+				add(id, assignment.getSegment(id), changed);
+			changedSegments = publish(changed);
+		}
+		selectionChanged(changedSegments, NONE);
+	}
+
+	private void fragmentsChanged(final long[] changedFragments)
+	{
+		final long[] changedSegments;
+		synchronized (this)
+		{
+			if (changedFragments == null)
+			{
+				reset();
+				changedSegments = null;
+			}
+			else
 			{
-				selectedIds.getSet().forEach(id -> {
-					selectedSegments.add(assignment.getSegment(id));
-					return true;
-				});
+				final TLongHashSet changed = new TLongHashSet();
+				for (final long id : changedFragments)
+				{
+					if (!segmentOfSelectedId.containsKey(id))
+						continue;
+					final long segment = assignment.getSegment(id);
+					if (segment != segmentOfSelectedId.get(id))
+					{
+						remove(id, changed);
+						add(id, segment, changed);
+					}
+				}
+				changedSegments = publish(changed);
 			}
 		}
+		selectionChanged(changedSegments, changedFragments);
+	}
+
+	private void add(final long id, final long segment, final TLongHashSet changedSegments)
+	{
+		segmentOfSelectedId.put(id, segment);
+		if (numSelectedIdsInSegment.adjustOrPutValue(segment, 1, 1) == 1)
+			changedSegments.add(segment);
+	}
+
+	private void remove(final long id, final TLongHashSet changedSegments)
+	{
+		if (!segmentOfSelectedId.containsKey(id))
+			return;
+		final long segment = segmentOfSelectedId.remove(id);
+		if (numSelectedIdsInSegment.adjustOrPutValue(segment, -1, 0) <= 0)
+		{
+			numSelectedIdsInSegment.remove(segment);
+			changedSegments.add(segment);
+		}
+	}
+
+	private synchronized void reset()
+	{
+		segmentOfSelectedId.clear();
+		numSelectedIdsInSegment.clear();
+		final TLongHashSet changed = new TLongHashSet();
+		for (final long id : selectedIds.getActiveIdsCopyAsArray())
+			add(id, assignment.getSegment(id), changed);
+		selectedSegments = new TLongHashSet(numSelectedIdsInSegment.keys());
+	}
+
+	private long[] publish(final TLongHashSet changedSegments)
+	{
+		if (!changedSegments.isEmpty())
+			selectedSegments = new TLongHashSet(numSelectedIdsInSegment.keys());
+		return changedSegments.toArray();
+	}
+
+	private void selectionChanged(final long[] changedSegments, final long[] changedFragments)
+	{
+		selectionChangedListeners.forEach(l -> l.selectionChanged(changedSegments, changedFragments));
 		stateChanged();
 	}
 
@@ -83,12 +184,10 @@ public class SelectedSegments extends ObservableWithListenersList
 	}
 
 	/**
-	 * Package protected for {@link SelectedSegments} internal use.
-	 *
-	 * @return
+	 * Package protected for {@link FragmentsInSelectedSegments} internal use.
 	 */
-	TLongHashSet getSet()
+	void addSelectionChangedListener(final SelectionChangedListener listener)
 	{
-		return selectedSegments;
+		selectionChangedListeners.add(listener);
 	}
 }
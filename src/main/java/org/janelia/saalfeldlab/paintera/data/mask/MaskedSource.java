@@ -7,6 +7,7 @@ import gnu.trove.iterator.TLongIterator;
 import gnu.trove.iterator.TLongLongIterator;
 import gnu.trove.map.TLongObjectMap;
 import gnu.trove.map.hash.TLongLongHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
 import gnu.trove.set.TLongSet;
 import gnu.trove.set.hash.TLongHashSet;
 import javafx.beans.property.BooleanProperty;
@@ -20,6 +21,7 @@ import javafx.beans.value.ObservableValue;
 import javafx.collections.FXCollections;
 import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
+import javafx.event.ActionEvent;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonType;
 import javafx.scene.layout.VBox;
@@ -56,12 +58,10 @@ import net.imglib2.interpolation.randomaccess.NearestNeighborInterpolatorFactory
 import net.imglib2.outofbounds.RealOutOfBoundsConstantValueFactory;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.realtransform.RealViews;
-import net.imglib2.realtransform.Scale3D;
 import net.imglib2.type.BooleanType;
 import net.imglib2.type.Type;
 import net.imglib2.type.label.Label;
 import net.imglib2.type.logic.BitType;
-import net.imglib2.type.logic.BoolType;
 import net.imglib2.type.numeric.IntegerType;
 import net.imglib2.type.numeric.integer.UnsignedLongType;
 import net.imglib2.type.volatiles.VolatileUnsignedLongType;
@@ -70,7 +70,6 @@ import net.imglib2.util.ConstantUtils;
 import net.imglib2.util.IntervalIndexer;
 import net.imglib2.util.Intervals;
 import net.imglib2.view.ExtendedRealRandomAccessibleRealInterval;
-import net.imglib2.view.IntervalView;
 import net.imglib2.view.RealRandomAccessibleTriple;
 import net.imglib2.view.Views;
 import org.janelia.saalfeldlab.fx.util.InvokeOnJavaFXApplicationThread;
@@ -84,7 +83,9 @@ import org.janelia.saalfeldlab.paintera.data.mask.persist.UnableToPersistCanvas;
 import org.janelia.saalfeldlab.paintera.data.mask.persist.UnableToUpdateLabelBlockLookup;
 import org.janelia.saalfeldlab.paintera.data.n5.BlockSpec;
 import org.janelia.saalfeldlab.paintera.ui.PainteraAlerts;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
 import org.janelia.saalfeldlab.util.TmpVolatileHelpers;
+import org.janelia.saalfeldlab.util.concurrent.PaintTaskScheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -99,6 +100,8 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.stream.DoubleStream;
@@ -187,6 +190,16 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 
 	private boolean isPersisting = false;
 
+	/**
+	 * Commits run for a long time and wait for the JavaFX application thread, so they do not share the propagation
+	 * executor with other sources.
+	 */
+	private final ExecutorService commitExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory("persist-canvas-%d", true));
+
+	private Future<?> currentCommit = null;
+
+	private volatile boolean commitCancelRequested = false;
+
 	private boolean isCreatingMask = false;
 
 	private final BooleanProperty isApplyingMask = new SimpleBooleanProperty();
@@ -410,8 +423,8 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 	{
 		if (mask == null)
 			return;
-		new Thread(() -> {
-			Thread.currentThread().setName("apply mask");
+		// apply and propagate in the same task, so that the propagation queue preserves the order of masks
+		submit("apply mask", () -> {
 			synchronized (this)
 			{
 				final boolean maskCanBeApplied = !this.isCreatingMask && this.currentMask == mask && !this.isApplyingMask.get() && !this.isPersisting;
@@ -433,7 +446,7 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 
 			final TLongSet affectedBlocks = affectedBlocks(mask.mask, canvas.getCellGrid(), paintedInterval);
 
-			paintAffectedPixels(
+			final TLongObjectMap<Interval> dirtyIntervals = paintAffectedPixels(
 					affectedBlocks,
 					Converters.convert(
 							Views.extendZero(mask.mask),
@@ -450,49 +463,57 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 				this.currentMask = null;
 			}
 
+			// only blocks that actually received painted voxels changed
+			final TLongSet paintedBlocks = dirtyIntervals.keySet();
 			final TLongSet paintedBlocksAtHighestResolution = this.scaleBlocksToLevel(
-					affectedBlocks,
+					paintedBlocks,
 					maskInfo.level,
 					0);
 
 			this.affectedBlocksByLabel[maskInfo.level].computeIfAbsent(
 					maskInfo.value.getIntegerLong(),
 					key -> new TLongHashSet()
-			                                                          ).addAll(affectedBlocks);
+			                                                          ).addAll(paintedBlocks);
 			LOG.debug("Added affected block: {}", affectedBlocksByLabel[maskInfo.level]);
 			this.affectedBlocks.addAll(paintedBlocksAtHighestResolution);
 
-			propagationExecutor.submit(() -> {
-				try {
-					propagateMask(
-							mask.mask,
-							affectedBlocks,
-							maskInfo.level,
-							maskInfo.value,
-							paintedInterval,
-							acceptAsPainted);
-					setMasksConstant();
-					synchronized (this) {
-						LOG.debug("Done applying mask!");
-						this.isApplyingMask.set(false);
-					}
-				} finally {
-					// free resources
-					if (currentMaskBeforePropagation != null) {
-						if (currentMaskBeforePropagation.shutdown != null)
-							currentMaskBeforePropagation.shutdown.run();
-						if (currentMaskBeforePropagation.invalidate != null)
-							currentMaskBeforePropagation.invalidate.invalidateAll();
-						if (currentMaskBeforePropagation.invalidateVolatile != null)
-							currentMaskBeforePropagation.invalidateVolatile.invalidateAll();
-					}
+			try {
+				propagateMask(
+						dirtyIntervals,
+						maskInfo.level,
+						maskInfo.value,
+						acceptAsPainted);
+				setMasksConstant();
+				synchronized (this) {
+					LOG.debug("Done applying mask!");
+					this.isApplyingMask.set(false);
 				}
-			});
+			} finally {
+				// free resources
+				if (currentMaskBeforePropagation != null) {
+					if (currentMaskBeforePropagation.shutdown != null)
+						currentMaskBeforePropagation.shutdown.run();
+					if (currentMaskBeforePropagation.invalidate != null)
+						currentMaskBeforePropagation.invalidate.invalidateAll();
+					if (currentMaskBeforePropagation.invalidateVolatile != null)
+						currentMaskBeforePropagation.invalidateVolatile.invalidateAll();
+				}
+			}
 
-		}).start();
+		});
 
 	}
 
+	/**
+	 * Run {@code task} on the propagation executor, with timing metrics if it is a {@link PaintTaskScheduler}.
+	 */
+	private Future<?> submit(final String name, final Runnable task)
+	{
+		if (propagationExecutor instanceof PaintTaskScheduler)
+			return ((PaintTaskScheduler) propagationExecutor).submit(name, token -> task.run());
+		return propagationExecutor.submit(task);
+	}
+
 	private void setMasksConstant()
 	{
 		for (int level = 0; level < getNumMipmapLevels(); ++level)
@@ -534,21 +555,6 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 		);
 	}
 
-	private void scalePositionToLevel(final long[] position, final int intervalLevel, final int targetLevel, final
-	long[] targetPosition)
-	{
-		Arrays.setAll(targetPosition, d -> position[d]);
-		if (intervalLevel == targetLevel) { return; }
-
-		final double[] positionDouble = LongStream.of(position).asDoubleStream().toArray();
-
-		final Scale3D toTargetScale = new Scale3D(DataSource.getRelativeScales(this, 0, intervalLevel, targetLevel));
-
-		toTargetScale.apply(positionDouble, positionDouble);
-
-		Arrays.setAll(targetPosition, d -> (long) Math.ceil(positionDouble[d]));
-	}
-
 	public void resetMasks() throws MaskInUse
 	{
 		synchronized (this)
@@ -582,58 +588,149 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 
 	public void persistCanvas(final boolean clearCanvas) throws CannotPersist
 	{
-		synchronized (this)
-		{
-			final boolean canPersist = !this.isCreatingMask && this.currentMask == null && !this.isApplyingMask.get() && !this.isPersisting;
-			if (!canPersist)
-			{
-				LOG.error(
-						"Cannot persist canvas: is persisting? {} has mask? {} is creating mask? {} is applying mask? {}",
-						this.isPersisting,
-						this.currentMask != null,
-						this.isCreatingMask,
-						this.isApplyingMask
-					);
-				throw new CannotPersist("Can not persist canvas!");
-			}
-			this.isPersisting = true;
-		}
+		if (hasIncompleteCommit())
+			throw new CannotPersist("Previous commit is incomplete and needs to be resumed or rolled back first.");
+		startPersisting();
 
 		LOG.debug("Merging canvas into background for blocks {}", this.affectedBlocks);
 		final CachedCellImg<UnsignedLongType, ?> canvas         = this.dataCanvases[0];
 		final long[]                             affectedBlocks = this.affectedBlocks.toArray();
 		this.affectedBlocks.clear();
+		submitCommit(
+				"Committing canvas.",
+				progress -> this.persistCanvas.persistCanvas(canvas, affectedBlocks, progress),
+				clearCanvas,
+				affectedBlocks);
+	}
+
+	/**
+	 * @return {@code true} if a previous commit was cancelled or interrupted, e.g. by a crash, and needs to be
+	 * {@link #resumeIncompleteCommit() resumed} or {@link #rollbackIncompleteCommit() rolled back} before the canvas
+	 * can be persisted again.
+	 */
+	public boolean hasIncompleteCommit()
+	{
+		return this.persistCanvas.hasIncompleteCommit();
+	}
+
+	/**
+	 * Finish an incomplete commit in the background. The canvas is not modified.
+	 */
+	public void resumeIncompleteCommit() throws CannotPersist
+	{
+		startPersisting();
+		submitCommit("Resuming commit.", this.persistCanvas::resumeIncompleteCommit, false, new long[] {});
+	}
+
+	/**
+	 * Restore the background to the state before an incomplete commit in the background. The canvas is not modified.
+	 */
+	public void rollbackIncompleteCommit() throws CannotPersist
+	{
+		startPersisting();
+		this.commitCancelRequested = false;
+		this.currentCommit = this.commitExecutor.submit(() -> {
+			try
+			{
+				this.persistCanvas.rollbackIncompleteCommit();
+				this.source.invalidateAll();
+			}
+			catch (final UnableToPersistCanvas e)
+			{
+				LOG.error("Unable to roll back incomplete commit.", e);
+			}
+			finally
+			{
+				synchronized (this)
+				{
+					this.isPersisting = false;
+				}
+			}
+		});
+	}
+
+	/**
+	 * Cancel the currently running commit, if any. Blocks that were written already are rolled back if supported by
+	 * the {@link PersistCanvas}, and the canvas is kept so that it can be committed again.
+	 */
+	public synchronized void cancelCommit()
+	{
+		if (!this.isPersisting || this.currentCommit == null)
+			return;
+		LOG.info("Cancelling commit.");
+		this.commitCancelRequested = true;
+		this.currentCommit.cancel(true);
+	}
+
+	private synchronized void startPersisting() throws CannotPersist
+	{
+		final boolean canPersist = !this.isCreatingMask && this.currentMask == null && !this.isApplyingMask.get() && !this.isPersisting;
+		if (!canPersist)
+		{
+			LOG.error(
+					"Cannot persist canvas: is persisting? {} has mask? {} is creating mask? {} is applying mask? {}",
+					this.isPersisting,
+					this.currentMask != null,
+					this.isCreatingMask,
+					this.isApplyingMask
+				);
+			throw new CannotPersist("Can not persist canvas!");
+		}
+		this.isPersisting = true;
+	}
+
+	@FunctionalInterface
+	private interface CommitTask
+	{
+		List<TLongObjectMap<PersistCanvas.BlockDiff>> persist(PersistCanvas.ProgressListener progress) throws UnableToPersistCanvas;
+	}
+
+	private void submitCommit(
+			final String header,
+			final CommitTask task,
+			final boolean clearCanvas,
+			final long[] affectedBlocks)
+	{
 		final BooleanProperty proxy = new SimpleBooleanProperty(this.isPersisting);
 		final ObservableList<String> states = FXCollections.observableArrayList();
 		final Runnable dialogHandler = () -> {
 			LOG.warn("Creating commit status dialog.");
 			final Alert isCommittingDialog = PainteraAlerts.alert(Alert.AlertType.INFORMATION);
-			isCommittingDialog.setHeaderText("Committing canvas.");
+			isCommittingDialog.setHeaderText(header);
+			isCommittingDialog.getDialogPane().getButtonTypes().add(ButtonType.CANCEL);
 			isCommittingDialog.getDialogPane().lookupButton(ButtonType.OK).setDisable(true);
+			isCommittingDialog.getDialogPane().lookupButton(ButtonType.CANCEL).addEventFilter(ActionEvent.ACTION, event -> {
+				event.consume();
+				cancelCommit();
+			});
 			isCommittingDialog.initModality(Modality.NONE);
 			states.addListener((ListChangeListener<? super String>) change -> InvokeOnJavaFXApplicationThread.invoke(() -> isCommittingDialog.getDialogPane().setContent(new VBox(asLabels(states)))));
 			synchronized (this) {
 				isCommittingDialog.getDialogPane().lookupButton(ButtonType.OK).disableProperty().bind(proxy);
+				isCommittingDialog.getDialogPane().lookupButton(ButtonType.CANCEL).disableProperty().bind(proxy.not());
 			}
 			LOG.info("Will show dialog? {}", proxy.get());
 			if(proxy.get()) isCommittingDialog.show();
 		};
-		// TODO do not use new thread for this but use existing executors
-		new Thread(() -> {
-			Exception caughtException = null;
-			try
-			{
-				try {
-					InvokeOnJavaFXApplicationThread.invokeAndWait(dialogHandler);
-				}
-				catch (final InterruptedException e)
+		synchronized (this)
+		{
+			this.commitCancelRequested = false;
+			this.currentCommit = this.commitExecutor.submit(() -> {
+				Exception caughtException = null;
+				try
 				{
-					throw new RuntimeException(e);
-				}
-				try {
+					try {
+						InvokeOnJavaFXApplicationThread.invokeAndWait(dialogHandler);
+					}
+					catch (final InterruptedException e)
+					{
+						throw new UnableToPersistCanvas("Commit was interrupted.", e);
+					}
 					states.add("Persisting painted labels...");
-					final List<TLongObjectMap<PersistCanvas.BlockDiff>> blockDiffs = this.persistCanvas.persistCanvas(canvas, affectedBlocks);
-					states.set(states.size() - 1, "Persisting painted labels...   Done");
+					final int persistingStateIndex = states.size() - 1;
+					final List<TLongObjectMap<PersistCanvas.BlockDiff>> blockDiffs = task.persist(
+							(level, message) -> setLevelState(states, persistingStateIndex + 1 + level, message));
+					states.set(persistingStateIndex, "Persisting painted labels...   Done");
 					if (this.persistCanvas.supportsLabelBlockLookupUpdate()) {
 						states.add("Updating label-to-block lookup...");
 						this.persistCanvas.updateLabelBlockLookup(blockDiffs);
@@ -643,34 +740,68 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 						states.add("Clearing canvases...");
 						clearCanvases();
 						states.set(states.size() - 1, "Clearing canvases...   Done");
-						this.source.invalidateAll();
 					} else
 						LOG.info("Not clearing canvas.");
+					this.source.invalidateAll();
 				}
-				catch (UnableToPersistCanvas | UnableToUpdateLabelBlockLookup e)
+				catch (UnableToPersistCanvas | UnableToUpdateLabelBlockLookup | RuntimeException e)
 				{
 					caughtException = e;
-					throw new RuntimeException("Error while trying to persist.", e);
-				}
-				catch (final RuntimeException e)
-				{
-					caughtException = e;
-					throw e;
+					if (this.commitCancelRequested)
+						rollbackCancelledCommit(states, affectedBlocks);
+					else
+						LOG.error("Error while trying to persist.", e);
 				}
-			}
-			finally
-			{
-				synchronized (this)
+				finally
 				{
-					this.isPersisting = false;
-					proxy.set(false);
-					if (caughtException == null)
-						states.add("Successfully finished committing canvas.");
-					else
-						states.add("Unable to commit canvas: " + caughtException.getMessage());
+					synchronized (this)
+					{
+						this.isPersisting = false;
+						proxy.set(false);
+						if (caughtException == null)
+							states.add("Successfully finished committing canvas.");
+						else if (this.commitCancelRequested)
+							states.add("Cancelled committing canvas.");
+						else
+							states.add("Unable to commit canvas: " + caughtException.getMessage());
+					}
 				}
-			}
-		}).start();
+			});
+		}
+	}
+
+	private void rollbackCancelledCommit(final ObservableList<String> states, final long[] affectedBlocks)
+	{
+		// clear interrupted flag, rollback must not be interrupted
+		Thread.interrupted();
+		synchronized (this)
+		{
+			this.affectedBlocks.addAll(affectedBlocks);
+		}
+		if (!this.persistCanvas.hasIncompleteCommit())
+			return;
+		try
+		{
+			states.add("Rolling back...");
+			this.persistCanvas.rollbackIncompleteCommit();
+			states.set(states.size() - 1, "Rolling back...   Done");
+		}
+		catch (final UnableToPersistCanvas e)
+		{
+			LOG.error("Unable to roll back cancelled commit.", e);
+			states.set(states.size() - 1, "Rolling back...   Failed: " + e.getMessage());
+		}
+		this.source.invalidateAll();
+	}
+
+	private static void setLevelState(final ObservableList<String> states, final int index, final String state)
+	{
+		synchronized (states)
+		{
+			while (states.size() <= index)
+				states.add("");
+			states.set(index, state);
+		}
 	}
 
 	@Override
@@ -799,6 +930,14 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 		                         );
 	}
 
+	/**
+	 * @return grid of the canvas at {@code level}, masks that are aligned with it are applied block by block
+	 */
+	public CellGrid getCanvasGrid(final int level)
+	{
+		return this.dataCanvases[level].getCellGrid();
+	}
+
 	public RandomAccessibleInterval<D> getReadOnlyDataBackground(final int t, final int level)
 	{
 		return Converters.convert(
@@ -847,6 +986,27 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 		}
 	}
 
+	/**
+	 * Downsample only the dirty intervals of img.
+	 * @param source
+	 * @param img
+	 * @param dirtyIntervals dirty interval for each affected block of img
+	 * @param steps
+	 */
+	public static void downsampleBlocks(
+			final RandomAccessible<UnsignedLongType> source,
+			final CachedCellImg<UnsignedLongType, LongAccess> img,
+			final TLongObjectMap<Interval> dirtyIntervals,
+			final int[] steps)
+	{
+		LOG.debug("Downsampling dirty intervals in blocks: {}", dirtyIntervals.keySet());
+		for (final Interval dirtyInterval : dirtyIntervals.valueCollection())
+		{
+			LOG.trace("Downsampling for dirty min/max: {} {}", Intervals.minAsLongArray(dirtyInterval), Intervals.maxAsLongArray(dirtyInterval));
+			downsample(source, Views.interval(img, dirtyInterval), steps);
+		}
+	}
+
 	/**
 	 * @param source
 	 * @param target
@@ -920,29 +1080,51 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 				TLongHashSet::new);
 	}
 
+	/**
+	 * @return {@code true} if a mask is currently active or if any block at {@code level} that intersects
+	 * {@code interval} holds painted data that has not been committed to the background yet.
+	 */
+	public boolean containsCanvasData(final int level, final Interval interval)
+	{
+		if (this.currentMask != null)
+			return true;
+		final CellGrid grid = getCellGrid(0, level);
+		final Interval clipped = Intervals.intersect(interval, new FinalInterval(grid.getImgDimensions()));
+		if (Intervals.isEmpty(clipped))
+			return false;
+		final TLongSet blocks = affectedBlocks(grid, clipped);
+		for (final TLongHashSet modifiedBlocks : this.affectedBlocksByLabel[level].values())
+			for (final TLongIterator it = blocks.iterator(); it.hasNext(); )
+				if (modifiedBlocks.contains(it.next()))
+					return true;
+		return false;
+	}
+
+	/**
+	 * Propagate the painted voxels to all other scale levels. Only the {@code dirtyIntervalsAtPaintedScale}, i.e. the
+	 * bounding boxes of the voxels that were painted in each block, and their parents/children at the other levels are
+	 * visited: downsampling recomputes only voxels at the coarser level whose children changed, and upsampling only
+	 * touches the voxels covered by the painted voxels.
+	 *
+	 * @param dirtyIntervalsAtPaintedScale bounding box of painted voxels for each block at {@code paintedLevel}
+	 */
 	private void propagateMask(
-			final RandomAccessibleInterval<UnsignedLongType> mask,
-			final TLongSet paintedBlocksAtPaintedScale,
+			final TLongObjectMap<Interval> dirtyIntervalsAtPaintedScale,
 			final int paintedLevel,
 			final UnsignedLongType label,
-			final Interval intervalAtPaintedScale,
 			final Predicate<UnsignedLongType> isPaintedForeground)
 	{
 
-		for (int level = paintedLevel + 1; level < getNumMipmapLevels(); ++level)
+		TLongObjectMap<Interval> dirtyIntervalsAtLowerLevel = dirtyIntervalsAtPaintedScale;
+		for (int level = paintedLevel + 1; level < getNumMipmapLevels() && !dirtyIntervalsAtLowerLevel.isEmpty(); ++level)
 		{
-			final int                                         levelAsFinal          = level;
-			final RandomAccessibleInterval<UnsignedLongType>  atLowerLevel          = dataCanvases[level - 1];
-			final CachedCellImg<UnsignedLongType, LongAccess> atHigherLevel         = dataCanvases[level];
-			final double[]                                    relativeScales        = DataSource.getRelativeScales(
+			final RandomAccessibleInterval<UnsignedLongType>  atLowerLevel   = dataCanvases[level - 1];
+			final CachedCellImg<UnsignedLongType, LongAccess> atHigherLevel  = dataCanvases[level];
+			final double[]                                    relativeScales = DataSource.getRelativeScales(
 					this,
 					0,
 					level - 1,
 					level);
-			final Interval                                    intervalAtHigherLevel = scaleIntervalToLevel(
-					intervalAtPaintedScale,
-					paintedLevel,
-					levelAsFinal);
 
 			LOG.debug("Downsampling level {} of {}", level, getNumMipmapLevels());
 
@@ -957,16 +1139,15 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 				         );
 				throw new RuntimeException("Non-integer relative scales: " + Arrays.toString(relativeScales));
 			}
-			final TLongSet affectedBlocksAtHigherLevel = this.scaleBlocksToLevel(
-					paintedBlocksAtPaintedScale,
-					paintedLevel,
+
+			// the parents of the dirty voxels at the lower level are the dirty voxels at this level
+			final TLongObjectMap<Interval> dirtyIntervalsAtHigherLevel = this.scaleDirtyIntervalsToLevel(
+					dirtyIntervalsAtLowerLevel,
+					level - 1,
 					level);
-			LOG.debug("Affected blocks at level {}: {}", level, affectedBlocksAtHigherLevel);
+			LOG.debug("Affected blocks at level {}: {}", level, dirtyIntervalsAtHigherLevel.keySet());
 			this.affectedBlocksByLabel[level].computeIfAbsent(label.getIntegerLong(), key -> new TLongHashSet())
-					.addAll(
-					affectedBlocksAtHigherLevel);
-
-			LOG.debug("Interval at higher level: {} {}", Intervals.minAsLongArray(intervalAtHigherLevel), Intervals.maxAsLongArray(intervalAtHigherLevel));
+					.addAll(dirtyIntervalsAtHigherLevel.keySet());
 
 			// downsample
 			final int[] steps = DoubleStream.of(relativeScales).mapToInt(d -> (int) d).toArray();
@@ -974,125 +1155,48 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 			downsampleBlocks(
 					Views.extendValue(atLowerLevel, new UnsignedLongType(Label.INVALID)),
 					atHigherLevel,
-					affectedBlocksAtHigherLevel,
-					steps,
-					intervalAtHigherLevel);
+					dirtyIntervalsAtHigherLevel,
+					steps);
 			LOG.debug("Downsampled level {}", level);
+			dirtyIntervalsAtLowerLevel = dirtyIntervalsAtHigherLevel;
 		}
 
 		for (int level = paintedLevel - 1; level >= 0; --level)
 		{
 			LOG.debug("Upsampling for level={}", level);
-			final TLongSet affectedBlocksAtLowerLevel              = this.scaleBlocksToLevel(
-					paintedBlocksAtPaintedScale,
+			final TLongObjectMap<Interval> dirtyIntervalsAtTargetLevel = this.scaleDirtyIntervalsToLevel(
+					dirtyIntervalsAtPaintedScale,
 					paintedLevel,
-					level
-			                                                                                );
-			final double[] currentRelativeScaleFromTargetToPainted = DataSource.getRelativeScales(
-					this,
-					0,
-					level,
-					paintedLevel
-			                                                                                     );
+					level);
 			this.affectedBlocksByLabel[level].computeIfAbsent(label.getIntegerLong(), key -> new TLongHashSet())
-					.addAll(
-					affectedBlocksAtLowerLevel);
-
-			final Interval paintedIntervalAtTargetLevel = scaleIntervalToLevel(
-					intervalAtPaintedScale,
-					paintedLevel,
-					level
-			                                                                  );
+					.addAll(dirtyIntervalsAtTargetLevel.keySet());
 
 			// upsample
 			final CachedCellImg<UnsignedLongType, LongAccess> canvasAtTargetLevel = dataCanvases[level];
-			final CellGrid                                    gridAtTargetLevel   = canvasAtTargetLevel.getCellGrid();
-			final int[]                                       blockSize           = new int[gridAtTargetLevel
-					.numDimensions()];
-			gridAtTargetLevel.cellDimensions(blockSize);
-
-			final long[]                                 cellPosTarget  = new long[gridAtTargetLevel.numDimensions()];
-			final long[]                                 minTarget      = new long[gridAtTargetLevel.numDimensions()];
-			final long[]                                 maxTarget      = new long[gridAtTargetLevel.numDimensions()];
-			final long[]                                 stopTarget     = new long[gridAtTargetLevel.numDimensions()];
-			final long[]                                 minPainted     = new long[minTarget.length];
-			final long[]                                 maxPainted     = new long[minTarget.length];
-
-			final RealRandomAccessible<UnsignedLongType> scaledMask = this.dMasks[level];
+			final RandomAccessible<UnsignedLongType>          scaledMask          = Views.raster(this.dMasks[level]);
 
-			for (final TLongIterator blockIterator = affectedBlocksAtLowerLevel.iterator(); blockIterator.hasNext(); )
+			for (final Interval interval : dirtyIntervalsAtTargetLevel.valueCollection())
 			{
-				final long blockId = blockIterator.next();
-				gridAtTargetLevel.getCellGridPositionFlat(blockId, cellPosTarget);
-				Arrays.setAll(
-						minTarget,
-						d -> Math.min(cellPosTarget[d] * blockSize[d], gridAtTargetLevel.imgDimension(d) - 1)
-				             );
-				Arrays.setAll(
-						maxTarget,
-						d -> Math.min(minTarget[d] + blockSize[d], gridAtTargetLevel.imgDimension(d)) - 1
-				             );
-				Arrays.setAll(stopTarget, d -> maxTarget[d] + 1);
-				this.scalePositionToLevel(minTarget, level, paintedLevel, minPainted);
-				this.scalePositionToLevel(stopTarget, level, paintedLevel, maxPainted);
-				Arrays.setAll(minPainted, d -> Math.min(Math.max(minPainted[d], mask.min(d)), mask.max(d)));
-				Arrays.setAll(maxPainted, d -> Math.min(Math.max(maxPainted[d] - 1, mask.min(d)), mask.max(d)));
-
-				final long[] intersectionMin = minTarget.clone();
-				final long[] intersectionMax = maxTarget.clone();
-
-				intersect(intersectionMin, intersectionMax, paintedIntervalAtTargetLevel);
-
-				if (isNonEmpty(intersectionMin, intersectionMax))
+				LOG.debug(
+						"Upsampling for level {} and dirty interval ({} {})",
+						level,
+						Intervals.minAsLongArray(interval),
+						Intervals.maxAsLongArray(interval)
+				         );
+				final Cursor<UnsignedLongType> canvasCursor = Views.flatIterable(Views.interval(
+						canvasAtTargetLevel,
+						interval
+				                                                                               )).cursor();
+				final Cursor<UnsignedLongType> maskCursor   = Views.flatIterable(Views.interval(
+						scaledMask,
+						interval)).cursor();
+				while (maskCursor.hasNext())
 				{
-
-					LOG.debug("Intersected min={} max={}", intersectionMin, intersectionMax);
-
-					LOG.debug(
-							"Upsampling block: level={}, block min (target)={}, block max (target)={}, block min={}, " +
-									"block max={}, scale={}, mask min={}, mask max={}",
-							level,
-							minTarget,
-							maxTarget,
-							minPainted,
-							maxPainted,
-							currentRelativeScaleFromTargetToPainted,
-							Intervals.minAsLongArray(mask),
-							Intervals.maxAsLongArray(mask)
-					         );
-
-					final IntervalView<BoolType> relevantBlockAtPaintedResolution = Views.interval(
-							Converters.convert(mask, (s, t) -> t.set(isPaintedForeground.test(s)), new BoolType()),
-							minPainted,
-							maxPainted
-					                                                                              );
-
-					if (Intervals.numElements(relevantBlockAtPaintedResolution) == 0)
-					{
-						continue;
-					}
-
-					LOG.debug(
-							"Upsampling for level {} and intersected intervals ({} {})",
-							level,
-							intersectionMin,
-							intersectionMax
-					         );
-					final Interval                 interval     = new FinalInterval(intersectionMin, intersectionMax);
-					final Cursor<UnsignedLongType> canvasCursor = Views.flatIterable(Views.interval(
-							canvasAtTargetLevel,
-							interval
-					                                                                               )).cursor();
-					final Cursor<UnsignedLongType> maskCursor   = Views.flatIterable(Views.interval(Views.raster(
-							scaledMask), interval)).cursor();
-					while (maskCursor.hasNext())
+					canvasCursor.fwd();
+					final boolean wasPainted = isPaintedForeground.test(maskCursor.next());
+					if (wasPainted)
 					{
-						canvasCursor.fwd();
-						final boolean wasPainted = isPaintedForeground.test(maskCursor.next());
-						if (wasPainted)
-						{
-							canvasCursor.get().set(label);
-						}
+						canvasCursor.get().set(label);
 					}
 				}
 			}
@@ -1100,6 +1204,42 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 		}
 	}
 
+	/**
+	 * Scale the dirty interval of each block at {@code level} to {@code targetLevel} and distribute the scaled intervals
+	 * over the canvas blocks at {@code targetLevel}. Intervals that fall into the same target block are merged into
+	 * their bounding box.
+	 *
+	 * @param dirtyIntervals dirty interval for each block at {@code level}
+	 * @return dirty interval for each block at {@code targetLevel}, clipped to the respective block
+	 */
+	private TLongObjectMap<Interval> scaleDirtyIntervalsToLevel(
+			final TLongObjectMap<Interval> dirtyIntervals,
+			final int level,
+			final int targetLevel)
+	{
+		final CellGrid                 targetGrid   = this.dataCanvases[targetLevel].getCellGrid();
+		final BlockSpec                blockSpec    = new BlockSpec(targetGrid);
+		final Interval                 targetBounds = new FinalInterval(targetGrid.getImgDimensions());
+		final TLongObjectMap<Interval> scaled       = new TLongObjectHashMap<>();
+		for (final Interval dirtyInterval : dirtyIntervals.valueCollection())
+		{
+			final Interval atTargetLevel = Intervals.intersect(
+					scaleIntervalToLevel(dirtyInterval, level, targetLevel),
+					targetBounds);
+			if (Intervals.isEmpty(atTargetLevel))
+				continue;
+			for (final TLongIterator blockIt = affectedBlocks(targetGrid, atTargetLevel).iterator(); blockIt.hasNext(); )
+			{
+				final long blockId = blockIt.next();
+				blockSpec.fromLinearIndex(blockId);
+				final Interval dirtyInBlock = Intervals.intersect(atTargetLevel, blockSpec.asInterval());
+				final Interval existing     = scaled.get(blockId);
+				scaled.put(blockId, existing == null ? dirtyInBlock : Intervals.union(existing, dirtyInBlock));
+			}
+		}
+		return scaled;
+	}
+
 	public static TLongSet affectedBlocks(final long[] gridDimensions, final int[] blockSize, final Interval...
 			intervals)
 	{
@@ -1208,7 +1348,13 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 		return blocksInHighRes;
 	}
 
-	public static <M extends BooleanType<M>, C extends IntegerType<C>> void paintAffectedPixels(
+	/**
+	 * Paint {@code paintLabel} into {@code canvas} wherever {@code mask} is set within {@code paintedInterval} and
+	 * {@code relevantBlocks}.
+	 *
+	 * @return bounding box of the painted voxels for each block that contains at least one painted voxel
+	 */
+	public static <M extends BooleanType<M>, C extends IntegerType<C>> TLongObjectMap<Interval> paintAffectedPixels(
 			final TLongSet relevantBlocks,
 			final RandomAccessible<M> mask,
 			final RandomAccessibleInterval<C> canvas,
@@ -1226,6 +1372,10 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 
 		final long[] intervalMin = Intervals.minAsLongArray(paintedInterval);
 		final long[] intervalMax = Intervals.maxAsLongArray(paintedInterval);
+		final long[] dirtyMin    = new long[grid.numDimensions()];
+		final long[] dirtyMax    = new long[grid.numDimensions()];
+
+		final TLongObjectMap<Interval> dirtyIntervals = new TLongObjectHashMap<>();
 
 		for (final TLongIterator blockIt = relevantBlocks.iterator(); blockIt.hasNext(); )
 		{
@@ -1249,17 +1399,30 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 					canvas,
 					restrictedInterval
 			                                                                      )).cursor();
+			Arrays.fill(dirtyMin, Long.MAX_VALUE);
+			Arrays.fill(dirtyMax, Long.MIN_VALUE);
 			while (sourceCursor.hasNext())
 			{
 				targetCursor.fwd();
 				if (sourceCursor.next().get())
 				{
 					targetCursor.get().set(paintLabel);
+					for (int d = 0; d < dirtyMin.length; ++d)
+					{
+						final long p = sourceCursor.getLongPosition(d);
+						dirtyMin[d] = Math.min(dirtyMin[d], p);
+						dirtyMax[d] = Math.max(dirtyMax[d], p);
+					}
 				}
 			}
 
+			if (isNonEmpty(dirtyMin, dirtyMax))
+				dirtyIntervals.put(blockId, new FinalInterval(dirtyMin, dirtyMax));
+
 		}
 
+		return dirtyIntervals;
+
 	}
 
 	/**
@@ -38,6 +38,22 @@ public interface PersistCanvas {
 			return this.newUniqueLabels.toArray();
 		}
 
+		public long[] getOldUniqueIds()
+		{
+			return this.oldUniqueLabels.toArray();
+		}
+
+		/**
+		 * @return diff that undoes this diff, i.e. with old and new unique labels swapped
+		 */
+		public BlockDiff inverse()
+		{
+			final BlockDiff inverse = new BlockDiff();
+			inverse.oldUniqueLabels.addAll(this.newUniqueLabels);
+			inverse.newUniqueLabels.addAll(this.oldUniqueLabels);
+			return inverse;
+		}
+
 		public long[] getAddedIds()
 		{
 			return getIds(this.wasAdded);
@@ -95,8 +111,26 @@ public interface PersistCanvas {
 
 	}
 
+	/**
+	 * Receives human readable progress updates of {@link #persistCanvas(CachedCellImg, long[], ProgressListener)}.
+	 * May be called concurrently from multiple threads.
+	 */
+	@FunctionalInterface
+	interface ProgressListener
+	{
+		void progress(int level, String message);
+	}
+
 	List<TLongObjectMap<BlockDiff>> persistCanvas(CachedCellImg<UnsignedLongType, ?> canvas, long[] blockIds) throws UnableToPersistCanvas;
 
+	default List<TLongObjectMap<BlockDiff>> persistCanvas(
+			final CachedCellImg<UnsignedLongType, ?> canvas,
+			final long[] blockIds,
+			final ProgressListener progressListener) throws UnableToPersistCanvas
+	{
+		return persistCanvas(canvas, blockIds);
+	}
+
 	default void updateLabelBlockLookup(final List<TLongObjectMap<BlockDiff>> blockDiffs) throws UnableToUpdateLabelBlockLookup
 	{
 		throw new LabelBlockLookupUpdateNotSupported("");
@@ -106,4 +140,32 @@ public interface PersistCanvas {
 	{
 		return false;
 	}
+
+	/**
+	 * @return {@code true} if a previous commit was interrupted or cancelled and needs to be either
+	 * {@link #resumeIncompleteCommit(ProgressListener) resumed} or {@link #rollbackIncompleteCommit() rolled back}
+	 */
+	default boolean hasIncompleteCommit()
+	{
+		return false;
+	}
+
+	/**
+	 * Finish an {@link #hasIncompleteCommit() incomplete commit}, skipping all blocks that were written already.
+	 * Equivalent to {@link #persistCanvas(CachedCellImg, long[], ProgressListener)} for the canvas of the original
+	 * commit, i.e. {@link #updateLabelBlockLookup(List)} should be called with the returned block diffs.
+	 */
+	default List<TLongObjectMap<BlockDiff>> resumeIncompleteCommit(final ProgressListener progressListener) throws UnableToPersistCanvas
+	{
+		throw new UnableToPersistCanvas("Resuming commits not supported by " + getClass().getName());
+	}
+
+	/**
+	 * Restore the background, and label block lookup if applicable, to the state before an
+	 * {@link #hasIncompleteCommit() incomplete commit}.
+	 */
+	default void rollbackIncompleteCommit() throws UnableToPersistCanvas
+	{
+		throw new UnableToPersistCanvas("Rolling back commits not supported by " + getClass().getName());
+	}
 }
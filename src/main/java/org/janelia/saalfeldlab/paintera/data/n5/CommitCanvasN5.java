@@ -40,25 +40,42 @@ import org.janelia.saalfeldlab.n5.DatasetAttributes;
 import org.janelia.saalfeldlab.n5.LongArrayDataBlock;
 import org.janelia.saalfeldlab.n5.N5Reader;
 import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.hdf5.N5HDF5Reader;
 import org.janelia.saalfeldlab.n5.imglib2.N5LabelMultisets;
 import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
 import org.janelia.saalfeldlab.paintera.data.mask.persist.PersistCanvas;
 import org.janelia.saalfeldlab.paintera.data.mask.persist.UnableToPersistCanvas;
 import org.janelia.saalfeldlab.paintera.data.mask.persist.UnableToUpdateLabelBlockLookup;
 import org.janelia.saalfeldlab.paintera.exception.PainteraException;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
+import org.janelia.saalfeldlab.util.grids.LabelBlockLookupSharded;
 import org.janelia.saalfeldlab.util.math.ArrayMath;
 import org.janelia.saalfeldlab.util.n5.N5Helpers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.lang.invoke.MethodHandles;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
+import java.util.stream.LongStream;
 
 public class CommitCanvasN5 implements PersistCanvas
 {
@@ -75,10 +92,48 @@ public class CommitCanvasN5 implements PersistCanvas
 
 	private final boolean isLabelMultiset;
 
+	private final int numThreads;
+
+	private final List<BlocksWrittenListener> blocksWrittenListeners = new CopyOnWriteArrayList<>();
+
+	private Supplier<Path> journalDirectory = null;
+
+	/**
+	 * Journal of the current or of an incomplete commit, if any.
+	 */
+	private CommitJournal journal = null;
+
+	/**
+	 * Notified about blocks that were (or may have been) rewritten by
+	 * {@link #persistCanvas(CachedCellImg, long[], ProgressListener)}, e.g. to invalidate data derived from them.
+	 */
+	@FunctionalInterface
+	public interface BlocksWrittenListener
+	{
+		/**
+		 * @param level scale level
+		 * @param blocks indices of the blocks in the cell grid of {@code level}
+		 */
+		void blocksWritten(int level, long[] blocks);
+	}
+
 	public CommitCanvasN5(final N5Writer n5, final String dataset) throws IOException {
+		this(n5, dataset, defaultNumThreads(n5));
+	}
+
+	/**
+	 *
+	 * @param n5 container
+	 * @param dataset label dataset
+	 * @param numThreads number of workers used to write blocks in {@link #persistCanvas(CachedCellImg, long[], ProgressListener)}.
+	 *                   Ignored for HDF5 containers, which do not support concurrent access.
+	 * @throws IOException if the dataset attributes cannot be read
+	 */
+	public CommitCanvasN5(final N5Writer n5, final String dataset, final int numThreads) throws IOException {
 		super();
 		this.n5 = n5;
 		this.dataset = dataset;
+		this.numThreads = n5 instanceof N5HDF5Reader ? 1 : Math.max(numThreads, 1);
 		this.isPainteraDataset = N5Helpers.isPainteraDataset(this.n5, this.dataset);
 		final String volumetricDataGroup = this.isPainteraDataset ? this.dataset + "/data" : this.dataset;
 		this.isMultiscale = N5Helpers.isMultiScale(this.n5, volumetricDataGroup);
@@ -99,6 +154,165 @@ public class CommitCanvasN5 implements PersistCanvas
 		return this.dataset;
 	}
 
+	public void addBlocksWrittenListener(final BlocksWrittenListener listener)
+	{
+		this.blocksWrittenListeners.add(listener);
+	}
+
+	public void removeBlocksWrittenListener(final BlocksWrittenListener listener)
+	{
+		this.blocksWrittenListeners.remove(listener);
+	}
+
+	/**
+	 * Keep a {@link CommitJournal} of each commit in {@code journalDirectory} so that interrupted or cancelled
+	 * commits can be {@link #resumeIncompleteCommit(ProgressListener) resumed} or
+	 * {@link #rollbackIncompleteCommit() rolled back}. Commits are not journaled if {@code journalDirectory} is
+	 * {@code null} (default).
+	 */
+	public synchronized void setJournalDirectory(final Supplier<Path> journalDirectory)
+	{
+		this.journalDirectory = journalDirectory;
+		this.journal = null;
+	}
+
+	@Override
+	public synchronized boolean hasIncompleteCommit()
+	{
+		try
+		{
+			return incompleteJournal() != null;
+		}
+		catch (final IOException e)
+		{
+			LOG.error("Unable to read commit journal for dataset {}", dataset, e);
+			return false;
+		}
+	}
+
+	@Override
+	public List<TLongObjectMap<BlockDiff>> resumeIncompleteCommit(final ProgressListener progressListener) throws UnableToPersistCanvas
+	{
+		final CommitJournal journal;
+		synchronized (this)
+		{
+			try
+			{
+				journal = incompleteJournal();
+			}
+			catch (final IOException e)
+			{
+				throw new UnableToPersistCanvas("Unable to read commit journal.", e);
+			}
+		}
+		if (journal == null)
+			throw new UnableToPersistCanvas("No incomplete commit for dataset " + dataset);
+		LOG.info("Resuming commit from journal {}", journal.directory());
+		final ExecutorService executor = newExecutor();
+		try
+		{
+			final List<TLongObjectMap<BlockDiff>> blockDiffs = persistCanvas(journal.canvas(), journal.canvasGrid(), journal.blocks(), progressListener, journal, executor);
+			if (!supportsLabelBlockLookupUpdate())
+				finishJournal();
+			return blockDiffs;
+		}
+		catch (final IOException e)
+		{
+			releaseJournal();
+			throw new UnableToPersistCanvas("Unable to finish commit journal.", e);
+		}
+		catch (final UnableToPersistCanvas | RuntimeException e)
+		{
+			releaseJournal();
+			throw e;
+		}
+		finally
+		{
+			shutdownAndAwaitTermination(executor);
+		}
+	}
+
+	/**
+	 * Restore all background blocks that were backed up in the journal and revert the label block lookup for all
+	 * levels for which the update was started.
+	 */
+	@Override
+	public synchronized void rollbackIncompleteCommit() throws UnableToPersistCanvas
+	{
+		try
+		{
+			final CommitJournal journal = incompleteJournal();
+			if (journal == null)
+				throw new UnableToPersistCanvas("No incomplete commit for dataset " + dataset);
+			LOG.info("Rolling back commit from journal {}", journal.directory());
+
+			if (supportsLabelBlockLookupUpdate())
+			{
+				final List<TLongObjectMap<BlockDiff>> inverseBlockDiffs = new ArrayList<>();
+				final List<TLongObjectMap<BlockDiff>> writtenBlockDiffs = journal.writtenBlockDiffs();
+				for (int level = 0; level < writtenBlockDiffs.size(); ++level)
+				{
+					final TLongObjectMap<BlockDiff> inverse = new TLongObjectHashMap<>();
+					if (journal.isLookupUpdateStarted(level))
+						writtenBlockDiffs.get(level).forEachEntry((block, blockDiff) -> {
+							inverse.put(block, blockDiff.inverse());
+							return true;
+						});
+					inverseBlockDiffs.add(inverse);
+				}
+				updateLabelBlockLookup(inverseBlockDiffs, null);
+			}
+
+			final List<DatasetSpec> levelDatasets = levelDatasets();
+			for (int level = 0; level < levelDatasets.size(); ++level)
+			{
+				final DatasetSpec levelDataset = levelDatasets.get(level);
+				final long[] restored = journal.restoreBackups(level, n5, levelDataset.dataset, levelDataset.attributes, new BlockSpec(levelDataset.grid));
+				for (final BlocksWrittenListener listener : blocksWrittenListeners)
+					listener.blocksWritten(level, restored);
+			}
+
+			finishJournal();
+		}
+		catch (final IOException | UnableToUpdateLabelBlockLookup e)
+		{
+			throw new UnableToPersistCanvas("Unable to roll back commit.", e);
+		}
+	}
+
+	private CommitJournal incompleteJournal() throws IOException
+	{
+		if (this.journal == null && this.journalDirectory != null)
+			this.journal = CommitJournal.open(this.journalDirectory.get());
+		return this.journal;
+	}
+
+	private synchronized void finishJournal() throws IOException
+	{
+		if (this.journal != null)
+			this.journal.finish();
+		this.journal = null;
+	}
+
+	/**
+	 * Close the journal of a failed or cancelled commit. It is re-opened from disk when needed: workers that were
+	 * interrupted while appending to the journal close its channel.
+	 */
+	private synchronized void releaseJournal()
+	{
+		if (this.journal == null)
+			return;
+		try
+		{
+			this.journal.close();
+		}
+		catch (final IOException e)
+		{
+			LOG.debug("Unable to close commit journal {}", this.journal.directory(), e);
+		}
+		this.journal = null;
+	}
+
 	@Override
 	public boolean supportsLabelBlockLookupUpdate()
 	{
@@ -107,8 +321,47 @@ public class CommitCanvasN5 implements PersistCanvas
 
 	@Override
 	public void updateLabelBlockLookup(final List<TLongObjectMap<BlockDiff>> blockDiffsByLevel) throws UnableToUpdateLabelBlockLookup
+	{
+		final CommitJournal journal;
+		synchronized (this)
+		{
+			journal = this.journal;
+		}
+		try
+		{
+			updateLabelBlockLookup(blockDiffsByLevel, journal);
+		}
+		catch (final UnableToUpdateLabelBlockLookup | RuntimeException e)
+		{
+			releaseJournal();
+			throw e;
+		}
+		try
+		{
+			finishJournal();
+		}
+		catch (final IOException e)
+		{
+			throw new UnableToUpdateLabelBlockLookup("Unable to finish commit journal for " + this.dataset, e);
+		}
+	}
+
+	/**
+	 * Levels that were updated according to {@code journal} are skipped. Updating a level is idempotent, so a level
+	 * whose update was interrupted is simply updated again. Levels beyond the end of {@code blockDiffsByLevel} have no
+	 * modified blocks, e.g. when rolling back a commit that was interrupted before all levels were written.
+	 *
+	 * Unique labels of the modified blocks are written concurrently. A {@link LabelBlockLookupSharded} is updated in
+	 * one batch per level, with a single read and write per affected shard, while the unique labels are written. Other
+	 * lookups are updated one id at a time on the calling thread because they may share state between ids, after the
+	 * unique labels were written.
+	 */
+	private void updateLabelBlockLookup(
+			final List<TLongObjectMap<BlockDiff>> blockDiffsByLevel,
+			final CommitJournal journal) throws UnableToUpdateLabelBlockLookup
 	{
 		LOG.debug("Updating label block lookup with {}", blockDiffsByLevel);
+		final ExecutorService executor = newExecutor();
 		try {
 			final String uniqueLabelsPath = this.dataset + "/unique-labels";
 			LOG.debug("uniqueLabelsPath {}", uniqueLabelsPath);
@@ -122,11 +375,21 @@ public class CommitCanvasN5 implements PersistCanvas
 			LOG.debug("Found scale datasets {}", (Object) scaleUniqueLabels);
 			for (int level = 0; level < scaleUniqueLabels.length; ++level)
 			{
+				if (journal != null && journal.isLookupUpdated(level))
+				{
+					LOG.debug("Label block lookup at level {} was updated already", level);
+					continue;
+				}
+				if (journal != null)
+					journal.lookupUpdateStarted(level);
+
 				final DatasetSpec datasetUniqueLabels = DatasetSpec.of(n5, Paths.get(uniqueLabelsPath, scaleUniqueLabels[level]).toString());
 				final TLongObjectMap<TLongHashSet> removedById = new TLongObjectHashMap<>();
 				final TLongObjectMap<TLongHashSet> addedById = new TLongObjectHashMap<>();
-				final TLongObjectMap<BlockDiff> blockDiffs = blockDiffsByLevel.get(level);
-				final BlockSpec blockSpec = new BlockSpec(datasetUniqueLabels.grid);
+				final TLongObjectMap<BlockDiff> blockDiffs = level < blockDiffsByLevel.size()
+						? blockDiffsByLevel.get(level)
+						: new TLongObjectHashMap<>();
+				final List<CompletableFuture<Void>> uniqueLabelsWritten = new ArrayList<>();
 
 				for (final TLongObjectIterator<BlockDiff> blockDiffIt = blockDiffs.iterator(); blockDiffIt.hasNext(); )
 				{
@@ -134,69 +397,51 @@ public class CommitCanvasN5 implements PersistCanvas
 					final long blockId = blockDiffIt.key();
 					final BlockDiff blockDiff = blockDiffIt.value();
 
-					blockSpec.fromLinearIndex(blockId);
-
-					LOG.trace("Unique labels for block ({}: {} {}): {}", blockId, blockSpec.min, blockSpec.max, blockDiff);
-
-					n5.writeBlock(
-							datasetUniqueLabels.dataset,
-							datasetUniqueLabels.attributes,
-							new LongArrayDataBlock(
-									Intervals.dimensionsAsIntArray(new FinalInterval(blockSpec.min, blockSpec.max)),
-									blockSpec.pos,
-									blockDiff.getNewUniqueIds()));
-
-					final long[] removedInBlock = blockDiff.getRemovedIds();
-					final long[] addedInBlock = blockDiff.getAddedIds();
-
-					for (final long removed : removedInBlock)
+					uniqueLabelsWritten.add(CompletableFuture.runAsync(() -> {
+						final BlockSpec blockSpec = new BlockSpec(datasetUniqueLabels.grid);
+						blockSpec.fromLinearIndex(blockId);
+						LOG.trace("Unique labels for block ({}: {} {}): {}", blockId, blockSpec.min, blockSpec.max, blockDiff);
+						try
+						{
+							n5.writeBlock(
+									datasetUniqueLabels.dataset,
+									datasetUniqueLabels.attributes,
+									new LongArrayDataBlock(
+											Intervals.dimensionsAsIntArray(new FinalInterval(blockSpec.min, blockSpec.max)),
+											blockSpec.pos,
+											blockDiff.getNewUniqueIds()));
+						}
+						catch (final IOException e)
+						{
+							throw new UncheckedIOException(e);
+						}
+					}, executor));
+
+					for (final long removed : blockDiff.getRemovedIds())
 						computeIfAbsent(removedById, removed, TLongHashSet::new).add(blockId);
 
-					for (final long added : addedInBlock)
+					for (final long added : blockDiff.getAddedIds())
 						computeIfAbsent(addedById, added, TLongHashSet::new).add(blockId);
 
 				}
 
-				final TLongSet modifiedIds = new TLongHashSet();
-				modifiedIds.addAll(removedById.keySet());
-				modifiedIds.addAll(addedById.keySet());
 				LOG.debug("Removed by id: {}", removedById);
 				LOG.debug("Added by id: {}", addedById);
-				for (final long modifiedId : modifiedIds.toArray())
+				if (labelBlockLoader instanceof LabelBlockLookupSharded)
 				{
-					final Interval[] blockList = labelBlockLoader.read(new LabelBlockLookupKey(level, modifiedId));
-					final TLongSet blockListLinearIndices = new TLongHashSet();
-					for (final Interval block : blockList)
-					{
-						blockSpec.fromInterval(block);
-						blockListLinearIndices.add(blockSpec.asLinearIndex());
-					}
-
-					final TLongSet removed = removedById.get(modifiedId);
-					final TLongSet added = addedById.get(modifiedId);
-
-					LOG.debug("Removed for id {}: {}", modifiedId, removed);
-					LOG.debug("Added for id {}: {}", modifiedId, added);
-
-					if (removed != null)
-						blockListLinearIndices.removeAll(removed);
-
-					if (added != null)
-						blockListLinearIndices.addAll(added);
-
-					final Interval[] updatedIntervals = new Interval[blockListLinearIndices.size()];
-					final TLongIterator blockIt = blockListLinearIndices.iterator();
-					for (int index = 0; blockIt.hasNext(); ++index)
-					{
-						final long blockId = blockIt.next();
-						blockSpec.fromLinearIndex(blockId);
-						final Interval interval = blockSpec.asInterval();
-						updatedIntervals[index] = interval;
-						LOG.trace("Added interval {} for linear index {} and block spec {}", interval, blockId, blockSpec);
-					}
-					labelBlockLoader.write(new LabelBlockLookupKey(level, modifiedId), updatedIntervals);
+					((LabelBlockLookupSharded) labelBlockLoader).update(level, removedById, addedById, executor);
+					awaitAll(uniqueLabelsWritten);
+				}
+				else
+				{
+					// per-id lookups may live in the same container, which must not be accessed from the calling
+					// thread while the workers write (HDF5)
+					awaitAll(uniqueLabelsWritten);
+					updateLabelBlockLookupPerId(labelBlockLoader, level, new BlockSpec(datasetUniqueLabels.grid), removedById, addedById);
 				}
 
+				if (journal != null)
+					journal.lookupUpdated(level);
 			}
 
 
@@ -205,18 +450,186 @@ public class CommitCanvasN5 implements PersistCanvas
 		{
 			throw new UnableToUpdateLabelBlockLookup("Unable to update label block lookup for " + this.dataset, e);
 		}
+		finally
+		{
+			shutdownAndAwaitTermination(executor);
+		}
 		LOG.info("Finished updating label-block-lookup");
 	}
 
+	private static void updateLabelBlockLookupPerId(
+			final LabelBlockLookup labelBlockLoader,
+			final int level,
+			final BlockSpec blockSpec,
+			final TLongObjectMap<TLongHashSet> removedById,
+			final TLongObjectMap<TLongHashSet> addedById) throws IOException
+	{
+		final TLongSet modifiedIds = new TLongHashSet();
+		modifiedIds.addAll(removedById.keySet());
+		modifiedIds.addAll(addedById.keySet());
+		for (final long modifiedId : modifiedIds.toArray())
+		{
+			final Interval[] blockList = labelBlockLoader.read(new LabelBlockLookupKey(level, modifiedId));
+			final TLongSet blockListLinearIndices = new TLongHashSet();
+			for (final Interval block : blockList)
+			{
+				blockSpec.fromInterval(block);
+				blockListLinearIndices.add(blockSpec.asLinearIndex());
+			}
+
+			final TLongSet removed = removedById.get(modifiedId);
+			final TLongSet added = addedById.get(modifiedId);
+
+			LOG.debug("Removed for id {}: {}", modifiedId, removed);
+			LOG.debug("Added for id {}: {}", modifiedId, added);
+
+			if (removed != null)
+				blockListLinearIndices.removeAll(removed);
+
+			if (added != null)
+				blockListLinearIndices.addAll(added);
+
+			final Interval[] updatedIntervals = new Interval[blockListLinearIndices.size()];
+			final TLongIterator blockIt = blockListLinearIndices.iterator();
+			for (int index = 0; blockIt.hasNext(); ++index)
+			{
+				final long blockId = blockIt.next();
+				blockSpec.fromLinearIndex(blockId);
+				final Interval interval = blockSpec.asInterval();
+				updatedIntervals[index] = interval;
+				LOG.trace("Added interval {} for linear index {} and block spec {}", interval, blockId, blockSpec);
+			}
+			labelBlockLoader.write(new LabelBlockLookupKey(level, modifiedId), updatedIntervals);
+		}
+	}
+
+	private static void awaitAll(final List<CompletableFuture<Void>> futures) throws IOException
+	{
+		try
+		{
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+		}
+		catch (final InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while writing unique labels");
+		}
+		catch (final ExecutionException e)
+		{
+			if (e.getCause() instanceof UncheckedIOException)
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
 	@Override
 	public List<TLongObjectMap<BlockDiff>> persistCanvas(final CachedCellImg<UnsignedLongType, ?> canvas, final long[] blocks) throws UnableToPersistCanvas {
+		return persistCanvas(canvas, blocks, (level, message) -> {});
+	}
+
+	/**
+	 * Write {@code blocks} of {@code canvas} into the background and propagate the changes to all lower resolution
+	 * levels. Blocks are processed in parallel on {@link #numThreads()} workers. Downsampling of a block at level
+	 * {@code N+1} is started as soon as all affected blocks at level {@code N} that it reads from have been written,
+	 * i.e. levels are pipelined rather than processed one after another.
+	 *
+	 * If a {@link #setJournalDirectory(Supplier) journal directory} is set, the commit is journaled and can be
+	 * resumed or rolled back if it is interrupted, e.g. by cancelling or a crash. The calling thread may be
+	 * interrupted to cancel the commit.
+	 *
+	 * @throws UnableToPersistCanvas if a previous commit is incomplete
+	 */
+	@Override
+	public List<TLongObjectMap<BlockDiff>> persistCanvas(
+			final CachedCellImg<UnsignedLongType, ?> canvas,
+			final long[] blocks,
+			final ProgressListener progressListener) throws UnableToPersistCanvas {
 		LOG.info("Committing canvas: {} blocks", blocks.length);
 		LOG.debug("Affected blocks in grid {}: {}", canvas.getCellGrid(), blocks);
+		if (hasIncompleteCommit())
+			throw new UnableToPersistCanvas("Previous commit is incomplete and needs to be resumed or rolled back first.");
+		final ExecutorService executor = newExecutor();
 		try
 		{
-			final String dataset = isPainteraDataset ? this.dataset + "/data" : this.dataset;
+			final CommitJournal journal = beginJournal(canvas, blocks, executor);
+			final List<TLongObjectMap<BlockDiff>> blockDiffs = persistCanvas(canvas, canvas.getCellGrid(), blocks, progressListener, journal, executor);
+			if (!supportsLabelBlockLookupUpdate())
+				finishJournal();
+			return blockDiffs;
+		}
+		catch (final IOException e)
+		{
+			LOG.error("Unable to commit canvas.", e);
+			releaseJournal();
+			throw new UnableToPersistCanvas("Unable to commit canvas.", e);
+		}
+		catch (final UnableToPersistCanvas | RuntimeException e)
+		{
+			releaseJournal();
+			throw e;
+		}
+		finally
+		{
+			shutdownAndAwaitTermination(executor);
+		}
+	}
+
+	private synchronized CommitJournal beginJournal(
+			final CachedCellImg<UnsignedLongType, ?> canvas,
+			final long[] blocks,
+			final ExecutorService executor) throws IOException
+	{
+		if (this.journalDirectory == null)
+			return null;
+		this.journal = CommitJournal.begin(this.journalDirectory.get(), canvas, canvas.getCellGrid(), blocks, (snapshotBlocks, task) -> {
+			final List<CompletableFuture<Void>> snapshots = new ArrayList<>();
+			for (final long block : snapshotBlocks)
+				snapshots.add(CompletableFuture.runAsync(() -> {
+					try
+					{
+						task.run(block);
+					}
+					catch (final IOException e)
+					{
+						throw new UncheckedIOException(e);
+					}
+				}, executor));
+			for (final CompletableFuture<Void> snapshot : snapshots)
+			{
+				try
+				{
+					snapshot.get();
+				}
+				catch (final InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while taking canvas snapshot.");
+				}
+				catch (final ExecutionException e)
+				{
+					if (e.getCause() instanceof UncheckedIOException)
+						throw ((UncheckedIOException) e.getCause()).getCause();
+					throw new IOException(e.getCause());
+				}
+			}
+		});
+		return this.journal;
+	}
 
-			final CellGrid canvasGrid = canvas.getCellGrid();
+	private List<TLongObjectMap<BlockDiff>> persistCanvas(
+			final RandomAccessibleInterval<UnsignedLongType> canvas,
+			final CellGrid canvasGrid,
+			final long[] blocks,
+			final ProgressListener progressListener,
+			final CommitJournal journal,
+			final ExecutorService executor) throws UnableToPersistCanvas {
+		final List<long[]> blocksByLevel = new ArrayList<>();
+		blocksByLevel.add(blocks);
+		try
+		{
+			final String dataset = isPainteraDataset ? this.dataset + "/data" : this.dataset;
 
 			final DatasetSpec highestResolutionDataset = DatasetSpec.of(n5, this.isMultiscale ? N5Helpers.getFinestLevelJoinWithGroup(n5, dataset) : dataset);
 
@@ -225,29 +638,16 @@ public class CommitCanvasN5 implements PersistCanvas
 
 			checkGridsCompatibleOrFail(canvasGrid, highestResolutionDataset.grid);
 
-			final BlockSpec highestResolutionBlockSpec = new BlockSpec(highestResolutionDataset.grid);
-
 			LOG.debug("Persisting canvas with grid={} into background with grid={}", canvasGrid, highestResolutionDataset.grid);
 
-			final List<TLongObjectMap<BlockDiff>> blockDiffs = new ArrayList<>();
-			final TLongObjectHashMap<BlockDiff> blockDiffsAtHighestLevel = new TLongObjectHashMap<>();
-			blockDiffs.add(blockDiffsAtHighestLevel);
-
-			if (this.isLabelMultiset)
-				writeBlocksLabelMultisetType(canvas, blocks, highestResolutionDataset, highestResolutionBlockSpec, blockDiffsAtHighestLevel);
-			else {
-				writeBlocksLabelIntegerType(canvas, blocks, highestResolutionDataset, highestResolutionBlockSpec, blockDiffsAtHighestLevel);
-			}
-
+			// Set up all levels before submitting any tasks: for HDF5 containers, n5 must not be accessed concurrently.
+			final List<DownsamplingLevel> lowerResolutionLevels = new ArrayList<>();
 			if (isMultiscale)
 			{
 				final String[] scaleDatasets = N5Helpers.listAndSortScaleDatasets(n5, dataset);
 
 				for (int level = 1; level < scaleDatasets.length; ++level)
 				{
-
-					final TLongObjectHashMap<BlockDiff> blockDiffsAt = new TLongObjectHashMap<>();
-					blockDiffs.add(blockDiffsAt);
 					final DatasetSpec targetDataset = DatasetSpec.of(n5, Paths.get(dataset, scaleDatasets[level]).toString());
 					final DatasetSpec previousDataset = DatasetSpec.of(n5, Paths.get(dataset, scaleDatasets[level - 1]).toString());
 
@@ -260,45 +660,53 @@ public class CommitCanvasN5 implements PersistCanvas
 							highestResolutionDataset.grid,
 							targetDataset.grid,
 							targetDownsamplingFactors).toArray();
-                    LOG.debug("Affected blocks at higher level: {}", affectedBlocks);
-
-					final Scale3D targetToPrevious = new Scale3D(relativeDownsamplingFactors);
-
-					final int targetMaxNumEntries = N5Helpers.getIntegerAttribute(n5, targetDataset.dataset, N5Helpers.MAX_NUM_ENTRIES_KEY, -1);
-
-					final int[] relativeFactors = ArrayMath.asInt3(relativeDownsamplingFactors, true);
-
+					LOG.debug("Affected blocks at higher level: {}", affectedBlocks);
 					LOG.debug("level={}: Got {} blocks", level, affectedBlocks.length);
+					blocksByLevel.add(affectedBlocks);
 
-					final BlockSpec blockSpec = new BlockSpec(targetDataset.grid);
-
+					final RandomAccessibleInterval<?> previousData;
 					if (this.isLabelMultiset)
-						downsampleAndWriteBlocksLabelMultisetType(
-								affectedBlocks,
-								n5,
-								previousDataset,
-								targetDataset,
-								blockSpec,
-								targetToPrevious,
-								relativeFactors,
-								targetMaxNumEntries,
-								level,
-								blockDiffsAt);
+					{
+						// In older converted data the "isLabelMultiset" attribute may not be present in s1,s2,... datasets.
+						// Make sure the attribute is set to avoid "is not a label multiset" exception.
+						n5.setAttribute(previousDataset.dataset, N5Helpers.IS_LABEL_MULTISET_KEY, true);
+						n5.setAttribute(targetDataset.dataset, N5Helpers.IS_LABEL_MULTISET_KEY, true);
+						previousData = N5LabelMultisets.openLabelMultiset(n5, previousDataset.dataset);
+					}
 					else
-						downsampleAndWriteBlocksIntegerType(
-								affectedBlocks,
-								n5,
-								previousDataset,
-								targetDataset,
-								blockSpec,
-								targetToPrevious,
-								relativeFactors,
-								level,
-								blockDiffsAt);
-
+						previousData = openIntegerType(n5, previousDataset.dataset);
+
+					lowerResolutionLevels.add(new DownsamplingLevel(
+							level,
+							previousDataset,
+							targetDataset,
+							affectedBlocks,
+							new Scale3D(relativeDownsamplingFactors),
+							ArrayMath.asInt3(relativeDownsamplingFactors, true),
+							N5Helpers.getIntegerAttribute(n5, targetDataset.dataset, N5Helpers.MAX_NUM_ENTRIES_KEY, -1),
+							previousData));
 				}
-
 			}
+
+			final List<TLongObjectMap<CompletableFuture<BlockDiff>>> futuresByLevel = new ArrayList<>();
+			final LevelProgress highestResolutionProgress = new LevelProgress(0, blocks.length, progressListener);
+			if (this.isLabelMultiset)
+				futuresByLevel.add(writeBlocksLabelMultisetType(canvas, blocks, highestResolutionDataset, journal, executor, highestResolutionProgress));
+			else
+				futuresByLevel.add(writeBlocksLabelIntegerType(canvas, blocks, highestResolutionDataset, journal, executor, highestResolutionProgress));
+
+			for (final DownsamplingLevel level : lowerResolutionLevels)
+				futuresByLevel.add(downsampleAndWriteBlocks(
+						level,
+						futuresByLevel.get(futuresByLevel.size() - 1),
+						journal,
+						executor,
+						new LevelProgress(level.level, level.affectedBlocks.length, progressListener)));
+
+			final List<TLongObjectMap<BlockDiff>> blockDiffs = new ArrayList<>();
+			for (final TLongObjectMap<CompletableFuture<BlockDiff>> futures : futuresByLevel)
+				blockDiffs.add(collectInBlockOrder(futures));
+
 			LOG.info("Finished commiting canvas");
 			return blockDiffs;
 
@@ -307,6 +715,146 @@ public class CommitCanvasN5 implements PersistCanvas
 			LOG.error("Unable to commit canvas.", e);
 			throw new UnableToPersistCanvas("Unable to commit canvas.", e);
 		}
+		finally
+		{
+			// all tasks are done on success, on failure do not continue writing blocks
+			shutdownAndAwaitTermination(executor);
+			// notify on failure as well: some of the blocks may have been written already
+			for (int level = 0; level < blocksByLevel.size(); ++level)
+				for (final BlocksWrittenListener listener : blocksWrittenListeners)
+					listener.blocksWritten(level, blocksByLevel.get(level));
+		}
+	}
+
+	public int numThreads()
+	{
+		return this.numThreads;
+	}
+
+	private static int defaultNumThreads(final N5Reader n5)
+	{
+		return n5 instanceof N5HDF5Reader ? 1 : Runtime.getRuntime().availableProcessors();
+	}
+
+	private ExecutorService newExecutor()
+	{
+		return Executors.newFixedThreadPool(numThreads, new NamedThreadFactory("commit-canvas-%d", true));
+	}
+
+	/**
+	 * Stop all workers and wait until they are done so that no block is written after the commit returned, even if
+	 * the calling thread is interrupted.
+	 */
+	private static void shutdownAndAwaitTermination(final ExecutorService executor)
+	{
+		executor.shutdownNow();
+		boolean wasInterrupted = false;
+		while (!executor.isTerminated())
+		{
+			try
+			{
+				executor.awaitTermination(1, TimeUnit.SECONDS);
+			}
+			catch (final InterruptedException e)
+			{
+				wasInterrupted = true;
+			}
+		}
+		if (wasInterrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	/**
+	 * Levels of the background, from highest to lowest resolution.
+	 */
+	private List<DatasetSpec> levelDatasets() throws IOException
+	{
+		final String dataset = isPainteraDataset ? this.dataset + "/data" : this.dataset;
+		final List<DatasetSpec> levels = new ArrayList<>();
+		if (isMultiscale)
+			for (final String scaleDataset : N5Helpers.listAndSortScaleDatasets(n5, dataset))
+				levels.add(DatasetSpec.of(n5, Paths.get(dataset, scaleDataset).toString()));
+		else
+			levels.add(DatasetSpec.of(n5, dataset));
+		return levels;
+	}
+
+	/**
+	 * Wait for all {@code futures} and merge their results into a single map, inserted in ascending block order so
+	 * that the result does not depend on the order in which the workers finished.
+	 */
+	private static TLongObjectMap<BlockDiff> collectInBlockOrder(final TLongObjectMap<CompletableFuture<BlockDiff>> futures) throws IOException, UnableToPersistCanvas
+	{
+		final long[] blockIds = futures.keys();
+		Arrays.sort(blockIds);
+		final TLongObjectMap<BlockDiff> blockDiffs = new TLongObjectHashMap<>();
+		for (final long blockId : blockIds)
+			blockDiffs.put(blockId, getUnwrapped(futures.get(blockId)));
+		return blockDiffs;
+	}
+
+	private static <T> T getUnwrapped(final CompletableFuture<T> future) throws IOException, UnableToPersistCanvas
+	{
+		try
+		{
+			return future.get();
+		}
+		catch (final InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new UnableToPersistCanvas("Commit was interrupted.", e);
+		}
+		catch (final ExecutionException e)
+		{
+			if (e.getCause() instanceof UncheckedIOException)
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new UnableToPersistCanvas("Unable to commit canvas.", e.getCause());
+		}
+	}
+
+	/**
+	 * Run {@code task} for {@code blockId} once {@code dependencies} are done. With a {@code journal}, blocks that
+	 * were written in a previous attempt of the same commit are skipped, and each block is backed up before it is
+	 * overwritten.
+	 */
+	private static CompletableFuture<BlockDiff> submitBlock(
+			final CompletableFuture<?> dependencies,
+			final int level,
+			final long blockId,
+			final DatasetSpec datasetSpec,
+			final CommitJournal journal,
+			final ThrowingSupplier<BlockDiff, IOException> task,
+			final ExecutorService executor,
+			final LevelProgress progress)
+	{
+		if (journal != null && journal.isBlockWritten(level, blockId))
+		{
+			progress.blockStarted();
+			progress.blockFinished();
+			return CompletableFuture.completedFuture(journal.getBlockDiff(level, blockId));
+		}
+		return dependencies
+				.thenApplyAsync(ignored -> {
+					progress.blockStarted();
+					try
+					{
+						if (journal == null)
+							return task.get();
+						final BlockSpec blockSpec = new BlockSpec(datasetSpec.grid);
+						blockSpec.fromLinearIndex(blockId);
+						journal.backupBlock(level, blockId, datasetSpec.container, datasetSpec.dataset, datasetSpec.attributes, blockSpec.pos);
+						final BlockDiff blockDiff = task.get();
+						journal.blockWritten(level, blockId, blockDiff);
+						return blockDiff;
+					}
+					catch (final IOException e)
+					{
+						throw new UncheckedIOException(e);
+					}
+				}, executor)
+				.whenComplete((blockDiff, exception) -> progress.blockFinished());
 	}
 
 	private static long[] readContainedLabels(
@@ -448,7 +996,8 @@ public class CommitCanvasN5 implements PersistCanvas
 		return blockDiff;
 	}
 
-	private static BlockDiff createBlockDiffFromCanvas(final Iterable<Pair<LabelMultisetType, UnsignedLongType>> backgroundWithCanvas)
+	// package-private for benchmarks
+	static BlockDiff createBlockDiffFromCanvas(final Iterable<Pair<LabelMultisetType, UnsignedLongType>> backgroundWithCanvas)
 	{
 		return createBlockDiffFromCanvas(backgroundWithCanvas, new BlockDiff());
 	}
@@ -482,7 +1031,8 @@ public class CommitCanvasN5 implements PersistCanvas
 		return blockDiff;
 	}
 
-	private static <T extends IntegerType<T>> BlockDiff createBlockDiffFromCanvasIntegerType(final Iterable<Pair<T, UnsignedLongType>> backgroundWithCanvas)
+	// package-private for benchmarks
+	static <T extends IntegerType<T>> BlockDiff createBlockDiffFromCanvasIntegerType(final Iterable<Pair<T, UnsignedLongType>> backgroundWithCanvas)
 	{
 		return createBlockDiffFromCanvasIntegerType(backgroundWithCanvas, new BlockDiff());
 	}
@@ -613,161 +1163,220 @@ public class CommitCanvasN5 implements PersistCanvas
 	}
 
 	// TODO: switch to N5LabelMultisets for writing label multiset data
-	private static void writeBlocksLabelMultisetType(
+	private static TLongObjectMap<CompletableFuture<BlockDiff>> writeBlocksLabelMultisetType(
 			final RandomAccessibleInterval<UnsignedLongType> canvas,
 			final long[] blocks,
 			final DatasetSpec datasetSpec,
-			final BlockSpec blockSpec,
-			final TLongObjectHashMap<BlockDiff> blockDiff) throws IOException {
+			final CommitJournal journal,
+			final ExecutorService executor,
+			final LevelProgress progress) throws IOException {
 		final RandomAccessibleInterval<LabelMultisetType> highestResolutionData = N5LabelMultisets.openLabelMultiset(datasetSpec.container, datasetSpec.dataset);
+		final TLongObjectMap<CompletableFuture<BlockDiff>> blockDiffs = new TLongObjectHashMap<>();
 		for (final long blockId : blocks) {
-			blockSpec.fromLinearIndex(blockId);
-			final IntervalView<Pair<LabelMultisetType, UnsignedLongType>> backgroundWithCanvas = Views.interval(Views.pair(highestResolutionData, canvas), blockSpec.asInterval());
-			final int numElements = (int) Intervals.numElements(backgroundWithCanvas);
-			final byte[] byteData = LabelUtils.serializeLabelMultisetTypes(new BackgroundCanvasIterable(Views.flatIterable(backgroundWithCanvas)), numElements);
-			final ByteArrayDataBlock dataBlock = new ByteArrayDataBlock(Intervals.dimensionsAsIntArray(backgroundWithCanvas), blockSpec.pos, byteData);
-			datasetSpec.container.writeBlock(datasetSpec.dataset, datasetSpec.attributes, dataBlock);
-			blockDiff.put(blockId, createBlockDiffFromCanvas(backgroundWithCanvas));
+			blockDiffs.put(blockId, submitBlock(
+					CompletableFuture.completedFuture(null),
+					0,
+					blockId,
+					datasetSpec,
+					journal,
+					() -> writeBlockLabelMultisetType(canvas, highestResolutionData, datasetSpec, blockId),
+					executor,
+					progress));
 		}
+		return blockDiffs;
+	}
+
+	private static BlockDiff writeBlockLabelMultisetType(
+			final RandomAccessibleInterval<UnsignedLongType> canvas,
+			final RandomAccessibleInterval<LabelMultisetType> highestResolutionData,
+			final DatasetSpec datasetSpec,
+			final long blockId) throws IOException {
+		final BlockSpec blockSpec = new BlockSpec(datasetSpec.grid);
+		blockSpec.fromLinearIndex(blockId);
+		final IntervalView<Pair<LabelMultisetType, UnsignedLongType>> backgroundWithCanvas = Views.interval(Views.pair(highestResolutionData, canvas), blockSpec.asInterval());
+		final int numElements = (int) Intervals.numElements(backgroundWithCanvas);
+		final byte[] byteData = LabelUtils.serializeLabelMultisetTypes(new BackgroundCanvasIterable(Views.flatIterable(backgroundWithCanvas)), numElements);
+		final ByteArrayDataBlock dataBlock = new ByteArrayDataBlock(Intervals.dimensionsAsIntArray(backgroundWithCanvas), blockSpec.pos, byteData);
+		datasetSpec.container.writeBlock(datasetSpec.dataset, datasetSpec.attributes, dataBlock);
+		return createBlockDiffFromCanvas(backgroundWithCanvas);
 	}
 
 	// TODO the integer type implementation does not need to iterate over all pixels per block but could intersect with bounding box first
-	private static <I extends IntegerType<I> & NativeType<I>> void writeBlocksLabelIntegerType(
+	private static <I extends IntegerType<I> & NativeType<I>> TLongObjectMap<CompletableFuture<BlockDiff>> writeBlocksLabelIntegerType(
 			final RandomAccessibleInterval<UnsignedLongType> canvas,
 			final long[] blocks,
 			final DatasetSpec datasetSpec,
-			final BlockSpec blockSpec,
-			final TLongObjectHashMap<BlockDiff> blockDiff) throws IOException {
+			final CommitJournal journal,
+			final ExecutorService executor,
+			final LevelProgress progress) throws IOException {
 		final RandomAccessibleInterval<I> highestResolutionData = N5Utils.open(datasetSpec.container, datasetSpec.dataset);
-		final I i = Util.getTypeFromInterval(highestResolutionData).createVariable();
+		final TLongObjectMap<CompletableFuture<BlockDiff>> blockDiffs = new TLongObjectHashMap<>();
 		for (final long blockId : blocks) {
-			blockSpec.fromLinearIndex(blockId);
-			final RandomAccessibleInterval<Pair<I, UnsignedLongType>> backgroundWithCanvas = Views.interval(Views.pair(highestResolutionData, canvas), blockSpec.asInterval());
-			final RandomAccessibleInterval<I> mergedData = Converters.convert(backgroundWithCanvas, (s, t) -> pickFirstIfSecondIsInvalid(s.getA(), s.getB(), t), i.createVariable());
-			N5Utils.saveBlock(mergedData, datasetSpec.container, datasetSpec.dataset, datasetSpec.attributes, blockSpec.pos);
-			blockDiff.put(blockId, createBlockDiffFromCanvasIntegerType(Views.iterable(backgroundWithCanvas)));
+			blockDiffs.put(blockId, submitBlock(
+					CompletableFuture.completedFuture(null),
+					0,
+					blockId,
+					datasetSpec,
+					journal,
+					() -> writeBlockLabelIntegerType(canvas, highestResolutionData, datasetSpec, blockId),
+					executor,
+					progress));
 		}
+		return blockDiffs;
 	}
 
-	// TODO: switch to N5LabelMultisets for writing label multiset data
-	private static void downsampleAndWriteBlocksLabelMultisetType(
-			final long[] affectedBlocks,
-			final N5Writer n5,
-			final DatasetSpec previousDataset,
-			final DatasetSpec targetDataset,
-			final BlockSpec blockSpec,
-			final Scale3D targetToPrevious,
-			final int[] relativeFactors,
-			final int targetMaxNumEntries,
-			final int level,
-			final TLongObjectHashMap<BlockDiff> blockDiffsAt
-			) throws IOException {
-
-		// In older converted data the "isLabelMultiset" attribute may not be present in s1,s2,... datasets.
-		// Make sure the attribute is set to avoid "is not a label multiset" exception.
-		n5.setAttribute(previousDataset.dataset, N5Helpers.IS_LABEL_MULTISET_KEY, true);
-		n5.setAttribute(targetDataset.dataset, N5Helpers.IS_LABEL_MULTISET_KEY, true);
-
-		final RandomAccessibleInterval<LabelMultisetType>  previousData = N5LabelMultisets.openLabelMultiset(n5, previousDataset.dataset);
+	private static <I extends IntegerType<I> & NativeType<I>> BlockDiff writeBlockLabelIntegerType(
+			final RandomAccessibleInterval<UnsignedLongType> canvas,
+			final RandomAccessibleInterval<I> highestResolutionData,
+			final DatasetSpec datasetSpec,
+			final long blockId) throws IOException {
+		final I i = Util.getTypeFromInterval(highestResolutionData).createVariable();
+		final BlockSpec blockSpec = new BlockSpec(datasetSpec.grid);
+		blockSpec.fromLinearIndex(blockId);
+		final RandomAccessibleInterval<Pair<I, UnsignedLongType>> backgroundWithCanvas = Views.interval(Views.pair(highestResolutionData, canvas), blockSpec.asInterval());
+		final RandomAccessibleInterval<I> mergedData = Converters.convert(backgroundWithCanvas, (s, t) -> pickFirstIfSecondIsInvalid(s.getA(), s.getB(), t), i.createVariable());
+		N5Utils.saveBlock(mergedData, datasetSpec.container, datasetSpec.dataset, datasetSpec.attributes, blockSpec.pos);
+		return createBlockDiffFromCanvasIntegerType(Views.iterable(backgroundWithCanvas));
+	}
 
-		for (final long targetBlock : affectedBlocks)
+	/**
+	 * Submit downsampling of all affected blocks of {@code level}. Each block is scheduled to run once all blocks in
+	 * {@code previousLevelFutures} that intersect with its footprint at the previous level have been written.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private TLongObjectMap<CompletableFuture<BlockDiff>> downsampleAndWriteBlocks(
+			final DownsamplingLevel level,
+			final TLongObjectMap<CompletableFuture<BlockDiff>> previousLevelFutures,
+			final CommitJournal journal,
+			final ExecutorService executor,
+			final LevelProgress progress) {
+
+		final TLongObjectMap<CompletableFuture<BlockDiff>> blockDiffs = new TLongObjectHashMap<>();
+		for (final long targetBlock : level.affectedBlocks)
 		{
+			final BlockSpec blockSpec = new BlockSpec(level.targetDataset.grid);
 			blockSpec.fromLinearIndex(targetBlock);
-			final double[] blockMinDouble = ArrayMath.asDoubleArray3(blockSpec.min);
-			final double[] blockMaxDouble = ArrayMath.asDoubleArray3(ArrayMath.add3(blockSpec.max, 1));
-			targetToPrevious.apply(blockMinDouble, blockMinDouble);
-			targetToPrevious.apply(blockMaxDouble, blockMaxDouble);
-
-			LOG.debug("level={}: blockMinDouble={} blockMaxDouble={}", level, blockMinDouble, blockMaxDouble);
-
-			final long[] blockMin = ArrayMath.minOf3(ArrayMath.asLong3(ArrayMath.floor3(blockMinDouble, blockMinDouble)), previousDataset.dimensions);
-			final long[] blockMax = ArrayMath.minOf3(ArrayMath.asLong3(ArrayMath.ceil3(blockMaxDouble, blockMaxDouble)), previousDataset.dimensions);
-			final int[] size = Intervals.dimensionsAsIntArray(new FinalInterval(blockSpec.min, blockSpec.max));
-
-			final long[] previousRelevantIntervalMin = blockMin.clone();
-			final long[] previousRelevantIntervalMax = ArrayMath.add3(blockMax, -1);
-
-			ArrayMath.divide3(blockMin, previousDataset.blockSize, blockMin);
-			ArrayMath.divide3(blockMax, previousDataset.blockSize, blockMax);
-			ArrayMath.add3(blockMax, -1, blockMax);
-			ArrayMath.minOf3(blockMax, blockMin, blockMax);
-
-			LOG.trace("Reading old access at position {} and size {}. ({} {})", blockSpec.pos, size, blockSpec.min, blockSpec.max);
-			final DataBlock<?> block = n5.readBlock(targetDataset.dataset, targetDataset.attributes, blockSpec.pos);
-			final VolatileLabelMultisetArray oldAccess = block != null && block.getData() instanceof byte[]
-					? LabelUtils.fromBytes(
-						(byte[]) block.getData(),
-						(int) Intervals.numElements(size))
-					: null;
-
-			final VolatileLabelMultisetArray newAccess = downsampleVolatileLabelMultisetArrayAndSerialize(
-					n5,
-					targetDataset.dataset,
-					targetDataset.attributes,
-					Views.interval(previousData, previousRelevantIntervalMin, previousRelevantIntervalMax),
-					relativeFactors,
-					targetMaxNumEntries,
-					size,
-					blockSpec.pos);
-			final int numElements = (int) Intervals.numElements(size);
-			blockDiffsAt.put(
+			final Interval previousRelevantInterval = previousRelevantInterval(blockSpec, level.previousDataset, level.targetToPrevious);
+
+			LOG.debug("level={}: previous relevant interval for block {}: {}", level.level, targetBlock, previousRelevantInterval);
+
+			final CompletableFuture<?>[] dependencies = LongStream
+					.of(org.janelia.saalfeldlab.util.grids.Grids.getIntersectingBlocks(previousRelevantInterval, level.previousDataset.grid))
+					.mapToObj(previousLevelFutures::get)
+					.filter(Objects::nonNull)
+					.toArray(CompletableFuture[]::new);
+
+			final ThrowingSupplier<BlockDiff, IOException> task = this.isLabelMultiset
+					? () -> downsampleAndWriteBlockLabelMultisetType(
+							n5,
+							(RandomAccessibleInterval<LabelMultisetType>) level.previousData,
+							level.targetDataset,
+							blockSpec,
+							previousRelevantInterval,
+							level.relativeFactors,
+							level.targetMaxNumEntries)
+					: () -> downsampleAndWriteBlockIntegerType(
+							n5,
+							(RandomAccessibleInterval) level.previousData,
+							level.targetDataset,
+							blockSpec,
+							previousRelevantInterval,
+							level.relativeFactors);
+
+			blockDiffs.put(targetBlock, submitBlock(
+					CompletableFuture.allOf(dependencies),
+					level.level,
 					targetBlock,
-					oldAccess == null
-							? createBlockDiffOldDoesNotExist(newAccess, numElements)
-							: createBlockDiff(oldAccess, newAccess, numElements));
+					level.targetDataset,
+					journal,
+					task,
+					executor,
+					progress));
 		}
+		return blockDiffs;
 	}
 
-	private static <I extends IntegerType<I> & NativeType<I>> void downsampleAndWriteBlocksIntegerType(
-			final long[] affectedBlocks,
-			final N5Writer n5,
+	private static <I extends IntegerType<I> & NativeType<I>> RandomAccessibleInterval<I> openIntegerType(
+			final N5Reader n5,
+			final String dataset) throws IOException
+	{
+		return N5Utils.open(n5, dataset);
+	}
+
+	private static Interval previousRelevantInterval(
+			final BlockSpec blockSpec,
 			final DatasetSpec previousDataset,
+			final Scale3D targetToPrevious)
+	{
+		final double[] blockMinDouble = ArrayMath.asDoubleArray3(blockSpec.min);
+		final double[] blockMaxDouble = ArrayMath.asDoubleArray3(ArrayMath.add3(blockSpec.max, 1));
+		targetToPrevious.apply(blockMinDouble, blockMinDouble);
+		targetToPrevious.apply(blockMaxDouble, blockMaxDouble);
+
+		final long[] blockMin = ArrayMath.minOf3(ArrayMath.asLong3(ArrayMath.floor3(blockMinDouble, blockMinDouble)), previousDataset.dimensions);
+		final long[] blockMax = ArrayMath.minOf3(ArrayMath.asLong3(ArrayMath.ceil3(blockMaxDouble, blockMaxDouble)), previousDataset.dimensions);
+		return new FinalInterval(blockMin, ArrayMath.add3(blockMax, -1));
+	}
+
+	// TODO: switch to N5LabelMultisets for writing label multiset data
+	private static BlockDiff downsampleAndWriteBlockLabelMultisetType(
+			final N5Writer n5,
+			final RandomAccessibleInterval<LabelMultisetType> previousData,
 			final DatasetSpec targetDataset,
 			final BlockSpec blockSpec,
-			final Scale3D targetToPrevious,
+			final Interval previousRelevantInterval,
 			final int[] relativeFactors,
-			final int level,
-			final TLongObjectHashMap<BlockDiff> blockDiffsAt
-	) throws IOException {
-
-		final RandomAccessibleInterval<I> previousData = N5Utils.open(n5, previousDataset.dataset);
-
-		for (final long targetBlock : affectedBlocks)
-		{
-			blockSpec.fromLinearIndex(targetBlock);
-			final double[] blockMinDouble = ArrayMath.asDoubleArray3(blockSpec.min);
-			final double[] blockMaxDouble = ArrayMath.asDoubleArray3(ArrayMath.add3(blockSpec.max, 1));
-			targetToPrevious.apply(blockMinDouble, blockMinDouble);
-			targetToPrevious.apply(blockMaxDouble, blockMaxDouble);
-
-			LOG.debug("level={}: blockMinDouble={} blockMaxDouble={}", level, blockMinDouble, blockMaxDouble);
+			final int targetMaxNumEntries
+			) throws IOException {
 
-			final long[] blockMin = ArrayMath.minOf3(ArrayMath.asLong3(ArrayMath.floor3(blockMinDouble, blockMinDouble)), previousDataset.dimensions);
-			final long[] blockMax = ArrayMath.minOf3(ArrayMath.asLong3(ArrayMath.ceil3(blockMaxDouble, blockMaxDouble)), previousDataset.dimensions);
-			final Interval targetInterval = new FinalInterval(blockSpec.min, blockSpec.max);
-			final int[] size = Intervals.dimensionsAsIntArray(targetInterval);
+		final int[] size = Intervals.dimensionsAsIntArray(new FinalInterval(blockSpec.min, blockSpec.max));
+
+		LOG.trace("Reading old access at position {} and size {}. ({} {})", blockSpec.pos, size, blockSpec.min, blockSpec.max);
+		final DataBlock<?> block = n5.readBlock(targetDataset.dataset, targetDataset.attributes, blockSpec.pos);
+		final VolatileLabelMultisetArray oldAccess = block != null && block.getData() instanceof byte[]
+				? LabelUtils.fromBytes(
+					(byte[]) block.getData(),
+					(int) Intervals.numElements(size))
+				: null;
+
+		final VolatileLabelMultisetArray newAccess = downsampleVolatileLabelMultisetArrayAndSerialize(
+				n5,
+				targetDataset.dataset,
+				targetDataset.attributes,
+				Views.interval(previousData, previousRelevantInterval),
+				relativeFactors,
+				targetMaxNumEntries,
+				size,
+				blockSpec.pos);
+		final int numElements = (int) Intervals.numElements(size);
+		return oldAccess == null
+				? createBlockDiffOldDoesNotExist(newAccess, numElements)
+				: createBlockDiff(oldAccess, newAccess, numElements);
+	}
 
-			final long[] previousRelevantIntervalMin = blockMin.clone();
-			final long[] previousRelevantIntervalMax = ArrayMath.add3(blockMax, -1);
+	private static <I extends IntegerType<I> & NativeType<I>> BlockDiff downsampleAndWriteBlockIntegerType(
+			final N5Writer n5,
+			final RandomAccessibleInterval<I> previousData,
+			final DatasetSpec targetDataset,
+			final BlockSpec blockSpec,
+			final Interval previousRelevantInterval,
+			final int[] relativeFactors
+	) throws IOException {
 
-			ArrayMath.divide3(blockMin, previousDataset.blockSize, blockMin);
-			ArrayMath.divide3(blockMax, previousDataset.blockSize, blockMax);
-			ArrayMath.add3(blockMax, -1, blockMax);
-			ArrayMath.minOf3(blockMax, blockMin, blockMax);
+		final Interval targetInterval = new FinalInterval(blockSpec.min, blockSpec.max);
+		final int[] size = Intervals.dimensionsAsIntArray(targetInterval);
 
-			LOG.trace("Reading old access at position {} and size {}. ({} {})", blockSpec.pos, size, blockSpec.min, blockSpec.max);
+		LOG.trace("Reading old access at position {} and size {}. ({} {})", blockSpec.pos, size, blockSpec.min, blockSpec.max);
 
-			final BlockDiff blockDiff = downsampleIntegerTypeAndSerialize(
-					n5,
-					targetDataset.dataset,
-					targetDataset.attributes,
-					Views.interval(previousData, previousRelevantIntervalMin, previousRelevantIntervalMax),
-					relativeFactors,
-					size,
-					targetInterval,
-					blockSpec.pos);
-			blockDiffsAt.put(targetBlock, blockDiff);
-		}
+		return downsampleIntegerTypeAndSerialize(
+				n5,
+				targetDataset.dataset,
+				targetDataset.attributes,
+				Views.interval(previousData, previousRelevantInterval),
+				relativeFactors,
+				size,
+				targetInterval,
+				blockSpec.pos);
 	}
 
 	private static <I extends IntegerType<I>, C extends IntegerType<C>> void pickFirstIfSecondIsInvalid(final I s1, final C s2, final I t) {
@@ -778,4 +1387,98 @@ public class CommitCanvasN5 implements PersistCanvas
 			t.set(s1);
 	}
 
+
+	private static final class DownsamplingLevel
+	{
+		private final int level;
+
+		private final DatasetSpec previousDataset;
+
+		private final DatasetSpec targetDataset;
+
+		private final long[] affectedBlocks;
+
+		private final Scale3D targetToPrevious;
+
+		private final int[] relativeFactors;
+
+		private final int targetMaxNumEntries;
+
+		private final RandomAccessibleInterval<?> previousData;
+
+		private DownsamplingLevel(
+				final int level,
+				final DatasetSpec previousDataset,
+				final DatasetSpec targetDataset,
+				final long[] affectedBlocks,
+				final Scale3D targetToPrevious,
+				final int[] relativeFactors,
+				final int targetMaxNumEntries,
+				final RandomAccessibleInterval<?> previousData)
+		{
+			this.level = level;
+			this.previousDataset = previousDataset;
+			this.targetDataset = targetDataset;
+			this.affectedBlocks = affectedBlocks;
+			this.targetToPrevious = targetToPrevious;
+			this.relativeFactors = relativeFactors;
+			this.targetMaxNumEntries = targetMaxNumEntries;
+			this.previousData = previousData;
+		}
+	}
+
+	/**
+	 * Track finished blocks of a single level and report progress and throughput to a {@link ProgressListener}.
+	 * Reports are rate limited to at most one per {@link #REPORT_INTERVAL_NANOS} (and the final one).
+	 */
+	private static final class LevelProgress
+	{
+		private static final long REPORT_INTERVAL_NANOS = 250_000_000L;
+
+		private final int level;
+
+		private final int numBlocks;
+
+		private final ProgressListener listener;
+
+		private final AtomicInteger numFinishedBlocks = new AtomicInteger();
+
+		private final AtomicLong startNanos = new AtomicLong();
+
+		private long lastReportNanos = 0;
+
+		private LevelProgress(final int level, final int numBlocks, final ProgressListener listener)
+		{
+			this.level = level;
+			this.numBlocks = numBlocks;
+			this.listener = listener;
+			report(0, 0);
+		}
+
+		private void blockStarted()
+		{
+			this.startNanos.compareAndSet(0, System.nanoTime());
+		}
+
+		private void blockFinished()
+		{
+			final int numFinished = this.numFinishedBlocks.incrementAndGet();
+			final long now = System.nanoTime();
+			synchronized (this)
+			{
+				if (numFinished == numBlocks || now - lastReportNanos >= REPORT_INTERVAL_NANOS)
+				{
+					lastReportNanos = now;
+					report(numFinished, now - startNanos.get());
+				}
+			}
+		}
+
+		private void report(final int numFinished, final long elapsedNanos)
+		{
+			final double blocksPerSecond = elapsedNanos > 0 ? numFinished * 1e9 / elapsedNanos : 0.0;
+			listener.progress(level, String.format("Level %d: %d/%d blocks (%.1f blocks/s)", level, numFinished, numBlocks, blocksPerSecond));
+		}
+	}
+
 }
@@ -0,0 +1,592 @@
+package org.janelia.saalfeldlab.paintera.data.n5;
+
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.img.cell.LazyCellImg;
+import net.imglib2.type.label.Label;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.view.Views;
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.paintera.data.mask.persist.PersistCanvas.BlockDiff;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Write-ahead journal of a canvas commit, stored in a directory on disk:
+ * <ul>
+ *     <li>{@code canvas/<block>}: snapshot of the committed canvas blocks at the highest resolution, so that a
+ *     commit can be resumed after Paintera was closed</li>
+ *     <li>{@code backup/s<level>/<block>}: contents of each background block before it was overwritten, so that a
+ *     commit can be rolled back</li>
+ *     <li>{@code journal}: append-only log of the blocks that were written (with their {@link BlockDiff}) and of the
+ *     levels of the label block lookup that were updated</li>
+ * </ul>
+ * Each log record is checksummed and synced to disk before the corresponding step is considered done. A torn record
+ * at the end of the log, e.g. after a crash, is discarded when the journal is {@link #open(Path) opened}. A commit that
+ * was interrupted before the canvas snapshot was complete did not modify the background and is discarded entirely.
+ * The journal directory is deleted when the commit {@link #finish() finishes}.
+ */
+public class CommitJournal
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	private static final String JOURNAL_FILE = "journal";
+
+	private static final String CANVAS_DIRECTORY = "canvas";
+
+	private static final String BACKUP_DIRECTORY = "backup";
+
+	private static final int BEGIN = 1;
+
+	private static final int BLOCK_WRITTEN = 2;
+
+	private static final int LOOKUP_UPDATE_STARTED = 3;
+
+	private static final int LOOKUP_UPDATED = 4;
+
+	private final Path directory;
+
+	private final CellGrid canvasGrid;
+
+	private final long[] blocks;
+
+	private final List<TLongObjectMap<BlockDiff>> writtenBlocks = new ArrayList<>();
+
+	private final TIntSet lookupUpdateStarted = new TIntHashSet();
+
+	private final TIntSet lookupUpdated = new TIntHashSet();
+
+	private FileChannel log;
+
+	private CommitJournal(final Path directory, final CellGrid canvasGrid, final long[] blocks)
+	{
+		this.directory = directory;
+		this.canvasGrid = canvasGrid;
+		this.blocks = blocks;
+	}
+
+	/**
+	 * Start a new journal in {@code directory}. Snapshots all {@code blocks} of {@code canvas} before the journal is
+	 * considered valid. Any previous journal in {@code directory} is discarded.
+	 *
+	 * @param snapshotBlock called with the index of each block to snapshot. Blocks may be snapshot concurrently.
+	 */
+	public static CommitJournal begin(
+			final Path directory,
+			final RandomAccessibleInterval<UnsignedLongType> canvas,
+			final CellGrid canvasGrid,
+			final long[] blocks,
+			final BlockSnapshotter snapshotBlock) throws IOException
+	{
+		deleteRecursively(directory);
+		Files.createDirectories(directory.resolve(CANVAS_DIRECTORY));
+		final CommitJournal journal = new CommitJournal(directory, canvasGrid, blocks);
+		snapshotBlock.snapshotAll(blocks, block -> journal.snapshotCanvasBlock(canvas, block));
+
+		journal.log = FileChannel.open(directory.resolve(JOURNAL_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		journal.append(BEGIN, out -> {
+			writeLongs(out, canvasGrid.getImgDimensions());
+			final int[] blockSize = new int[canvasGrid.numDimensions()];
+			canvasGrid.cellDimensions(blockSize);
+			out.writeInt(blockSize.length);
+			for (final int size : blockSize)
+				out.writeInt(size);
+			writeLongs(out, blocks);
+		});
+		LOG.debug("Started commit journal in {} for {} blocks", directory, blocks.length);
+		return journal;
+	}
+
+	/**
+	 * @return journal of an incomplete commit in {@code directory}, or {@code null} if there is none
+	 */
+	public static CommitJournal open(final Path directory) throws IOException
+	{
+		final Path journalFile = directory.resolve(JOURNAL_FILE);
+		if (!Files.isRegularFile(journalFile))
+			return null;
+
+		final CommitJournal journal;
+		long validLength = 0;
+		try (final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(journalFile))))
+		{
+			final Record begin = Record.read(in);
+			if (begin == null || begin.type != BEGIN)
+			{
+				LOG.warn("Discarding commit journal {} without valid header", directory);
+				deleteRecursively(directory);
+				return null;
+			}
+			final long[] imgDimensions = readLongs(begin.payload);
+			final int[] blockSize = new int[begin.payload.readInt()];
+			for (int d = 0; d < blockSize.length; ++d)
+				blockSize[d] = begin.payload.readInt();
+			journal = new CommitJournal(directory, new CellGrid(imgDimensions, blockSize), readLongs(begin.payload));
+			validLength += begin.length();
+
+			for (Record record = Record.read(in); record != null; record = Record.read(in))
+			{
+				journal.replay(record);
+				validLength += record.length();
+			}
+		}
+
+		journal.log = FileChannel.open(journalFile, StandardOpenOption.WRITE);
+		// drop torn record, if any, so that new records are appended to a valid log
+		journal.log.truncate(validLength);
+		journal.log.position(validLength);
+		LOG.info("Opened incomplete commit journal {}: {} blocks written", directory, journal.writtenBlocks.stream().mapToInt(TLongObjectMap::size).sum());
+		return journal;
+	}
+
+	public Path directory()
+	{
+		return this.directory;
+	}
+
+	public CellGrid canvasGrid()
+	{
+		return this.canvasGrid;
+	}
+
+	/**
+	 * @return committed blocks at the highest resolution
+	 */
+	public long[] blocks()
+	{
+		return this.blocks.clone();
+	}
+
+	/**
+	 * @return canvas as snapshot when the commit was started. Blocks that were not committed are
+	 * {@link Label#INVALID}.
+	 */
+	public RandomAccessibleInterval<UnsignedLongType> canvas()
+	{
+		return new LazyCellImg<>(canvasGrid, new UnsignedLongType(), index -> {
+			final long[] cellMin = new long[canvasGrid.numDimensions()];
+			final int[] cellDimensions = new int[canvasGrid.numDimensions()];
+			canvasGrid.getCellDimensions(index, cellMin, cellDimensions);
+			final long[] data = new long[(int) numElements(cellDimensions)];
+			try (final DataInputStream in = new DataInputStream(new InflaterInputStream(new BufferedInputStream(Files.newInputStream(canvasBlock(index))))))
+			{
+				for (int i = 0; i < data.length; ++i)
+					data[i] = in.readLong();
+			}
+			catch (final NoSuchFileException e)
+			{
+				Arrays.fill(data, Label.INVALID);
+			}
+			catch (final IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+			return new Cell<>(cellDimensions, cellMin, new LongArray(data));
+		});
+	}
+
+	public synchronized boolean isBlockWritten(final int level, final long block)
+	{
+		return level < writtenBlocks.size() && writtenBlocks.get(level).containsKey(block);
+	}
+
+	public synchronized BlockDiff getBlockDiff(final int level, final long block)
+	{
+		return level < writtenBlocks.size() ? writtenBlocks.get(level).get(block) : null;
+	}
+
+	/**
+	 * @return block diffs of all written blocks, by level
+	 */
+	public synchronized List<TLongObjectMap<BlockDiff>> writtenBlockDiffs()
+	{
+		final List<TLongObjectMap<BlockDiff>> copy = new ArrayList<>();
+		for (final TLongObjectMap<BlockDiff> level : writtenBlocks)
+			copy.add(new TLongObjectHashMap<>(level));
+		return copy;
+	}
+
+	public synchronized boolean isLookupUpdateStarted(final int level)
+	{
+		return lookupUpdateStarted.contains(level);
+	}
+
+	public synchronized boolean isLookupUpdated(final int level)
+	{
+		return lookupUpdated.contains(level);
+	}
+
+	/**
+	 * Store the current contents of {@code block} in {@code dataset} so that it can be restored on rollback. Does
+	 * nothing if a backup exists already: the block may have been partially written after the backup was created.
+	 */
+	public void backupBlock(
+			final int level,
+			final long block,
+			final N5Writer n5,
+			final String dataset,
+			final DatasetAttributes attributes,
+			final long[] gridPosition) throws IOException
+	{
+		final Path backup = backupBlock(level, block);
+		if (Files.exists(backup))
+			return;
+		final DataBlock<?> dataBlock = n5.readBlock(dataset, attributes, gridPosition);
+		writeAtomically(backup, out -> {
+			try (final DataOutputStream data = new DataOutputStream(new DeflaterOutputStream(out)))
+			{
+				data.writeBoolean(dataBlock != null);
+				if (dataBlock != null)
+				{
+					final int[] size = dataBlock.getSize();
+					data.writeInt(size.length);
+					for (final int s : size)
+						data.writeInt(s);
+					data.writeInt(dataBlock.getNumElements());
+					final ByteBuffer buffer = dataBlock.toByteBuffer();
+					final byte[] bytes = new byte[buffer.remaining()];
+					buffer.get(bytes);
+					data.writeInt(bytes.length);
+					data.write(bytes);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Restore all backed up blocks at {@code level}.
+	 *
+	 * @return indices of the restored blocks
+	 */
+	public long[] restoreBackups(
+			final int level,
+			final N5Writer n5,
+			final String dataset,
+			final DatasetAttributes attributes,
+			final BlockSpec blockSpec) throws IOException
+	{
+		final Path levelDirectory = directory.resolve(BACKUP_DIRECTORY).resolve("s" + level);
+		if (!Files.isDirectory(levelDirectory))
+			return new long[] {};
+		final List<Path> backups;
+		try (final Stream<Path> files = Files.list(levelDirectory))
+		{
+			backups = files.filter(p -> !p.getFileName().toString().startsWith(".")).collect(Collectors.toList());
+		}
+		final long[] restored = new long[backups.size()];
+		for (int i = 0; i < restored.length; ++i)
+		{
+			final Path backup = backups.get(i);
+			final long block = Long.parseLong(backup.getFileName().toString());
+			blockSpec.fromLinearIndex(block);
+			try (final DataInputStream in = new DataInputStream(new InflaterInputStream(new BufferedInputStream(Files.newInputStream(backup)))))
+			{
+				if (in.readBoolean())
+				{
+					final int[] size = new int[in.readInt()];
+					for (int d = 0; d < size.length; ++d)
+						size[d] = in.readInt();
+					final int numElements = in.readInt();
+					final byte[] bytes = new byte[in.readInt()];
+					in.readFully(bytes);
+					final DataBlock<?> dataBlock = attributes.getDataType().createDataBlock(size, blockSpec.pos.clone(), numElements);
+					dataBlock.readData(ByteBuffer.wrap(bytes));
+					n5.writeBlock(dataset, attributes, dataBlock);
+				}
+				else
+					n5.deleteBlock(dataset, blockSpec.pos);
+			}
+			restored[i] = block;
+		}
+		LOG.debug("Restored {} blocks at level {}", restored.length, level);
+		return restored;
+	}
+
+	public void blockWritten(final int level, final long block, final BlockDiff blockDiff) throws IOException
+	{
+		synchronized (this)
+		{
+			append(BLOCK_WRITTEN, out -> {
+				out.writeInt(level);
+				out.writeLong(block);
+				writeLongs(out, blockDiff.getOldUniqueIds());
+				writeLongs(out, blockDiff.getNewUniqueIds());
+			});
+			writtenBlocksAtLevel(level).put(block, blockDiff);
+		}
+	}
+
+	public synchronized void lookupUpdateStarted(final int level) throws IOException
+	{
+		append(LOOKUP_UPDATE_STARTED, out -> out.writeInt(level));
+		lookupUpdateStarted.add(level);
+	}
+
+	public synchronized void lookupUpdated(final int level) throws IOException
+	{
+		append(LOOKUP_UPDATED, out -> out.writeInt(level));
+		lookupUpdated.add(level);
+	}
+
+	/**
+	 * Close and delete the journal.
+	 */
+	public synchronized void finish() throws IOException
+	{
+		close();
+		deleteRecursively(directory);
+		LOG.debug("Finished commit journal {}", directory);
+	}
+
+	public synchronized void close() throws IOException
+	{
+		if (log != null)
+			log.close();
+		log = null;
+	}
+
+	private void replay(final Record record) throws IOException
+	{
+		switch (record.type)
+		{
+			case BLOCK_WRITTEN:
+				final int level = record.payload.readInt();
+				final long block = record.payload.readLong();
+				final BlockDiff blockDiff = new BlockDiff();
+				for (final long id : readLongs(record.payload))
+					blockDiff.addToOldUniqueLabels(id);
+				for (final long id : readLongs(record.payload))
+					blockDiff.addToNewUniqueLabels(id);
+				writtenBlocksAtLevel(level).put(block, blockDiff);
+				break;
+			case LOOKUP_UPDATE_STARTED:
+				lookupUpdateStarted.add(record.payload.readInt());
+				break;
+			case LOOKUP_UPDATED:
+				lookupUpdated.add(record.payload.readInt());
+				break;
+			default:
+				throw new IOException("Unexpected record type " + record.type + " in commit journal " + directory);
+		}
+	}
+
+	private TLongObjectMap<BlockDiff> writtenBlocksAtLevel(final int level)
+	{
+		while (writtenBlocks.size() <= level)
+			writtenBlocks.add(new TLongObjectHashMap<>());
+		return writtenBlocks.get(level);
+	}
+
+	private void snapshotCanvasBlock(final RandomAccessibleInterval<UnsignedLongType> canvas, final long block) throws IOException
+	{
+		final long[] cellMin = new long[canvasGrid.numDimensions()];
+		final int[] cellDimensions = new int[canvasGrid.numDimensions()];
+		canvasGrid.getCellDimensions(block, cellMin, cellDimensions);
+		final long[] cellMax = new long[cellMin.length];
+		for (int d = 0; d < cellMin.length; ++d)
+			cellMax[d] = cellMin[d] + cellDimensions[d] - 1;
+		writeAtomically(canvasBlock(block), out -> {
+			try (final DataOutputStream data = new DataOutputStream(new DeflaterOutputStream(new BufferedOutputStream(out))))
+			{
+				for (final Cursor<UnsignedLongType> c = Views.flatIterable(Views.interval(canvas, cellMin, cellMax)).cursor(); c.hasNext(); )
+					data.writeLong(c.next().getLong());
+			}
+		});
+	}
+
+	private Path canvasBlock(final long block)
+	{
+		return directory.resolve(CANVAS_DIRECTORY).resolve(Long.toString(block));
+	}
+
+	private Path backupBlock(final int level, final long block)
+	{
+		return directory.resolve(BACKUP_DIRECTORY).resolve("s" + level).resolve(Long.toString(block));
+	}
+
+	private void append(final int type, final RecordWriter payload) throws IOException
+	{
+		if (log == null)
+			throw new IOException("Commit journal " + directory + " is closed");
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		payload.write(new DataOutputStream(bytes));
+		final byte[] payloadBytes = bytes.toByteArray();
+		final CRC32 crc = new CRC32();
+		crc.update(payloadBytes);
+
+		final ByteBuffer record = ByteBuffer.allocate(2 * Integer.BYTES + payloadBytes.length + Long.BYTES);
+		record.putInt(type).putInt(payloadBytes.length).put(payloadBytes).putLong(crc.getValue());
+		record.flip();
+		while (record.hasRemaining())
+			log.write(record);
+		log.force(false);
+	}
+
+	private static void writeAtomically(final Path file, final FileWriter writer) throws IOException
+	{
+		Files.createDirectories(file.getParent());
+		final Path tmp = Files.createTempFile(file.getParent(), ".", ".tmp");
+		try (final OutputStream out = Files.newOutputStream(tmp))
+		{
+			writer.write(out);
+		}
+		try (final FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE))
+		{
+			channel.force(true);
+		}
+		try
+		{
+			Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (final AtomicMoveNotSupportedException e)
+		{
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private static void writeLongs(final DataOutputStream out, final long[] values) throws IOException
+	{
+		out.writeInt(values.length);
+		for (final long value : values)
+			out.writeLong(value);
+	}
+
+	private static long[] readLongs(final DataInputStream in) throws IOException
+	{
+		final long[] values = new long[in.readInt()];
+		for (int i = 0; i < values.length; ++i)
+			values[i] = in.readLong();
+		return values;
+	}
+
+	private static long numElements(final int[] dimensions)
+	{
+		long n = 1;
+		for (final int d : dimensions)
+			n *= d;
+		return n;
+	}
+
+	private static void deleteRecursively(final Path path) throws IOException
+	{
+		if (!Files.exists(path))
+			return;
+		try (final Stream<Path> paths = Files.walk(path))
+		{
+			for (final Path p : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator)
+				Files.deleteIfExists(p);
+		}
+	}
+
+	@FunctionalInterface
+	private interface RecordWriter
+	{
+		void write(DataOutputStream out) throws IOException;
+	}
+
+	@FunctionalInterface
+	private interface FileWriter
+	{
+		void write(OutputStream out) throws IOException;
+	}
+
+	/**
+	 * Snapshot all blocks, potentially in parallel.
+	 */
+	@FunctionalInterface
+	public interface BlockSnapshotter
+	{
+		void snapshotAll(long[] blocks, BlockTask task) throws IOException;
+	}
+
+	@FunctionalInterface
+	public interface BlockTask
+	{
+		void run(long block) throws IOException;
+	}
+
+	private static final class Record
+	{
+		private final int type;
+
+		private final int payloadLength;
+
+		private final DataInputStream payload;
+
+		private Record(final int type, final byte[] payload)
+		{
+			this.type = type;
+			this.payloadLength = payload.length;
+			this.payload = new DataInputStream(new ByteArrayInputStream(payload));
+		}
+
+		private long length()
+		{
+			return 2 * Integer.BYTES + payloadLength + Long.BYTES;
+		}
+
+		/**
+		 * @return next record, or {@code null} at the end of the log or if the next record is torn or corrupt
+		 */
+		private static Record read(final DataInputStream in) throws IOException
+		{
+			try
+			{
+				final int type = in.readInt();
+				final int length = in.readInt();
+				if (length < 0 || length > 1 << 30)
+					return null;
+				final byte[] payload = new byte[length];
+				in.readFully(payload);
+				final long checksum = in.readLong();
+				final CRC32 crc = new CRC32();
+				crc.update(payload);
+				return crc.getValue() == checksum ? new Record(type, payload) : null;
+			}
+			catch (final EOFException e)
+			{
+				return null;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,66 @@
+package org.janelia.saalfeldlab.paintera.data.n5;
+
+import org.janelia.saalfeldlab.n5.N5FSReader;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.paintera.meshes.cache.PersistentMeshCache;
+import org.janelia.saalfeldlab.util.n5.N5Helpers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Use the modification times of the block files of an N5 file system container as
+ * {@link PersistentMeshCache.BlockStamps block stamps}. Blocks that do not exist have stamp {@code 0}.
+ */
+public class N5BlockModificationTimes implements PersistentMeshCache.BlockStamps
+{
+
+	private final Path[] levelDirectories;
+
+	private N5BlockModificationTimes(final Path[] levelDirectories)
+	{
+		this.levelDirectories = levelDirectories;
+	}
+
+	@Override
+	public long stamp(final int level, final long[] cellPosition) throws IOException
+	{
+		Path block = levelDirectories[level];
+		for (final long p : cellPosition)
+			block = block.resolve(Long.toString(p));
+		try
+		{
+			return Files.getLastModifiedTime(block).toMillis();
+		}
+		catch (final NoSuchFileException e)
+		{
+			return 0L;
+		}
+	}
+
+	/**
+	 * @return modification times of the blocks of each scale level of {@code dataset} for N5 file system containers,
+	 * {@link PersistentMeshCache.BlockStamps#NONE} for all other containers
+	 * @throws IOException if the scale levels of {@code dataset} cannot be listed
+	 */
+	public static PersistentMeshCache.BlockStamps forDataset(final N5Reader n5, final String dataset) throws IOException
+	{
+		if (!(n5 instanceof N5FSReader))
+			return PersistentMeshCache.BlockStamps.NONE;
+
+		final String basePath = ((N5FSReader) n5).getBasePath();
+		final String group = N5Helpers.isPainteraDataset(n5, dataset) ? dataset + "/data" : dataset;
+		if (!N5Helpers.isMultiScale(n5, group))
+			return new N5BlockModificationTimes(new Path[] {Paths.get(basePath, group)});
+
+		final String[] scaleDatasets = N5Helpers.listAndSortScaleDatasets(n5, group);
+		final Path[] levelDirectories = new Path[scaleDatasets.length];
+		for (int level = 0; level < scaleDatasets.length; ++level)
+			levelDirectories[level] = Paths.get(basePath, group, scaleDatasets[level]);
+		return new N5BlockModificationTimes(levelDirectories);
+	}
+
+}
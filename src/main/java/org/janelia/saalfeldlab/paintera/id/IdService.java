@@ -36,6 +36,14 @@ public interface IdService
 	 */
 	public boolean isInvalidated(final long id);
 
+	/**
+	 * Persist the highest ID that was provided or invalidated, e.g. on commit or shutdown. Implementations that persist
+	 * every ID immediately do not need to do anything.
+	 */
+	public default void flush()
+	{
+	}
+
 	/**
 	 * Greater than comparison for two uint64 passed as long.
 	 *
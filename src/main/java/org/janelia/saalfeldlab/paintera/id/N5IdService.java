@@ -1,25 +1,118 @@
 package org.janelia.saalfeldlab.paintera.id;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.LongStream;
 
+import org.janelia.saalfeldlab.n5.N5FSReader;
 import org.janelia.saalfeldlab.n5.N5Writer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+/**
+ * Stores the highest id that was handed out or invalidated in the {@code "maxId"} attribute of an N5 dataset.
+ *
+ * Ids are reserved in leases of {@link #getLeaseSize()} ids. The attribute is written once per lease and ids are handed
+ * out from memory without locking otherwise. {@link #flush()} writes the actual highest id and returns the unused part
+ * of the lease. For containers on the file system, the reserved ids are also recorded in a lease file that is replaced
+ * through an atomic rename while a {@link FileLock} on the lock file is held, so that multiple instances that share a
+ * container, in this or in other processes, do not hand out the same ids. The operating system releases the lock if
+ * the process that holds it dies, so a lock can never become stale.
+ *
+ * Other containers cannot be locked: only a single instance per container and dataset is supported for them.
+ */
 public class N5IdService implements IdService
 {
 
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	public static final int DEFAULT_LEASE_SIZE = 10_000;
+
+	public static final String MAX_ID_KEY = "maxId";
+
+	public static final String LEASE_FILE = "idservice.lease";
+
+	public static final String LOCK_FILE = "idservice.lock";
+
+	/**
+	 * A {@link FileLock} is held on behalf of the whole process, so instances in the same process that share a lock
+	 * file are serialized by these locks.
+	 */
+	private static final ConcurrentHashMap<Path, ReentrantLock> PROCESS_LOCKS = new ConcurrentHashMap<>();
+
+	/**
+	 * Ids in {@code (start, end]} are reserved for this instance.
+	 */
+	private static final class Lease
+	{
+		private static final Lease NONE = new Lease(0, 0);
+
+		private final long start;
+
+		private final long end;
+
+		private Lease(final long start, final long end)
+		{
+			this.start = start;
+			this.end = end;
+		}
+
+		private boolean contains(final long first, final long last)
+		{
+			return IdService.greaterThan(first, start) && !IdService.greaterThan(last, end);
+		}
+	}
+
 	private final N5Writer n5;
 
 	private final String dataset;
 
-	private long next;
+	private final int leaseSize;
+
+	/**
+	 * Directory of the {@link #LEASE_FILE lease} and {@link #LOCK_FILE lock} files, {@code null} if the container is
+	 * not on the file system.
+	 */
+	private final Path leaseDirectory;
+
+	private final AtomicLong next;
+
+	private volatile Lease lease = Lease.NONE;
+
+	private ReentrantLock processLock;
+
+	private FileChannel lockChannel;
 
 	public N5IdService(final N5Writer n5, final String dataset, final long next)
+	{
+		this(n5, dataset, next, DEFAULT_LEASE_SIZE);
+	}
+
+	public N5IdService(final N5Writer n5, final String dataset, final long next, final int leaseSize)
 	{
 		super();
+		if (leaseSize <= 0)
+			throw new IllegalArgumentException("Lease size must be positive but got " + leaseSize);
 		this.n5 = n5;
 		this.dataset = dataset;
-		this.next = next;
+		this.next = new AtomicLong(next);
+		this.leaseSize = leaseSize;
+		this.leaseDirectory = n5 instanceof N5FSReader
+				? Paths.get(((N5FSReader) n5).getBasePath(), dataset)
+				: null;
 	}
 
 	public N5Writer getWriter() {
@@ -30,39 +123,60 @@ public class N5IdService implements IdService
 		return dataset;
 	}
 
+	public int getLeaseSize() {
+		return leaseSize;
+	}
+
 	@Override
-	public synchronized void invalidate(final long id)
+	public void invalidate(final long id)
 	{
-		final long oldNext = next;
-		next = IdService.max(next, id + 1);
-		if (next != oldNext)
-		{
-			serializeMaxId();
-		}
+		final long next = this.next.accumulateAndGet(id + 1, IdService::max);
+		if (IdService.greaterThan(next, lease.end))
+			renewLease(next, 0);
 	}
 
 	@Override
-	public synchronized long next()
+	public long next()
 	{
-		++next;
-		serializeMaxId();
-		return next;
+		return reserve(1);
 	}
 
 	@Override
-	public synchronized long[] next(final int n)
+	public long[] next(final int n)
 	{
-		final long[] ids = LongStream.range(next, next + n).toArray();
-		next += n;
-		serializeMaxId();
-		return ids;
+		if (n <= 0)
+			return new long[0];
+		final long first = reserve(n);
+		return LongStream.range(first, first + n).toArray();
 	}
 
-	private void serializeMaxId()
+	/**
+	 * Write the highest id that was handed out or invalidated and return the unused ids of the current lease, unless
+	 * another instance reserved ids after it.
+	 */
+	@Override
+	public synchronized void flush()
 	{
+		final Lease lease = this.lease;
+		if (lease == Lease.NONE)
+			return;
+		// concurrent calls to next() that see the expired lease wait for the flush in renewLease
+		this.lease = Lease.NONE;
+		final long highWaterMark = next.get();
 		try
 		{
-			n5.setAttribute(dataset, "maxId", next);
+			acquireLock();
+			try
+			{
+				final long reserved = readReservedMaxId();
+				final long maxId = reserved == lease.end ? highWaterMark : IdService.max(reserved, highWaterMark);
+				if (maxId != reserved)
+					writeReservedMaxId(maxId);
+				LOG.debug("Flushed maxId={} for {}:{}", maxId, n5, dataset);
+			} finally
+			{
+				releaseLock();
+			}
 		} catch (final IOException e)
 		{
 			throw new RuntimeException(e);
@@ -72,7 +186,139 @@ public class N5IdService implements IdService
 	@Override
 	public boolean isInvalidated(final long id)
 	{
-		return id < next;
+		return IdService.greaterThan(next.get(), id);
+	}
+
+	/**
+	 * @return first of {@code n} consecutive ids that are reserved for this instance
+	 */
+	private long reserve(final int n)
+	{
+		while (true)
+		{
+			final long last = next.addAndGet(n);
+			final long first = last - n + 1;
+			if (lease.contains(first, last))
+				return first;
+			renewLease(last, n);
+			// ids that were reserved by another instance in the meantime are skipped
+			if (lease.contains(first, last))
+				return first;
+		}
+	}
+
+	/**
+	 * Reserve ids up to at least {@code required} with a single write of the {@code "maxId"} attribute. The new lease
+	 * starts after all ids that were reserved by any instance, and {@link #next} is moved past the start of the lease.
+	 *
+	 * @param required last id that needs to be reserved
+	 * @param n number of consecutive ids that end at {@code required}, {@code 0} if they do not need to be in the lease
+	 */
+	private synchronized void renewLease(final long required, final int n)
+	{
+		if (!IdService.greaterThan(required, lease.end))
+			return;
+		try
+		{
+			acquireLock();
+			try
+			{
+				final long start = IdService.max(lease.end, readReservedMaxId());
+				final long end = IdService.max(start, required - n) + Math.max(leaseSize, n);
+				writeReservedMaxId(end);
+				next.accumulateAndGet(start, IdService::max);
+				this.lease = new Lease(start, end);
+				LOG.debug("Reserved ids ({}, {}] for {}:{}", start, end, n5, dataset);
+			} finally
+			{
+				releaseLock();
+			}
+		} catch (final IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	private long readReservedMaxId() throws IOException
+	{
+		final Long maxId = n5.getAttribute(dataset, MAX_ID_KEY, Long.class);
+		final long reserved = maxId == null ? 0 : maxId;
+		if (leaseDirectory == null)
+			return reserved;
+		try
+		{
+			final byte[] leased = Files.readAllBytes(leaseDirectory.resolve(LEASE_FILE));
+			return IdService.max(reserved, Long.parseLong(new String(leased, StandardCharsets.UTF_8).trim()));
+		} catch (final NoSuchFileException e)
+		{
+			return reserved;
+		}
+	}
+
+	private void writeReservedMaxId(final long maxId) throws IOException
+	{
+		n5.setAttribute(dataset, MAX_ID_KEY, maxId);
+		if (leaseDirectory == null)
+			return;
+		final Path tmp = Files.createTempFile(leaseDirectory, LEASE_FILE, ".tmp");
+		try
+		{
+			Files.write(tmp, Long.toString(maxId).getBytes(StandardCharsets.UTF_8));
+			Files.move(tmp, leaseDirectory.resolve(LEASE_FILE), StandardCopyOption.ATOMIC_MOVE);
+		} finally
+		{
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	/**
+	 * Lock the lease file for this instance. The lock file is never removed: another instance could lock the removed
+	 * file while a third instance locks a newly created one. Only called from {@code synchronized} methods.
+	 */
+	private void acquireLock() throws IOException
+	{
+		if (leaseDirectory == null)
+			return;
+		final Path lockFile = leaseDirectory.resolve(LOCK_FILE);
+		final ReentrantLock processLock = PROCESS_LOCKS.computeIfAbsent(lockFile.toAbsolutePath().normalize(), path -> new ReentrantLock());
+		try
+		{
+			processLock.lockInterruptibly();
+		} catch (final InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for lock file " + lockFile);
+		}
+		FileChannel lockChannel = null;
+		try
+		{
+			lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			lockChannel.lock();
+		} catch (final IOException | RuntimeException e)
+		{
+			if (lockChannel != null)
+				lockChannel.close();
+			processLock.unlock();
+			throw e;
+		}
+		this.processLock = processLock;
+		this.lockChannel = lockChannel;
+	}
+
+	private void releaseLock() throws IOException
+	{
+		if (lockChannel == null)
+			return;
+		try
+		{
+			// closing the channel releases the lock
+			lockChannel.close();
+		} finally
+		{
+			lockChannel = null;
+			processLock.unlock();
+			processLock = null;
+		}
 	}
 
 }
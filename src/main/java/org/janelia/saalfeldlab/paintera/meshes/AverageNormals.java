@@ -99,4 +99,47 @@ public class AverageNormals
 			normals[vertex + 2] = (float) nn[2];
 		}
 	}
+
+	/**
+	 * Average the normals of all triangles that share a vertex of an indexed triangle mesh. Vertex sharing is given
+	 * by {@code indices}, no lookup by vertex position is necessary.
+	 *
+	 * @param indices three vertex indices per triangle
+	 * @param faceNormals one normal (three floats) per triangle, e.g. from {@link Normals#faceNormals(float[], int[], float[])}
+	 * @param normals one normal (three floats) per vertex
+	 */
+	public static void averagedNormals(final int[] indices, final float[] faceNormals, final float[] normals)
+	{
+
+		LOG.debug("Averaging normals for {} indexed triangles and {} vertices", indices.length / 3, normals.length / 3);
+
+		assert indices.length % 3 == 0;
+		assert indices.length == faceNormals.length;
+
+		final double[] sums = new double[normals.length];
+		final int[] counts = new int[normals.length / 3];
+
+		for (int triangle = 0; triangle < indices.length; triangle += 3)
+		{
+			for (int corner = 0; corner < 3; ++corner)
+			{
+				final int vertex = indices[triangle + corner];
+				final int offset = vertex * 3;
+				sums[offset + 0] += faceNormals[triangle + 0];
+				sums[offset + 1] += faceNormals[triangle + 1];
+				sums[offset + 2] += faceNormals[triangle + 2];
+				++counts[vertex];
+			}
+		}
+
+		for (int vertex = 0, offset = 0; vertex < counts.length; ++vertex, offset += 3)
+		{
+			final int count = counts[vertex];
+			if (count == 0)
+				continue;
+			normals[offset + 0] = (float) (sums[offset + 0] / count);
+			normals[offset + 1] = (float) (sums[offset + 1] / count);
+			normals[offset + 2] = (float) (sums[offset + 2] / count);
+		}
+	}
 }
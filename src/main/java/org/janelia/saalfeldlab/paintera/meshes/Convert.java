@@ -121,6 +121,23 @@ public class Convert
 		return export;
 	}
 
+	/**
+	 * Expand indexed per-vertex data (three floats per vertex) into a flat per-triangle representation, i.e. three
+	 * vertices (nine floats) per triangle.
+	 *
+	 * @param data per-vertex data, e.g. vertices or normals
+	 * @param indices three vertex indices per triangle
+	 *
+	 * @return flat representation of {@code data}
+	 */
+	public static float[] unindex(final float[] data, final int[] indices)
+	{
+		final float[] export = new float[indices.length * 3];
+		for (int i = 0, t = 0; i < indices.length; ++i, t += 3)
+			System.arraycopy(data, indices[i] * 3, export, t, 3);
+		return export;
+	}
+
 	/**
 	 * Convert vertex to triangle and triangle to vertex lookups into a vertex to vertex lookup of all edges.
 	 *
@@ -1,21 +1,28 @@
 package org.janelia.saalfeldlab.paintera.meshes;
 
+import gnu.trove.impl.Constants;
 import gnu.trove.list.array.TFloatArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TLongIntHashMap;
 import net.imglib2.Cursor;
 import net.imglib2.FinalInterval;
 import net.imglib2.Interval;
 import net.imglib2.RandomAccessible;
 import net.imglib2.realtransform.AffineTransform3D;
-import net.imglib2.realtransform.Translation;
 import net.imglib2.type.BooleanType;
 import net.imglib2.util.Intervals;
-import net.imglib2.view.SubsampleIntervalView;
+import net.imglib2.util.Pair;
+import net.imglib2.util.ValuePair;
 import net.imglib2.view.Views;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Arrays;
-import java.util.function.BooleanSupplier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * This class implements the marching cubes algorithm. Based on http://paulbourke.net/geometry/polygonise/
@@ -402,6 +409,53 @@ public class MarchingCubes<B extends BooleanType<B>> {
 					INVALID, INVALID, INVALID, INVALID, INVALID}
 	};
 
+	/**
+	 * Lower end point (relative to the cube origin) of each of the 12 cube edges, consistent with
+	 * {@link #calculateIntersection(long, long, long, int, float[])}.
+	 */
+	private static final long[][] EDGE_LOWER_CORNER = {
+			{1, 0, 1}, {1, 1, 0}, {1, 0, 0}, {1, 0, 0},
+			{0, 0, 1}, {0, 1, 0}, {0, 0, 0}, {0, 0, 0},
+			{0, 0, 1}, {0, 1, 1}, {0, 1, 0}, {0, 0, 0}
+	};
+
+	/**
+	 * Axis along which each of the 12 cube edges extends from {@link #EDGE_LOWER_CORNER}.
+	 */
+	private static final int[] EDGE_AXIS = {
+			1, 2, 1, 2,
+			1, 2, 1, 2,
+			0, 0, 0, 0
+	};
+
+	/**
+	 * Remap from cube corners in voxel order (bit {@code i} set for corner {@code i} at offset
+	 * {@code (i & 1, i >> 1 & 1, i >> 2 & 1)}) to the lookup index of {@link #MC_EDGE_TABLE} and {@link #MC_TRI_TABLE}.
+	 */
+	private static final int[] CUBE_INDEX = new int[256];
+
+	static {
+		// corner order of http://paulbourke.net/geometry/polygonise/ expressed in voxel order
+		final int[] tableBit = {7, 3, 6, 2, 4, 0, 5, 1};
+		for (int corners = 0; corners < 256; ++corners) {
+			int index = 0;
+			for (int corner = 0; corner < 8; ++corner)
+				if ((corners & (1 << corner)) != 0)
+					index |= 1 << tableBit[corner];
+			CUBE_INDEX[corners] = index;
+		}
+	}
+
+	/**
+	 * Minimum number of cube layers per slab that is processed in its own task.
+	 */
+	private static final int MIN_SLAB_DEPTH = 8;
+
+	/**
+	 * Number of cubes of a row that are processed from a single 64 bit word (one bit per voxel plus the upper corner).
+	 */
+	private static final int CUBES_PER_WORD = 63;
+
 	/**
 	 * logger
 	 */
@@ -413,110 +467,214 @@ public class MarchingCubes<B extends BooleanType<B>> {
 
 	private final AffineTransform3D transform;
 
+	private final ForkJoinPool pool;
+
 	/**
-	 * Initialize the class parameters with default values
+	 * Initialize the class parameters with default values and generate meshes on the {@link ForkJoinPool#commonPool()}.
 	 */
 	public MarchingCubes(
 			final RandomAccessible<B> input,
 			final Interval interval,
 			final AffineTransform3D transform) {
+		this(input, interval, transform, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param pool z-slabs of {@code interval} are processed in parallel on this pool
+	 */
+	public MarchingCubes(
+			final RandomAccessible<B> input,
+			final Interval interval,
+			final AffineTransform3D transform,
+			final ForkJoinPool pool) {
 		this.input = input;
 		this.interval = interval;
 		this.transform = transform;
+		this.pool = pool;
 	}
 
 	/**
 	 * Creates the mesh using the information directly from the RAI structure
 	 *
+	 * @return triangle soup, i.e. three vertices (nine floats) per triangle
 	 */
 	public float[] generateMesh() {
+		final Pair<float[], int[]> mesh = generateIndexedMesh();
+		return Convert.unindex(mesh.getA(), mesh.getB());
+	}
+
+	/**
+	 * Creates an indexed mesh using the information directly from the RAI structure. Each intersected edge of the
+	 * voxel grid generates exactly one vertex that is shared by all triangles that touch this edge.
+	 *
+	 * The cubes are split into slabs along z that are triangulated in parallel. Vertices and triangles of all slabs
+	 * are concatenated in the order of the slabs, and vertices on the boundary between two slabs are shared, i.e. the
+	 * result does not depend on the number of slabs.
+	 *
+	 * @return vertices (three floats per vertex) and triangle vertex indices (three indices per triangle)
+	 */
+	public Pair<float[], int[]> generateIndexedMesh() {
 		final Interval interval = Intervals.expand(this.interval, 1L);
-		final Cursor<B> cursor0 = Views.flatIterable(Views.interval(input, interval)).localizingCursor();
-		final Cursor<B> cursor1 = Views.flatIterable(Views.interval(input, Intervals.translate(interval, 1, 0, 0))).cursor();
-		final Cursor<B> cursor2 = Views.flatIterable(Views.interval(input, Intervals.translate(interval,  0, 1, 0))).cursor();
-		final Cursor<B> cursor3 = Views.flatIterable(Views.interval(input, Intervals.translate(interval, 1, 1, 0))).cursor();
-		final Cursor<B> cursor4 = Views.flatIterable(Views.interval(input, Intervals.translate(interval, 0, 0, 1))).cursor();
-		final Cursor<B> cursor5 = Views.flatIterable(Views.interval(input, Intervals.translate(interval, 1, 0, 1))).cursor();
-		final Cursor<B> cursor6 = Views.flatIterable(Views.interval(input, Intervals.translate(interval, 0, 1, 1))).cursor();
-		final Cursor<B> cursor7 = Views.flatIterable(Views.interval(input, Intervals.translate(interval, 1, 1, 1))).cursor();
+		final int numCubesZ = (int) interval.dimension(2);
+		final int numSlabs = Math.max(1, Math.min(numCubesZ / MIN_SLAB_DEPTH, 2 * pool.getParallelism()));
+
+		final List<Slab> slabs = new ArrayList<>();
+		for (int slab = 0; slab < numSlabs; ++slab)
+			slabs.add(new Slab(interval, (int) ((long) slab * numCubesZ / numSlabs), (int) ((long) (slab + 1) * numCubesZ / numSlabs)));
+
+		if (numSlabs == 1)
+			slabs.get(0).compute();
+		else
+			pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(slabs)));
+
+		LOGGER.trace("Triangulated {} slabs of interval {}", numSlabs, interval);
+		return concatenate(slabs);
+	}
+
+	/**
+	 * Concatenate vertices and indices of {@code slabs}. Vertices that were generated on an edge in the boundary
+	 * plane of two consecutive slabs by both slabs are added only once.
+	 */
+	private Pair<float[], int[]> concatenate(final List<Slab> slabs) {
+		if (slabs.size() == 1)
+			return new ValuePair<>(slabs.get(0).vertices, slabs.get(0).indices.toArray());
 
 		final TFloatArrayList vertices = new TFloatArrayList();
-		final double[] p = new double[3];
-
-		final float[][] interpolationPoints = new float[12][3];
-
-		while (cursor0.hasNext()) {
-
-			// Remap the vertices of the cube (8 positions) obtained from a RAI
-			// to match the expected order for this implementation
-			// @formatter:off
-			// the values from the cube are given first in z, then y, then x
-			// this way, the vertex_values (from getCube) are positioned in this
-			// way:
-			//
-			//
-			//   4-----6
-			//  /|    /|
-			// 0-----2 |
-			// | 5---|-7
-			// |/    |/
-			// 1-----3
-			//
-			// this algorithm (based on
-			// http://paulbourke.net/geometry/polygonise/)
-			// considers the vertices of the cube in this order:
-			//
-			//   4-----5
-			//  /|    /|
-			// 7-----6 |
-			// | 0---|-1
-			// |/    |/
-			// 3-----2
-			//
-			// This way, we need to remap the cube vertices:
-			// @formatter:on
-			boolean v0 = cursor0.next().get();
-			boolean v1 = cursor1.next().get();
-			boolean v2 = cursor2.next().get();
-			boolean v3 = cursor3.next().get();
-			boolean v4 = cursor4.next().get();
-			boolean v5 = cursor5.next().get();
-			boolean v6 = cursor6.next().get();
-			boolean v7 = cursor7.next().get();
-			final int vertexValues =
-					(v5 ? 0b00000001 : 0) |
-							(v7 ? 0b00000010 : 0) |
-							(v3 ? 0b00000100 : 0) |
-							(v1 ? 0b00001000 : 0) |
-							(v4 ? 0b00010000 : 0) |
-							(v6 ? 0b00100000 : 0) |
-							(v2 ? 0b01000000 : 0) |
-							(v0 ? 0b10000000 : 0);
-
-			triangulation(
-					vertexValues,
-					cursor0.getLongPosition(0),
-					cursor0.getLongPosition(1),
-					cursor0.getLongPosition(2),
-					vertices,
-					interpolationPoints
-			);
+		final TIntArrayList indices = new TIntArrayList();
+		int[] previousLocalToGlobal = null;
+		Slab previous = null;
+		for (final Slab slab : slabs) {
+			final int numVertices = slab.edgeVertices.keys.size();
+			final int[] localToGlobal = new int[numVertices];
+			for (int vertex = 0; vertex < numVertices; ++vertex) {
+				final int previousIndex = previous == null ? INVALID : previous.edgeVertices.edgeToVertex.get(slab.edgeVertices.keys.get(vertex));
+				if (previousIndex == INVALID) {
+					localToGlobal[vertex] = vertices.size() / 3;
+					vertices.add(slab.vertices, 3 * vertex, 3);
+				} else
+					localToGlobal[vertex] = previousLocalToGlobal[previousIndex];
+			}
+			for (int i = 0; i < slab.indices.size(); ++i)
+				indices.add(localToGlobal[slab.indices.getQuick(i)]);
+			previous = slab;
+			previousLocalToGlobal = localToGlobal;
+		}
+		return new ValuePair<>(vertices.toArray(), indices.toArray());
+	}
+
+	/**
+	 * Triangulation of all cubes with lower corner {@code z} in {@code [zMin, zMax)} (relative to the expanded
+	 * interval). The mask of the slab is read once into a packed bit set, with one bit per voxel in flat iteration
+	 * order, and the eight corners of up to {@link #CUBES_PER_WORD} cubes of a row are extracted from four words.
+	 */
+	private final class Slab extends RecursiveAction {
+
+		private final Interval interval;
+
+		private final int zMin;
 
+		private final int zMax;
+
+		private final EdgeVertices edgeVertices;
+
+		private final TIntArrayList indices = new TIntArrayList();
+
+		private float[] vertices;
+
+		private Slab(final Interval interval, final int zMin, final int zMax) {
+			this.interval = interval;
+			this.zMin = zMin;
+			this.zMax = zMax;
+			this.edgeVertices = new EdgeVertices(interval);
 		}
 
-		final float[] vertexArray = new float[vertices.size()];
+		@Override
+		protected void compute() {
+			final long minX = interval.min(0);
+			final long minY = interval.min(1);
+			final long minZ = interval.min(2);
+			final int numCubesX = (int) interval.dimension(0);
+			final int numCubesY = (int) interval.dimension(1);
+			// cube corners extend one voxel beyond the interval
+			final long gridX = numCubesX + 1;
+			final long gridXY = gridX * (numCubesY + 1);
+			final long[] bits = readBits(gridX, gridXY);
+
+			final int[] edgeVertexIndices = new int[12];
+			for (int z = zMin; z < zMax; ++z) {
+				for (int y = 0; y < numCubesY; ++y) {
+					final long row00 = ((z - zMin) * gridXY) + y * gridX;
+					final long row01 = row00 + gridX;
+					final long row10 = row00 + gridXY;
+					final long row11 = row10 + gridX;
+					for (int x = 0; x < numCubesX; x += CUBES_PER_WORD) {
+						final int numCubes = Math.min(CUBES_PER_WORD, numCubesX - x);
+						final long mask = -1L >>> (CUBES_PER_WORD - numCubes);
+						final long w00 = bitsAt(bits, row00 + x);
+						final long w01 = bitsAt(bits, row01 + x);
+						final long w10 = bitsAt(bits, row10 + x);
+						final long w11 = bitsAt(bits, row11 + x);
+						// no intersected edges if all corners are either inside or outside
+						if (((w00 | w01 | w10 | w11) & mask) == 0 || (w00 & w01 & w10 & w11 & mask) == mask)
+							continue;
+						for (int k = 0; k < numCubes; ++k) {
+							final int corners = (int) (
+									(w00 >>> k & 3) |
+									(w01 >>> k & 3) << 2 |
+									(w10 >>> k & 3) << 4 |
+									(w11 >>> k & 3) << 6);
+							final int vertexValues = CUBE_INDEX[corners];
+							if (MC_EDGE_TABLE[vertexValues] != 0)
+								triangulation(
+										vertexValues,
+										minX + x + k,
+										minY + y,
+										minZ + z,
+										edgeVertices,
+										indices,
+										edgeVertexIndices);
+						}
+					}
+				}
+			}
 
-		for (int i = 0; i < vertexArray.length; i += 3) {
-			p[0] = vertices.get(i);
-			p[1] = vertices.get(i + 1);
-			p[2] = vertices.get(i + 2);
-			transform.apply(p, p);
-			vertexArray[i]     = (float) p[0];
-			vertexArray[i + 1] = (float) p[1];
-			vertexArray[i + 2] = (float) p[2];
+			vertices = edgeVertices.vertices.toArray();
+			final double[] p = new double[3];
+			for (int i = 0; i < vertices.length; i += 3) {
+				p[0] = vertices[i];
+				p[1] = vertices[i + 1];
+				p[2] = vertices[i + 2];
+				transform.apply(p, p);
+				vertices[i]     = (float) p[0];
+				vertices[i + 1] = (float) p[1];
+				vertices[i + 2] = (float) p[2];
+			}
+		}
+
+		/**
+		 * @return one bit per voxel of the planes {@code [zMin, zMax]} in flat iteration order, padded by one word
+		 */
+		private long[] readBits(final long gridX, final long gridXY) {
+			final long numBits = (zMax - zMin + 1) * gridXY;
+			final long[] bits = new long[(int) ((numBits + 63) >>> 6) + 1];
+			final long[] min = {interval.min(0), interval.min(1), interval.min(2) + zMin};
+			final long[] max = {interval.min(0) + gridX - 1, interval.max(1) + 1, interval.min(2) + zMax};
+			final Cursor<B> cursor = Views.flatIterable(Views.interval(input, new FinalInterval(min, max))).cursor();
+			for (long bit = 0; cursor.hasNext(); ++bit) {
+				if (cursor.next().get())
+					bits[(int) (bit >>> 6)] |= 1L << bit;
+			}
+			return bits;
 		}
+	}
 
-		return vertexArray;
+	/**
+	 * @return the 64 bits of {@code bits} starting at bit {@code offset}
+	 */
+	private static long bitsAt(final long[] bits, final long offset) {
+		final int word = (int) (offset >>> 6);
+		final int shift = (int) (offset & 63);
+		return shift == 0 ? bits[word] : bits[word] >>> shift | bits[word + 1] << (64 - shift);
 	}
 
 	/**
@@ -534,8 +692,9 @@ public class MarchingCubes<B extends BooleanType<B>> {
 			final long cursorX,
 			final long cursorY,
 			final long cursorZ,
-			final TFloatArrayList vertices,
-			final float[][] interpolationPoints) {
+			final EdgeVertices edgeVertices,
+			final TIntArrayList indices,
+			final int[] edgeVertexIndices) {
 		// @formatter:off
 		// this algorithm (based on http://paulbourke.net/geometry/polygonise/)
 		// considers the vertices of the cube in this order:
@@ -571,61 +730,71 @@ public class MarchingCubes<B extends BooleanType<B>> {
 		// Now create a triangulation of the isosurface in this cell.
 		final int McEdge = MC_EDGE_TABLE[tableIndex];
 		if (McEdge != 0) {
-			if ((McEdge & 1) != 0)
-				calculateIntersection(cursorX, cursorY, cursorZ, 0, interpolationPoints[0]);
-
-			if ((McEdge & 2) != 0)
-				calculateIntersection(cursorX, cursorY, cursorZ, 1, interpolationPoints[1]);
-
-			if ((McEdge & 4) != 0)
-				calculateIntersection(cursorX, cursorY, cursorZ, 2, interpolationPoints[2]);
-
-			if ((McEdge & 8) != 0)
-				calculateIntersection(cursorX, cursorY, cursorZ, 3, interpolationPoints[3]);
-
-			if ((McEdge & 16) != 0)
-				calculateIntersection(cursorX, cursorY, cursorZ, 4, interpolationPoints[4]);
+			for (int edge = 0; edge < 12; ++edge) {
+				if ((McEdge & (1 << edge)) != 0)
+					edgeVertexIndices[edge] = edgeVertices.getOrCreate(cursorX, cursorY, cursorZ, edge);
+			}
 
-			if ((McEdge & 32) != 0)
-				calculateIntersection(cursorX, cursorY, cursorZ, 5, interpolationPoints[5]);
+			final int[] McTri = MC_TRI_TABLE[tableIndex];
 
-			if ((McEdge & 64) != 0)
-				calculateIntersection(cursorX, cursorY, cursorZ, 6, interpolationPoints[6]);
+			for (int i = 0; McTri[i] != INVALID; i += 3) {
+				indices.add(edgeVertexIndices[McTri[i]]);
+				indices.add(edgeVertexIndices[McTri[i + 1]]);
+				indices.add(edgeVertexIndices[McTri[i + 2]]);
+			}
+		}
+	}
 
-			if ((McEdge & 128) != 0)
-				calculateIntersection(cursorX, cursorY, cursorZ, 7, interpolationPoints[7]);
+	/**
+	 * Lookup from edges of the voxel grid to the index of the vertex that was generated on that edge. An edge is
+	 * identified by its lower end point and its axis, which is encoded into a single {@code long} key.
+	 */
+	private static final class EdgeVertices {
 
-			if ((McEdge & 256) != 0)
-				calculateIntersection(cursorX, cursorY, cursorZ, 8, interpolationPoints[8]);
+		private final long[] min;
 
-			if ((McEdge & 512) != 0)
-				calculateIntersection(cursorX, cursorY, cursorZ, 9, interpolationPoints[9]);
+		private final long gridX;
 
-			if ((McEdge & 1024) != 0)
-				calculateIntersection(cursorX, cursorY, cursorZ, 10, interpolationPoints[10]);
+		private final long gridY;
 
-			if ((McEdge & 2048) != 0)
-				calculateIntersection(cursorX, cursorY, cursorZ, 11, interpolationPoints[11]);
+		private final TLongIntHashMap edgeToVertex = new TLongIntHashMap(
+				Constants.DEFAULT_CAPACITY,
+				Constants.DEFAULT_LOAD_FACTOR,
+				-1L,
+				INVALID);
 
-			final int[] McTri = MC_TRI_TABLE[tableIndex];
+		private final TFloatArrayList vertices = new TFloatArrayList();
 
-			for (int i = 0; McTri[i] != INVALID; i += 3) {
-				final float[] v1 = interpolationPoints[McTri[i]];
-				final float[] v2 = interpolationPoints[McTri[i + 1]];
-				final float[] v3 = interpolationPoints[McTri[i + 2]];
+		/**
+		 * Edge keys of {@link #vertices} in the order in which the vertices were generated.
+		 */
+		private final TLongArrayList keys = new TLongArrayList();
 
-				vertices.add(v1[0]);
-				vertices.add(v1[1]);
-				vertices.add(v1[2]);
+		private final float[] intersection = new float[3];
 
-				vertices.add(v2[0]);
-				vertices.add(v2[1]);
-				vertices.add(v2[2]);
+		private EdgeVertices(final Interval interval) {
+			this.min = Intervals.minAsLongArray(interval);
+			// cube corners extend one voxel beyond the interval
+			this.gridX = interval.dimension(0) + 1;
+			this.gridY = interval.dimension(1) + 1;
+		}
 
-				vertices.add(v3[0]);
-				vertices.add(v3[1]);
-				vertices.add(v3[2]);
-			}
+		private int getOrCreate(final long cursorX, final long cursorY, final long cursorZ, final int edge) {
+			final long[] lowerCorner = EDGE_LOWER_CORNER[edge];
+			final long x = cursorX - min[0] + lowerCorner[0];
+			final long y = cursorY - min[1] + lowerCorner[1];
+			final long z = cursorZ - min[2] + lowerCorner[2];
+			final long key = ((z * gridY + y) * gridX + x) * 3 + EDGE_AXIS[edge];
+			final int existingIndex = edgeToVertex.get(key);
+			if (existingIndex != INVALID)
+				return existingIndex;
+
+			calculateIntersection(cursorX, cursorY, cursorZ, edge, intersection);
+			final int index = vertices.size() / 3;
+			vertices.add(intersection);
+			keys.add(key);
+			edgeToVertex.put(key, index);
+			return index;
 		}
 	}
 
@@ -638,8 +807,8 @@ public class MarchingCubes<B extends BooleanType<B>> {
 	 * @param cursorZ         position on z
 	 * @param intersectedEdge intersected edge
 	 */
-	private void calculateIntersection(final long cursorX, final long cursorY, final long cursorZ, final int intersectedEdge, final float[] intersection) {
-		LOGGER.trace("cursor position: " + cursorX + " " + cursorY + " " + cursorZ);
+	private static void calculateIntersection(final long cursorX, final long cursorY, final long cursorZ, final int intersectedEdge, final float[] intersection) {
+		LOGGER.trace("cursor position: {} {} {}", cursorX, cursorY, cursorZ);
 		long v1x = cursorX, v1y = cursorY, v1z = cursorZ;
 		long v2x = cursorX, v2y = cursorY, v2z = cursorZ;
 
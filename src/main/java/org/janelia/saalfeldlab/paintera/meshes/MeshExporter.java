@@ -1,108 +1,218 @@
 package org.janelia.saalfeldlab.paintera.meshes;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.lang.invoke.MethodHandles;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.imglib2.Interval;
 import net.imglib2.util.Intervals;
 import org.janelia.saalfeldlab.paintera.meshes.managed.GetBlockListFor;
 import org.janelia.saalfeldlab.paintera.meshes.managed.GetMeshFor;
 import org.janelia.saalfeldlab.util.HashWrapper;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Export one mesh file per id. Block meshes are generated concurrently on {@link #getNumThreads()} workers through
+ * {@link GetMeshFor} and welded into a single indexed mesh per id (see {@link MeshWelder}), which is then
+ * {@link #save(String, String, PainteraTriangleMesh) saved} by the file format specific implementation. Block meshes
+ * of the next id are generated while the current id is welded and written.
+ */
 public abstract class MeshExporter<T>
 {
 	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
-	protected int numberOfFaces = 0;
+	/**
+	 * Receives progress updates of {@link #exportMesh(GetBlockListFor, GetMeshFor, Object[], int, String[])}. May be
+	 * called concurrently from multiple threads.
+	 */
+	@FunctionalInterface
+	public interface ProgressListener
+	{
+		void progress(long numFinishedBlocks, long numBlocks);
+	}
+
+	private int numThreads = Runtime.getRuntime().availableProcessors();
+
+	private ProgressListener progressListener = (numFinishedBlocks, numBlocks) -> {};
+
+	private volatile boolean isCancelled = false;
+
+	public int getNumThreads()
+	{
+		return numThreads;
+	}
+
+	public void setNumThreads(final int numThreads)
+	{
+		this.numThreads = Math.max(numThreads, 1);
+	}
+
+	public void setProgressListener(final ProgressListener progressListener)
+	{
+		this.progressListener = progressListener;
+	}
+
+	/**
+	 * Stop a running export as soon as possible. Files that were written completely are kept.
+	 */
+	public void cancel()
+	{
+		this.isCancelled = true;
+	}
 
 	public void exportMesh(
 			final GetBlockListFor<T> getBlockListFor,
 			final GetMeshFor<T> getMeshFor,
-			final T[] ids,
-			final int scale,
-			final String[] paths)
+			final T id,
+			final int scaleIndex,
+			final String path) throws IOException
 	{
-		assert ids.length == paths.length;
-		for (int i = 0; i < ids.length; i++)
-		{
-			numberOfFaces = 0;
-			exportMesh(getBlockListFor, getMeshFor, ids[i], scale, paths[i]);
-		}
+		@SuppressWarnings("unchecked")
+		final T[] ids = (T[]) new Object[] {id};
+		exportMesh(getBlockListFor, getMeshFor, ids, scaleIndex, new String[] {path});
 	}
 
+	/**
+	 * @throws CancellationException if the export was {@link #cancel() cancelled}
+	 */
 	public void exportMesh(
 			final GetBlockListFor<T> getBlockListFor,
 			final GetMeshFor<T> getMeshFor,
-			final T id,
+			final T[] ids,
 			final int scaleIndex,
-			final String path)
+			final String[] paths) throws IOException
 	{
-		// all blocks from id
-		final Set<HashWrapper<Interval>> blockSet = new HashSet<>();
+		assert ids.length == paths.length;
+		final List<List<ShapeKey<T>>> keys = new ArrayList<>();
+		for (final T id : ids)
+			keys.add(keys(getBlockListFor, id, scaleIndex));
+		final long numBlocks = keys.stream().mapToLong(List::size).sum();
+		final AtomicLong numFinishedBlocks = new AtomicLong();
+		progressListener.progress(0, numBlocks);
+
+		final ExecutorService executor = Executors.newFixedThreadPool(numThreads, new NamedThreadFactory("mesh-export-%d", true));
+		try
+		{
+			List<Future<PainteraTriangleMesh>> next = ids.length > 0 ? submit(keys.get(0), getMeshFor, executor, numFinishedBlocks, numBlocks) : null;
+			for (int i = 0; i < ids.length; ++i)
+			{
+				final List<Future<PainteraTriangleMesh>> current = next;
+				next = i + 1 < ids.length ? submit(keys.get(i + 1), getMeshFor, executor, numFinishedBlocks, numBlocks) : null;
 
+				// weld in block order so that the result does not depend on the order in which workers finish
+				final MeshWelder welder = new MeshWelder();
+				for (final Future<PainteraTriangleMesh> blockMesh : current)
+				{
+					final PainteraTriangleMesh mesh = getOrCancel(blockMesh);
+					if (mesh != null)
+						welder.add(mesh);
+				}
+				LOG.debug("Saving mesh for id {}: {} vertices and {} triangles", ids[i], welder.numVertices(), welder.numTriangles());
+				save(paths[i], ids[i].toString(), welder.mesh());
+			}
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @param mesh indexed mesh
+	 */
+	protected abstract void save(String path, String id, PainteraTriangleMesh mesh) throws IOException;
+
+	private List<ShapeKey<T>> keys(final GetBlockListFor<T> getBlockListFor, final T id, final int scaleIndex)
+	{
 		final Interval[] blocksOrNull = getBlockListFor.getBlocksFor(scaleIndex, id);
+		final Set<HashWrapper<Interval>> blockSet = new LinkedHashSet<>();
 		Arrays
 				.stream(blocksOrNull == null ? new Interval[0] : blocksOrNull)
 				.map(HashWrapper::interval)
 				.forEach(blockSet::add);
 
-		final Interval[] blocks = blockSet.stream().map(HashWrapper::getData).toArray(Interval[]::new);
-
-		// generate keys from blocks, scaleIndex, and id
 		final List<ShapeKey<T>> keys = new ArrayList<>();
-		for (final Interval block : blocks)
-		{
-			// ignoring simplification iterations parameter
-			// TODO consider smoothing parameters
-			keys.add(new ShapeKey<>(
-					id,
-					scaleIndex,
-					0,
-					0,
-					0,
-					0,
-					Intervals.minAsLongArray(block),
-					Intervals.maxAsLongArray(block)
-			));
-		}
+		blockSet
+				.stream()
+				.map(HashWrapper::getData)
+				.sorted(Comparator.comparing(Intervals::minAsLongArray, MeshExporter::compareLexicographically))
+				// ignoring simplification and smoothing: meshes are welded across blocks
+				.forEach(block -> keys.add(new ShapeKey<>(
+						id,
+						scaleIndex,
+						0.0,
+						0,
+						0,
+						0,
+						Intervals.minAsLongArray(block),
+						Intervals.maxAsLongArray(block))));
+		return keys;
+	}
 
+	private List<Future<PainteraTriangleMesh>> submit(
+			final List<ShapeKey<T>> keys,
+			final GetMeshFor<T> getMeshFor,
+			final ExecutorService executor,
+			final AtomicLong numFinishedBlocks,
+			final long numBlocks)
+	{
+		final List<Future<PainteraTriangleMesh>> futures = new ArrayList<>();
 		for (final ShapeKey<T> key : keys)
+			futures.add(executor.submit(() -> {
+				if (isCancelled)
+					throw new CancellationException("Mesh export cancelled");
+				final PainteraTriangleMesh mesh = getMeshFor.getMeshFor(key);
+				progressListener.progress(numFinishedBlocks.incrementAndGet(), numBlocks);
+				return mesh;
+			}));
+		return futures;
+	}
+
+	private PainteraTriangleMesh getOrCancel(final Future<PainteraTriangleMesh> future) throws IOException
+	{
+		if (isCancelled)
+			throw new CancellationException("Mesh export cancelled");
+		try
 		{
-			PainteraTriangleMesh verticesAndNormals;
-			try
-			{
-				verticesAndNormals = getMeshFor.getMeshFor(key);
-				if (verticesAndNormals == null)
-					continue;
-				assert verticesAndNormals.getVertices().length == verticesAndNormals.getNormals().length : "Vertices and normals must have the same size.";
-				save(
-						path,
-						id.toString(),
-						verticesAndNormals.getVertices(),
-						verticesAndNormals.getNormals(),
-						hasFaces(numberOfFaces));
-				numberOfFaces += verticesAndNormals.getVertices().length / 3;
-			} catch (final RuntimeException e)
-			{
-				LOG.warn("{} : {}", e.getClass(), e.getMessage());
-				e.printStackTrace();
-				throw e;
-			}
+			return future.get();
+		}
+		catch (final InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while exporting meshes");
+		}
+		catch (final ExecutionException e)
+		{
+			LOG.warn("Unable to generate mesh for export: {}", e.getCause().getMessage());
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IOException(e.getCause());
 		}
-
 	}
 
-	protected abstract void save(String path, String id, float[] vertices, float[] normals, boolean append);
-
-	public static boolean hasFaces(final int numberOfFaces)
+	private static int compareLexicographically(final long[] a, final long[] b)
 	{
-		return numberOfFaces > 0;
+		for (int d = a.length - 1; d >= 0; --d)
+		{
+			final int comparison = Long.compare(a[d], b[d]);
+			if (comparison != 0)
+				return comparison;
+		}
+		return 0;
 	}
 
 }
@@ -1,49 +1,30 @@
 package org.janelia.saalfeldlab.paintera.meshes;
 
-import java.io.BufferedOutputStream;
-import java.io.DataOutputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.lang.invoke.MethodHandles;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import java.nio.ByteOrder;
+import java.nio.file.Paths;
 
+/**
+ * Unindexed triangle vertices and normals as big endian float32 in separate {@code .vertices} and {@code .normals}
+ * files.
+ */
 public class MeshExporterBinary<T> extends MeshExporter<T>
 {
-	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
 	@Override
-	protected void save(final String path, final String id, final float[] vertices, final float[] normals, final
-	boolean append)
+	protected void save(final String path, final String id, final PainteraTriangleMesh mesh) throws IOException
 	{
-		save(path + ".vertices", vertices, append);
-		save(path + ".normals", normals, append);
+		final int[] indices = mesh.getIndices();
+		save(path + ".vertices", mesh.getVertices(), indices);
+		save(path + ".normals", mesh.getNormals(), indices);
 	}
 
-	private void save(final String path, final float[] info, final boolean append)
+	private static void save(final String path, final float[] data, final int[] indices) throws IOException
 	{
-		try
-		{
-			final DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
-					path,
-					append
-			)));
-			try
-			{
-				for (int i = 0; i < info.length; i++)
-				{
-					stream.writeFloat(info[i]);
-				}
-				stream.close();
-			} catch (final IOException e)
-			{
-				LOG.warn("Couldn't write data to the file {}: {}", path, e.getMessage());
-			}
-		} catch (final FileNotFoundException e)
+		try (final MeshFileWriter writer = new MeshFileWriter(Paths.get(path), ByteOrder.BIG_ENDIAN))
 		{
-			LOG.warn("Couldn't find file {}: {}", path, e.getMessage());
+			for (final int index : indices)
+				writer.putFloat(data[3 * index]).putFloat(data[3 * index + 1]).putFloat(data[3 * index + 2]);
 		}
 	}
 
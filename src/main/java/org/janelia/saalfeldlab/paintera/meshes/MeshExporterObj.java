@@ -1,77 +1,49 @@
 package org.janelia.saalfeldlab.paintera.meshes;
 
-import java.io.FileWriter;
 import java.io.IOException;
-import java.lang.invoke.MethodHandles;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import java.nio.file.Paths;
 
+/**
+ * Indexed Wavefront OBJ: shared vertices and normals, faces reference both through the same 1-based index.
+ */
 public class MeshExporterObj<T> extends MeshExporter<T>
 {
-	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
 	@Override
-	protected void save(String path, final String id, final float[] vertices, final float[] normals, final boolean
-			append)
+	protected void save(final String path, final String id, final PainteraTriangleMesh mesh) throws IOException
 	{
-		path = path + ".obj";
-		try
+		final float[] vertices = mesh.getVertices();
+		final float[] normals = mesh.getNormals();
+		final int[] indices = mesh.getIndices();
+		final StringBuilder sb = new StringBuilder();
+		try (final MeshFileWriter writer = new MeshFileWriter(Paths.get(path + ".obj")))
 		{
-			final FileWriter    writer    = new FileWriter(path, append);
-			final float[]       texCoords = new float[] {0.0f, 0.0f};
-			final StringBuilder sb        = new StringBuilder();
-
-			if (!append)
-			{
-				sb.append("# id: ").append(id).append("\n");
-			}
-
-			final int numVertices = vertices.length;
-			for (int k = 0; k < numVertices; k += 3)
-			{
-				sb.append("\nv ").append(vertices[k + 0]).append(" ").append(vertices[k + 1]).append(" ").append(
-						vertices[k + 2]);
-			}
+			writer.put("# id: " + id + "\n");
 
-			sb.append("\n");
-			final int numNormals = normals.length;
-			for (int k = 0; k < numNormals; k += 3)
+			for (int k = 0; k < vertices.length; k += 3)
 			{
-				sb.append("\nvn ").append(normals[k + 0]).append(" ").append(normals[k + 1]).append(" ").append
-						(normals[k + 2]);
+				sb.setLength(0);
+				sb.append("v ").append(vertices[k]).append(" ").append(vertices[k + 1]).append(" ").append(vertices[k + 2]).append("\n");
+				writer.put(sb.toString());
 			}
 
-			sb.append("\n");
-			final int numTexCoords = texCoords.length;
-			for (int k = 0; k < numTexCoords; k += 2)
+			for (int k = 0; k < normals.length; k += 3)
 			{
-				sb.append("\nvt ").append(texCoords[k + 0]).append(" ").append(texCoords[k + 1]);
+				sb.setLength(0);
+				sb.append("vn ").append(normals[k]).append(" ").append(normals[k + 1]).append(" ").append(normals[k + 2]).append("\n");
+				writer.put(sb.toString());
 			}
 
-			sb.append("\n");
-			for (int k = 0; k < numVertices / 3; k += 3)
+			for (int k = 0; k < indices.length; k += 3)
 			{
-				sb.append("\nf ").append(k + numberOfFaces + 1).append("/").append(1).append("/").append(k +
-						numberOfFaces + 1)
-						.append(" ").append(k + numberOfFaces + 2).append("/").append(1).append("/").append(k +
-						numberOfFaces + 2)
-						.append(" ").append(k + numberOfFaces + 3).append("/").append(1).append("/").append(k +
-						numberOfFaces + 3);
+				final int a = indices[k] + 1, b = indices[k + 1] + 1, c = indices[k + 2] + 1;
+				sb.setLength(0);
+				sb.append("f ")
+						.append(a).append("//").append(a).append(" ")
+						.append(b).append("//").append(b).append(" ")
+						.append(c).append("//").append(c).append("\n");
+				writer.put(sb.toString());
 			}
-
-			try
-			{
-				writer.append(sb.toString());
-				writer.close();
-			} catch (final IOException e)
-			{
-				LOG.warn("Couldn't write data to the file {}: {}", path, e.getMessage());
-			}
-
-		} catch (final IOException e)
-		{
-			LOG.warn("Couldn't open the file {}: {}", path, e.getMessage());
 		}
 	}
 }
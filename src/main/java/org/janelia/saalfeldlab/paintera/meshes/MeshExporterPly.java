@@ -0,0 +1,44 @@
+package org.janelia.saalfeldlab.paintera.meshes;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Indexed binary little endian PLY with per-vertex normals.
+ */
+public class MeshExporterPly<T> extends MeshExporter<T>
+{
+
+	@Override
+	protected void save(final String path, final String id, final PainteraTriangleMesh mesh) throws IOException
+	{
+		final float[] vertices = mesh.getVertices();
+		final float[] normals = mesh.getNormals();
+		final int[] indices = mesh.getIndices();
+		try (final MeshFileWriter writer = new MeshFileWriter(Paths.get(path + ".ply")))
+		{
+			writer.put("ply\n" +
+					"format binary_little_endian 1.0\n" +
+					"comment id: " + id + "\n" +
+					"element vertex " + vertices.length / 3 + "\n" +
+					"property float x\n" +
+					"property float y\n" +
+					"property float z\n" +
+					"property float nx\n" +
+					"property float ny\n" +
+					"property float nz\n" +
+					"element face " + indices.length / 3 + "\n" +
+					"property list uchar int vertex_indices\n" +
+					"end_header\n");
+
+			for (int k = 0; k < vertices.length; k += 3)
+			{
+				writer.putFloat(vertices[k]).putFloat(vertices[k + 1]).putFloat(vertices[k + 2]);
+				writer.putFloat(normals[k]).putFloat(normals[k + 1]).putFloat(normals[k + 2]);
+			}
+
+			for (int k = 0; k < indices.length; k += 3)
+				writer.put((byte) 3).putInt(indices[k]).putInt(indices[k + 1]).putInt(indices[k + 2]);
+		}
+	}
+}
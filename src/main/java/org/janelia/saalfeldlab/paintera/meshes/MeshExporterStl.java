@@ -0,0 +1,43 @@
+package org.janelia.saalfeldlab.paintera.meshes;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Binary STL. STL does not support shared vertices or per-vertex normals: each triangle stores its three vertices
+ * and its face normal.
+ */
+public class MeshExporterStl<T> extends MeshExporter<T>
+{
+
+	private static final int HEADER_SIZE = 80;
+
+	@Override
+	protected void save(final String path, final String id, final PainteraTriangleMesh mesh) throws IOException
+	{
+		final float[] vertices = mesh.getVertices();
+		final int[] indices = mesh.getIndices();
+		final float[] faceNormals = new float[indices.length];
+		Normals.faceNormals(vertices, indices, faceNormals);
+		try (final MeshFileWriter writer = new MeshFileWriter(Paths.get(path + ".stl")))
+		{
+			// binary STL headers must not start with "solid"
+			writer.put(Arrays.copyOf(("paintera id: " + id).getBytes(StandardCharsets.US_ASCII), HEADER_SIZE));
+			writer.putInt(indices.length / 3);
+
+			for (int k = 0; k < indices.length; k += 3)
+			{
+				// negated like the vertex normals of the mesh loaders, marching cubes triangles are wound inwards
+				writer.putFloat(-faceNormals[k]).putFloat(-faceNormals[k + 1]).putFloat(-faceNormals[k + 2]);
+				for (int i = 0; i < 3; ++i)
+				{
+					final int v = 3 * indices[k + i];
+					writer.putFloat(vertices[v]).putFloat(vertices[v + 1]).putFloat(vertices[v + 2]);
+				}
+				writer.putShort((short) 0);
+			}
+		}
+	}
+}
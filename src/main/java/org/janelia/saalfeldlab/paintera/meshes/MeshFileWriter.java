@@ -0,0 +1,117 @@
+package org.janelia.saalfeldlab.paintera.meshes;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Buffered, sequential writer for mesh files on top of a {@link FileChannel}. Binary values are written in little
+ * endian byte order by default, as required by binary PLY and STL.
+ */
+class MeshFileWriter implements Closeable
+{
+
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private final FileChannel channel;
+
+	private final ByteBuffer buffer;
+
+	/**
+	 * Create or truncate {@code path}.
+	 */
+	MeshFileWriter(final Path path) throws IOException
+	{
+		this(path, ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Create or truncate {@code path}.
+	 */
+	MeshFileWriter(final Path path, final ByteOrder byteOrder) throws IOException
+	{
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(byteOrder);
+	}
+
+	MeshFileWriter putFloat(final float value) throws IOException
+	{
+		ensureRemaining(Float.BYTES);
+		buffer.putFloat(value);
+		return this;
+	}
+
+	MeshFileWriter putInt(final int value) throws IOException
+	{
+		ensureRemaining(Integer.BYTES);
+		buffer.putInt(value);
+		return this;
+	}
+
+	MeshFileWriter putShort(final short value) throws IOException
+	{
+		ensureRemaining(Short.BYTES);
+		buffer.putShort(value);
+		return this;
+	}
+
+	MeshFileWriter put(final byte value) throws IOException
+	{
+		ensureRemaining(Byte.BYTES);
+		buffer.put(value);
+		return this;
+	}
+
+	MeshFileWriter put(final byte[] bytes) throws IOException
+	{
+		for (int offset = 0; offset < bytes.length; )
+		{
+			ensureRemaining(1);
+			final int length = Math.min(buffer.remaining(), bytes.length - offset);
+			buffer.put(bytes, offset, length);
+			offset += length;
+		}
+		return this;
+	}
+
+	/**
+	 * Write {@code text} as US-ASCII.
+	 */
+	MeshFileWriter put(final String text) throws IOException
+	{
+		return put(text.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			flush();
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+
+	private void ensureRemaining(final int numBytes) throws IOException
+	{
+		if (buffer.remaining() < numBytes)
+			flush();
+	}
+
+	private void flush() throws IOException
+	{
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+}
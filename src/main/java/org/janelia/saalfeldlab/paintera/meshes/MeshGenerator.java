@@ -87,7 +87,7 @@ public class MeshGenerator<T>
 	{
 		final BlockTree<BlockTreeFlatKey, BlockTreeNode<BlockTreeFlatKey>> sceneBlockTree;
 		final CellGrid[] rendererGrids;
-		final int meshSimplificationIterations;
+		final double targetReduction;
 		final double smoothingLambda;
 		final int smoothingIterations;
 		final double minLabelRatio;
@@ -95,14 +95,14 @@ public class MeshGenerator<T>
 		SceneUpdateParameters(
 				final BlockTree<BlockTreeFlatKey, BlockTreeNode<BlockTreeFlatKey>> sceneBlockTree,
 				final CellGrid[] rendererGrids,
-				final int meshSimplificationIterations,
+				final double targetReduction,
 				final double smoothingLambda,
 				final int smoothingIterations,
 				final double minLabelRatio)
 		{
 			this.sceneBlockTree = sceneBlockTree;
 			this.rendererGrids = rendererGrids;
-			this.meshSimplificationIterations = meshSimplificationIterations;
+			this.targetReduction = targetReduction;
 			this.smoothingLambda = smoothingLambda;
 			this.smoothingIterations = smoothingIterations;
 			this.minLabelRatio = minLabelRatio;
@@ -172,7 +172,7 @@ public class MeshGenerator<T>
 				sceneUpdateParameters = new SceneUpdateParameters(
 						sceneUpdateParameters != null ? sceneUpdateParameters.sceneBlockTree : null,
 						sceneUpdateParameters != null ? sceneUpdateParameters.rendererGrids : null,
-						this.state.settings.getSimplificationIterations(),// this.meshSimplificationIterations.get(),
+						this.state.settings.getTargetReduction(),
 						this.state.settings.getSmoothingLambda(),//this.smoothingLambda.get(),
 						this.state.settings.getSmoothingIterations(),//this.smoothingIterations.get(),
 						this.state.settings.getMinLabelRatio()//this.minLabelRatio.get()
@@ -181,7 +181,7 @@ public class MeshGenerator<T>
 			}
 		};
 
-		this.state.settings.simplificationIterationsProperty().addListener(updateInvalidationListener);
+		this.state.settings.targetReductionProperty().addListener(updateInvalidationListener);
 		this.state.settings.smoothingLambdaProperty().addListener(updateInvalidationListener);
 		this.state.settings.smoothingIterationsProperty().addListener(updateInvalidationListener);
 		this.state.settings.minLabelRatioProperty().addListener(updateInvalidationListener);
@@ -299,7 +299,7 @@ public class MeshGenerator<T>
 		sceneUpdateParameters = new SceneUpdateParameters(
 				sceneBlockTree,
 				rendererGrids,
-				sceneUpdateParameters.meshSimplificationIterations,
+				sceneUpdateParameters.targetReduction,
 				sceneUpdateParameters.smoothingLambda,
 				sceneUpdateParameters.smoothingIterations,
 				sceneUpdateParameters.minLabelRatio);
@@ -319,7 +319,7 @@ public class MeshGenerator<T>
 
 		manager.interrupt();
 
-		this.state.settings.simplificationIterationsProperty().removeListener(updateInvalidationListener);
+		this.state.settings.targetReductionProperty().removeListener(updateInvalidationListener);
 		this.state.settings.smoothingLambdaProperty().removeListener(updateInvalidationListener);
 		this.state.settings.smoothingIterationsProperty().removeListener(updateInvalidationListener);
 		this.state.settings.minLabelRatioProperty().removeListener(updateInvalidationListener);
@@ -343,7 +343,7 @@ public class MeshGenerator<T>
 		manager.submit(
 				sceneUpdateParameters.sceneBlockTree,
 				sceneUpdateParameters.rendererGrids,
-				sceneUpdateParameters.meshSimplificationIterations,
+				sceneUpdateParameters.targetReduction,
 				sceneUpdateParameters.smoothingLambda,
 				sceneUpdateParameters.smoothingIterations,
 				sceneUpdateParameters.minLabelRatio);
@@ -66,7 +66,7 @@ public class MeshGeneratorJobManager<T>
 	{
 		final BlockTree<BlockTreeFlatKey, BlockTreeNode<BlockTreeFlatKey>> sceneBlockTree;
 		final CellGrid[] rendererGrids;
-		final int simplificationIterations;
+		final double targetReduction;
 		final double smoothingLambda;
 		final int smoothingIterations;
 		final double minLabelRatio;
@@ -74,14 +74,14 @@ public class MeshGeneratorJobManager<T>
 		SceneUpdateParameters(
 			final BlockTree<BlockTreeFlatKey, BlockTreeNode<BlockTreeFlatKey>> sceneBlockTree,
 			final CellGrid[] rendererGrids,
-			final int simplificationIterations,
+			final double targetReduction,
 			final double smoothingLambda,
 			final int smoothingIterations,
 			final double minLabelRatio)
 		{
 			this.sceneBlockTree = sceneBlockTree;
 			this.rendererGrids = rendererGrids;
-			this.simplificationIterations = simplificationIterations;
+			this.targetReduction = targetReduction;
 			this.smoothingLambda = smoothingLambda;
 			this.smoothingIterations = smoothingIterations;
 			this.minLabelRatio = minLabelRatio;
@@ -110,7 +110,7 @@ public class MeshGeneratorJobManager<T>
 
 				return
 						sameBlockSize &&
-						simplificationIterations == other.simplificationIterations &&
+						targetReduction == other.targetReduction &&
 						smoothingLambda == other.smoothingLambda &&
 						smoothingIterations == other.smoothingIterations &&
 						minLabelRatio == other.minLabelRatio;
@@ -292,7 +292,7 @@ public class MeshGeneratorJobManager<T>
 	public void submit(
 			final BlockTree<BlockTreeFlatKey, BlockTreeNode<BlockTreeFlatKey>> sceneBlockTree,
 			final CellGrid[] rendererGrids,
-			final int simplificationIterations,
+			final double targetReduction,
 			final double smoothingLambda,
 			final int smoothingIterations,
 			final double minLabelRatio)
@@ -303,7 +303,7 @@ public class MeshGeneratorJobManager<T>
 		final SceneUpdateParameters sceneUpdateParameters = new SceneUpdateParameters(
 				sceneBlockTree,
 				rendererGrids,
-				simplificationIterations,
+				targetReduction,
 				smoothingLambda,
 				smoothingIterations,
 				minLabelRatio
@@ -364,46 +364,41 @@ public class MeshGeneratorJobManager<T>
 		interruptTasks(taskKeysToInterrupt);
 
 		// re-prioritize all existing tasks with respect to the new distances between the blocks and the camera
-		synchronized (workers)
+		final Map<Runnable, MeshWorkerPriority> reprioritizedTasks = new HashMap<>();
+		for (final Entry<ShapeKey<T>, Task> entry : tasks.entrySet())
 		{
-			final Map<Runnable, MeshWorkerPriority> reprioritizedTasks = new HashMap<>();
-			for (final Entry<ShapeKey<T>, Task> entry : tasks.entrySet())
+			final ShapeKey<T> key = entry.getKey();
+			final Task task = entry.getValue();
+			if (task.state == TaskState.CREATED || task.state == TaskState.SCHEDULED)
 			{
-				final ShapeKey<T> key = entry.getKey();
-				final Task task = entry.getValue();
-				if (task.state == TaskState.CREATED || task.state == TaskState.SCHEDULED)
-				{
-					assert blockTree.nodes.containsKey(key) : "Task for the pending block already exists but its new priority is missing: " + key;
-					task.priority = new MeshWorkerPriority(blockTree.nodes.get(key).distanceFromCamera, key.scaleIndex());
-					if (workers.containsTask(task.task))
-					{
-						assert task.state == TaskState.SCHEDULED : "Task is in the worker queue but its state is " + task.state + ", expected SCHEDULED: " + key;
-						reprioritizedTasks.put(task.task, task.priority);
-					}
-				}
+				assert blockTree.nodes.containsKey(key) : "Task for the pending block already exists but its new priority is missing: " + key;
+				task.priority = new MeshWorkerPriority(blockTree.nodes.get(key).distanceFromCamera, key.scaleIndex());
+				if (task.state == TaskState.SCHEDULED)
+					reprioritizedTasks.put(task.task, task.priority);
 			}
-			// check what if the task is already running and is not in the queue anymore
-			if (!reprioritizedTasks.isEmpty())
-				workers.addOrUpdateTasks(reprioritizedTasks);
 		}
+		// tasks that have been started in the meantime are not in the queue anymore and are ignored
+		if (!reprioritizedTasks.isEmpty())
+			workers.updateTaskPriorities(reprioritizedTasks);
 
 		// re-prioritize blocks in the FX mesh queue
 		synchronized (meshViewUpdateQueue)
 		{
+			final Map<ShapeKey<T>, MeshWorkerPriority> reprioritizedMeshes = new HashMap<>();
 			for (final Entry<ShapeKey<T>, StatefulBlockTreeNode<ShapeKey<T>>> entry : blockTree.nodes.entrySet())
 			{
 				final ShapeKey<T> key = entry.getKey();
 				final StatefulBlockTreeNode<ShapeKey<T>> treeNode = entry.getValue();
 				if (treeNode.state == BlockTreeNodeState.RENDERED && meshViewUpdateQueue.contains(key))
 				{
-					final MeshWorkerPriority newPriority = new MeshWorkerPriority(treeNode.distanceFromCamera, key.scaleIndex());
-					meshViewUpdateQueue.updatePriority(key, newPriority);
+					reprioritizedMeshes.put(key, new MeshWorkerPriority(treeNode.distanceFromCamera, key.scaleIndex()));
 				}
 				else
 				{
 					assert !meshViewUpdateQueue.contains(key) : "Block that is in the " + treeNode.state + " state is not supposed to be in the FX queue: " + key;
 				}
 			}
+			meshViewUpdateQueue.updatePriorities(reprioritizedMeshes);
 		}
 
 		// calculate how many tasks are already completed
@@ -1072,7 +1067,7 @@ public class MeshGeneratorJobManager<T>
 		return new ShapeKey<>(
 				identifier,
 				scaleLevel,
-				sceneUpdateParameters.simplificationIterations,
+				Simplify.targetReductionAtScaleLevel(sceneUpdateParameters.targetReduction, scaleLevel),
 				sceneUpdateParameters.smoothingLambda,
 				sceneUpdateParameters.smoothingIterations,
 				sceneUpdateParameters.minLabelRatio,
@@ -1085,16 +1080,20 @@ public class MeshGeneratorJobManager<T>
 	{
 		final float[]      vertices = verticesAndNormals.getVertices();
 		final float[]      normals  = verticesAndNormals.getNormals();
+		final int[]        indices  = verticesAndNormals.getIndices();
 		final TriangleMesh mesh     = new TriangleMesh();
 		mesh.getPoints().addAll(vertices);
 		mesh.getNormals().addAll(normals);
 		mesh.getTexCoords().addAll(0, 0);
 		mesh.setVertexFormat(VertexFormat.POINT_NORMAL_TEXCOORD);
-		final int[] faceIndices = new int[vertices.length];
+		// each face vertex refers to a point, a normal (same index as the point), and the only texture coordinate
+		final int numFaceVertices = indices == null ? vertices.length / 3 : indices.length;
+		final int[] faceIndices = new int[numFaceVertices * 3];
 		for (int i = 0, k = 0; i < faceIndices.length; i += 3, ++k)
 		{
-			faceIndices[i + 0] = k;
-			faceIndices[i + 1] = k;
+			final int vertexIndex = indices == null ? k : indices[k];
+			faceIndices[i + 0] = vertexIndex;
+			faceIndices[i + 1] = vertexIndex;
 			faceIndices[i + 2] = 0;
 		}
 		mesh.getFaces().addAll(faceIndices);
@@ -96,6 +96,18 @@ public class MeshViewUpdateQueue<T>
 		priorityQueue.addOrUpdate(priority, key);
 	}
 
+	/**
+	 * Updates the priorities of multiple requests at once. All keys must be contained in the queue.
+	 *
+	 * @param priorities
+	 */
+	public synchronized void updatePriorities(final Map<ShapeKey<T>, MeshWorkerPriority> priorities)
+	{
+		if (!keysToEntries.keySet().containsAll(priorities.keySet()))
+			throw new NoSuchElementException();
+		priorityQueue.addOrUpdateAll(priorities);
+	}
+
 	public synchronized boolean contains(final ShapeKey<T> key)
 	{
 		assert keysToEntries.containsKey(key) == priorityQueue.contains(key);
@@ -0,0 +1,169 @@
+package org.janelia.saalfeldlab.paintera.meshes;
+
+import gnu.trove.list.array.TFloatArrayList;
+import gnu.trove.list.array.TIntArrayList;
+
+import java.util.Arrays;
+
+/**
+ * Merge the block meshes of a segment into a single indexed mesh. Vertices at the same position are welded into a
+ * single vertex, in particular vertices on the faces shared by neighboring blocks. Marching cubes generates bit-wise
+ * identical vertices on both sides of a block face, so positions are compared exactly. Normals of welded vertices
+ * are averaged. Triangles that degenerate because two of their vertices were welded are dropped.
+ *
+ * The resulting mesh depends on the order in which block meshes are {@link #add(PainteraTriangleMesh) added}.
+ */
+public class MeshWelder
+{
+
+	private static final int EMPTY = -1;
+
+	private final TFloatArrayList vertices;
+
+	private final TFloatArrayList normals;
+
+	private final TIntArrayList indices;
+
+	/**
+	 * Open addressing hash table of vertex indices, keyed by vertex position.
+	 */
+	private int[] table;
+
+	private int mask;
+
+	private int numVertices = 0;
+
+	private final int[] blockToWelded = new int[3];
+
+	public MeshWelder()
+	{
+		this(1 << 12);
+	}
+
+	/**
+	 * @param expectedNumVertices expected number of welded vertices
+	 */
+	public MeshWelder(final int expectedNumVertices)
+	{
+		final int capacity = Integer.highestOneBit(Math.max(expectedNumVertices, 16) * 2 - 1) * 2;
+		this.table = new int[capacity];
+		Arrays.fill(this.table, EMPTY);
+		this.mask = capacity - 1;
+		this.vertices = new TFloatArrayList(expectedNumVertices * 3);
+		this.normals = new TFloatArrayList(expectedNumVertices * 3);
+		this.indices = new TIntArrayList(expectedNumVertices * 6);
+	}
+
+	/**
+	 * Add all triangles of {@code mesh}, indexed or not.
+	 */
+	public void add(final PainteraTriangleMesh mesh)
+	{
+		final float[] vertices = mesh.getVertices();
+		final float[] normals = mesh.getNormals();
+		final int[] indices = mesh.getIndices();
+		final int numIndices = indices == null ? vertices.length / 3 : indices.length;
+		final int[] welded = new int[indices == null ? 0 : vertices.length / 3];
+		if (indices != null)
+			for (int v = 0; v < welded.length; ++v)
+				welded[v] = weld(vertices, normals, v);
+
+		for (int i = 0; i < numIndices; i += 3)
+		{
+			for (int k = 0; k < 3; ++k)
+				blockToWelded[k] = indices == null ? weld(vertices, normals, i + k) : welded[indices[i + k]];
+			if (blockToWelded[0] == blockToWelded[1] || blockToWelded[1] == blockToWelded[2] || blockToWelded[2] == blockToWelded[0])
+				continue;
+			this.indices.add(blockToWelded);
+		}
+	}
+
+	public int numVertices()
+	{
+		return numVertices;
+	}
+
+	public int numTriangles()
+	{
+		return indices.size() / 3;
+	}
+
+	/**
+	 * @return welded mesh with normalized per-vertex normals
+	 */
+	public PainteraTriangleMesh mesh()
+	{
+		final float[] normals = this.normals.toArray();
+		for (int n = 0; n < normals.length; n += 3)
+		{
+			final double x = normals[n], y = normals[n + 1], z = normals[n + 2];
+			final double length = Math.sqrt(x * x + y * y + z * z);
+			if (length > 0)
+			{
+				normals[n] = (float) (x / length);
+				normals[n + 1] = (float) (y / length);
+				normals[n + 2] = (float) (z / length);
+			}
+		}
+		return new PainteraTriangleMesh(this.vertices.toArray(), normals, this.indices.toArray());
+	}
+
+	private int weld(final float[] vertices, final float[] normals, final int vertex)
+	{
+		final int offset = 3 * vertex;
+		// + 0.0f maps -0.0f to 0.0f
+		final float x = vertices[offset] + 0.0f;
+		final float y = vertices[offset + 1] + 0.0f;
+		final float z = vertices[offset + 2] + 0.0f;
+		for (int slot = hash(x, y, z) & mask; ; slot = (slot + 1) & mask)
+		{
+			final int index = table[slot];
+			if (index == EMPTY)
+			{
+				table[slot] = numVertices;
+				this.vertices.add(x);
+				this.vertices.add(y);
+				this.vertices.add(z);
+				this.normals.add(normals[offset]);
+				this.normals.add(normals[offset + 1]);
+				this.normals.add(normals[offset + 2]);
+				if (++numVertices * 2 > table.length)
+					grow();
+				return numVertices - 1;
+			}
+			if (this.vertices.getQuick(3 * index) == x && this.vertices.getQuick(3 * index + 1) == y && this.vertices.getQuick(3 * index + 2) == z)
+			{
+				for (int d = 0; d < 3; ++d)
+					this.normals.setQuick(3 * index + d, this.normals.getQuick(3 * index + d) + normals[offset + d]);
+				return index;
+			}
+		}
+	}
+
+	private void grow()
+	{
+		table = new int[table.length * 2];
+		Arrays.fill(table, EMPTY);
+		mask = table.length - 1;
+		for (int index = 0; index < numVertices; ++index)
+		{
+			int slot = hash(vertices.getQuick(3 * index), vertices.getQuick(3 * index + 1), vertices.getQuick(3 * index + 2)) & mask;
+			while (table[slot] != EMPTY)
+				slot = (slot + 1) & mask;
+			table[slot] = index;
+		}
+	}
+
+	private static int hash(final float x, final float y, final float z)
+	{
+		int h = Float.floatToIntBits(x);
+		h = h * 31 + Float.floatToIntBits(y);
+		h = h * 31 + Float.floatToIntBits(z);
+		// spread bits, coordinates are often small multiples of the voxel size
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		return h;
+	}
+
+}
@@ -62,4 +62,44 @@ public class Normals
 			normals[triangle + 8] = (float) n3;
 		}
 	}
+
+	/**
+	 * Calculate one orthogonal surface normal per triangle of an indexed triangle mesh.
+	 *
+	 * @param vertices three floats per vertex
+	 * @param indices three vertex indices per triangle
+	 * @param faceNormals three floats per triangle, i.e. same length as {@code indices}
+	 */
+	public static void faceNormals(final float[] vertices, final int[] indices, final float[] faceNormals)
+	{
+
+		LOG.debug("Calculating normals for {} indexed triangles", indices.length / 3);
+
+		assert indices.length % 3 == 0;
+		assert indices.length == faceNormals.length;
+
+		for (int triangle = 0; triangle < indices.length; triangle += 3)
+		{
+			final int i1 = indices[triangle + 0] * 3;
+			final int i2 = indices[triangle + 1] * 3;
+			final int i3 = indices[triangle + 2] * 3;
+
+			final double v11 = vertices[i1 + 0], v12 = vertices[i1 + 1], v13 = vertices[i1 + 2];
+
+			final double d11 = vertices[i2 + 0] - v11, d12 = vertices[i2 + 1] - v12, d13 = vertices[i2 + 2] - v13;
+			final double d21 = vertices[i3 + 0] - v11, d22 = vertices[i3 + 1] - v12, d23 = vertices[i3 + 2] - v13;
+
+			double       n1   = d12 * d23 - d13 * d22;
+			double       n2   = d13 * d21 - d11 * d23;
+			double       n3   = d11 * d22 - d12 * d21;
+			final double norm = Math.sqrt(n1 * n1 + n2 * n2 + n3 * n3);
+			n1 /= norm;
+			n2 /= norm;
+			n3 /= norm;
+
+			faceNormals[triangle + 0] = (float) n1;
+			faceNormals[triangle + 1] = (float) n2;
+			faceNormals[triangle + 2] = (float) n3;
+		}
+	}
 }
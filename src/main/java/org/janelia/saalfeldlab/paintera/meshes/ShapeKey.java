@@ -15,7 +15,7 @@ public class ShapeKey<T>
 
 	private final int scaleIndex;
 
-	private final int simplificationIterations;
+	private final double targetReduction;
 
 	private final double smoothingLambda;
 
@@ -34,7 +34,7 @@ public class ShapeKey<T>
 	public ShapeKey(
 			final T shapeId,
 			final int scaleIndex,
-			final int simplificationIterations,
+			final double targetReduction,
 			final double smoothingLambda,
 			final int smoothingIterations,
 			final double minLabelRatio,
@@ -43,7 +43,7 @@ public class ShapeKey<T>
 		this(
 				shapeId,
 				scaleIndex,
-				simplificationIterations,
+				targetReduction,
 				smoothingLambda,
 				smoothingIterations,
 				minLabelRatio,
@@ -56,7 +56,7 @@ public class ShapeKey<T>
 	public ShapeKey(
 			final T shapeId,
 			final int scaleIndex,
-			final int simplificationIterations,
+			final double targetReduction,
 			final double smoothingLambda,
 			final int smoothingIterations,
 			final double minLabelRatio,
@@ -67,7 +67,7 @@ public class ShapeKey<T>
 	{
 		this.shapeId = shapeId;
 		this.scaleIndex = scaleIndex;
-		this.simplificationIterations = simplificationIterations;
+		this.targetReduction = targetReduction;
 		this.smoothingLambda = smoothingLambda;
 		this.smoothingIterations = smoothingIterations;
 		this.minLabelRatio = minLabelRatio;
@@ -81,10 +81,10 @@ public class ShapeKey<T>
 	public String toString()
 	{
 		return String.format(
-				"{shapeId=%s, scaleIndex=%d, simplifications=%d, smoothingLambda=%.2f, smoothings=%d, minLabelRatio=%.2f, min=%s, max=%s}",
+				"{shapeId=%s, scaleIndex=%d, targetReduction=%.2f, smoothingLambda=%.2f, smoothings=%d, minLabelRatio=%.2f, min=%s, max=%s}",
 				shapeId,
 				scaleIndex,
-				simplificationIterations,
+				targetReduction,
 				smoothingLambda,
 				smoothingIterations,
 				minLabelRatio,
@@ -98,7 +98,7 @@ public class ShapeKey<T>
 		int result = scaleIndex;
 		// shapeId may be null, e.g. when using Void as shape Key
 		result = 31 * result + shapeIdHashCode.applyAsInt(shapeId);
-		result = 31 * result + simplificationIterations;
+		result = 31 * result + Double.hashCode(targetReduction);
 		result = 31 * result + Double.hashCode(smoothingLambda);
 		result = 31 * result + smoothingIterations;
 		result = 31 * result + Double.hashCode(minLabelRatio);
@@ -119,7 +119,7 @@ public class ShapeKey<T>
 			return
 					shapeIdEquals.test(shapeId, other.shapeId) &&
 					scaleIndex == other.scaleIndex &&
-					simplificationIterations == other.simplificationIterations &&
+					targetReduction == other.targetReduction &&
 					smoothingLambda == other.smoothingLambda &&
 					smoothingIterations == other.smoothingIterations &&
 					minLabelRatio == other.minLabelRatio &&
@@ -140,9 +140,12 @@ public class ShapeKey<T>
 		return scaleIndex;
 	}
 
-	public int simplificationIterations()
+	/**
+	 * @return fraction of triangles that mesh simplification should remove, in {@code [0, 1)}
+	 */
+	public double targetReduction()
 	{
-		return simplificationIterations;
+		return targetReduction;
 	}
 
 	public double smoothingLambda()
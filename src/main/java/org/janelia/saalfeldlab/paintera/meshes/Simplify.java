@@ -1,12 +1,22 @@
 package org.janelia.saalfeldlab.paintera.meshes;
 
+import gnu.trove.list.array.TFloatArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TLongIntHashMap;
 import net.imglib2.util.Pair;
 import net.imglib2.util.ValuePair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
 /**
- * Calculate and assign surface normals of a triangle mesh.
+ * Decimate an indexed triangle mesh by quadric error edge collapse (Garland and Heckbert, 1997).
+ *
+ * Vertices on open or non-manifold edges are never moved or removed, so that meshes of neighboring blocks still
+ * stitch after simplification.
  *
  * @author Philipp Hanslovsky
  */
@@ -15,12 +25,529 @@ public class Simplify
 	/**
 	 * logger
 	 */
-	private static final Logger LOG = LoggerFactory.getLogger(Simplify.class);
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	public static final double MAX_TARGET_REDUCTION = 0.95;
+
+	/**
+	 * Collapses that rotate the normal of any adjacent triangle such that the cosine between the old and the new
+	 * normal drops below this value are rejected.
+	 */
+	private static final double MIN_NORMAL_COSINE = 0.2;
+
+	/**
+	 * @param vertices 3 coordinates per vertex
+	 * @param indices 3 vertex indices per triangle
+	 * @param targetReduction fraction of triangles to remove, clamped to {@code [0, }{@link #MAX_TARGET_REDUCTION}{@code ]}.
+	 * 		Fewer triangles may be removed if no further collapse is possible without changing the mesh boundary or
+	 * 		its topology.
+	 * @return simplified vertices and indices, or the inputs if {@code targetReduction <= 0}
+	 */
+	public static Pair<float[], int[]> simplify(final float[] vertices, final int[] indices, final double targetReduction)
+	{
+		final int numTriangles = indices.length / 3;
+		if (targetReduction <= 0.0 || numTriangles == 0)
+			return new ValuePair<>(vertices, indices);
+
+		final double reduction = Math.min(targetReduction, MAX_TARGET_REDUCTION);
+		final int targetTriangles = (int) Math.ceil(numTriangles * (1.0 - reduction));
+
+		final EdgeCollapse collapse = new EdgeCollapse(vertices, indices);
+		collapse.collapseUntil(targetTriangles);
+		final Pair<float[], int[]> simplified = collapse.compact();
+
+		LOG.debug(
+				"Simplified {} vertices and {} triangles to {} vertices and {} triangles (target reduction {})",
+				vertices.length / 3,
+				numTriangles,
+				simplified.getA().length / 3,
+				simplified.getB().length / 3,
+				reduction);
+		return simplified;
+	}
+
+	/**
+	 * Only meshes at coarse scale levels are simplified: full resolution meshes are shown for the blocks closest to the
+	 * camera, where the decimation would be visible.
+	 *
+	 * @return {@code targetReduction} if {@code scaleLevel > 0}, {@code 0} otherwise
+	 */
+	public static double targetReductionAtScaleLevel(final double targetReduction, final int scaleLevel)
+	{
+		return scaleLevel > 0 ? targetReduction : 0.0;
+	}
+
+	private static final class Candidate implements Comparable<Candidate>
+	{
+		final int keep;
+
+		final int remove;
+
+		final int keepVersion;
+
+		final int removeVersion;
+
+		final double x, y, z;
 
-	public static Pair<float[], float[]> simplify(final float[] vertices, final float[] normals)
+		final double cost;
+
+		Candidate(
+				final int keep,
+				final int remove,
+				final int keepVersion,
+				final int removeVersion,
+				final double x,
+				final double y,
+				final double z,
+				final double cost)
+		{
+			this.keep = keep;
+			this.remove = remove;
+			this.keepVersion = keepVersion;
+			this.removeVersion = removeVersion;
+			this.x = x;
+			this.y = y;
+			this.z = z;
+			this.cost = cost;
+		}
+
+		@Override
+		public int compareTo(final Candidate other)
+		{
+			return Double.compare(cost, other.cost);
+		}
+	}
+
+	private static final class EdgeCollapse
 	{
+		// symmetric 4x4 quadric stored as a2, ab, ac, ad, b2, bc, bd, c2, cd, d2
+		private static final int QUADRIC_SIZE = 10;
+
+		private final int numVertices;
+
+		private final double[] positions;
+
+		private final double[] quadrics;
+
+		private final boolean[] locked;
+
+		private final boolean[] removedVertices;
+
+		private final int[] versions;
+
+		private final TIntArrayList[] vertexTriangles;
+
+		private final int[] triangles;
+
+		private final boolean[] removedTriangles;
+
+		private int numLiveTriangles;
+
+		private final PriorityQueue<Candidate> queue = new PriorityQueue<>();
+
+		// scratch space to collect distinct neighbors without allocating a set per query
+		private final int[] marks;
+
+		private int mark = 0;
+
+		private final TIntArrayList neighbors = new TIntArrayList();
+
+		EdgeCollapse(final float[] vertices, final int[] indices)
+		{
+			this.numVertices = vertices.length / 3;
+			this.positions = new double[vertices.length];
+			for (int i = 0; i < vertices.length; ++i)
+				positions[i] = vertices[i];
+			this.quadrics = new double[numVertices * QUADRIC_SIZE];
+			this.locked = new boolean[numVertices];
+			this.removedVertices = new boolean[numVertices];
+			this.versions = new int[numVertices];
+			this.marks = new int[numVertices];
+			this.triangles = indices.clone();
+			this.removedTriangles = new boolean[indices.length / 3];
+			this.numLiveTriangles = removedTriangles.length;
+
+			this.vertexTriangles = new TIntArrayList[numVertices];
+			for (int v = 0; v < numVertices; ++v)
+				vertexTriangles[v] = new TIntArrayList(6);
+
+			final TLongIntHashMap edgeTriangleCounts = new TLongIntHashMap();
+			final double[] plane = new double[4];
+			for (int t = 0, i = 0; i < triangles.length; ++t, i += 3)
+			{
+				final int v1 = triangles[i + 0];
+				final int v2 = triangles[i + 1];
+				final int v3 = triangles[i + 2];
+				vertexTriangles[v1].add(t);
+				vertexTriangles[v2].add(t);
+				vertexTriangles[v3].add(t);
+				edgeTriangleCounts.adjustOrPutValue(Smooth.edgeKey(v1, v2, numVertices), 1, 1);
+				edgeTriangleCounts.adjustOrPutValue(Smooth.edgeKey(v2, v3, numVertices), 1, 1);
+				edgeTriangleCounts.adjustOrPutValue(Smooth.edgeKey(v3, v1, numVertices), 1, 1);
+
+				// area weighted plane quadric, degenerate triangles do not contribute
+				final double area = plane(v1, v2, v3, plane);
+				if (area > 0.0)
+				{
+					addPlaneQuadric(v1, plane, area);
+					addPlaneQuadric(v2, plane, area);
+					addPlaneQuadric(v3, plane, area);
+				}
+			}
+
+			edgeTriangleCounts.forEachEntry((edge, count) -> {
+				if (count != 2)
+				{
+					locked[(int) (edge / numVertices)] = true;
+					locked[(int) (edge % numVertices)] = true;
+				}
+				return true;
+			});
+
+			edgeTriangleCounts.forEachKey(edge -> {
+				addCandidate((int) (edge / numVertices), (int) (edge % numVertices));
+				return true;
+			});
+		}
+
+		void collapseUntil(final int targetTriangles)
+		{
+			while (numLiveTriangles > targetTriangles && !queue.isEmpty())
+			{
+				final Candidate candidate = queue.poll();
+				if (removedVertices[candidate.keep] || removedVertices[candidate.remove])
+					continue;
+				if (versions[candidate.keep] != candidate.keepVersion || versions[candidate.remove] != candidate.removeVersion)
+					continue;
+				if (isValid(candidate))
+					collapse(candidate);
+			}
+		}
+
+		Pair<float[], int[]> compact()
+		{
+			final int[] newIndices = new int[numVertices];
+			Arrays.fill(newIndices, -1);
+			final TFloatArrayList vertices = new TFloatArrayList();
+			final TIntArrayList indices = new TIntArrayList(numLiveTriangles * 3);
+			for (int t = 0, i = 0; i < triangles.length; ++t, i += 3)
+			{
+				if (removedTriangles[t])
+					continue;
+				for (int k = 0; k < 3; ++k)
+				{
+					final int v = triangles[i + k];
+					if (newIndices[v] == -1)
+					{
+						newIndices[v] = vertices.size() / 3;
+						vertices.add((float) positions[3 * v + 0]);
+						vertices.add((float) positions[3 * v + 1]);
+						vertices.add((float) positions[3 * v + 2]);
+					}
+					indices.add(newIndices[v]);
+				}
+			}
+			return new ValuePair<>(vertices.toArray(), indices.toArray());
+		}
+
+		private void addCandidate(final int v1, final int v2)
+		{
+			if (locked[v1] && locked[v2])
+				return;
+
+			final int keep = locked[v2] ? v2 : v1;
+			final int remove = keep == v1 ? v2 : v1;
+
+			final double[] q = new double[QUADRIC_SIZE];
+			for (int i = 0; i < QUADRIC_SIZE; ++i)
+				q[i] = quadrics[keep * QUADRIC_SIZE + i] + quadrics[remove * QUADRIC_SIZE + i];
+
+			final double[] target = new double[3];
+			if (locked[keep] || !optimalPosition(q, keep, remove, target))
+				bestOfEndpointsAndMidpoint(q, keep, remove, target);
+
+			queue.add(new Candidate(
+					keep,
+					remove,
+					versions[keep],
+					versions[remove],
+					target[0],
+					target[1],
+					target[2],
+					error(q, target[0], target[1], target[2])));
+		}
+
+		private boolean isValid(final Candidate candidate)
+		{
+			final int keep = candidate.keep;
+			final int remove = candidate.remove;
+
+			// link condition: the endpoints of an interior edge of a manifold mesh share exactly two neighbors,
+			// otherwise the collapse would pinch the surface
+			collectNeighbors(remove);
+			final int[] removeNeighbors = neighbors.toArray();
+			collectNeighbors(keep);
+			final int keepDegree = neighbors.size();
+			int numSharedNeighbors = 0;
+			for (final int neighbor : removeNeighbors)
+				if (marks[neighbor] == mark)
+					++numSharedNeighbors;
+			if (numSharedNeighbors != 2)
+				return false;
+
+			// collapsing an edge of a tetrahedron leaves two coinciding triangles
+			if (keepDegree == 3 && removeNeighbors.length == 3)
+				return false;
+
+			return !flipsTriangle(remove, keep, candidate) && !flipsTriangle(keep, remove, candidate);
+		}
+
+		/**
+		 * Check whether moving {@code vertex} to the candidate position flips or degenerates any of its triangles that
+		 * do not contain {@code other} (those are removed by the collapse).
+		 */
+		private boolean flipsTriangle(final int vertex, final int other, final Candidate candidate)
+		{
+			final TIntArrayList vts = vertexTriangles[vertex];
+			final double[] before = new double[3];
+			final double[] after = new double[3];
+			for (int i = 0; i < vts.size(); ++i)
+			{
+				final int t = vts.get(i);
+				if (removedTriangles[t])
+					continue;
+				final int offset = 3 * t;
+				final int v1 = triangles[offset + 0];
+				final int v2 = triangles[offset + 1];
+				final int v3 = triangles[offset + 2];
+				if (v1 == other || v2 == other || v3 == other)
+					continue;
+
+				normal(v1, v2, v3, -1, 0.0, 0.0, 0.0, before);
+				final double beforeNorm = norm(before);
+				if (beforeNorm == 0.0)
+					continue;
+				normal(v1, v2, v3, vertex, candidate.x, candidate.y, candidate.z, after);
+				final double afterNorm = norm(after);
+				final double dot = before[0] * after[0] + before[1] * after[1] + before[2] * after[2];
+				if (afterNorm == 0.0 || dot < MIN_NORMAL_COSINE * beforeNorm * afterNorm)
+					return true;
+			}
+			return false;
+		}
+
+		private void collapse(final Candidate candidate)
+		{
+			final int keep = candidate.keep;
+			final int remove = candidate.remove;
+
+			positions[3 * keep + 0] = candidate.x;
+			positions[3 * keep + 1] = candidate.y;
+			positions[3 * keep + 2] = candidate.z;
+			for (int i = 0; i < QUADRIC_SIZE; ++i)
+				quadrics[keep * QUADRIC_SIZE + i] += quadrics[remove * QUADRIC_SIZE + i];
+
+			final TIntArrayList keepTriangles = vertexTriangles[keep];
+			final TIntArrayList removeTriangles = vertexTriangles[remove];
+			for (int i = 0; i < removeTriangles.size(); ++i)
+			{
+				final int t = removeTriangles.get(i);
+				if (removedTriangles[t])
+					continue;
+				final int offset = 3 * t;
+				if (triangles[offset + 0] == keep || triangles[offset + 1] == keep || triangles[offset + 2] == keep)
+				{
+					removedTriangles[t] = true;
+					--numLiveTriangles;
+				}
+				else
+				{
+					for (int k = 0; k < 3; ++k)
+						if (triangles[offset + k] == remove)
+							triangles[offset + k] = keep;
+					keepTriangles.add(t);
+				}
+			}
+
+			// drop references to removed triangles so that the adjacency lists do not grow unbounded
+			int size = 0;
+			for (int i = 0; i < keepTriangles.size(); ++i)
+			{
+				final int t = keepTriangles.get(i);
+				if (!removedTriangles[t])
+					keepTriangles.set(size++, t);
+			}
+			keepTriangles.remove(size, keepTriangles.size() - size);
+
+			removedVertices[remove] = true;
+			vertexTriangles[remove] = null;
+			++versions[keep];
+
+			collectNeighbors(keep);
+			for (int i = 0; i < neighbors.size(); ++i)
+				addCandidate(keep, neighbors.get(i));
+		}
+
+		/**
+		 * Collect the distinct neighbors of {@code vertex} into {@link #neighbors} and mark them with a fresh
+		 * {@link #mark}.
+		 */
+		private void collectNeighbors(final int vertex)
+		{
+			++mark;
+			neighbors.resetQuick();
+			final TIntArrayList vts = vertexTriangles[vertex];
+			for (int i = 0; i < vts.size(); ++i)
+			{
+				final int t = vts.get(i);
+				if (removedTriangles[t])
+					continue;
+				for (int k = 0, offset = 3 * t; k < 3; ++k)
+				{
+					final int v = triangles[offset + k];
+					if (v != vertex && marks[v] != mark)
+					{
+						marks[v] = mark;
+						neighbors.add(v);
+					}
+				}
+			}
+		}
+
+		private boolean optimalPosition(final double[] q, final int v1, final int v2, final double[] target)
+		{
+			final double a00 = q[0], a01 = q[1], a02 = q[2];
+			final double a11 = q[4], a12 = q[5];
+			final double a22 = q[7];
+			final double c00 = a11 * a22 - a12 * a12;
+			final double c01 = a02 * a12 - a01 * a22;
+			final double c02 = a01 * a12 - a02 * a11;
+			final double det = a00 * c00 + a01 * c01 + a02 * c02;
+			final double scale = Math.abs(a00) + Math.abs(a11) + Math.abs(a22);
+			if (Math.abs(det) <= 1e-9 * scale * scale * scale)
+				return false;
+
+			final double c11 = a00 * a22 - a02 * a02;
+			final double c12 = a01 * a02 - a00 * a12;
+			final double c22 = a00 * a11 - a01 * a01;
+			final double b0 = -q[3], b1 = -q[6], b2 = -q[8];
+			final double x = (c00 * b0 + c01 * b1 + c02 * b2) / det;
+			final double y = (c01 * b0 + c11 * b1 + c12 * b2) / det;
+			final double z = (c02 * b0 + c12 * b1 + c22 * b2) / det;
+
+			// nearly singular systems may place the optimum far away from the edge
+			final double dx = positions[3 * v1 + 0] - positions[3 * v2 + 0];
+			final double dy = positions[3 * v1 + 1] - positions[3 * v2 + 1];
+			final double dz = positions[3 * v1 + 2] - positions[3 * v2 + 2];
+			final double mx = x - 0.5 * (positions[3 * v1 + 0] + positions[3 * v2 + 0]);
+			final double my = y - 0.5 * (positions[3 * v1 + 1] + positions[3 * v2 + 1]);
+			final double mz = z - 0.5 * (positions[3 * v1 + 2] + positions[3 * v2 + 2]);
+			if (mx * mx + my * my + mz * mz > dx * dx + dy * dy + dz * dz)
+				return false;
+
+			target[0] = x;
+			target[1] = y;
+			target[2] = z;
+			return true;
+		}
+
+		private void bestOfEndpointsAndMidpoint(final double[] q, final int keep, final int remove, final double[] target)
+		{
+			target[0] = positions[3 * keep + 0];
+			target[1] = positions[3 * keep + 1];
+			target[2] = positions[3 * keep + 2];
+			if (locked[keep])
+				return;
+
+			double bestError = error(q, target[0], target[1], target[2]);
+			for (final double w : new double[] {0.5, 1.0})
+			{
+				final double x = (1 - w) * positions[3 * keep + 0] + w * positions[3 * remove + 0];
+				final double y = (1 - w) * positions[3 * keep + 1] + w * positions[3 * remove + 1];
+				final double z = (1 - w) * positions[3 * keep + 2] + w * positions[3 * remove + 2];
+				final double error = error(q, x, y, z);
+				if (error < bestError)
+				{
+					bestError = error;
+					target[0] = x;
+					target[1] = y;
+					target[2] = z;
+				}
+			}
+		}
+
+		private void addPlaneQuadric(final int vertex, final double[] plane, final double weight)
+		{
+			final double a = plane[0], b = plane[1], c = plane[2], d = plane[3];
+			final int o = vertex * QUADRIC_SIZE;
+			quadrics[o + 0] += weight * a * a;
+			quadrics[o + 1] += weight * a * b;
+			quadrics[o + 2] += weight * a * c;
+			quadrics[o + 3] += weight * a * d;
+			quadrics[o + 4] += weight * b * b;
+			quadrics[o + 5] += weight * b * c;
+			quadrics[o + 6] += weight * b * d;
+			quadrics[o + 7] += weight * c * c;
+			quadrics[o + 8] += weight * c * d;
+			quadrics[o + 9] += weight * d * d;
+		}
+
+		private static double error(final double[] q, final double x, final double y, final double z)
+		{
+			return q[0] * x * x + 2 * q[1] * x * y + 2 * q[2] * x * z + 2 * q[3] * x
+					+ q[4] * y * y + 2 * q[5] * y * z + 2 * q[6] * y
+					+ q[7] * z * z + 2 * q[8] * z
+					+ q[9];
+		}
+
+		/**
+		 * @return triangle area, {@code plane} holds unit normal and offset if area is positive
+		 */
+		private double plane(final int v1, final int v2, final int v3, final double[] plane)
+		{
+			normal(v1, v2, v3, -1, 0.0, 0.0, 0.0, plane);
+			final double norm = norm(plane);
+			if (norm == 0.0)
+				return 0.0;
+			plane[0] /= norm;
+			plane[1] /= norm;
+			plane[2] /= norm;
+			plane[3] = -(plane[0] * positions[3 * v1 + 0] + plane[1] * positions[3 * v1 + 1] + plane[2] * positions[3 * v1 + 2]);
+			return 0.5 * norm;
+		}
+
+		/**
+		 * Unnormalized normal of triangle {@code (v1, v2, v3)} with vertex {@code moved} replaced by {@code (x, y, z)}.
+		 */
+		private void normal(
+				final int v1,
+				final int v2,
+				final int v3,
+				final int moved,
+				final double x,
+				final double y,
+				final double z,
+				final double[] normal)
+		{
+			final double x1 = v1 == moved ? x : positions[3 * v1 + 0];
+			final double y1 = v1 == moved ? y : positions[3 * v1 + 1];
+			final double z1 = v1 == moved ? z : positions[3 * v1 + 2];
+			final double x2 = v2 == moved ? x : positions[3 * v2 + 0];
+			final double y2 = v2 == moved ? y : positions[3 * v2 + 1];
+			final double z2 = v2 == moved ? z : positions[3 * v2 + 2];
+			final double x3 = v3 == moved ? x : positions[3 * v3 + 0];
+			final double y3 = v3 == moved ? y : positions[3 * v3 + 1];
+			final double z3 = v3 == moved ? z : positions[3 * v3 + 2];
+			final double ux = x2 - x1, uy = y2 - y1, uz = z2 - z1;
+			final double vx = x3 - x1, vy = y3 - y1, vz = z3 - z1;
+			normal[0] = uy * vz - uz * vy;
+			normal[1] = uz * vx - ux * vz;
+			normal[2] = ux * vy - uy * vx;
+		}
 
-		LOG.debug("Simplifying {} vertices and {} normals", vertices.length, normals.length);
-		return new ValuePair<>(vertices, normals);
+		private static double norm(final double[] vector)
+		{
+			return Math.sqrt(vector[0] * vector[0] + vector[1] * vector[1] + vector[2] * vector[2]);
+		}
 	}
 }
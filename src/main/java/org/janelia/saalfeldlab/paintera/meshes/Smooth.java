@@ -1,10 +1,12 @@
 package org.janelia.saalfeldlab.paintera.meshes;
 
 import java.util.ArrayList;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Arrays;
 
+import gnu.trove.iterator.TLongIntIterator;
 import gnu.trove.list.array.TFloatArrayList;
 import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TLongIntHashMap;
 import gnu.trove.set.hash.TIntHashSet;
 import net.imglib2.util.Triple;
 import org.slf4j.Logger;
@@ -26,131 +28,118 @@ public class Smooth
 
 	public static final int DEFAULT_ITERATIONS = 3;
 
-	private static boolean isBoundary(
-			final ArrayList<TIntHashSet> vertexTriangleLUT,
-			final ArrayList<TIntHashSet> edgeSets,
-			final int vertexIndex)
+	/**
+	 * Key of the undirected edge between two vertices. Packing the vertices into the high and low word of a long
+	 * would collide badly in Trove's {@code (int) (key ^ key >>> 32)} hash, hence the dense encoding.
+	 */
+	static long edgeKey(final int vertex1, final int vertex2, final int numVertices)
 	{
-		final TIntHashSet vertexTriangles = vertexTriangleLUT.get(vertexIndex);
-		final TIntHashSet copy            = new TIntHashSet();
-		return edgeSets.get(vertexIndex).forEach(edge ->
-		{
-			copy.clear();
-			copy.addAll(vertexTriangles);
-			copy.retainAll(vertexTriangleLUT.get(edge));
-			return copy.size() < 2;
-
-		});
+		return vertex1 < vertex2
+				? (long) vertex1 * numVertices + vertex2
+				: (long) vertex2 * numVertices + vertex1;
 	}
 
-	private static boolean[] boundaryVertices(
-			final ArrayList<TIntHashSet> vertexTriangleLUT,
-			final ArrayList<TIntArrayList> triangleVertexLUT)
+	public static float[] smooth(final float[] vertices, final double lambda, final int iterations)
 	{
-		final ArrayList<TIntHashSet> edgeSets         = Convert.convertToEdgeSets(vertexTriangleLUT,
-				triangleVertexLUT);
-		final boolean[]              boundaryVertices = new boolean[vertexTriangleLUT.size()];
-		for (int i = 0; i < boundaryVertices.length; ++i)
-			boundaryVertices[i] = isBoundary(vertexTriangleLUT, edgeSets, i);
-		return boundaryVertices;
-	}
+		LOG.debug("Smoothing {} vertices with lambda={} and iterations={}", vertices.length, lambda, iterations);
+		final Triple<TFloatArrayList, ArrayList<TIntHashSet>, ArrayList<TIntArrayList>> luts = Convert.convertToLUT(vertices);
+		final ArrayList<TIntArrayList> triangleVertexLUT = luts.getC();
+		final TIntArrayList indices = new TIntArrayList(triangleVertexLUT.size() * 3);
+		triangleVertexLUT.forEach(indices::addAll);
 
-	private static void getVertex(final float[] vertices, final double[] vertexRef, final int vertexIndex)
-	{
-		int i = vertexIndex * 3;
-		vertexRef[0] = vertices[i];
-		vertexRef[1] = vertices[++i];
-		vertexRef[2] = vertices[++i];
+		final float[] smoothed = smooth(luts.getA().toArray(), indices.toArray(), lambda, iterations);
+		return Convert.convertFromLUT(TFloatArrayList.wrap(smoothed), triangleVertexLUT);
 	}
 
-	private static void setVertex(final float[] vertices, final double[] vertexRef, final int vertexIndex)
+	/**
+	 * Smooth an indexed triangle mesh: In each iteration, move every vertex towards the mean of its neighbors by
+	 * {@code lambda}. Vertices for which none of the edges is shared by at least two triangles are not moved.
+	 *
+	 * @param vertices three floats per vertex
+	 * @param indices three vertex indices per triangle
+	 * @param lambda step size
+	 * @param iterations number of iterations
+	 * @return smoothed vertices, indexed by {@code indices}
+	 */
+	public static float[] smooth(final float[] vertices, final int[] indices, final double lambda, final int iterations)
 	{
-		int i = vertexIndex * 3;
-		vertices[i] = (float) vertexRef[0];
-		vertices[++i] = (float) vertexRef[1];
-		vertices[++i] = (float) vertexRef[2];
-	}
+		LOG.debug("Smoothing {} indexed vertices with lambda={} and iterations={}", vertices.length / 3, lambda, iterations);
 
+		final int numVertices = vertices.length / 3;
 
-	private static void addVertex(final float[] vertices, final double[] vertexRef, final int vertexIndex)
-	{
-		int i = vertexIndex * 3;
-		vertexRef[0] += vertices[i];
-		vertexRef[1] += vertices[++i];
-		vertexRef[2] += vertices[++i];
-	}
+		final TLongIntHashMap edgeTriangleCounts = new TLongIntHashMap();
+		for (int triangle = 0; triangle < indices.length; triangle += 3)
+		{
+			final int v1 = indices[triangle + 0], v2 = indices[triangle + 1], v3 = indices[triangle + 2];
+			edgeTriangleCounts.adjustOrPutValue(edgeKey(v1, v2, numVertices), 1, 1);
+			edgeTriangleCounts.adjustOrPutValue(edgeKey(v2, v3, numVertices), 1, 1);
+			edgeTriangleCounts.adjustOrPutValue(edgeKey(v3, v1, numVertices), 1, 1);
+		}
 
-	public static float[] smooth(final float[] vertices, final double lambda, final int iterations)
-	{
-		LOG.debug("Smoothing {} vertices with lambda={} and iterations={}", vertices.length, lambda, iterations);
-		Triple<TFloatArrayList, ArrayList<TIntHashSet>, ArrayList<TIntArrayList>> luts               = Convert
-				.convertToLUT(
-				vertices);
-		float[]                                                                   vertexCoordinates1 = luts.getA()
-				.toArray();
-		final ArrayList<TIntHashSet>                                              vertexTriangleLUT  = luts.getB();
-		final ArrayList<TIntArrayList>                                            triangleVertexLUT  = luts.getC();
-		final boolean[]                                                           boundaryVertices   =
-				boundaryVertices(
-				vertexTriangleLUT,
-				triangleVertexLUT
-		                                                                                                               );
+		// vertex neighborhoods in compressed sparse row format
+		final int[] neighborOffsets = new int[numVertices + 1];
+		final boolean[] boundaryVertices = new boolean[numVertices];
+		Arrays.fill(boundaryVertices, true);
+		for (final TLongIntIterator it = edgeTriangleCounts.iterator(); it.hasNext(); )
+		{
+			it.advance();
+			final int v1 = (int) (it.key() / numVertices), v2 = (int) (it.key() % numVertices);
+			++neighborOffsets[v1 + 1];
+			++neighborOffsets[v2 + 1];
+			if (it.value() >= 2)
+			{
+				boundaryVertices[v1] = false;
+				boundaryVertices[v2] = false;
+			}
+		}
+		for (int vertex = 0; vertex < numVertices; ++vertex)
+			neighborOffsets[vertex + 1] += neighborOffsets[vertex];
 
-		for (int iteration = 0; iteration < iterations; ++iteration)
+		final int[] neighbors = new int[neighborOffsets[numVertices]];
+		final int[] fill = new int[numVertices];
+		for (final TLongIntIterator it = edgeTriangleCounts.iterator(); it.hasNext(); )
 		{
-			float[] vertexCoordinates2 = new float[vertexCoordinates1.length];
+			it.advance();
+			final int v1 = (int) (it.key() / numVertices), v2 = (int) (it.key() % numVertices);
+			neighbors[neighborOffsets[v1] + fill[v1]++] = v2;
+			neighbors[neighborOffsets[v2] + fill[v2]++] = v1;
+		}
 
-			final double[]    vertexRef          = new double[3];
-			final double[]    otherVertexRef     = new double[3];
-			AtomicInteger     count              = new AtomicInteger(0);
-			final TIntHashSet otherVertexIndices = new TIntHashSet();
-			for (int vertexIndex = 0; vertexIndex < vertexTriangleLUT.size(); ++vertexIndex)
+		float[] vertexCoordinates1 = vertices.clone();
+		for (int iteration = 0; iteration < iterations; ++iteration)
+		{
+			final float[] vertexCoordinates2 = new float[vertexCoordinates1.length];
+			for (int vertex = 0, offset = 0; vertex < numVertices; ++vertex, offset += 3)
 			{
-				getVertex(vertexCoordinates1, vertexRef, vertexIndex);
-				if (!boundaryVertices[vertexIndex])
+				final double x = vertexCoordinates1[offset + 0];
+				final double y = vertexCoordinates1[offset + 1];
+				final double z = vertexCoordinates1[offset + 2];
+				if (boundaryVertices[vertex])
+				{
+					vertexCoordinates2[offset + 0] = (float) x;
+					vertexCoordinates2[offset + 1] = (float) y;
+					vertexCoordinates2[offset + 2] = (float) z;
+					continue;
+				}
+
+				double sumX = 0, sumY = 0, sumZ = 0;
+				final int start = neighborOffsets[vertex], stop = neighborOffsets[vertex + 1];
+				for (int n = start; n < stop; ++n)
 				{
-					final int fVertexIndex = vertexIndex;
-					count.set(0);
-					otherVertexIndices.clear();
-					otherVertexRef[0] = 0;
-					otherVertexRef[1] = 0;
-					otherVertexRef[2] = 0;
-
-					vertexTriangleLUT.get(vertexIndex).forEach(otherTriangleIndex ->
-					{
-						final TIntArrayList otherVertices = triangleVertexLUT.get(otherTriangleIndex);
-						for (int k = 0; k < otherVertices.size(); ++k)
-						{
-							final int otherVertexIndex = otherVertices.get(k);
-							if (otherVertexIndex != fVertexIndex)
-								otherVertexIndices.add(otherVertexIndex);
-						}
-						return true;
-					});
-
-					final float[] fVertexCoordinates1 = vertexCoordinates1;
-
-					otherVertexIndices.forEach(l -> {
-						count.incrementAndGet();
-						addVertex(fVertexCoordinates1, otherVertexRef, l);
-						return true;
-					});
-
-					final double c = 1.0 / count.get();
-					vertexRef[0] = (otherVertexRef[0] * c - vertexRef[0]) * lambda + vertexRef[0];
-					vertexRef[1] = (otherVertexRef[1] * c - vertexRef[1]) * lambda + vertexRef[1];
-					vertexRef[2] = (otherVertexRef[2] * c - vertexRef[2]) * lambda + vertexRef[2];
-
-					//					System.out.println( "count = " + count.get() );
+					final int neighborOffset = neighbors[n] * 3;
+					sumX += vertexCoordinates1[neighborOffset + 0];
+					sumY += vertexCoordinates1[neighborOffset + 1];
+					sumZ += vertexCoordinates1[neighborOffset + 2];
 				}
-				//				else
-				//					System.out.println( "leaving boundary vertex untouched." );
 
-				setVertex(vertexCoordinates2, vertexRef, vertexIndex);
+				final double c = 1.0 / (stop - start);
+				vertexCoordinates2[offset + 0] = (float) ((sumX * c - x) * lambda + x);
+				vertexCoordinates2[offset + 1] = (float) ((sumY * c - y) * lambda + y);
+				vertexCoordinates2[offset + 2] = (float) ((sumZ * c - z) * lambda + z);
 			}
 			vertexCoordinates1 = vertexCoordinates2;
 		}
 
-		return Convert.convertFromLUT(TFloatArrayList.wrap(vertexCoordinates1), triangleVertexLUT);
+		return vertexCoordinates1;
 	}
 }
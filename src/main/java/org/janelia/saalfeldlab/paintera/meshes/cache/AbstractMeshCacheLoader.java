@@ -7,7 +7,6 @@ import net.imglib2.converter.Converters;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.type.logic.BoolType;
 import net.imglib2.util.Pair;
-import net.imglib2.util.ValuePair;
 import net.imglib2.view.Views;
 import org.janelia.saalfeldlab.paintera.meshes.*;
 import org.slf4j.Logger;
@@ -22,7 +21,7 @@ import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 public abstract class AbstractMeshCacheLoader<T, K>
-		implements CacheLoader<ShapeKey<K>, Pair<float[], float[]>>
+		implements CacheLoader<ShapeKey<K>, PainteraTriangleMesh>
 {
 	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
@@ -46,14 +45,9 @@ public abstract class AbstractMeshCacheLoader<T, K>
 	}
 
 	@Override
-	public Pair<float[], float[]> get(final ShapeKey<K> key) throws Exception
+	public PainteraTriangleMesh get(final ShapeKey<K> key) throws Exception
 	{
 
-		//		if ( key.meshSimplificationIterations() > 0 )
-		//		{
-		// TODO deal with mesh simplification
-		//		}
-
 		LOG.debug("key={}, getMaskGenerator={}", key, getMaskGenerator);
 		final RandomAccessibleInterval<BoolType> mask = Converters.convert(
 				data.get(),
@@ -61,22 +55,24 @@ public abstract class AbstractMeshCacheLoader<T, K>
 				new BoolType(false)
 			);
 
-		final float[] mesh = new MarchingCubes<>(
+		final Pair<float[], int[]> mesh = new MarchingCubes<>(
 				Views.extendZero(mask),
 				key.interval(),
-				transform).generateMesh();
-		final float[] normals = new float[mesh.length];
-		if (key.smoothingIterations() > 0)
-		{
-			final float[] smoothMesh = Smooth.smooth(mesh, key.smoothingLambda(), key.smoothingIterations());
-			System.arraycopy(smoothMesh, 0, mesh, 0, mesh.length);
-		}
-		Normals.normals(mesh, normals);
-		AverageNormals.averagedNormals(mesh, normals);
+				transform).generateIndexedMesh();
+		final float[] smoothed = key.smoothingIterations() > 0
+				? Smooth.smooth(mesh.getA(), mesh.getB(), key.smoothingLambda(), key.smoothingIterations())
+				: mesh.getA();
+		final Pair<float[], int[]> simplified = Simplify.simplify(smoothed, mesh.getB(), key.targetReduction());
+		final float[] vertices = simplified.getA();
+		final int[] indices = simplified.getB();
+		final float[] faceNormals = new float[indices.length];
+		final float[] normals = new float[vertices.length];
+		Normals.faceNormals(vertices, indices, faceNormals);
+		AverageNormals.averagedNormals(indices, faceNormals, normals);
 
 		for (int i = 0; i < normals.length; ++i)
 			normals[i] *= -1;
 
-		return new ValuePair<>(mesh, normals);
+		return new PainteraTriangleMesh(vertices, normals, indices);
 	}
 }
@@ -5,13 +5,13 @@ import net.imglib2.cache.CacheLoader;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.type.BooleanType;
 import net.imglib2.util.Pair;
-import net.imglib2.util.ValuePair;
 import net.imglib2.view.Views;
 import org.janelia.saalfeldlab.paintera.meshes.AverageNormals;
 import org.janelia.saalfeldlab.paintera.meshes.MarchingCubes;
 import org.janelia.saalfeldlab.paintera.meshes.Normals;
 import org.janelia.saalfeldlab.paintera.meshes.PainteraTriangleMesh;
 import org.janelia.saalfeldlab.paintera.meshes.ShapeKey;
+import org.janelia.saalfeldlab.paintera.meshes.Simplify;
 import org.janelia.saalfeldlab.paintera.meshes.Smooth;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,22 +51,25 @@ public class GenericMeshCacheLoader<K, B extends BooleanType<B>>
 		final RandomAccessibleInterval<B> mask = data.apply(key.scaleIndex());
 		final AffineTransform3D transform = this.transform.apply(key.scaleIndex());
 
-		final float[] mesh = new MarchingCubes<>(
+		final Pair<float[], int[]> mesh = new MarchingCubes<>(
 				Views.extendZero(mask),
 				key.interval(),
-				transform).generateMesh();
-		final float[] normals = new float[mesh.length];
-		if (key.smoothingIterations() > 0) {
-			final float[] smoothMesh = Smooth.smooth(mesh, key.smoothingLambda(), key.smoothingIterations());
-			System.arraycopy(smoothMesh, 0, mesh, 0, mesh.length);
-		}
-		Normals.normals(mesh, normals);
-		AverageNormals.averagedNormals(mesh, normals);
+				transform).generateIndexedMesh();
+		final float[] smoothed = key.smoothingIterations() > 0
+				? Smooth.smooth(mesh.getA(), mesh.getB(), key.smoothingLambda(), key.smoothingIterations())
+				: mesh.getA();
+		final Pair<float[], int[]> simplified = Simplify.simplify(smoothed, mesh.getB(), key.targetReduction());
+		final float[] vertices = simplified.getA();
+		final int[] indices = simplified.getB();
+		final float[] faceNormals = new float[indices.length];
+		final float[] normals = new float[vertices.length];
+		Normals.faceNormals(vertices, indices, faceNormals);
+		AverageNormals.averagedNormals(indices, faceNormals, normals);
 
 		// TODO should this even happen? Probably not!
 		for (int i = 0; i < normals.length; ++i) {
 			normals[i] *= -1;
 		}
-		return new PainteraTriangleMesh(mesh, normals);
+		return new PainteraTriangleMesh(vertices, normals, indices);
 	}
 }
@@ -0,0 +1,430 @@
+package org.janelia.saalfeldlab.paintera.meshes.cache;
+
+import gnu.trove.map.hash.TLongLongHashMap;
+import gnu.trove.set.hash.TLongHashSet;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.cache.CacheLoader;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.util.IntervalIndexer;
+import org.janelia.saalfeldlab.paintera.meshes.PainteraTriangleMesh;
+import org.janelia.saalfeldlab.paintera.meshes.ShapeKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.function.BiPredicate;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Persist segment meshes on disk so that they do not need to be regenerated when a project is re-opened.
+ *
+ * Meshes are stored in a compact binary format (indexed vertices and normals) in one directory per block of the
+ * data grid, {@code <root>/s<level>/<x>-<y>-<z>/}, with the file name derived from all fields of the
+ * {@link ShapeKey}. Each file also stores a stamp that combines the {@link BlockStamps stamps} of all blocks that the
+ * mesh was generated from, i.e. the block itself and its direct neighbors. A mesh is discarded when the stamp does not
+ * match anymore, e.g. when the data was modified outside of Paintera. Modifications through Paintera are handled
+ * precisely through {@link #invalidateBlocks(int, long[])}.
+ *
+ * Meshes of intervals that are not contained in a single block, or that contain uncommitted canvas data, are passed
+ * through to the underlying loader without being persisted.
+ */
+public class PersistentMeshCache
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	private static final int MAGIC = 0x504d5348;
+
+	private static final int FORMAT_VERSION = 2;
+
+	private static final String SUFFIX = ".mesh";
+
+	private static final int HEADER_BYTES = 5 * Integer.BYTES + Long.BYTES;
+
+	/**
+	 * Version stamps of the blocks of the underlying data, e.g. modification times.
+	 */
+	@FunctionalInterface
+	public interface BlockStamps
+	{
+		BlockStamps NONE = (level, cellPosition) -> 0L;
+
+		/**
+		 * @return stamp of block at {@code cellPosition} in the cell grid of {@code level}. Must change whenever the
+		 * contents of the block change.
+		 */
+		long stamp(int level, long[] cellPosition) throws IOException;
+	}
+
+	private final Supplier<Path> root;
+
+	private final IntFunction<CellGrid> grids;
+
+	private final BlockStamps stamps;
+
+	private final BiPredicate<Integer, Interval> isCommitted;
+
+	private final TLongLongHashMap[] stampCache;
+
+	/**
+	 * @param root directory of the cache, evaluated lazily to follow changes of the project directory
+	 * @param numLevels number of scale levels of the data
+	 * @param grids cell grid of the data at each level
+	 * @param stamps version stamps of the data blocks
+	 * @param isCommitted {@code true} if the data at level and interval is persisted, i.e. not modified by a canvas.
+	 */
+	public PersistentMeshCache(
+			final Supplier<Path> root,
+			final int numLevels,
+			final IntFunction<CellGrid> grids,
+			final BlockStamps stamps,
+			final BiPredicate<Integer, Interval> isCommitted)
+	{
+		this.root = root;
+		this.grids = grids;
+		this.stamps = stamps;
+		this.isCommitted = isCommitted;
+		this.stampCache = new TLongLongHashMap[numLevels];
+		Arrays.setAll(this.stampCache, level -> new TLongLongHashMap());
+	}
+
+	/**
+	 * @return loader that reads meshes from disk if available and persists meshes generated by {@code loader}
+	 * otherwise
+	 */
+	public CacheLoader<ShapeKey<TLongHashSet>, PainteraTriangleMesh> withLoader(
+			final CacheLoader<ShapeKey<TLongHashSet>, PainteraTriangleMesh> loader)
+	{
+		return key -> {
+			final Location location = locate(key);
+			if (location == null)
+				return loader.get(key);
+
+			final PainteraTriangleMesh persisted = read(location);
+			if (persisted != null)
+				return persisted;
+
+			final PainteraTriangleMesh mesh = loader.get(key);
+			// check again: the data may have been painted while generating the mesh
+			if (mesh != null && isCommitted.test(key.scaleIndex(), expandedInterval(key)))
+				write(location, mesh);
+			return mesh;
+		};
+	}
+
+	/**
+	 * Remove all meshes that depend on {@code blocks} of {@code level}, i.e. meshes of the blocks and of their direct
+	 * neighbors.
+	 *
+	 * @param level scale level
+	 * @param blocks indices of the blocks in the cell grid of {@code level}
+	 */
+	public void invalidateBlocks(final int level, final long[] blocks)
+	{
+		final CellGrid grid = grids.apply(level);
+		final long[] gridDimensions = grid.getGridDimensions();
+		final long[] position = new long[grid.numDimensions()];
+		final long[] neighbor = new long[grid.numDimensions()];
+		final TLongHashSet invalidated = new TLongHashSet();
+		for (final long block : blocks)
+		{
+			IntervalIndexer.indexToPosition(block, gridDimensions, position);
+			forEachNeighbor(position, gridDimensions, neighbor, () -> {
+				if (invalidated.add(IntervalIndexer.positionToIndex(neighbor, gridDimensions)))
+					deleteRecursively(blockDirectory(level, neighbor));
+			});
+		}
+		synchronized (stampCache[level])
+		{
+			for (final long block : blocks)
+				stampCache[level].remove(block);
+		}
+		LOG.debug("Invalidated persisted meshes of {} blocks at level {}", invalidated.size(), level);
+	}
+
+	/**
+	 * Remove all persisted meshes.
+	 */
+	public void invalidateAll()
+	{
+		deleteRecursively(root.get());
+		for (final TLongLongHashMap levelStamps : stampCache)
+			synchronized (levelStamps)
+			{
+				levelStamps.clear();
+			}
+	}
+
+	private Location locate(final ShapeKey<TLongHashSet> key) throws IOException
+	{
+		final int level = key.scaleIndex();
+		final CellGrid grid = grids.apply(level);
+		final long[] gridDimensions = grid.getGridDimensions();
+		final long[] position = new long[grid.numDimensions()];
+		for (int d = 0; d < position.length; ++d)
+		{
+			position[d] = Math.floorDiv(key.min()[d], grid.cellDimension(d));
+			if (position[d] != Math.floorDiv(key.max()[d], grid.cellDimension(d)) || position[d] < 0 || position[d] >= gridDimensions[d])
+				return null;
+		}
+
+		if (!isCommitted.test(level, expandedInterval(key)))
+			return null;
+
+		final long[] neighbor = new long[position.length];
+		final long[] stamp = {17};
+		final IOException[] exception = {null};
+		forEachNeighbor(position, gridDimensions, neighbor, () -> {
+			if (exception[0] != null)
+				return;
+			try
+			{
+				stamp[0] = 31 * stamp[0] + blockStamp(level, neighbor, gridDimensions);
+			}
+			catch (final IOException e)
+			{
+				exception[0] = e;
+			}
+		});
+		if (exception[0] != null)
+			throw exception[0];
+
+		final long[] fingerprint = fingerprint(key);
+		final Path file = blockDirectory(level, position).resolve(String.format("%016x%s", hash(fingerprint), SUFFIX));
+		return new Location(file, fingerprint, stamp[0]);
+	}
+
+	private long blockStamp(final int level, final long[] position, final long[] gridDimensions) throws IOException
+	{
+		final long index = IntervalIndexer.positionToIndex(position, gridDimensions);
+		final TLongLongHashMap levelStamps = stampCache[level];
+		synchronized (levelStamps)
+		{
+			if (levelStamps.containsKey(index))
+				return levelStamps.get(index);
+		}
+		final long stamp = stamps.stamp(level, position);
+		synchronized (levelStamps)
+		{
+			levelStamps.put(index, stamp);
+		}
+		return stamp;
+	}
+
+	private Path blockDirectory(final int level, final long[] position)
+	{
+		final StringBuilder name = new StringBuilder().append(position[0]);
+		for (int d = 1; d < position.length; ++d)
+			name.append('-').append(position[d]);
+		return root.get().resolve("s" + level).resolve(name.toString());
+	}
+
+	private static PainteraTriangleMesh read(final Location location)
+	{
+		if (!Files.isRegularFile(location.file))
+			return null;
+
+		try (final FileChannel channel = FileChannel.open(location.file, StandardOpenOption.READ))
+		{
+			final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION || buffer.getLong() != location.stamp)
+				return null;
+
+			final long[] fingerprint = new long[buffer.getInt()];
+			if (fingerprint.length != location.fingerprint.length)
+				return null;
+			buffer.asLongBuffer().get(fingerprint);
+			buffer.position(buffer.position() + fingerprint.length * Long.BYTES);
+			if (!Arrays.equals(fingerprint, location.fingerprint))
+				return null;
+
+			final float[] vertices = new float[buffer.getInt()];
+			final int[] indices = new int[buffer.getInt()];
+			final float[] normals = new float[vertices.length];
+			buffer.asFloatBuffer().get(vertices);
+			buffer.position(buffer.position() + vertices.length * Float.BYTES);
+			buffer.asFloatBuffer().get(normals);
+			buffer.position(buffer.position() + normals.length * Float.BYTES);
+			buffer.asIntBuffer().get(indices);
+			LOG.trace("Read persisted mesh from {}", location.file);
+			return new PainteraTriangleMesh(vertices, normals, indices);
+		}
+		catch (final IOException | RuntimeException e)
+		{
+			LOG.debug("Unable to read persisted mesh from {}: {}", location.file, e.getMessage());
+			return null;
+		}
+	}
+
+	private static void write(final Location location, final PainteraTriangleMesh mesh)
+	{
+		final float[] vertices = mesh.getVertices();
+		final float[] normals = mesh.getNormals();
+		final int[] indices = mesh.getIndices();
+		// only indexed meshes are persisted
+		if (indices == null)
+			return;
+
+		final ByteBuffer buffer = ByteBuffer.allocate(
+				HEADER_BYTES
+						+ location.fingerprint.length * Long.BYTES
+						+ (vertices.length + normals.length) * Float.BYTES
+						+ indices.length * Integer.BYTES);
+		buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(location.stamp);
+		buffer.putInt(location.fingerprint.length);
+		buffer.asLongBuffer().put(location.fingerprint);
+		buffer.position(buffer.position() + location.fingerprint.length * Long.BYTES);
+		buffer.putInt(vertices.length).putInt(indices.length);
+		buffer.asFloatBuffer().put(vertices).put(normals);
+		buffer.position(buffer.position() + (vertices.length + normals.length) * Float.BYTES);
+		buffer.asIntBuffer().put(indices);
+		buffer.rewind();
+
+		try
+		{
+			Files.createDirectories(location.file.getParent());
+			// write into temporary file first so that concurrent readers never see partial meshes
+			final Path tmp = Files.createTempFile(location.file.getParent(), ".", SUFFIX + ".tmp");
+			try (final FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE))
+			{
+				while (buffer.hasRemaining())
+					channel.write(buffer);
+			}
+			try
+			{
+				Files.move(tmp, location.file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+			catch (final AtomicMoveNotSupportedException e)
+			{
+				Files.move(tmp, location.file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		catch (final IOException e)
+		{
+			LOG.debug("Unable to persist mesh to {}: {}", location.file, e.getMessage());
+		}
+	}
+
+	private static void deleteRecursively(final Path path)
+	{
+		if (!Files.exists(path))
+			return;
+		try (final Stream<Path> paths = Files.walk(path))
+		{
+			paths.sorted(Comparator.reverseOrder()).forEach(p -> {
+				try
+				{
+					Files.deleteIfExists(p);
+				}
+				catch (final NoSuchFileException | DirectoryNotEmptyException e)
+				{
+					// removed or re-populated concurrently
+				}
+				catch (final IOException e)
+				{
+					LOG.warn("Unable to delete persisted mesh {}: {}", p, e.getMessage());
+				}
+			});
+		}
+		catch (final IOException e)
+		{
+			LOG.warn("Unable to delete persisted meshes in {}: {}", path, e.getMessage());
+		}
+	}
+
+	/**
+	 * Marching cubes reads one voxel beyond the lower and two voxels beyond the upper end of the interval.
+	 */
+	private static Interval expandedInterval(final ShapeKey<?> key)
+	{
+		final long[] min = key.min().clone();
+		final long[] max = key.max().clone();
+		for (int d = 0; d < min.length; ++d)
+		{
+			min[d] -= 1;
+			max[d] += 2;
+		}
+		return new FinalInterval(min, max);
+	}
+
+	private static void forEachNeighbor(final long[] position, final long[] gridDimensions, final long[] neighbor, final Runnable action)
+	{
+		for (long z = Math.max(position[2] - 1, 0); z <= Math.min(position[2] + 1, gridDimensions[2] - 1); ++z)
+			for (long y = Math.max(position[1] - 1, 0); y <= Math.min(position[1] + 1, gridDimensions[1] - 1); ++y)
+				for (long x = Math.max(position[0] - 1, 0); x <= Math.min(position[0] + 1, gridDimensions[0] - 1); ++x)
+				{
+					neighbor[0] = x;
+					neighbor[1] = y;
+					neighbor[2] = z;
+					action.run();
+				}
+	}
+
+	private static long[] fingerprint(final ShapeKey<TLongHashSet> key)
+	{
+		final long[] ids = key.shapeId().toArray();
+		Arrays.sort(ids);
+		final long[] fingerprint = new long[5 + 2 * key.min().length + ids.length];
+		int i = 0;
+		fingerprint[i++] = key.scaleIndex();
+		fingerprint[i++] = Double.doubleToLongBits(key.targetReduction());
+		fingerprint[i++] = Double.doubleToLongBits(key.smoothingLambda());
+		fingerprint[i++] = key.smoothingIterations();
+		fingerprint[i++] = Double.doubleToLongBits(key.minLabelRatio());
+		for (final long m : key.min())
+			fingerprint[i++] = m;
+		for (final long m : key.max())
+			fingerprint[i++] = m;
+		System.arraycopy(ids, 0, fingerprint, i, ids.length);
+		return fingerprint;
+	}
+
+	/**
+	 * 64-bit FNV-1a hash, file names only need to be unique with high probability: the full fingerprint is stored in
+	 * and compared against each file.
+	 */
+	private static long hash(final long[] values)
+	{
+		long hash = 0xcbf29ce484222325L;
+		for (final long value : values)
+			for (int shift = 0; shift < Long.SIZE; shift += Byte.SIZE)
+			{
+				hash ^= (value >>> shift) & 0xff;
+				hash *= 0x100000001b3L;
+			}
+		return hash;
+	}
+
+	private static final class Location
+	{
+		private final Path file;
+
+		private final long[] fingerprint;
+
+		private final long stamp;
+
+		private Location(final Path file, final long[] fingerprint, final long stamp)
+		{
+			this.file = file;
+			this.fingerprint = fingerprint;
+			this.stamp = stamp;
+		}
+	}
+
+}
@@ -26,7 +26,7 @@ public class MeshSettingsSerializer implements PainteraSerialization.PainteraAda
 
 	private static final String FINEST_SCALE_LEVEL_KEY = "finestScaleLevel";
 
-	private static final String SIMPLIFICATION_ITERATIONS_KEY = "simplificationIterations";
+	private static final String TARGET_REDUCTION_KEY = "targetReduction";
 
 	private static final String SMOOTHING_LAMBDA_KEY = "smoothingLambda";
 
@@ -50,7 +50,7 @@ public class MeshSettingsSerializer implements PainteraSerialization.PainteraAda
 			final JsonDeserializationContext context) {
 		Optional.ofNullable(map.get(COARSEST_SCALE_LEVEL_KEY)).map(JsonElement::getAsInt).ifPresent(settings::setCoarsetsScaleLevel);
 		Optional.ofNullable(map.get(FINEST_SCALE_LEVEL_KEY)).map(JsonElement::getAsInt).ifPresent(settings::setFinestScaleLevel);
-		Optional.ofNullable(map.get(SIMPLIFICATION_ITERATIONS_KEY)).map(JsonElement::getAsInt).ifPresent(settings::setSimplificationIterations);
+		Optional.ofNullable(map.get(TARGET_REDUCTION_KEY)).map(JsonElement::getAsDouble).ifPresent(settings::setTargetReduction);
 		Optional.ofNullable(map.get(SMOOTHING_ITERATIONS_KEY)).map(JsonElement::getAsInt).ifPresent(settings::setSmoothingIterations);
 		Optional.ofNullable(map.get(SMOOTHING_LAMBDA_KEY)).map(JsonElement::getAsDouble).ifPresent(settings::setSmoothingLambda);
 		Optional.ofNullable(map.get(OPACITY_KEY)).map(JsonElement::getAsDouble).ifPresent(settings::setOpacity);
@@ -80,9 +80,6 @@ public class MeshSettingsSerializer implements PainteraSerialization.PainteraAda
 		final MeshSettings.Defaults defaults = src.getDefaults();
 		map.addProperty(NUM_SCALE_LEVELS_KEY, src.getNumScaleLevels());
 
-		if (defaults.getSimplificationIterations() != src.getSimplificationIterations())
-			map.addProperty(SIMPLIFICATION_ITERATIONS_KEY, src.getSimplificationIterations());
-
 		if (src.getLevelOfDetail() != defaults.getLevelOfDetail())
 			map.addProperty(LEVEL_OF_DETAIL_KEY, src.levelOfDetailProperty().get());
 
@@ -92,8 +89,8 @@ public class MeshSettingsSerializer implements PainteraSerialization.PainteraAda
 		if (src.getFinestScaleLevel() != MeshSettings.Defaults.getDefaultFinestScaleLevel(src.getNumScaleLevels()))
 			map.addProperty(FINEST_SCALE_LEVEL_KEY, src.finestScaleLevelProperty().get());
 
-		if (defaults.getSimplificationIterations() != src.simplificationIterationsProperty().get())
-			map.addProperty(SIMPLIFICATION_ITERATIONS_KEY, src.simplificationIterationsProperty().get());
+		if (defaults.getTargetReduction() != src.getTargetReduction())
+			map.addProperty(TARGET_REDUCTION_KEY, src.getTargetReduction());
 
 		if (defaults.getSmoothingLambda() != src.getSmoothingLambda())
 			map.addProperty(SMOOTHING_LAMBDA_KEY, src.getSmoothingLambda());
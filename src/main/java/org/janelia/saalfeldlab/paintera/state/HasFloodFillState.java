@@ -10,11 +10,38 @@ public interface HasFloodFillState {
 		public final long labelId;
 		public final Runnable interrupt;
 
+		private volatile long numFilledVoxels = 0;
+		private volatile long numTouchedBlocks = 0;
+
 		public FloodFillState(final long labelId, final Runnable interrupt)
 		{
 			this.labelId = labelId;
 			this.interrupt = interrupt;
 		}
+
+		/**
+		 * Update progress, may be called from any thread.
+		 */
+		public void setProgress(final long numFilledVoxels, final long numTouchedBlocks)
+		{
+			this.numFilledVoxels = numFilledVoxels;
+			this.numTouchedBlocks = numTouchedBlocks;
+		}
+
+		public long getNumFilledVoxels()
+		{
+			return numFilledVoxels;
+		}
+
+		public long getNumTouchedBlocks()
+		{
+			return numTouchedBlocks;
+		}
+
+		public String progressText()
+		{
+			return String.format("Flood-filling, label ID: %d%n%d voxels in %d blocks", labelId, numFilledVoxels, numTouchedBlocks);
+		}
 	}
 
 	ObjectProperty<FloodFillState> floodFillState();
@@ -35,7 +35,6 @@ import net.imglib2.cache.Cache;
 import net.imglib2.cache.Invalidate;
 import net.imglib2.cache.img.CachedCellImg;
 import net.imglib2.cache.img.LoadedCellCacheLoader;
-import net.imglib2.cache.ref.SoftRefLoaderCache;
 import net.imglib2.cache.volatiles.CacheHints;
 import net.imglib2.cache.volatiles.LoadingStrategy;
 import net.imglib2.converter.ARGBColorConverter;
@@ -64,6 +63,7 @@ import org.janelia.saalfeldlab.fx.Buttons;
 import org.janelia.saalfeldlab.fx.TitledPaneExtensions;
 import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookup;
 import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookupKey;
+import org.janelia.saalfeldlab.paintera.cache.GlobalBlockCache;
 import org.janelia.saalfeldlab.paintera.cache.InvalidateDelegates;
 import org.janelia.saalfeldlab.paintera.composition.Composite;
 import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignmentState;
@@ -162,7 +162,7 @@ public class IntersectingSourceState
 				() -> getDataSource().getDataSource(0, d),
 				getMaskGenerator,
 				getDataSource().getSourceTransformCopy(0, d)));
-		final GetMeshFor.FromCache<TLongHashSet> getMeshFor = GetMeshFor.FromCache.fromPairLoaders(loaders);
+		final GetMeshFor.FromCache<TLongHashSet> getMeshFor = GetMeshFor.FromCache.fromLoaders(loaders);
 
 		this.fragmentsInSelectedSegments = new FragmentsInSelectedSegments(labels.getSelectedSegments());
 
@@ -243,7 +243,7 @@ public class IntersectingSourceState
 				() -> getDataSource().getDataSource(0, d),
 				getMaskGenerator,
 				getDataSource().getSourceTransformCopy(0, d)));
-		final GetMeshFor.FromCache<TLongHashSet> getMeshFor = GetMeshFor.FromCache.fromPairLoaders(loaders);
+		final GetMeshFor.FromCache<TLongHashSet> getMeshFor = GetMeshFor.FromCache.fromLoaders(loaders);
 
 		final FragmentSegmentAssignmentState assignment                  = labels.assignment();
 		final SelectedSegments               selectedSegments            = new SelectedSegments(selectedIds, assignment);
@@ -370,7 +370,10 @@ public class IntersectingSourceState
 
 
 			final LoadedCellCacheLoader<UnsignedByteType, VolatileByteArray> cacheLoader = LoadedCellCacheLoader.get(grid, loader, new UnsignedByteType(), AccessFlags.setOf(AccessFlags.VOLATILE));
-			final Cache<Long, Cell<VolatileByteArray>> cache = new SoftRefLoaderCache<Long, Cell<VolatileByteArray>>().withLoader(cacheLoader);
+			final Cache<Long, Cell<VolatileByteArray>> cache = GlobalBlockCache
+					.global()
+					.<Long, Cell<VolatileByteArray>>createCache(String.format("%s level %d", name, level))
+					.withLoader(cacheLoader);
 			final CachedCellImg<UnsignedByteType, VolatileByteArray> img = new CachedCellImg<>(grid, new UnsignedByteType(), cache, new VolatileByteArray(1, true));
 			// TODO cannot use VolatileViews because we need access to cache
 			final TmpVolatileHelpers.RaiWithInvalidate<VolatileUnsignedByteType> vimg = TmpVolatileHelpers.createVolatileCachedCellImgWithInvalidate(
@@ -461,7 +464,10 @@ public class IntersectingSourceState
 
 
 			final LoadedCellCacheLoader<UnsignedByteType, VolatileByteArray> cacheLoader = LoadedCellCacheLoader.get(grid, loader, new UnsignedByteType(), AccessFlags.setOf(AccessFlags.VOLATILE));
-			final Cache<Long, Cell<VolatileByteArray>> cache = new SoftRefLoaderCache<Long, Cell<VolatileByteArray>>().withLoader(cacheLoader);
+			final Cache<Long, Cell<VolatileByteArray>> cache = GlobalBlockCache
+					.global()
+					.<Long, Cell<VolatileByteArray>>createCache(String.format("%s level %d", name, level))
+					.withLoader(cacheLoader);
 			final CachedCellImg<UnsignedByteType, VolatileByteArray> img = new CachedCellImg<>(grid, new UnsignedByteType(), cache, new VolatileByteArray(1, true));
 			// TODO cannot use VolatileViews because we need access to cache
 			final TmpVolatileHelpers.RaiWithInvalidate<VolatileUnsignedByteType> vimg = TmpVolatileHelpers.createVolatileCachedCellImgWithInvalidate(
@@ -651,7 +651,8 @@ public class LabelSourceState<D extends IntegerType<D>, T>
 			InvokeOnJavaFXApplicationThread.invoke(() -> {
 				if (newv != null) {
 					paintingProgressIndicator.setVisible(true);
-					paintingProgressIndicatorTooltip.setText("Flood-filling, label ID: " + newv.labelId);
+					paintingProgressIndicatorTooltip.setText(newv.progressText());
+					paintingProgressIndicatorTooltip.setOnShowing(event -> paintingProgressIndicatorTooltip.setText(newv.progressText()));
 
 					final MenuItem floodFillContextMenuCancelItem = new MenuItem("Cancel");
 					if (newv.interrupt != null) {
@@ -662,6 +663,7 @@ public class LabelSourceState<D extends IntegerType<D>, T>
 					setProgressIndicatorContextMenu.accept(new ContextMenu(floodFillContextMenuCancelItem));
 				} else {
 					paintingProgressIndicator.setVisible(false);
+					paintingProgressIndicatorTooltip.setOnShowing(null);
 					resetProgressIndicatorContextMenu.run();
 				}
 			});
@@ -736,6 +738,13 @@ public class LabelSourceState<D extends IntegerType<D>, T>
 						"but can be committed to the data backend, as well.", index, name),
 				false,
 				"_Skip");
+		try
+		{
+			idService.flush();
+		} catch (final RuntimeException e)
+		{
+			LOG.error("Unable to flush id service for source {}", nameProperty().get(), e);
+		}
 	}
 
 	@Override
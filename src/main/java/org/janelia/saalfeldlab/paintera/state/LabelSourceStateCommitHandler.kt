@@ -6,6 +6,9 @@ import javafx.scene.control.Alert
 import javafx.scene.control.Button
 import javafx.scene.control.ButtonType
 import javafx.scene.control.CheckBox
+import javafx.scene.control.Label
+import javafx.scene.control.RadioButton
+import javafx.scene.control.ToggleGroup
 import javafx.scene.input.KeyCode
 import javafx.scene.input.KeyCodeCombination
 import javafx.scene.input.KeyCombination
@@ -58,15 +61,23 @@ class LabelSourceStateCommitHandler(private val state: LabelSourceState<*, *>) {
 				cancelButtonText: String = "_Cancel",
 				okButtonText: String = "Commi_t") {
 			val assignmentsCanBeCommitted = state.assignment().hasPersistableData()
-			val canvasCanBeCommitted = state.getDataSource().let { it is MaskedSource && it.getAffectedBlocks().isNotEmpty() }
+			val hasIncompleteCommit = state.getDataSource().let { it is MaskedSource && it.hasIncompleteCommit() }
+			val canvasCanBeCommitted = !hasIncompleteCommit && state.getDataSource().let { it is MaskedSource && it.getAffectedBlocks().isNotEmpty() }
 			val commitAssignmentCheckbox = CheckBox("Fragment-segment assignment").also { it.isSelected = assignmentsCanBeCommitted }
 			val commitCanvasCheckbox = CheckBox("Canvas").also { it.isSelected = canvasCanBeCommitted }
-			val anythingToCommit = assignmentsCanBeCommitted || canvasCanBeCommitted
+			val resumeIncompleteCommit = RadioButton("Resume").also { it.isSelected = true }
+			val rollbackIncompleteCommit = RadioButton("Roll back")
+			ToggleGroup().also { it.toggles.addAll(resumeIncompleteCommit, rollbackIncompleteCommit) }
+			val anythingToCommit = assignmentsCanBeCommitted || canvasCanBeCommitted || hasIncompleteCommit
 			val name = state.nameProperty().get()
 			val dialog =  if (anythingToCommit) {
 				val contents = VBox()
 				if (assignmentsCanBeCommitted) contents.children.add(commitAssignmentCheckbox)
 				if (canvasCanBeCommitted) contents.children.add(commitCanvasCheckbox)
+				if (hasIncompleteCommit) contents.children.addAll(
+					Label("Previous canvas commit is incomplete and needs to be finished before the canvas can be committed again:"),
+					resumeIncompleteCommit,
+					rollbackIncompleteCommit)
 				PainteraAlerts
 						.confirmation(okButtonText, cancelButtonText, true)
 						.also { it.headerText = headerText.apply(index, name) }
@@ -83,6 +94,12 @@ class LabelSourceStateCommitHandler(private val state: LabelSourceState<*, *>) {
 			if (dialog?.showAndWait()?.filter { ButtonType.OK == it }?.isPresent == true && anythingToCommit) {
 				if (assignmentsCanBeCommitted && commitAssignmentCheckbox.isSelected) state.assignment().persist()
 				state.getDataSource().let { if (canvasCanBeCommitted && commitCanvasCheckbox.isSelected && it is MaskedSource) { it.persistCanvas(clearCanvas) } }
+				state.getDataSource().let {
+					if (hasIncompleteCommit && it is MaskedSource) {
+						if (resumeIncompleteCommit.isSelected) it.resumeIncompleteCommit() else it.rollbackIncompleteCommit()
+					}
+				}
+				state.idService().flush()
 			}
 		}
 
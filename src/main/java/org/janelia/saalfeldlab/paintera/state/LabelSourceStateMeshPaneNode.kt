@@ -95,12 +95,11 @@ class LabelSourceStateMeshPaneNode(
 					val result = exportDialog.showAndWait()
 					if (result.isPresent) {
 						val parameters = result.get()
-						parameters.meshExporter.exportMesh(
+						MeshExporterDialog.exportInBackground(
+								parameters,
 								manager.getBlockListForLongKey,
 								manager.getMeshForLongKey,
-								parameters.segmentId.map { it }.toTypedArray(),
-								parameters.scale,
-								parameters.filePaths)
+								parameters.segmentId.map { it }.toTypedArray())
 					}
 				}
 
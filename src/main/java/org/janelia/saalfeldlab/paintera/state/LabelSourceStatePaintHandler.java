@@ -164,7 +164,7 @@ public class LabelSourceStatePaintHandler {
 
 		painters.put(t, paint2D);
 
-		final FloodFill fill = new FloodFill(t, sourceInfo, paintera.orthogonalViews()::requestRepaint, maskForLabel);
+		final FloodFill fill = new FloodFill(t, sourceInfo, paintera.orthogonalViews()::requestRepaint, maskForLabel, paintera.getPaintQueue(), paintera.getFloodFillExecutorService());
 		final FloodFill2D fill2D = new FloodFill2D(t, sourceInfo, paintera.orthogonalViews()::requestRepaint, maskForLabel);
 		fill2D.fillDepthProperty().bindBidirectional(this.brushProperties.brushDepth);
 		final Fill2DOverlay fill2DOverlay = new Fill2DOverlay(t);
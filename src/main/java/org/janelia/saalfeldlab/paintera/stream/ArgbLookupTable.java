@@ -0,0 +1,134 @@
+package org.janelia.saalfeldlab.paintera.stream;
+
+/**
+ * Colors of the labels that were converted in the current frame, in an open addressing hash table over primitive
+ * arrays. Not thread safe: each rendering thread uses its own table and starts its own frames. Entries are tagged with
+ * the frame in which they were added, so starting a new frame does not need to touch the arrays, unless the previous
+ * frame used only a small part of a table that grew for an earlier frame: the table is shrunk then, so that rendering
+ * threads do not hold on to large tables.
+ */
+class ArgbLookupTable
+{
+
+	private static final int INITIAL_CAPACITY = 1 << 10;
+
+	/**
+	 * Stop caching when a frame shows more labels than this, e.g. for highly downsampled label multisets. Limits each
+	 * table to {@code 2 * MAX_SIZE} slots, about 2MB.
+	 */
+	private static final int MAX_SIZE = 1 << 16;
+
+	private long[] ids = new long[INITIAL_CAPACITY];
+
+	private int[] argbs = new int[INITIAL_CAPACITY];
+
+	private int[] frames = new int[INITIAL_CAPACITY];
+
+	private int mask = INITIAL_CAPACITY - 1;
+
+	private int size = 0;
+
+	/**
+	 * {@code 0} until the first frame: threads that are not driven by a frame aware projector do not cache colors.
+	 */
+	private int frame = 0;
+
+	private int streamVersion = 0;
+
+	/**
+	 * Forget the colors of the previous frame.
+	 */
+	void newFrame()
+	{
+		// skip 0 on overflow
+		frame = frame == -1 ? 1 : frame + 1;
+		if (ids.length > INITIAL_CAPACITY && size * 8 < ids.length)
+			shrink();
+		size = 0;
+	}
+
+	int capacity()
+	{
+		return ids.length;
+	}
+
+	/**
+	 * @param streamVersion version of {@code stream}, a change starts a new frame
+	 * @return color of {@code id}, looked up in {@code stream} the first time {@code id} is requested in the current
+	 * frame
+	 */
+	int argb(final long id, final int streamVersion, final ARGBStream stream)
+	{
+		if (frame == 0)
+			return stream.argb(id);
+
+		if (streamVersion != this.streamVersion)
+		{
+			this.streamVersion = streamVersion;
+			newFrame();
+		}
+
+		for (int slot = hash(id) & mask; ; slot = (slot + 1) & mask)
+		{
+			if (frames[slot] != frame)
+			{
+				final int argb = stream.argb(id);
+				if (size >= MAX_SIZE)
+					return argb;
+				ids[slot] = id;
+				argbs[slot] = argb;
+				frames[slot] = frame;
+				if (++size * 2 > ids.length)
+					grow();
+				return argb;
+			}
+			if (ids[slot] == id)
+				return argbs[slot];
+		}
+	}
+
+	private void grow()
+	{
+		final long[] oldIds = ids;
+		final int[] oldArgbs = argbs;
+		final int[] oldFrames = frames;
+		ids = new long[oldIds.length * 2];
+		argbs = new int[oldIds.length * 2];
+		frames = new int[oldIds.length * 2];
+		mask = ids.length - 1;
+		for (int oldSlot = 0; oldSlot < oldIds.length; ++oldSlot)
+		{
+			if (oldFrames[oldSlot] != frame)
+				continue;
+			int slot = hash(oldIds[oldSlot]) & mask;
+			while (frames[slot] == frame)
+				slot = (slot + 1) & mask;
+			ids[slot] = oldIds[oldSlot];
+			argbs[slot] = oldArgbs[oldSlot];
+			frames[slot] = frame;
+		}
+	}
+
+	/**
+	 * Drop all entries and reduce the capacity to the smallest power of two that holds the labels of the previous frame
+	 * at a load factor of at most {@code 1/4}.
+	 */
+	private void shrink()
+	{
+		int capacity = INITIAL_CAPACITY;
+		while (capacity < size * 4)
+			capacity *= 2;
+		ids = new long[capacity];
+		argbs = new int[capacity];
+		frames = new int[capacity];
+		mask = capacity - 1;
+	}
+
+	private static int hash(final long id)
+	{
+		// neighboring ids are common, spread them over the table
+		final long h = id * 0x9e3779b97f4a7c15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+}
@@ -3,7 +3,9 @@ package org.janelia.saalfeldlab.paintera.stream;
 import java.lang.invoke.MethodHandles;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import bdv.fx.viewer.project.FrameAwareConverter;
 import gnu.trove.map.TLongIntMap;
 import javafx.beans.InvalidationListener;
 import javafx.beans.Observable;
@@ -27,9 +29,15 @@ import org.janelia.saalfeldlab.util.Colors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Converts labels to colors of an {@link AbstractHighlightingARGBStream}. When driven by a projector that signals
+ * {@link FrameAwareConverter#newFrame() new frames}, the color of each label is requested from the stream only once per
+ * frame and rendering thread, and looked up in an {@link ArgbLookupTable} for all other pixels of the frame. Frames are
+ * started per rendering thread, so viewers that share the converter do not reset each other's tables.
+ */
 public abstract class HighlightingStreamConverter<T>
 		implements Converter<T, ARGBType>, SeedProperty, WithAlpha, ColorFromSegmentId, HideLockedSegments,
-		           UserSpecifiedColors
+		           UserSpecifiedColors, FrameAwareConverter
 {
 
 	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
@@ -55,6 +63,13 @@ public abstract class HighlightingStreamConverter<T>
 
 	private final InvalidationListener updateUserSpecifiedColors = new UpdateUserSpecifiedColors();
 
+	/**
+	 * Incremented whenever the stream changes, invalidates the tables of all rendering threads.
+	 */
+	private final AtomicInteger streamVersion = new AtomicInteger(0);
+
+	private final ThreadLocal<ArgbLookupTable> lookupTables = ThreadLocal.withInitial(ArgbLookupTable::new);
+
 	public HighlightingStreamConverter(final AbstractHighlightingARGBStream stream)
 	{
 		super();
@@ -79,6 +94,21 @@ public abstract class HighlightingStreamConverter<T>
 			this.hideLockedSegments.set(stream.getHideLockedSegments());
 		});
 		stream.addListener(updateUserSpecifiedColors);
+		stream.addListener(obs -> streamVersion.incrementAndGet());
+	}
+
+	@Override
+	public void newFrame()
+	{
+		lookupTables.get().newFrame();
+	}
+
+	/**
+	 * @return color of {@code id} in the current frame of the calling thread
+	 */
+	protected int argb(final long id)
+	{
+		return lookupTables.get().argb(id, streamVersion.get(), stream);
 	}
 
 	@Override
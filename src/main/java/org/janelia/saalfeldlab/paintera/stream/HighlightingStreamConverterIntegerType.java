@@ -22,7 +22,7 @@ public class HighlightingStreamConverterIntegerType<I extends IntegerType<I>, V
 	@Override
 	public void convert(final V input, final ARGBType output)
 	{
-		output.set(stream.argb(input.get().getIntegerLong()));
+		output.set(argb(input.get().getIntegerLong()));
 //		LOG.trace("Converted input {} to output {}", input, output);
 	}
 
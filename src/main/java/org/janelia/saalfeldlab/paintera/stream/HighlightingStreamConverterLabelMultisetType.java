@@ -9,8 +9,6 @@ import net.imglib2.type.numeric.ARGBType;
 
 public class HighlightingStreamConverterLabelMultisetType extends HighlightingStreamConverter<VolatileLabelMultisetType>
 {
-	final static private double ONE_OVER_255 = 1.0 / 255.0;
-
 	public HighlightingStreamConverterLabelMultisetType(final AbstractHighlightingARGBStream stream)
 	{
 		super(stream);
@@ -26,31 +24,37 @@ public class HighlightingStreamConverterLabelMultisetType extends HighlightingSt
 		final Set<Entry<Label>> entries = input.get().entrySet();
 		if (entries.size() == 0)
 		{
-			output.set(stream.argb(Label.INVALID));
+			output.set(argb(Label.INVALID));
 		}
 		else
 		{
-			double a              = 0;
-			double r              = 0;
-			double g              = 0;
-			double b              = 0;
-			double alphaCountSize = 0;
+			// alpha weighted average of the colors of all entries, weighted by count:
+			// weight = alpha * count, channel = sum(weight * channel) / sum(weight)
+			long a          = 0;
+			long r          = 0;
+			long g          = 0;
+			long b          = 0;
+			long weightsSum = 0;
 			for (final Entry<Label> entry : entries)
 			{
-				final int    argb       = stream.argb(entry.getElement().id());
-				final double alpha      = ARGBType.alpha(argb);
-				final double alphaCount = alpha * ONE_OVER_255 * entry.getCount();
-				a += alphaCount * alpha;
-				r += alphaCount * ARGBType.red(argb);
-				g += alphaCount * ARGBType.green(argb);
-				b += alphaCount * ARGBType.blue(argb);
-				alphaCountSize += alphaCount;
+				final int  argb   = argb(entry.getElement().id());
+				final int  alpha  = argb >>> 24;
+				final long weight = (long) alpha * entry.getCount();
+				a += weight * alpha;
+				r += weight * (argb >>> 16 & 0xff);
+				g += weight * (argb >>> 8 & 0xff);
+				b += weight * (argb & 0xff);
+				weightsSum += weight;
+			}
+			if (weightsSum == 0)
+			{
+				output.set(0);
+				return;
 			}
-			final double iAlphaCountSize = 1.0 / alphaCountSize;
-			final int    aInt            = Math.min(255, (int) (a * iAlphaCountSize));
-			final int    rInt            = Math.min(255, (int) (r * iAlphaCountSize));
-			final int    gInt            = Math.min(255, (int) (g * iAlphaCountSize));
-			final int    bInt            = Math.min(255, (int) (b * iAlphaCountSize));
+			final int aInt = (int) (a / weightsSum);
+			final int rInt = (int) (r / weightsSum);
+			final int gInt = (int) (g / weightsSum);
+			final int bInt = (int) (b / weightsSum);
 			output.set(((aInt << 8 | rInt) << 8 | gInt) << 8 | bInt);
 		}
 		//		final Iterator< LabelMultiset.Entry< Label > > it = input.get().entrySet().iterator();
@@ -16,6 +16,7 @@ import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.ButtonType;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.Menu;
 import javafx.scene.control.MenuButton;
 import javafx.scene.control.MenuItem;
@@ -142,6 +143,8 @@ public class CreateDataset
 			100,
 			ObjectField.SubmitOn.values());
 
+	private final CheckBox shardedLabelBlockLookup = new CheckBox("Sharded label block lookup (Paintera only)");
+
 	private final TitledPane scaleLevels = new TitledPane("Scale Levels", mipmapLevelsNode);
 
 	private final VBox pane = new VBox(
@@ -157,6 +160,7 @@ public class CreateDataset
 			                ),
 			NamedNode.nameIt("Offset", NAME_WIDTH, false, NamedNode.bufferNode(new Region()), offset.getNode()),
 			setFromCurrentBox,
+			shardedLabelBlockLookup,
 			scaleLevels
 	);
 
@@ -212,7 +216,9 @@ public class CreateDataset
 						resolution.getAs(new double[3]),
 						offset.getAs(new double[3]),
 						mipmapLevels.stream().map(MipMapLevel::downsamplingFactors).toArray(double[][]::new),
-						mipmapLevels.stream().mapToInt(MipMapLevel::maxNumEntries).toArray()
+						mipmapLevels.stream().mapToInt(MipMapLevel::maxNumEntries).toArray(),
+						false,
+						shardedLabelBlockLookup.isSelected()
 				                                 );
 			} catch (IOException ex)
 			{
@@ -76,6 +76,7 @@ import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.function.LongConsumer;
 import java.util.function.Supplier;
 
@@ -198,7 +199,13 @@ public class GenericBackendDialogN5 implements Closeable
 					final AtomicBoolean discardDatasetList = new AtomicBoolean(false);
 					try
 					{
-						final List<String> datasets = N5Helpers.discoverDatasets(newv, keepLooking::get);
+						// show the datasets of the last discovery right away, then add datasets as they are found
+						final List<String> cachedDatasets = N5Helpers.getCachedDatasets(newv);
+						InvokeOnJavaFXApplicationThread.invoke(() -> {
+							if (keepLooking.get())
+								datasetChoices.setAll(cachedDatasets);
+						});
+						final List<String> datasets = N5Helpers.discoverDatasets(newv, keepLooking::get, addToDatasetChoices(keepLooking));
 						if (!Thread.currentThread().isInterrupted() && !discardDatasetList.get() && keepLooking.get())
 						{
 							LOG.debug("Found these datasets: {}", datasets);
@@ -228,6 +235,33 @@ public class GenericBackendDialogN5 implements Closeable
 		dataset.set("");
 	}
 
+	/**
+	 * @return adds discovered datasets to {@link #datasetChoices} in sorted order while {@code keepLooking} is set.
+	 * Datasets found in quick succession are added in a single update on the application thread.
+	 */
+	private Consumer<String> addToDatasetChoices(final BooleanProperty keepLooking)
+	{
+		final Queue<String> discovered = new ConcurrentLinkedQueue<>();
+		final AtomicBoolean isUpdateScheduled = new AtomicBoolean(false);
+		return dataset -> {
+			discovered.add(dataset);
+			if (isUpdateScheduled.compareAndSet(false, true))
+				InvokeOnJavaFXApplicationThread.invoke(() -> {
+					isUpdateScheduled.set(false);
+					final Set<String> known = new HashSet<>(datasetChoices);
+					final List<String> added = new ArrayList<>();
+					for (String d = discovered.poll(); d != null; d = discovered.poll())
+						if (known.add(d))
+							added.add(d);
+					if (keepLooking.get() && !added.isEmpty())
+					{
+						datasetChoices.addAll(added);
+						FXCollections.sort(datasetChoices);
+					}
+				});
+		};
+	}
+
 	public void cancelDiscovery() {
 		LOG.debug("Canceling discovery.");
 		synchronized (discoveryIsActive) {
@@ -14,6 +14,8 @@ public class ExportResult<T>
 
 	private final int scale;
 
+	private final int numThreads;
+
 	// TODO: change scale parameter when the interface allows to export
 	// different scales for different meshes at the same time
 	public ExportResult(
@@ -22,12 +24,24 @@ public class ExportResult<T>
 			final long[] segmentId,
 			final int scale,
 			final String[] filePaths)
+	{
+		this(meshExporter, fragmentIds, segmentId, scale, filePaths, meshExporter.getNumThreads());
+	}
+
+	public ExportResult(
+			final MeshExporter<T> meshExporter,
+			final long[][] fragmentIds,
+			final long[] segmentId,
+			final int scale,
+			final String[] filePaths,
+			final int numThreads)
 	{
 		this.meshExporter = meshExporter;
 		this.fragmentIds = fragmentIds;
 		this.segmentId = segmentId;
 		this.filePaths = filePaths;
 		this.scale = scale;
+		this.numThreads = numThreads;
 	}
 
 	public MeshExporter<T> getMeshExporter()
@@ -54,4 +68,9 @@ public class ExportResult<T>
 	{
 		return scale;
 	}
+
+	public int getNumThreads()
+	{
+		return numThreads;
+	}
 }
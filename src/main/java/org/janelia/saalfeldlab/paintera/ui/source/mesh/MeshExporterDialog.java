@@ -2,52 +2,69 @@ package org.janelia.saalfeldlab.paintera.ui.source.mesh;
 
 import javafx.beans.binding.Bindings;
 import javafx.beans.binding.BooleanBinding;
-import javafx.beans.value.ObservableValue;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.event.ActionEvent;
+import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.ButtonType;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.Dialog;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.TextField;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
 import javafx.stage.DirectoryChooser;
+import javafx.stage.Modality;
 import org.controlsfx.control.CheckListView;
+import org.janelia.saalfeldlab.fx.util.InvokeOnJavaFXApplicationThread;
 import org.janelia.saalfeldlab.paintera.meshes.MeshExporter;
 import org.janelia.saalfeldlab.paintera.meshes.MeshExporterBinary;
 import org.janelia.saalfeldlab.paintera.meshes.MeshExporterObj;
+import org.janelia.saalfeldlab.paintera.meshes.MeshExporterPly;
+import org.janelia.saalfeldlab.paintera.meshes.MeshExporterStl;
 import org.janelia.saalfeldlab.paintera.meshes.MeshInfo;
 import org.janelia.saalfeldlab.paintera.meshes.MeshInfos;
 import org.janelia.saalfeldlab.paintera.meshes.MeshSettings;
+import org.janelia.saalfeldlab.paintera.meshes.managed.GetBlockListFor;
+import org.janelia.saalfeldlab.paintera.meshes.managed.GetMeshFor;
+import org.janelia.saalfeldlab.paintera.ui.PainteraAlerts;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
 import org.janelia.saalfeldlab.util.fx.UIUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
+import java.util.concurrent.CancellationException;
 import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
 public class MeshExporterDialog<T> extends Dialog<ExportResult<T>>
 {
 
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
 	public enum FILETYPE
 	{
-		obj, binary
+		obj, ply, stl, binary
 	};
 
 	final int LIST_CELL_HEIGHT = 25;
 
 	private final TextField scale;
 
-	private final TextField filePath;
+	private final TextField numThreads = new TextField(Integer.toString(Runtime.getRuntime().availableProcessors()));
 
-	private final String[] filePaths;
+	private final TextField filePath;
 
-	private MeshExporter<T> meshExporter;
+	private String[] filePaths;
 
 	private long[][] fragmentIds;
 
@@ -65,23 +82,13 @@ public class MeshExporterDialog<T> extends Dialog<ExportResult<T>>
 		this.segmentIds = new long[] { meshInfo.segmentId() };
 		this.fragmentIds = new long[][] { meshInfo.containedFragments() };
 		this.filePath = new TextField();
-		this.filePaths = new String[] {""};
 		this.setTitle("Export mesh " + this.segmentIds);
 		this.isError = (Bindings.createBooleanBinding(() -> filePath.getText().isEmpty(), filePath.textProperty()));
 		final MeshSettings settings = meshInfo.getMeshSettings();
 		this.scale = new TextField(Integer.toString(settings.getFinestScaleLevel()));
 		UIUtils.setNumericTextField(scale, settings.getNumScaleLevels() - 1);
 
-		setResultConverter(button -> {
-			if (button.getButtonData().isCancelButton()) { return null; }
-			return new ExportResult(
-					meshExporter,
-					fragmentIds,
-					segmentIds,
-					Integer.parseInt(scale.getText()),
-					filePaths
-			);
-		});
+		setResultConverter(this::createResult);
 
 		createDialog();
 
@@ -95,7 +102,6 @@ public class MeshExporterDialog<T> extends Dialog<ExportResult<T>>
 		this.setTitle("Export mesh ");
 		this.segmentIds = new long[meshInfoList.size()];
 		this.fragmentIds = new long[meshInfoList.size()][];
-		this.filePaths = new String[meshInfoList.size()];
 		this.checkListView = new CheckListView<>();
 		this.isError = (Bindings.createBooleanBinding(() -> filePath.getText().isEmpty() || checkListView.getItems()
 						.isEmpty(),
@@ -128,16 +134,7 @@ public class MeshExporterDialog<T> extends Dialog<ExportResult<T>>
 		scale = new TextField(Integer.toString(minCommonScale));
 		UIUtils.setNumericTextField(scale, minCommonScaleLevels - 1);
 
-		setResultConverter(button -> {
-			if (button.getButtonData().isCancelButton()) { return null; }
-			return new ExportResult<>(
-					meshExporter,
-					fragmentIds,
-					segmentIds,
-					Integer.parseInt(scale.getText()),
-					filePaths
-			);
-		});
+		setResultConverter(this::createResult);
 
 		createMultiIdsDialog(ids);
 	}
@@ -153,15 +150,8 @@ public class MeshExporterDialog<T> extends Dialog<ExportResult<T>>
 		button.setOnAction(event -> {
 			final DirectoryChooser directoryChooser = new DirectoryChooser();
 			final File             directory        = directoryChooser.showDialog(contents.getScene().getWindow());
-			Optional.ofNullable(directory).map(File::getAbsolutePath);
-			filePath.setText(directory.getPath());
-
-			for (int i = 0; i < segmentIds.length; i++)
-			{
-				filePaths[i] = directory + "/neuron" + segmentIds[i];
-			}
-
-			createMeshExporter(fileFormats.getSelectionModel().getSelectedItem());
+			if (directory != null)
+				filePath.setText(directory.getPath());
 		});
 
 		contents.add(button, 2, row);
@@ -185,30 +175,8 @@ public class MeshExporterDialog<T> extends Dialog<ExportResult<T>>
 		button.setOnAction(event -> {
 			final DirectoryChooser directoryChooser = new DirectoryChooser();
 			final File             directory        = directoryChooser.showDialog(contents.getScene().getWindow());
-			Optional.ofNullable(directory).map(File::getAbsolutePath);
-			filePath.setText(directory.getPath());
-
-			// recover selected ids
-			final List<Long> selectedIds = new ArrayList<>();
-
-			if (checkListView.getItems().size() == 0) { return; }
-
-			for (int i = 0; i < checkListView.getItems().size(); i++)
-			{
-				if (checkListView.getItemBooleanProperty(i).get() == true)
-				{
-					selectedIds.add(checkListView.getItems().get(i));
-				}
-			}
-
-			segmentIds = selectedIds.stream().mapToLong(l -> l).toArray();
-
-			for (int i = 0; i < selectedIds.size(); i++)
-			{
-				filePaths[i] = directory + "/neuron" + selectedIds.get(i);
-			}
-
-			createMeshExporter(fileFormats.getSelectionModel().getSelectedItem());
+			if (directory != null)
+				filePath.setText(directory.getPath());
 		});
 
 		contents.add(button, 2, row);
@@ -244,6 +212,12 @@ public class MeshExporterDialog<T> extends Dialog<ExportResult<T>>
 
 		++row;
 
+		contents.add(new Label("Threads"), 0, row);
+		contents.add(numThreads, 1, row);
+		UIUtils.setNumericTextField(numThreads, Integer.MAX_VALUE);
+		GridPane.setFillWidth(numThreads, true);
+		++row;
+
 		contents.add(new Label("Save to:"), 0, row);
 		contents.add(filePath, 1, row);
 
@@ -253,19 +227,114 @@ public class MeshExporterDialog<T> extends Dialog<ExportResult<T>>
 		return row;
 	}
 
-	private void createMeshExporter(final String filetype)
+	private ExportResult<T> createResult(final ButtonType button)
 	{
-		switch (filetype)
+		if (button.getButtonData().isCancelButton()) { return null; }
+
+		if (checkListView != null)
 		{
-			case "binary":
-				meshExporter = new MeshExporterBinary<>();
-				break;
-			case ".obj":
+			// recover selected ids
+			final List<Long> selectedIds = new ArrayList<>();
+			for (int i = 0; i < checkListView.getItems().size(); i++)
+			{
+				if (checkListView.getItemBooleanProperty(i).get())
+				{
+					selectedIds.add(checkListView.getItems().get(i));
+				}
+			}
+			segmentIds = selectedIds.stream().mapToLong(l -> l).toArray();
+		}
+
+		final String directory = filePath.getText();
+		filePaths = LongStream.of(segmentIds).mapToObj(id -> directory + "/neuron" + id).toArray(String[]::new);
+
+		final MeshExporter<T> meshExporter = createMeshExporter(fileFormats.getSelectionModel().getSelectedItem());
+		final int numThreads = this.numThreads.getText().isEmpty() ? 1 : Integer.parseInt(this.numThreads.getText());
+		meshExporter.setNumThreads(numThreads);
+		return new ExportResult<>(
+				meshExporter,
+				fragmentIds,
+				segmentIds,
+				Integer.parseInt(scale.getText()),
+				filePaths,
+				numThreads
+		);
+	}
+
+	private static <T> MeshExporter<T> createMeshExporter(final String filetype)
+	{
+		switch (FILETYPE.valueOf(filetype))
+		{
+			case ply:
+				return new MeshExporterPly<>();
+			case stl:
+				return new MeshExporterStl<>();
+			case binary:
+				return new MeshExporterBinary<>();
+			case obj:
 			default:
-				meshExporter = new MeshExporterObj<>();
-				break;
+				return new MeshExporterObj<>();
 		}
 	}
 
+	/**
+	 * Run the export of {@code parameters} on a background thread and show its progress in a non-modal dialog that
+	 * allows to cancel the export. Returns immediately.
+	 */
+	public static <T> void exportInBackground(
+			final ExportResult<T> parameters,
+			final GetBlockListFor<T> getBlockListFor,
+			final GetMeshFor<T> getMeshFor,
+			final T[] ids)
+	{
+		final MeshExporter<T> meshExporter = parameters.getMeshExporter();
+		final ProgressBar progressBar = new ProgressBar(0.0);
+		progressBar.setMaxWidth(Double.POSITIVE_INFINITY);
+		final Label status = new Label("Generating meshes...");
+
+		final Alert progressDialog = PainteraAlerts.alert(Alert.AlertType.INFORMATION);
+		progressDialog.setHeaderText("Exporting " + ids.length + " mesh(es) with " + parameters.getNumThreads() + " thread(s).");
+		progressDialog.getDialogPane().setContent(new VBox(status, progressBar));
+		progressDialog.getDialogPane().getButtonTypes().add(ButtonType.CANCEL);
+		progressDialog.getDialogPane().lookupButton(ButtonType.OK).setDisable(true);
+		progressDialog.getDialogPane().lookupButton(ButtonType.CANCEL).addEventFilter(ActionEvent.ACTION, event -> {
+			event.consume();
+			status.setText("Cancelling...");
+			meshExporter.cancel();
+		});
+		progressDialog.initModality(Modality.NONE);
+
+		meshExporter.setProgressListener((numFinishedBlocks, numBlocks) -> InvokeOnJavaFXApplicationThread.invoke(() -> {
+			progressBar.setProgress(numBlocks == 0 ? 1.0 : (double) numFinishedBlocks / numBlocks);
+			status.setText(String.format("Generated meshes for %d/%d blocks", numFinishedBlocks, numBlocks));
+		}));
+
+		final Thread exportThread = new NamedThreadFactory("mesh-export-main-%d", true).newThread(() -> {
+			String message;
+			try
+			{
+				meshExporter.exportMesh(getBlockListFor, getMeshFor, ids, parameters.getScale(), parameters.getFilePaths());
+				message = "Successfully exported meshes.";
+			}
+			catch (final CancellationException e)
+			{
+				message = "Cancelled mesh export.";
+			}
+			catch (final IOException | RuntimeException e)
+			{
+				LOG.error("Unable to export meshes.", e);
+				message = "Unable to export meshes: " + e.getMessage();
+			}
+			final String finalMessage = message;
+			InvokeOnJavaFXApplicationThread.invoke(() -> {
+				status.setText(finalMessage);
+				progressDialog.getDialogPane().lookupButton(ButtonType.OK).setDisable(false);
+				progressDialog.getDialogPane().lookupButton(ButtonType.CANCEL).setDisable(true);
+			});
+		});
+
+		progressDialog.show();
+		exportThread.start();
+	}
 
 }
@@ -151,12 +151,11 @@ public class MeshInfoNode
 			if (result.isPresent())
 			{
 				final ExportResult<Long> parameters = result.get();
-				parameters.getMeshExporter().exportMesh(
+				MeshExporterDialog.exportInBackground(
+						parameters,
 						meshInfo.meshManager().getGetBlockListForLongKey(),
 						meshInfo.meshManager().getGetMeshForLongKey(),
-						parameters.getSegmentId()[0],
-						parameters.getScale(),
-						parameters.getFilePaths()[0]);
+						new Long[] {parameters.getSegmentId()[0]});
 			}
 		});
 
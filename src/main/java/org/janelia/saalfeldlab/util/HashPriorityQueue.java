@@ -1,5 +1,7 @@
 package org.janelia.saalfeldlab.util;
 
+import gnu.trove.map.hash.TObjectIntHashMap;
+
 import java.util.*;
 
 /**
@@ -8,13 +10,37 @@ import java.util.*;
  * Provides similar functionality to {@link PriorityQueue>} with addition of fast update and remove operations.
  * All supported operations (add, update, remove, poll) are implemented with O(log N) complexity.
  *
+ * Backed by an indexed 4-ary heap in flat arrays: the heap position of each element is kept in a primitive hash map
+ * so that priorities can be increased or decreased in place. Elements of equal priority are retrieved in insertion
+ * order. Batch updates of a large fraction of the queue re-build the heap in O(N) instead of sifting each element.
+ *
  * @param <P> element priority type
  * @param <E> element type
  */
 public class HashPriorityQueue<P, E>
 {
-	private final TreeMap<P, HashSet<E>> priorityToElements;
-	private final HashMap<E, P> elementToPriority;
+	private static final int ARITY = 4;
+
+	private static final int NO_POSITION = -1;
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private final Comparator<? super P> comparator;
+
+	private final TObjectIntHashMap<E> positions;
+
+	private Object[] elements;
+
+	private Object[] priorities;
+
+	/**
+	 * Insertion order, used to break ties between equal priorities.
+	 */
+	private long[] sequence;
+
+	private int size = 0;
+
+	private long nextSequence = 0;
 
 	/**
 	 * Creates the priority queue using the given priority comparator.
@@ -23,8 +49,11 @@ public class HashPriorityQueue<P, E>
 	 */
 	public HashPriorityQueue(final Comparator<? super P> comparator)
 	{
-		priorityToElements = new TreeMap<>(comparator);
-		elementToPriority = new HashMap<>();
+		this.comparator = comparator;
+		this.positions = new TObjectIntHashMap<>(DEFAULT_CAPACITY, 0.5f, NO_POSITION);
+		this.elements = new Object[DEFAULT_CAPACITY];
+		this.priorities = new Object[DEFAULT_CAPACITY];
+		this.sequence = new long[DEFAULT_CAPACITY];
 	}
 
 	/**
@@ -34,10 +63,13 @@ public class HashPriorityQueue<P, E>
 	 */
 	public HashPriorityQueue(final HashPriorityQueue<P, E> other)
 	{
-		priorityToElements = new TreeMap<>(other.priorityToElements.comparator());
-		elementToPriority = new HashMap<>(other.elementToPriority);
-		for (final Map.Entry<P, HashSet<E>> entry : other.priorityToElements.entrySet())
-			priorityToElements.put(entry.getKey(), new HashSet<>(entry.getValue()));
+		this.comparator = other.comparator;
+		this.positions = new TObjectIntHashMap<>(other.positions);
+		this.elements = other.elements.clone();
+		this.priorities = other.priorities.clone();
+		this.sequence = other.sequence.clone();
+		this.size = other.size;
+		this.nextSequence = other.nextSequence;
 	}
 
 	/**
@@ -52,18 +84,73 @@ public class HashPriorityQueue<P, E>
 		Objects.requireNonNull(priority);
 		Objects.requireNonNull(element);
 
-		final boolean wasPresent = remove(element);
+		final int position = positions.get(element);
+		if (position == NO_POSITION)
+		{
+			append(priority, element);
+			siftUp(size - 1);
+			return false;
+		}
+
+		priorities[position] = priority;
+		sequence[position] = nextSequence++;
+		siftUpOrDown(position);
+		return true;
+	}
 
-		HashSet<E> priorityGroup = priorityToElements.get(priority);
-		if (priorityGroup == null)
+	/**
+	 * Inserts or updates all elements with the given priorities. If the batch is large compared to the size of the
+	 * queue, the heap is re-built once instead of moving each element individually.
+	 *
+	 * @param elementsAndPriorities
+	 */
+	public void addOrUpdateAll(final Map<? extends E, ? extends P> elementsAndPriorities)
+	{
+		if (!isBatchRebuildCheaper(elementsAndPriorities.size()))
 		{
-			priorityGroup = new HashSet<>();
-			priorityToElements.put(priority, priorityGroup);
+			elementsAndPriorities.forEach((element, priority) -> addOrUpdate(priority, element));
+			return;
 		}
-		priorityGroup.add(element);
 
-		elementToPriority.put(element, priority);
-		return wasPresent;
+		elementsAndPriorities.forEach((element, priority) -> {
+			Objects.requireNonNull(priority);
+			Objects.requireNonNull(element);
+			final int position = positions.get(element);
+			if (position == NO_POSITION)
+				append(priority, element);
+			else
+			{
+				priorities[position] = priority;
+				sequence[position] = nextSequence++;
+			}
+		});
+		heapify();
+	}
+
+	/**
+	 * Updates the priorities of those elements that are contained in the queue and ignores all others.
+	 *
+	 * @param elementsAndPriorities
+	 * @return number of elements that were updated
+	 */
+	public int updateAllIfPresent(final Map<? extends E, ? extends P> elementsAndPriorities)
+	{
+		final boolean rebuild = isBatchRebuildCheaper(elementsAndPriorities.size());
+		int numUpdated = 0;
+		for (final Map.Entry<? extends E, ? extends P> entry : elementsAndPriorities.entrySet())
+		{
+			final int position = positions.get(Objects.requireNonNull(entry.getKey()));
+			if (position == NO_POSITION)
+				continue;
+			priorities[position] = Objects.requireNonNull(entry.getValue());
+			sequence[position] = nextSequence++;
+			if (!rebuild)
+				siftUpOrDown(position);
+			++numUpdated;
+		}
+		if (rebuild && numUpdated > 0)
+			heapify();
+		return numUpdated;
 	}
 
 	/**
@@ -76,16 +163,11 @@ public class HashPriorityQueue<P, E>
 	{
 		Objects.requireNonNull(element);
 
-		final P priority = elementToPriority.remove(element);
-		if (priority == null)
+		final int position = positions.remove(element);
+		if (position == NO_POSITION)
 			return false;
 
-		final HashSet<E> priorityGroup = priorityToElements.get(priority);
-		assert priorityGroup != null && priorityGroup.contains(element);
-		priorityGroup.remove(element);
-		if (priorityGroup.isEmpty())
-			priorityToElements.remove(priority);
-
+		removeAt(position);
 		return true;
 	}
 
@@ -98,7 +180,7 @@ public class HashPriorityQueue<P, E>
 	public boolean contains(final E element)
 	{
 		Objects.requireNonNull(element);
-		return elementToPriority.containsKey(element);
+		return positions.containsKey(element);
 	}
 
 	/**
@@ -107,10 +189,12 @@ public class HashPriorityQueue<P, E>
 	 * @param element
 	 * @return priority
 	 */
+	@SuppressWarnings("unchecked")
 	public P getPriority(final E element)
 	{
 		Objects.requireNonNull(element);
-		return elementToPriority.get(element);
+		final int position = positions.get(element);
+		return position == NO_POSITION ? null : (P) priorities[position];
 	}
 
 	/**
@@ -118,14 +202,10 @@ public class HashPriorityQueue<P, E>
 	 *
 	 * @return top priority element
 	 */
+	@SuppressWarnings("unchecked")
 	public E peek()
 	{
-		if (isEmpty())
-			return null;
-
-		final HashSet<E> topPriorityGroup = priorityToElements.firstEntry().getValue();
-		assert !topPriorityGroup.isEmpty();
-		return topPriorityGroup.iterator().next();
+		return isEmpty() ? null : (E) elements[0];
 	}
 
 	/**
@@ -133,24 +213,15 @@ public class HashPriorityQueue<P, E>
 	 *
 	 * @return top priority element
 	 */
+	@SuppressWarnings("unchecked")
 	public E poll()
 	{
 		if (isEmpty())
 			return null;
 
-		final HashSet<E> topPriorityGroup = priorityToElements.firstEntry().getValue();
-		assert !topPriorityGroup.isEmpty();
-
-		final Iterator<E> it = topPriorityGroup.iterator();
-		final E element = it.next();
-		it.remove();
-
-		assert elementToPriority.containsKey(element);
-		elementToPriority.remove(element);
-
-		if (topPriorityGroup.isEmpty())
-			priorityToElements.pollFirstEntry();
-
+		final E element = (E) elements[0];
+		positions.remove(element);
+		removeAt(0);
 		return element;
 	}
 
@@ -166,33 +237,18 @@ public class HashPriorityQueue<P, E>
 		if (numElements < 0)
 			throw new IllegalArgumentException();
 
-		final List<E> elements = new ArrayList<>();
-		for (final Iterator<HashSet<E>> itGroups = priorityToElements.values().iterator(); itGroups.hasNext() && elements.size() < numElements;)
-		{
-			final HashSet<E> topPriorityGroup = itGroups.next();
-			assert !topPriorityGroup.isEmpty();
-
-			for (final Iterator<E> itElements = topPriorityGroup.iterator(); itElements.hasNext() && elements.size() < numElements;)
-			{
-				final E element = itElements.next();
-				itElements.remove();
-				elements.add(element);
-
-				assert elementToPriority.containsKey(element);
-				elementToPriority.remove(element);
-			}
-
-			if (topPriorityGroup.isEmpty())
-				itGroups.remove();
-		}
-
+		final List<E> elements = new ArrayList<>(Math.min(numElements, size));
+		while (elements.size() < numElements && !isEmpty())
+			elements.add(poll());
 		return elements;
 	}
 
 	public void clear()
 	{
-		priorityToElements.clear();
-		elementToPriority.clear();
+		Arrays.fill(elements, 0, size, null);
+		Arrays.fill(priorities, 0, size, null);
+		positions.clear();
+		size = 0;
 	}
 
 	/**
@@ -200,7 +256,7 @@ public class HashPriorityQueue<P, E>
 	 */
 	public int size()
 	{
-		return elementToPriority.size();
+		return size;
 	}
 
 	/**
@@ -208,7 +264,127 @@ public class HashPriorityQueue<P, E>
 	 */
 	public boolean isEmpty()
 	{
-		assert elementToPriority.isEmpty() == priorityToElements.isEmpty();
-		return elementToPriority.isEmpty();
+		assert positions.size() == size;
+		return size == 0;
+	}
+
+	private void append(final P priority, final E element)
+	{
+		if (size == elements.length)
+		{
+			final int capacity = elements.length * 2;
+			elements = Arrays.copyOf(elements, capacity);
+			priorities = Arrays.copyOf(priorities, capacity);
+			sequence = Arrays.copyOf(sequence, capacity);
+		}
+		elements[size] = element;
+		priorities[size] = priority;
+		sequence[size] = nextSequence++;
+		positions.put(element, size);
+		++size;
+	}
+
+	/**
+	 * Removes the entry at {@code position} from the heap arrays. The element must already have been removed from
+	 * {@link #positions}.
+	 */
+	private void removeAt(final int position)
+	{
+		final int last = --size;
+		if (position != last)
+		{
+			move(last, position);
+			siftUpOrDown(position);
+		}
+		elements[last] = null;
+		priorities[last] = null;
+	}
+
+	/**
+	 * Re-building the heap is O(N), updating k elements individually is O(k log N).
+	 */
+	private boolean isBatchRebuildCheaper(final int batchSize)
+	{
+		return batchSize > 1 && (long) batchSize * (32 - Integer.numberOfLeadingZeros(size + batchSize)) > size + batchSize;
+	}
+
+	private void heapify()
+	{
+		if (size < 2)
+			return;
+		for (int position = (size - 2) / ARITY; position >= 0; --position)
+			siftDown(position);
+	}
+
+	private void siftUpOrDown(final int position)
+	{
+		if (siftUp(position) == position)
+			siftDown(position);
+	}
+
+	private int siftUp(int position)
+	{
+		final Object element = elements[position];
+		final Object priority = priorities[position];
+		final long seq = sequence[position];
+		while (position > 0)
+		{
+			final int parent = (position - 1) / ARITY;
+			if (!isBefore(priority, seq, parent))
+				break;
+			move(parent, position);
+			position = parent;
+		}
+		set(position, element, priority, seq);
+		return position;
+	}
+
+	private void siftDown(int position)
+	{
+		final Object element = elements[position];
+		final Object priority = priorities[position];
+		final long seq = sequence[position];
+		while (true)
+		{
+			final int firstChild = ARITY * position + 1;
+			if (firstChild >= size)
+				break;
+			int best = firstChild;
+			final int lastChild = Math.min(firstChild + ARITY, size);
+			for (int child = firstChild + 1; child < lastChild; ++child)
+				if (isBefore(priorities[child], sequence[child], best))
+					best = child;
+			if (!isBefore(priorities[best], sequence[best], priority, seq))
+				break;
+			move(best, position);
+			position = best;
+		}
+		set(position, element, priority, seq);
+	}
+
+	private boolean isBefore(final Object priority, final long seq, final int position)
+	{
+		return isBefore(priority, seq, priorities[position], sequence[position]);
+	}
+
+	@SuppressWarnings("unchecked")
+	private boolean isBefore(final Object priority, final long seq, final Object otherPriority, final long otherSeq)
+	{
+		final int comparison = comparator.compare((P) priority, (P) otherPriority);
+		return comparison < 0 || comparison == 0 && seq < otherSeq;
+	}
+
+	private void move(final int from, final int to)
+	{
+		set(to, elements[from], priorities[from], sequence[from]);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void set(final int position, final Object element, final Object priority, final long seq)
+	{
+		elements[position] = element;
+		priorities[position] = priority;
+		sequence[position] = seq;
+		positions.put((E) element, position);
 	}
 }
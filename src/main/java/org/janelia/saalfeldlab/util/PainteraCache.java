@@ -5,12 +5,15 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 
 public class PainteraCache {
 
@@ -18,8 +21,23 @@ public class PainteraCache {
 
 	private static String USER_HOME = System.getProperty("user.home");
 
+	public static final Path DEFAULT_CACHE_ROOT = Paths.get(USER_HOME, ".cache", "paintera");
+
+	private static volatile Path cacheRoot = DEFAULT_CACHE_ROOT;
+
+	public static Path getCacheRoot() {
+		return cacheRoot;
+	}
+
+	/**
+	 * Store cache files below {@code cacheRoot} instead of {@link #DEFAULT_CACHE_ROOT}, e.g. in tests.
+	 */
+	public static void setCacheRoot(final Path cacheRoot) {
+		PainteraCache.cacheRoot = cacheRoot;
+	}
+
 	public static Path getCacheFile(Class<?> clazz, final String filename) {
-		return Paths.get(USER_HOME, ".cache", "paintera", clazz.getName(), filename);
+		return cacheRoot.resolve(clazz.getName()).resolve(filename);
 	}
 
 	public static List<String> readLines(Class<?> clazz, final String filename) {
@@ -33,6 +51,40 @@ public class PainteraCache {
 		}
 	}
 
+	/**
+	 * @return content of the cache file, or empty if it does not exist or cannot be read
+	 */
+	public static Optional<String> read(Class<?> clazz, final String filename) {
+		final Path p = getCacheFile(clazz, filename);
+		try {
+			LOG.debug("Reading {}", p);
+			return Optional.of(new String(Files.readAllBytes(p), StandardCharsets.UTF_8));
+		} catch (final IOException e) {
+			LOG.debug("Caught exception when trying to read file at {}", p, e);
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * Replace the content of the cache file. Concurrent readers see either the old or the new content.
+	 */
+	public static void write(Class<?> clazz, final String filename, final String content) {
+		final Path p = getCacheFile(clazz, filename);
+		try {
+			LOG.debug("Writing {} characters to {}", content.length(), p);
+			Files.createDirectories(p.getParent());
+			final Path tmp = Files.createTempFile(p.getParent(), p.getFileName().toString(), ".tmp");
+			try {
+				Files.write(tmp, content.getBytes(StandardCharsets.UTF_8));
+				Files.move(tmp, p, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(tmp);
+			}
+		} catch (final IOException e) {
+			LOG.debug("Caught exception when trying to write file at {}", p, e);
+		}
+	}
+
 	public static void appendLine(Class<?> clazz, String filename, String toAppend, int maxNumLines) {
 		final List<String> lines = new ArrayList<>(readLines(clazz, filename));
 		lines.remove(toAppend);
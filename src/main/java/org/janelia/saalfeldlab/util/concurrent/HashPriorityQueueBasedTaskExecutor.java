@@ -6,9 +6,10 @@ import org.slf4j.LoggerFactory;
 
 import java.lang.invoke.MethodHandles;
 import java.util.*;
-import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author Igor Pisarev
@@ -18,14 +19,35 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * In contrast to using a standard thread pool executor with a {@link java.util.concurrent.PriorityBlockingQueue},
  * this class allows to efficiently change the priority of already submitted tasks.
  *
+ * Submissions and priority updates do not block while all workers are busy: they are appended to a lock-free queue
+ * of pending updates that is applied in one batch by the next worker that polls a task, or by any query of the task
+ * queue. The lock is only taken on submission to wake up idle workers.
+ *
  * @param <P> task priority type
  */
 public class HashPriorityQueueBasedTaskExecutor<P>
 {
 	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+	private static final class PendingUpdate<P>
+	{
+		private final Map<Runnable, P> tasks;
+
+		private final boolean onlyIfPresent;
+
+		private PendingUpdate(final Map<Runnable, P> tasks, final boolean onlyIfPresent)
+		{
+			this.tasks = tasks;
+			this.onlyIfPresent = onlyIfPresent;
+		}
+	}
+
 	private final HashPriorityQueue<P, Runnable> priorityQueue;
 
+	private final ConcurrentLinkedQueue<PendingUpdate<P>> pendingUpdates = new ConcurrentLinkedQueue<>();
+
+	private final AtomicInteger numIdleWorkers = new AtomicInteger();
+
 	private final Thread[] workers;
 
 	private final Runnable[] runningTasks;
@@ -44,19 +66,25 @@ public class HashPriorityQueueBasedTaskExecutor<P>
 		Arrays.stream(workers).forEach(Thread::start);
 	}
 
-	public synchronized void addOrUpdateTask(final Runnable task, final P priority)
+	public void addOrUpdateTask(final Runnable task, final P priority)
 	{
 		addOrUpdateTasks(Collections.singletonMap(task, priority));
 	}
 
-	public synchronized void addOrUpdateTasks(final Map<Runnable, P> tasks)
+	public void addOrUpdateTasks(final Map<Runnable, P> tasks)
 	{
-		if (tasks.isEmpty() || isShutdown.get())
-			return;
+		submit(tasks, false);
+	}
 
-		for (final Entry<Runnable, P> entry : tasks.entrySet())
-			priorityQueue.addOrUpdate(entry.getValue(), entry.getKey());
-		notifyAll();
+	/**
+	 * Update the priorities of those {@code tasks} that are still queued. Tasks that are running, finished, or were
+	 * removed are ignored.
+	 *
+	 * @param tasks
+	 */
+	public void updateTaskPriorities(final Map<Runnable, P> tasks)
+	{
+		submit(tasks, true);
 	}
 
 	public synchronized void removeTask(final Runnable task)
@@ -69,22 +97,26 @@ public class HashPriorityQueueBasedTaskExecutor<P>
 		if (tasks.isEmpty() || isShutdown.get())
 			return;
 
+		applyPendingUpdates();
 		interruptTasks(tasks);
 		tasks.forEach(priorityQueue::remove);
 	}
 
 	public synchronized boolean containsTask(final Runnable task)
 	{
+		applyPendingUpdates();
 		return priorityQueue.contains(task);
 	}
 
 	public synchronized P getPriority(final Runnable task)
 	{
+		applyPendingUpdates();
 		return priorityQueue.getPriority(task);
 	}
 
 	public synchronized void removeAllTasks()
 	{
+		pendingUpdates.clear();
 		priorityQueue.clear();
 		Arrays.stream(workers).forEach(Thread::interrupt);
 		Arrays.fill(runningTasks, null);
@@ -101,6 +133,34 @@ public class HashPriorityQueueBasedTaskExecutor<P>
 		return isShutdown.get();
 	}
 
+	private void submit(final Map<Runnable, P> tasks, final boolean onlyIfPresent)
+	{
+		if (tasks.isEmpty() || isShutdown.get())
+			return;
+
+		// copy: callers may re-use their map before the update is applied
+		pendingUpdates.add(new PendingUpdate<>(new HashMap<>(tasks), onlyIfPresent));
+		// idle workers register before they check for pending updates, so either they see this update or we see them
+		if (numIdleWorkers.get() > 0)
+		{
+			synchronized (this)
+			{
+				notifyAll();
+			}
+		}
+	}
+
+	private synchronized void applyPendingUpdates()
+	{
+		for (PendingUpdate<P> update = pendingUpdates.poll(); update != null; update = pendingUpdates.poll())
+		{
+			if (update.onlyIfPresent)
+				priorityQueue.updateAllIfPresent(update.tasks);
+			else
+				priorityQueue.addOrUpdateAll(update.tasks);
+		}
+	}
+
 	private synchronized void interruptTasks(final Set<Runnable> tasks)
 	{
 		for (int i = 0; i < runningTasks.length; ++i)
@@ -124,20 +184,28 @@ public class HashPriorityQueueBasedTaskExecutor<P>
 					return;
 
 				runningTasks[workerIndex] = null;
-				while (priorityQueue.isEmpty())
+				numIdleWorkers.incrementAndGet();
+				try
 				{
-					try
+					applyPendingUpdates();
+					while (priorityQueue.isEmpty())
 					{
-						wait();
-					}
-					catch (final InterruptedException e)
-					{
-						if (isShutdown.get())
-							return;
-						else
-							continue;
+						try
+						{
+							wait();
+						}
+						catch (final InterruptedException e)
+						{
+							if (isShutdown.get())
+								return;
+						}
+						applyPendingUpdates();
 					}
 				}
+				finally
+				{
+					numIdleWorkers.decrementAndGet();
+				}
 				task = priorityQueue.poll();
 				runningTasks[workerIndex] = task;
 			}
@@ -0,0 +1,538 @@
+package org.janelia.saalfeldlab.util.concurrent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Bounded FIFO executor for painting and label propagation.
+ *
+ * <ul>
+ *     <li>At most {@code capacity} tasks are queued. Submissions block while the queue is full, except for
+ *     submissions from the workers of this scheduler, which could otherwise dead-lock, and from threads that must not
+ *     block, e.g. the JavaFX application thread. Their tasks are queued even if the queue is full.</li>
+ *     <li>A task that is submitted with the same non-{@code null} key as the last queued task is not queued again:
+ *     its payload is merged into the payload of the queued task instead, e.g. the segments of consecutive brush
+ *     strokes with the same label and mask level.</li>
+ *     <li>Each task receives a {@link CancellationToken} that is cancelled with the task.</li>
+ *     <li>Queue wait and run times are recorded per task name, see {@link #getStatistics()}.</li>
+ * </ul>
+ *
+ * Runnables passed to the {@link java.util.concurrent.ExecutorService} methods are scheduled as task {@code "task"}.
+ */
+public class PaintTaskScheduler extends AbstractExecutorService
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	private static final String DEFAULT_TASK_NAME = "task";
+
+	public interface CancellationToken
+	{
+		boolean isCancelled();
+	}
+
+	public static class TaskStatistics
+	{
+
+		private long numTasks;
+
+		private long numCoalesced;
+
+		private long numCancelled;
+
+		private long numFailed;
+
+		private long totalWaitNanos;
+
+		private long maxWaitNanos;
+
+		private long totalRunNanos;
+
+		private long maxRunNanos;
+
+		private TaskStatistics()
+		{
+		}
+
+		private TaskStatistics(final TaskStatistics other)
+		{
+			this.numTasks = other.numTasks;
+			this.numCoalesced = other.numCoalesced;
+			this.numCancelled = other.numCancelled;
+			this.numFailed = other.numFailed;
+			this.totalWaitNanos = other.totalWaitNanos;
+			this.maxWaitNanos = other.maxWaitNanos;
+			this.totalRunNanos = other.totalRunNanos;
+			this.maxRunNanos = other.maxRunNanos;
+		}
+
+		/**
+		 * @return number of tasks that were run
+		 */
+		public long getNumTasks()
+		{
+			return numTasks;
+		}
+
+		/**
+		 * @return number of submissions that were merged into an already queued task
+		 */
+		public long getNumCoalesced()
+		{
+			return numCoalesced;
+		}
+
+		public long getNumCancelled()
+		{
+			return numCancelled;
+		}
+
+		public long getNumFailed()
+		{
+			return numFailed;
+		}
+
+		public long getTotalWaitNanos()
+		{
+			return totalWaitNanos;
+		}
+
+		public long getMaxWaitNanos()
+		{
+			return maxWaitNanos;
+		}
+
+		public long getTotalRunNanos()
+		{
+			return totalRunNanos;
+		}
+
+		public long getMaxRunNanos()
+		{
+			return maxRunNanos;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format(
+					"{tasks=%d, coalesced=%d, cancelled=%d, failed=%d, mean wait=%.1fms, max wait=%.1fms, mean run=%.1fms, max run=%.1fms}",
+					numTasks,
+					numCoalesced,
+					numCancelled,
+					numFailed,
+					numTasks == 0 ? 0.0 : totalWaitNanos * 1e-6 / numTasks,
+					maxWaitNanos * 1e-6,
+					numTasks == 0 ? 0.0 : totalRunNanos * 1e-6 / numTasks,
+					maxRunNanos * 1e-6);
+		}
+	}
+
+	private static final class TaskBody<P> implements Callable<Void>
+	{
+
+		private final BiConsumer<P, CancellationToken> task;
+
+		private P payload;
+
+		private CancellationToken token;
+
+		private TaskBody(final BiConsumer<P, CancellationToken> task, final P payload)
+		{
+			this.task = task;
+			this.payload = payload;
+		}
+
+		@Override
+		public Void call()
+		{
+			task.accept(payload, token);
+			return null;
+		}
+	}
+
+	/**
+	 * Handle of a submitted task. In addition to the {@link java.util.concurrent.Future} contract, cancelling a
+	 * task cancels its {@link CancellationToken} and removes it from the queue if it did not start yet.
+	 */
+	public final class ScheduledTask<P> extends FutureTask<Void> implements CancellationToken
+	{
+
+		private final String name;
+
+		private final Object key;
+
+		private final BinaryOperator<P> merge;
+
+		private final TaskBody<P> body;
+
+		private final CountDownLatch finished = new CountDownLatch(1);
+
+		private final long submittedNanos = System.nanoTime();
+
+		private volatile boolean isCancelled = false;
+
+		private volatile boolean hasFailed = false;
+
+		private ScheduledTask(
+				final String name,
+				final Object key,
+				final BinaryOperator<P> merge,
+				final TaskBody<P> body)
+		{
+			super(body);
+			body.token = this;
+			this.name = name;
+			this.key = key;
+			this.merge = merge;
+			this.body = body;
+		}
+
+		public String getName()
+		{
+			return name;
+		}
+
+		@Override
+		public boolean isCancelled()
+		{
+			return isCancelled || super.isCancelled();
+		}
+
+		@Override
+		public boolean cancel(final boolean mayInterruptIfRunning)
+		{
+			isCancelled = true;
+			final boolean wasCancelled = super.cancel(mayInterruptIfRunning);
+			if (dequeue(this))
+			{
+				recordCancelled(name);
+				finished.countDown();
+			}
+			return wasCancelled;
+		}
+
+		/**
+		 * Wait until this task finished running, or was removed from the queue. In contrast to {@link #get()}, this
+		 * waits for cancelled tasks to return.
+		 */
+		public void join() throws InterruptedException
+		{
+			finished.await();
+		}
+
+		private void runAndRecord()
+		{
+			final long startNanos = System.nanoTime();
+			try
+			{
+				run();
+				final long endNanos = System.nanoTime();
+				LOG.trace("Ran {} in {}ms after waiting {}ms", name, (endNanos - startNanos) * 1e-6, (startNanos - submittedNanos) * 1e-6);
+				record(this, startNanos - submittedNanos, endNanos - startNanos);
+			}
+			finally
+			{
+				finished.countDown();
+			}
+		}
+
+		@Override
+		protected void setException(final Throwable t)
+		{
+			LOG.error("Task {} failed", name, t);
+			hasFailed = true;
+			super.setException(t);
+		}
+	}
+
+	private final String name;
+
+	private final int capacity;
+
+	private final BooleanSupplier mayBlock;
+
+	private final ArrayDeque<ScheduledTask<?>> queue = new ArrayDeque<>();
+
+	private final Thread[] workers;
+
+	private final Map<String, TaskStatistics> statistics = new TreeMap<>();
+
+	private boolean isShutdown = false;
+
+	private int numRunningWorkers;
+
+	/**
+	 * @param name used for logging only
+	 * @param numThreads number of worker threads
+	 * @param capacity maximum number of queued tasks
+	 * @param threadFactory creates the worker threads
+	 */
+	public PaintTaskScheduler(
+			final String name,
+			final int numThreads,
+			final int capacity,
+			final ThreadFactory threadFactory)
+	{
+		this(name, numThreads, capacity, threadFactory, () -> true);
+	}
+
+	/**
+	 * @param name used for logging only
+	 * @param numThreads number of worker threads
+	 * @param capacity maximum number of queued tasks
+	 * @param threadFactory creates the worker threads
+	 * @param mayBlock called on the submitting thread, {@code false} if that thread must not wait for space in the
+	 * queue
+	 */
+	public PaintTaskScheduler(
+			final String name,
+			final int numThreads,
+			final int capacity,
+			final ThreadFactory threadFactory,
+			final BooleanSupplier mayBlock)
+	{
+		if (numThreads < 1 || capacity < 1)
+			throw new IllegalArgumentException("Need at least one thread and a capacity of at least one: " + numThreads + " " + capacity);
+		this.name = name;
+		this.capacity = capacity;
+		this.mayBlock = mayBlock;
+		this.workers = new Thread[numThreads];
+		this.numRunningWorkers = numThreads;
+		Arrays.setAll(workers, i -> threadFactory.newThread(this::runWorker));
+		Arrays.stream(workers).forEach(Thread::start);
+	}
+
+	/**
+	 * Schedule {@code task}.
+	 *
+	 * @throws RejectedExecutionException if this scheduler is shut down
+	 */
+	public ScheduledTask<Void> submit(final String taskName, final Consumer<CancellationToken> task)
+	{
+		return submit(taskName, null, null, null, (p, token) -> task.accept(token));
+	}
+
+	/**
+	 * Schedule {@code task} with {@code payload}, or merge {@code payload} into the last queued task if that task was
+	 * submitted with an equal, non-{@code null} {@code key}.
+	 *
+	 * @param key tasks with equal keys must have payloads of the same type and equivalent {@code merge} and {@code task}
+	 * @param merge combines the payload of the queued task (first argument) with {@code payload} (second argument)
+	 * @return the new task, or the queued task that {@code payload} was merged into
+	 * @throws RejectedExecutionException if this scheduler is shut down
+	 */
+	@SuppressWarnings("unchecked")
+	public <P> ScheduledTask<P> submit(
+			final String taskName,
+			final Object key,
+			final P payload,
+			final BinaryOperator<P> merge,
+			final BiConsumer<P, CancellationToken> task)
+	{
+		final boolean mayWait = !isWorkerThread() && mayBlock.getAsBoolean();
+		synchronized (this)
+		{
+			while (!isShutdown && queue.size() >= capacity && mayWait)
+			{
+				try
+				{
+					wait();
+				}
+				catch (final InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					throw new RejectedExecutionException("Interrupted while waiting for space in " + name + " queue", e);
+				}
+			}
+
+			if (isShutdown)
+				throw new RejectedExecutionException(name + " is shut down");
+
+			final ScheduledTask<?> last = queue.peekLast();
+			if (key != null && last != null && key.equals(last.key) && !last.isCancelled())
+			{
+				final ScheduledTask<P> coalesced = (ScheduledTask<P>) last;
+				coalesced.body.payload = coalesced.merge.apply(coalesced.body.payload, payload);
+				++statistics.computeIfAbsent(taskName, n -> new TaskStatistics()).numCoalesced;
+				return coalesced;
+			}
+
+			if (queue.size() >= capacity)
+				LOG.debug("Queueing {} in full {} with {} tasks", taskName, name, queue.size());
+			final ScheduledTask<P> scheduled = new ScheduledTask<>(taskName, key, merge, new TaskBody<>(task, payload));
+			queue.addLast(scheduled);
+			notifyAll();
+			return scheduled;
+		}
+	}
+
+	@Override
+	public void execute(final Runnable command)
+	{
+		Objects.requireNonNull(command);
+		submit(DEFAULT_TASK_NAME, token -> command.run());
+	}
+
+	/**
+	 * @return snapshot of the statistics of all task names, sorted by name
+	 */
+	public synchronized Map<String, TaskStatistics> getStatistics()
+	{
+		final Map<String, TaskStatistics> copy = new TreeMap<>();
+		statistics.forEach((n, s) -> copy.put(n, new TaskStatistics(s)));
+		return copy;
+	}
+
+	public synchronized int getQueueSize()
+	{
+		return queue.size();
+	}
+
+	@Override
+	public synchronized void shutdown()
+	{
+		isShutdown = true;
+		notifyAll();
+	}
+
+	@Override
+	public List<Runnable> shutdownNow()
+	{
+		final List<Runnable> pending;
+		synchronized (this)
+		{
+			isShutdown = true;
+			pending = new ArrayList<>(queue);
+			notifyAll();
+		}
+		pending.forEach(task -> ((ScheduledTask<?>) task).cancel(false));
+		Arrays.stream(workers).forEach(Thread::interrupt);
+		LOG.debug("Shut down {} with statistics {}", name, getStatistics());
+		return Collections.unmodifiableList(pending);
+	}
+
+	@Override
+	public synchronized boolean isShutdown()
+	{
+		return isShutdown;
+	}
+
+	@Override
+	public synchronized boolean isTerminated()
+	{
+		return isShutdown && numRunningWorkers == 0;
+	}
+
+	@Override
+	public synchronized boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException
+	{
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (!isTerminated())
+		{
+			final long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			if (remainingMillis <= 0)
+				return false;
+			wait(remainingMillis);
+		}
+		return true;
+	}
+
+	private void runWorker()
+	{
+		try
+		{
+			while (true)
+			{
+				final ScheduledTask<?> task;
+				synchronized (this)
+				{
+					while (queue.isEmpty() && !isShutdown)
+					{
+						try
+						{
+							wait();
+						}
+						catch (final InterruptedException e)
+						{
+							// only shutdownNow interrupts idle workers
+						}
+					}
+					if (queue.isEmpty())
+						return;
+					task = queue.pollFirst();
+					notifyAll();
+				}
+				task.runAndRecord();
+				// do not leak interrupts of cancelled tasks into the next task
+				Thread.interrupted();
+			}
+		}
+		finally
+		{
+			synchronized (this)
+			{
+				--numRunningWorkers;
+				notifyAll();
+			}
+		}
+	}
+
+	private synchronized boolean dequeue(final ScheduledTask<?> task)
+	{
+		final boolean removed = queue.remove(task);
+		if (removed)
+			notifyAll();
+		return removed;
+	}
+
+	private synchronized void record(final ScheduledTask<?> task, final long waitNanos, final long runNanos)
+	{
+		final TaskStatistics stats = statistics.computeIfAbsent(task.name, n -> new TaskStatistics());
+		if (task.isCancelled())
+			++stats.numCancelled;
+		else if (task.hasFailed)
+			++stats.numFailed;
+		++stats.numTasks;
+		stats.totalWaitNanos += waitNanos;
+		stats.maxWaitNanos = Math.max(stats.maxWaitNanos, waitNanos);
+		stats.totalRunNanos += runNanos;
+		stats.maxRunNanos = Math.max(stats.maxRunNanos, runNanos);
+	}
+
+	private synchronized void recordCancelled(final String taskName)
+	{
+		++statistics.computeIfAbsent(taskName, n -> new TaskStatistics()).numCancelled;
+	}
+
+	private boolean isWorkerThread()
+	{
+		final Thread current = Thread.currentThread();
+		for (final Thread worker : workers)
+			if (worker == current)
+				return true;
+		return false;
+	}
+
+}
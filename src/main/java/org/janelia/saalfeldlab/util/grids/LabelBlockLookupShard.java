@@ -0,0 +1,178 @@
+package org.janelia.saalfeldlab.util.grids;
+
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * In-memory representation of a single shard of a {@link LabelBlockLookupSharded}: the sorted linear block indices
+ * of all ids in a contiguous id range.
+ *
+ * Serialized as a version byte and the number of ids, followed by the ids in ascending order. Each id is stored as
+ * the (unsigned) difference to the previous id, followed by its number of blocks and the differences between its
+ * consecutive, ascending block indices. All numbers are written as unsigned variable length integers (7 bits per byte),
+ * so a shard of dense ids with clustered blocks needs only a few bytes per entry.
+ */
+class LabelBlockLookupShard
+{
+
+	private static final byte VERSION = 1;
+
+	private static final long[] EMPTY = {};
+
+	private final TLongObjectMap<long[]> blocksById;
+
+	LabelBlockLookupShard()
+	{
+		this(new TLongObjectHashMap<>());
+	}
+
+	private LabelBlockLookupShard(final TLongObjectMap<long[]> blocksById)
+	{
+		this.blocksById = blocksById;
+	}
+
+	/**
+	 * @return sorted linear block indices of {@code id}, empty if {@code id} is not contained in this shard
+	 */
+	long[] get(final long id)
+	{
+		final long[] blocks = blocksById.get(id);
+		return blocks == null ? EMPTY : blocks;
+	}
+
+	/**
+	 * Replace the blocks of {@code id}. An empty {@code blocks} removes {@code id} from this shard.
+	 */
+	void set(final long id, final long[] blocks)
+	{
+		if (blocks.length == 0)
+			blocksById.remove(id);
+		else
+		{
+			final long[] sorted = blocks.clone();
+			Arrays.sort(sorted);
+			blocksById.put(id, distinct(sorted));
+		}
+	}
+
+	/**
+	 * Remove {@code removed} from and add {@code added} to the blocks of {@code id}. Blocks that are both removed and
+	 * added are contained afterwards.
+	 *
+	 * @param removed may be {@code null}
+	 * @param added may be {@code null}
+	 */
+	void update(final long id, final TLongSet removed, final TLongSet added)
+	{
+		final TLongSet blocks = new TLongHashSet(get(id));
+		if (removed != null)
+			blocks.removeAll(removed);
+		if (added != null)
+			blocks.addAll(added);
+		set(id, blocks.toArray());
+	}
+
+	int size()
+	{
+		return blocksById.size();
+	}
+
+	byte[] encode()
+	{
+		final long[] ids = blocksById.keys();
+		Arrays.sort(ids);
+
+		int capacity = 1 + 10;
+		for (final long id : ids)
+			capacity += 10 * (2 + blocksById.get(id).length);
+		final ByteBuffer buffer = ByteBuffer.allocate(capacity);
+
+		buffer.put(VERSION);
+		putVarLong(buffer, ids.length);
+		long previousId = 0;
+		for (final long id : ids)
+		{
+			final long[] blocks = blocksById.get(id);
+			putVarLong(buffer, id - previousId);
+			putVarLong(buffer, blocks.length);
+			long previousBlock = 0;
+			for (final long block : blocks)
+			{
+				putVarLong(buffer, block - previousBlock);
+				previousBlock = block;
+			}
+			previousId = id;
+		}
+		return Arrays.copyOf(buffer.array(), buffer.position());
+	}
+
+	static LabelBlockLookupShard decode(final byte[] bytes) throws IOException
+	{
+		final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		if (!buffer.hasRemaining() || buffer.get() != VERSION)
+			throw new IOException("Unsupported label block lookup shard version");
+
+		try
+		{
+			final int numIds = (int) getVarLong(buffer);
+			final TLongObjectMap<long[]> blocksById = new TLongObjectHashMap<>(Math.max(numIds, 1));
+			long id = 0;
+			for (int i = 0; i < numIds; ++i)
+			{
+				id += getVarLong(buffer);
+				final long[] blocks = new long[(int) getVarLong(buffer)];
+				long block = 0;
+				for (int k = 0; k < blocks.length; ++k)
+				{
+					block += getVarLong(buffer);
+					blocks[k] = block;
+				}
+				blocksById.put(id, blocks);
+			}
+			return new LabelBlockLookupShard(blocksById);
+		}
+		catch (final RuntimeException e)
+		{
+			throw new IOException("Corrupt label block lookup shard", e);
+		}
+	}
+
+	private static long[] distinct(final long[] sorted)
+	{
+		int size = 0;
+		for (int i = 0; i < sorted.length; ++i)
+			if (i == 0 || sorted[i] != sorted[size - 1])
+				sorted[size++] = sorted[i];
+		return size == sorted.length ? sorted : Arrays.copyOf(sorted, size);
+	}
+
+	private static void putVarLong(final ByteBuffer buffer, long value)
+	{
+		while ((value & ~0x7FL) != 0)
+		{
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	private static long getVarLong(final ByteBuffer buffer)
+	{
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7)
+		{
+			final byte b = buffer.get();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IllegalStateException("Variable length integer is too long");
+	}
+
+}
@@ -0,0 +1,334 @@
+package org.janelia.saalfeldlab.util.grids;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import gnu.trove.iterator.TLongObjectIterator;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.util.IntervalIndexer;
+import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookup;
+import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookupAdapter;
+import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookupKey;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.paintera.data.n5.N5FSMeta;
+import org.janelia.saalfeldlab.paintera.data.n5.ReflectionException;
+import org.janelia.saalfeldlab.util.n5.N5Helpers;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Label to block lookup that stores the blocks of {@link #getIdsPerShard() a range of ids} in a single file, as
+ * opposed to one file per id for {@link org.janelia.saalfeldlab.labels.blocks.LabelBlockLookupFromFile}. Each shard
+ * holds the sorted, delta encoded linear block indices of its ids (see {@link LabelBlockLookupShard}), so a commit that
+ * touches many ids reads and writes only a few small files through {@link #update(int, TLongObjectMap, TLongObjectMap, ExecutorService)}.
+ *
+ * Shards are stored in {@code <group>/<directory>/s<level>/<shard>} and replaced atomically. The lookup is opened by
+ * {@link N5Helpers#getLabelBlockLookup(org.janelia.saalfeldlab.n5.N5Reader, String)} if the {@code labelBlockLookup}
+ * attribute of a Paintera dataset is of type {@code SHARDED}. New label datasets are set up with a sharded lookup by
+ * {@link #create(N5FSWriter, String, int)}, existing datasets keep their lookup.
+ */
+@LabelBlockLookup.LookupType(LabelBlockLookupSharded.LOOKUP_TYPE)
+public class LabelBlockLookupSharded implements LabelBlockLookup {
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	public static final String LOOKUP_TYPE = "SHARDED";
+
+	public static final String DEFAULT_DIRECTORY = "label-to-block-mapping-sharded";
+
+	public static final int DEFAULT_IDS_PER_SHARD = 1 << 12;
+
+	@LabelBlockLookup.Parameter
+	private final long[][] dims;
+
+	@LabelBlockLookup.Parameter
+	private final int[][] blockSizes;
+
+	@LabelBlockLookup.Parameter
+	private final int idsPerShard;
+
+	@LabelBlockLookup.Parameter
+	private final String directory;
+
+	private transient String basePath;
+
+	private final transient Map<Path, Object> shardLocks;
+
+	private LabelBlockLookupSharded() {
+		this(null, null, DEFAULT_IDS_PER_SHARD, DEFAULT_DIRECTORY);
+	}
+
+	/**
+	 * @param dims dimensions of each level
+	 * @param blockSizes block size of each level
+	 * @param idsPerShard number of consecutive ids that are stored in the same shard, must be a power of two
+	 * @param directory directory of the shards, relative to the Paintera dataset
+	 */
+	public LabelBlockLookupSharded(final long[][] dims, final int[][] blockSizes, final int idsPerShard, final String directory) {
+		if (Integer.bitCount(idsPerShard) != 1)
+			throw new IllegalArgumentException("Ids per shard must be a power of two but got " + idsPerShard);
+		this.dims = dims;
+		this.blockSizes = blockSizes;
+		this.idsPerShard = idsPerShard;
+		this.directory = directory;
+		this.shardLocks = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Resolve shards relative to {@code group} in the container at {@code containerPath}. Called when the lookup is
+	 * opened through {@link N5Helpers#getLabelBlockLookup(org.janelia.saalfeldlab.n5.N5Reader, String)}.
+	 */
+	public void setRelativeTo(final String containerPath, final String group) {
+		this.basePath = Paths.get(containerPath, group).toString();
+	}
+
+	public int getIdsPerShard() {
+		return idsPerShard;
+	}
+
+	@NotNull
+	@Override
+	public String getType() {
+		return LOOKUP_TYPE;
+	}
+
+	@NotNull
+	@Override
+	public Interval[] read(final LabelBlockLookupKey key) throws IOException {
+		final int level = key.getLevel();
+		final long id = key.getId();
+		final long[] blocks = readShard(shardPath(level, shard(id))).get(id);
+		LOG.debug("level={} id={} -- read {} blocks", level, id, blocks.length);
+
+		final CellGrid grid = grid(level);
+		final int n = grid.numDimensions();
+		final long[] pos = new long[n];
+		final long[] min = new long[n];
+		final long[] max = new long[n];
+		final Interval[] intervals = new Interval[blocks.length];
+		for (int i = 0; i < blocks.length; ++i) {
+			Grids.linearIndexToCellPositionMinMax(grid, blocks[i], pos, min, max);
+			intervals[i] = new FinalInterval(min, max);
+		}
+		return intervals;
+	}
+
+	@Override
+	public void write(final LabelBlockLookupKey key, final Interval... intervals) throws IOException {
+		final int level = key.getLevel();
+		final long id = key.getId();
+		final CellGrid grid = grid(level);
+		final long[] gridDimensions = grid.getGridDimensions();
+		final long[] min = new long[grid.numDimensions()];
+		final long[] pos = new long[grid.numDimensions()];
+		final long[] blocks = new long[intervals.length];
+		for (int i = 0; i < intervals.length; ++i) {
+			intervals[i].min(min);
+			grid.getCellPosition(min, pos);
+			blocks[i] = IntervalIndexer.positionToIndex(pos, gridDimensions);
+		}
+
+		final Path shardPath = shardPath(level, shard(id));
+		synchronized (lock(shardPath)) {
+			final LabelBlockLookupShard shard = readShard(shardPath);
+			shard.set(id, blocks);
+			writeShard(shardPath, shard);
+		}
+	}
+
+	/**
+	 * Remove and add blocks for many ids at once. Ids are grouped by shard and each affected shard is read, modified
+	 * and written exactly once. Shards are updated concurrently on {@code executor}.
+	 *
+	 * @param level scale level
+	 * @param removedById linear indices of blocks (in the grid of {@code level}) that do not contain an id anymore
+	 * @param addedById linear indices of blocks (in the grid of {@code level}) that newly contain an id
+	 * @param executor updates shards
+	 * @throws IOException if any shard cannot be read or written. Shards that were updated before the failure keep
+	 * their update, updating again with the same arguments is safe.
+	 */
+	public void update(
+			final int level,
+			final TLongObjectMap<? extends TLongSet> removedById,
+			final TLongObjectMap<? extends TLongSet> addedById,
+			final ExecutorService executor) throws IOException {
+
+		final TLongObjectMap<TLongArrayList> idsByShard = new TLongObjectHashMap<>();
+		final TLongSet modifiedIds = new TLongHashSet();
+		modifiedIds.addAll(removedById.keySet());
+		modifiedIds.addAll(addedById.keySet());
+		modifiedIds.forEach(id -> {
+			final long shard = shard(id);
+			TLongArrayList ids = idsByShard.get(shard);
+			if (ids == null) {
+				ids = new TLongArrayList();
+				idsByShard.put(shard, ids);
+			}
+			ids.add(id);
+			return true;
+		});
+		LOG.debug("Updating {} ids in {} shards at level {}", modifiedIds.size(), idsByShard.size(), level);
+
+		final List<Future<?>> futures = new ArrayList<>();
+		for (final TLongObjectIterator<TLongArrayList> it = idsByShard.iterator(); it.hasNext(); ) {
+			it.advance();
+			final Path shardPath = shardPath(level, it.key());
+			final TLongArrayList ids = it.value();
+			futures.add(executor.submit(() -> {
+				synchronized (lock(shardPath)) {
+					final LabelBlockLookupShard shard = readShard(shardPath);
+					for (int i = 0; i < ids.size(); ++i) {
+						final long id = ids.get(i);
+						shard.update(id, removedById.get(id), addedById.get(id));
+					}
+					writeShard(shardPath, shard);
+				}
+				return null;
+			}));
+		}
+
+		IOException exception = null;
+		for (final Future<?> future : futures) {
+			try {
+				future.get();
+			} catch (final InterruptedException e) {
+				futures.forEach(f -> f.cancel(true));
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while updating label block lookup", e);
+			} catch (final ExecutionException e) {
+				if (exception == null)
+					exception = e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+			}
+		}
+		if (exception != null)
+			throw exception;
+	}
+
+	/**
+	 * Create an empty sharded lookup for the levels of the {@code unique-labels} datasets of the Paintera dataset
+	 * {@code group}, and set it as the {@code labelBlockLookup} attribute of {@code group}. Existing shards in the
+	 * {@link #DEFAULT_DIRECTORY} are removed. Used for newly created label datasets, the lookup is filled by commits.
+	 *
+	 * @param n5 container
+	 * @param group Paintera dataset
+	 * @param idsPerShard must be a power of two
+	 * @return the new lookup
+	 * @throws IOException if any n5 operation throws {@link IOException}
+	 */
+	public static LabelBlockLookupSharded create(
+			final N5FSWriter n5,
+			final String group,
+			final int idsPerShard) throws IOException {
+
+		final String uniqueLabelsGroup = group + "/unique-labels";
+		final String[] scaleDatasets = N5Helpers.listAndSortScaleDatasets(n5, uniqueLabelsGroup);
+		final long[][] dims = new long[scaleDatasets.length][];
+		final int[][] blockSizes = new int[scaleDatasets.length][];
+		for (int level = 0; level < scaleDatasets.length; ++level) {
+			final DatasetAttributes attributes = n5.getDatasetAttributes(uniqueLabelsGroup + "/" + scaleDatasets[level]);
+			dims[level] = attributes.getDimensions();
+			blockSizes[level] = attributes.getBlockSize();
+		}
+
+		final LabelBlockLookupSharded lookup = new LabelBlockLookupSharded(dims, blockSizes, idsPerShard, DEFAULT_DIRECTORY);
+		try {
+			lookup.setRelativeTo(new N5FSMeta(n5, group).basePath(), group);
+		} catch (final ReflectionException e) {
+			throw new IOException(e);
+		}
+		for (int level = 0; level < scaleDatasets.length; ++level)
+			lookup.deleteLevel(level);
+
+		final Gson gson = new GsonBuilder().registerTypeHierarchyAdapter(LabelBlockLookup.class, LabelBlockLookupAdapter.getJsonAdapter()).create();
+		n5.setAttribute(group, "labelBlockLookup", gson.toJsonTree(lookup, LabelBlockLookup.class));
+		return lookup;
+	}
+
+	private long shard(final long id) {
+		return id >>> Integer.numberOfTrailingZeros(idsPerShard);
+	}
+
+	private Path shardPath(final int level, final long shard) {
+		if (basePath == null)
+			throw new IllegalStateException("Sharded label block lookup was not set relative to a container");
+		return Paths.get(basePath, directory, "s" + level, Long.toUnsignedString(shard));
+	}
+
+	private CellGrid grid(final int level) {
+		return new CellGrid(dims[level], blockSizes[level]);
+	}
+
+	private Object lock(final Path shardPath) {
+		return shardLocks.computeIfAbsent(shardPath, p -> new Object());
+	}
+
+	private static LabelBlockLookupShard readShard(final Path shardPath) throws IOException {
+		try {
+			return LabelBlockLookupShard.decode(Files.readAllBytes(shardPath));
+		} catch (final NoSuchFileException e) {
+			return new LabelBlockLookupShard();
+		}
+	}
+
+	/**
+	 * Write to a temporary file first and move it into place, so that readers never see a partially written shard.
+	 */
+	private static void writeShard(final Path shardPath, final LabelBlockLookupShard shard) throws IOException {
+		if (shard.size() == 0) {
+			Files.deleteIfExists(shardPath);
+			return;
+		}
+		Files.createDirectories(shardPath.getParent());
+		final Path tmp = Files.createTempFile(shardPath.getParent(), shardPath.getFileName().toString(), ".tmp");
+		try {
+			Files.write(tmp, shard.encode());
+			Files.move(tmp, shardPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	private void deleteLevel(final int level) throws IOException {
+		final Path levelPath = shardPath(level, 0).getParent();
+		if (!Files.exists(levelPath))
+			return;
+		try (final Stream<Path> paths = Files.walk(levelPath)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+				try {
+					Files.delete(path);
+				} catch (final IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (final UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+}
@@ -0,0 +1,246 @@
+package org.janelia.saalfeldlab.util.n5;
+
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.stream.LongStream;
+
+/**
+ * Crawls an n5 container for datasets (see {@link N5Helpers#discoverDatasets(N5Reader, BooleanSupplier)}). Each group
+ * is visited in its own task, so a work-stealing executor balances deep and wide parts of the tree. Groups that are
+ * datasets are not descended into. Discovered datasets are passed to a listener as soon as they are found.
+ *
+ * With an {@link N5ContainerIndex}, groups that did not change since they were indexed are not read again, and the
+ * index is updated once the whole container was crawled.
+ */
+class DatasetDiscovery
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	/**
+	 * Coarsest modification time resolution of common file systems. Groups that were modified less than this before
+	 * the discovery started may be modified again without a change of the modification time, and are not re-used.
+	 */
+	private static final long MODIFICATION_TIME_RESOLUTION_MILLIS = 2000;
+
+	private final long startMillis = System.currentTimeMillis();
+
+	private final N5Reader n5;
+
+	private final BooleanSupplier keepLooking;
+
+	private final Executor executor;
+
+	private final Consumer<String> onDiscovered;
+
+	private final N5ContainerIndex previousIndex;
+
+	private final N5ContainerIndex index;
+
+	private final List<String> datasets = Collections.synchronizedList(new ArrayList<>());
+
+	private final AtomicInteger numPendingTasks = new AtomicInteger();
+
+	private final AtomicBoolean isComplete = new AtomicBoolean(true);
+
+	private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+	private final AtomicInteger numGroupsFromIndex = new AtomicInteger();
+
+	/**
+	 * @param previousIndex may be {@code null}
+	 */
+	DatasetDiscovery(
+			final N5Reader n5,
+			final BooleanSupplier keepLooking,
+			final Executor executor,
+			final Consumer<String> onDiscovered,
+			final N5ContainerIndex previousIndex)
+	{
+		this.n5 = n5;
+		this.keepLooking = keepLooking;
+		this.executor = executor;
+		this.onDiscovered = onDiscovered;
+		this.previousIndex = previousIndex;
+		this.index = previousIndex == null ? null : new N5ContainerIndex(previousIndex.getContainer());
+	}
+
+	/**
+	 * Crawl the container and block until all groups were visited, {@code keepLooking} returned {@code false}, or the
+	 * calling thread was interrupted.
+	 *
+	 * @return sorted list of the datasets that were found
+	 */
+	List<String> discover()
+	{
+		submit("");
+		try
+		{
+			done.get();
+		}
+		catch (final InterruptedException e)
+		{
+			LOG.debug("Was interrupted -- will stop dataset discovery.");
+			isComplete.set(false);
+			Thread.currentThread().interrupt();
+		}
+		catch (final ExecutionException e)
+		{
+			LOG.debug("Dataset discovery failed", e);
+			isComplete.set(false);
+		}
+
+		if (index != null && isComplete.get() && keepLooking.getAsBoolean())
+		{
+			LOG.debug("Re-used {} groups of the container index", numGroupsFromIndex);
+			index.save();
+		}
+
+		final List<String> sortedDatasets;
+		synchronized (datasets)
+		{
+			sortedDatasets = new ArrayList<>(datasets);
+		}
+		Collections.sort(sortedDatasets);
+		return sortedDatasets;
+	}
+
+	private void submit(final String pathName)
+	{
+		numPendingTasks.incrementAndGet();
+		try
+		{
+			executor.execute(() -> {
+				try
+				{
+					visit(pathName);
+				}
+				finally
+				{
+					taskFinished();
+				}
+			});
+		}
+		catch (final RejectedExecutionException e)
+		{
+			LOG.debug("Unable to discover datasets in {}", pathName, e);
+			isComplete.set(false);
+			taskFinished();
+		}
+	}
+
+	private void taskFinished()
+	{
+		if (numPendingTasks.decrementAndGet() == 0)
+			done.complete(null);
+	}
+
+	private void visit(final String pathName)
+	{
+		LOG.trace("Discovering subdirectory {}", pathName);
+
+		if (!keepLooking.getAsBoolean() || Thread.currentThread().isInterrupted())
+		{
+			isComplete.set(false);
+			return;
+		}
+
+		try
+		{
+			// stamp before reading so that concurrent modifications are picked up next time
+			final long modified = index == null ? -1 : index.modified(pathName);
+			N5ContainerIndex.Entry entry = modified < 0 ? null : previousIndex.get(pathName, modified);
+			if (entry == null)
+				entry = classify(pathName, modified);
+			else
+				numGroupsFromIndex.incrementAndGet();
+
+			if (index != null && modified >= 0)
+				index.put(pathName, lastModified(entry, modified) < startMillis - MODIFICATION_TIME_RESOLUTION_MILLIS
+						? entry
+						: new N5ContainerIndex.Entry(-1, entry.isDataset, entry.children, entry.childrenModified));
+
+			if (entry.isDataset)
+			{
+				LOG.debug("Adding dataset {}", pathName);
+				datasets.add(pathName);
+				onDiscovered.accept(pathName);
+			}
+			else if (keepLooking.getAsBoolean() && !Thread.currentThread().isInterrupted())
+				for (final String group : entry.children)
+					submit(pathName + "/" + group);
+		}
+		catch (final IOException e)
+		{
+			LOG.debug(e.toString(), e);
+		}
+	}
+
+	/**
+	 * @return number of groups that were re-used from the index in the last {@link #discover()}
+	 */
+	int getNumGroupsFromIndex()
+	{
+		return numGroupsFromIndex.get();
+	}
+
+	private static long lastModified(final N5ContainerIndex.Entry entry, final long modified)
+	{
+		return entry.childrenModified == null
+				? modified
+				: Math.max(modified, LongStream.of(entry.childrenModified).max().orElse(modified));
+	}
+
+	private N5ContainerIndex.Entry classify(final String pathName, final long modified) throws IOException
+	{
+		if (N5Helpers.isPainteraDataset(n5, pathName) || n5.datasetExists(pathName))
+			return new N5ContainerIndex.Entry(modified, true);
+
+		/* based on attribute */
+		if (Optional.ofNullable(n5.getAttribute(pathName, N5Helpers.MULTI_SCALE_KEY, Boolean.class)).orElse(false))
+			return new N5ContainerIndex.Entry(modified, true);
+
+		/* based on group content (the old way) */
+		final String[] groups = n5.list(pathName);
+		// stamp before reading the attributes of the children
+		final long[] childrenModified = index == null ? null : index.childrenModified(pathName, groups);
+		boolean isMipmapGroup = groups.length > 0;
+		for (final String group : groups)
+		{
+			if (!(group.matches("^s[0-9]+$") && n5.datasetExists(pathName + "/" + group)))
+			{
+				isMipmapGroup = false;
+				break;
+			}
+		}
+		if (isMipmapGroup)
+		{
+			LOG.warn(
+					"Found multi-scale group without {} tag. Implicit multi-scale detection will be " +
+							"removed in the future. Please add \"{}\":{} to attributes.json in group `{}'.",
+					N5Helpers.MULTI_SCALE_KEY,
+					N5Helpers.MULTI_SCALE_KEY,
+					true,
+					pathName
+			        );
+		}
+		return new N5ContainerIndex.Entry(modified, isMipmapGroup, groups, childrenModified);
+	}
+
+}
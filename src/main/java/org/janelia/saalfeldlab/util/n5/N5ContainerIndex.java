@@ -0,0 +1,204 @@
+package org.janelia.saalfeldlab.util.n5;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.janelia.saalfeldlab.util.PainteraCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Result of {@link DatasetDiscovery} for all groups of a file system container, persisted in the {@link PainteraCache}.
+ * Each group is stamped with the modification time of its directory and its {@code attributes.json}: adding or
+ * removing children or changing attributes invalidates only the entry of that group. Groups with children are also
+ * stamped with the modification times of the {@code attributes.json} of their children, because they decide whether
+ * a group without {@link N5Helpers#MULTI_SCALE_KEY} is a multi-scale group.
+ */
+class N5ContainerIndex
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	private static final int VERSION = 2;
+
+	private static final String ATTRIBUTES_JSON = "attributes.json";
+
+	static class Entry
+	{
+
+		final long modified;
+
+		final boolean isDataset;
+
+		/**
+		 * Child groups, {@code null} for groups that are datasets by their own attributes.
+		 */
+		final String[] children;
+
+		/**
+		 * {@link #childrenModified(String, String[]) Modification times} of the attributes of {@link #children}.
+		 */
+		final long[] childrenModified;
+
+		Entry(final long modified, final boolean isDataset, final String[] children, final long[] childrenModified)
+		{
+			this.modified = modified;
+			this.isDataset = isDataset;
+			this.children = children;
+			this.childrenModified = childrenModified;
+		}
+
+		Entry(final long modified, final boolean isDataset)
+		{
+			this(modified, isDataset, null, null);
+		}
+	}
+
+	private final int version;
+
+	private final String container;
+
+	private final Map<String, Entry> entries;
+
+	N5ContainerIndex(final String container)
+	{
+		this.version = VERSION;
+		this.container = container;
+		this.entries = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * @return the index of {@code container} as it was last {@link #save() saved}, or an empty index
+	 */
+	static N5ContainerIndex load(final String container)
+	{
+		final Optional<N5ContainerIndex> index = PainteraCache
+				.read(N5ContainerIndex.class, cacheFileName(container))
+				.map(json -> {
+					try
+					{
+						return new Gson().fromJson(json, N5ContainerIndex.class);
+					}
+					catch (final JsonParseException e)
+					{
+						LOG.debug("Ignoring invalid container index for {}", container, e);
+						return null;
+					}
+				})
+				.filter(i -> i.version == VERSION && container.equals(i.container) && i.entries != null);
+		LOG.debug("Loaded container index for {} with {} groups", container, index.map(i -> i.entries.size()).orElse(0));
+		return index.map(i -> {
+			final N5ContainerIndex copy = new N5ContainerIndex(container);
+			copy.entries.putAll(i.entries);
+			return copy;
+		}).orElseGet(() -> new N5ContainerIndex(container));
+	}
+
+	void save()
+	{
+		PainteraCache.write(N5ContainerIndex.class, cacheFileName(container), new Gson().toJson(this));
+		LOG.debug("Saved container index for {} with {} groups", container, entries.size());
+	}
+
+	String getContainer()
+	{
+		return container;
+	}
+
+	/**
+	 * @return entry of {@code group} if it was indexed with modification time {@code modified} and the attributes of
+	 * its children did not change since, {@code null} otherwise
+	 */
+	Entry get(final String group, final long modified)
+	{
+		final Entry entry = entries.get(group);
+		if (entry == null || entry.modified != modified)
+			return null;
+		if (entry.children != null && !Arrays.equals(entry.childrenModified, childrenModified(group, entry.children)))
+			return null;
+		return entry;
+	}
+
+	void put(final String group, final Entry entry)
+	{
+		entries.put(group, entry);
+	}
+
+	List<String> getDatasets()
+	{
+		return entries
+				.entrySet()
+				.stream()
+				.filter(e -> e.getValue().isDataset)
+				.map(Map.Entry::getKey)
+				.sorted()
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * @return latest modification time of the directory of {@code group} and its {@code attributes.json}, or
+	 * {@code -1} if {@code group} does not exist
+	 */
+	long modified(final String group)
+	{
+		final Path directory = Paths.get(container, group);
+		try
+		{
+			final long directoryModified = Files.getLastModifiedTime(directory).toMillis();
+			try
+			{
+				return Math.max(directoryModified, Files.getLastModifiedTime(directory.resolve(ATTRIBUTES_JSON)).toMillis());
+			}
+			catch (final NoSuchFileException e)
+			{
+				return directoryModified;
+			}
+		}
+		catch (final IOException e)
+		{
+			return -1;
+		}
+	}
+
+	/**
+	 * @return modification time of the {@code attributes.json} of each of {@code children} of {@code group}, {@code -1}
+	 * for children without attributes
+	 */
+	long[] childrenModified(final String group, final String[] children)
+	{
+		final Path directory = Paths.get(container, group);
+		final long[] modified = new long[children.length];
+		for (int i = 0; i < children.length; ++i)
+		{
+			try
+			{
+				modified[i] = Files.getLastModifiedTime(directory.resolve(children[i]).resolve(ATTRIBUTES_JSON)).toMillis();
+			}
+			catch (final IOException e)
+			{
+				modified[i] = -1;
+			}
+		}
+		return modified;
+	}
+
+	private static String cacheFileName(final String container)
+	{
+		return UUID.nameUUIDFromBytes(container.getBytes(StandardCharsets.UTF_8)) + ".json";
+	}
+
+}
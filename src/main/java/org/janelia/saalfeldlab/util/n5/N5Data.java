@@ -9,12 +9,13 @@ import net.imglib2.RandomAccessible;
 import net.imglib2.Volatile;
 import net.imglib2.cache.Cache;
 import net.imglib2.cache.img.CachedCellImg;
-import net.imglib2.cache.ref.SoftRefLoaderCache;
+import net.imglib2.cache.img.LoadedCellCacheLoader;
 import net.imglib2.cache.volatiles.CacheHints;
 import net.imglib2.cache.volatiles.LoadingStrategy;
 import net.imglib2.cache.volatiles.UncheckedVolatileCache;
 import net.imglib2.img.NativeImg;
 import net.imglib2.img.basictypeaccess.AccessFlags;
+import net.imglib2.img.basictypeaccess.ArrayDataAccessFactory;
 import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
 import net.imglib2.img.cell.Cell;
 import net.imglib2.img.cell.CellGrid;
@@ -34,8 +35,10 @@ import org.janelia.saalfeldlab.n5.DatasetAttributes;
 import org.janelia.saalfeldlab.n5.GzipCompression;
 import org.janelia.saalfeldlab.n5.N5FSWriter;
 import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.imglib2.N5CellLoader;
 import org.janelia.saalfeldlab.n5.imglib2.N5LabelMultisetCacheLoader;
 import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.janelia.saalfeldlab.paintera.cache.GlobalBlockCache;
 import org.janelia.saalfeldlab.paintera.cache.WeakRefVolatileCache;
 import org.janelia.saalfeldlab.paintera.data.DataSource;
 import org.janelia.saalfeldlab.paintera.data.n5.N5DataSource;
@@ -44,6 +47,7 @@ import org.janelia.saalfeldlab.paintera.data.n5.ReflectionException;
 import org.janelia.saalfeldlab.paintera.ui.opendialog.VolatileHelpers;
 import org.janelia.saalfeldlab.util.NamedThreadFactory;
 import org.janelia.saalfeldlab.util.TmpVolatileHelpers;
+import org.janelia.saalfeldlab.util.grids.LabelBlockLookupSharded;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -55,6 +59,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -64,6 +69,17 @@ public class N5Data {
 
 	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+	/**
+	 * Weight of raw (and scalar label) blocks in the {@link GlobalBlockCache}.
+	 */
+	private static final double RAW_BLOCK_CACHE_WEIGHT = 1.0;
+
+	/**
+	 * Weight of label multiset blocks in the {@link GlobalBlockCache}: They are more expensive to load than raw blocks
+	 * of the same size, and are read for selection, painting and meshing, so they are kept about twice as long.
+	 */
+	private static final double LABEL_MULTISET_BLOCK_CACHE_WEIGHT = 0.5;
+
 	/**
 	 *
 	 * @param reader container
@@ -261,7 +277,20 @@ public class N5Data {
 			final int priority /* TODO use priority, probably in wrapAsVolatile? */) throws IOException {
 
 		try {
-			final CachedCellImg<T, ?> raw = N5Utils.openVolatile(reader, dataset);
+			final DatasetAttributes attributes = reader.getDatasetAttributes(dataset);
+			final CellGrid grid = new CellGrid(attributes.getDimensions(), attributes.getBlockSize());
+			final T type = N5Utils.type(attributes.getDataType());
+			final Set<AccessFlags> accessFlags = AccessFlags.setOf(AccessFlags.VOLATILE);
+			final LoadedCellCacheLoader<T, A> loader = LoadedCellCacheLoader.get(
+					grid,
+					new N5CellLoader<>(reader, dataset, attributes.getBlockSize()),
+					type,
+					accessFlags);
+			final Cache<Long, Cell<A>> cache = GlobalBlockCache
+					.global()
+					.<Long, Cell<A>>createCache(dataset, RAW_BLOCK_CACHE_WEIGHT)
+					.withLoader(loader);
+			final CachedCellImg<T, A> raw = new CachedCellImg<>(grid, type, cache, ArrayDataAccessFactory.get(type, accessFlags));
 			final TmpVolatileHelpers.RaiWithInvalidate<V> vraw = TmpVolatileHelpers.createVolatileCachedCellImgWithInvalidate(
 					(CachedCellImg) raw,
 					queue,
@@ -471,8 +500,10 @@ public class N5Data {
 				reader,
 				dataset,
 				N5LabelMultisetCacheLoader.constantNullReplacement(Label.BACKGROUND));
-		// TODO make cache a parameter?
-		final Cache<Long, Cell<VolatileLabelMultisetArray>> cache = new SoftRefLoaderCache<Long, Cell<VolatileLabelMultisetArray>>().withLoader(loader);
+		final Cache<Long, Cell<VolatileLabelMultisetArray>> cache = GlobalBlockCache
+				.global()
+				.<Long, Cell<VolatileLabelMultisetArray>>createCache(dataset, LABEL_MULTISET_BLOCK_CACHE_WEIGHT)
+				.withLoader(loader);
 		final CachedCellImg<LabelMultisetType, VolatileLabelMultisetArray> cachedImg = new CachedCellImg<>(
 				new CellGrid(attrs.getDimensions(), attrs.getBlockSize()),
 				new LabelMultisetType().getEntitiesPerPixel(),
@@ -695,6 +726,39 @@ public class N5Data {
 			final int[] maxNumEntries,
 			final boolean ignoreExisiting) throws IOException
 	{
+		createEmptyLabelDataset(container, group, dimensions, blockSize, resolution, offset, relativeScaleFactors, maxNumEntries, ignoreExisiting, false);
+	}
+
+	/**
+	 *
+	 * @param container container
+	 * @param group target group in {@code container}
+	 * @param dimensions size
+	 * @param blockSize chunk size
+	 * @param resolution voxel size
+	 * @param offset in world coordinates
+	 * @param relativeScaleFactors relative scale factors for multi-scale data, e.g.
+	 * {@code [2,2,1], [2,2,2]} will result in absolute factors {@code [1,1,1], [2,2,1], [4,4,2]}.
+	 * @param maxNumEntries limit number of entries in each {@link LabelMultiset} (set to less than or equal to zero for unbounded)
+	 * @param ignoreExisiting overwrite any existing data set
+	 * @param useShardedLabelBlockLookup store the label block lookup in the compact {@link LabelBlockLookupSharded}
+	 * format instead of the default {@code label-to-block-mapping}. The sharded format can only be read by Paintera
+	 * versions that support it.
+	 * @throws IOException if any n5 operation throws {@link IOException} or {@code group}
+	 * already exists and {@code ignorExisting} is {@code false}
+	 */
+	public static void createEmptyLabelDataset(
+			final String container,
+			final String group,
+			final long[] dimensions,
+			final int[] blockSize,
+			final double[] resolution,
+			final double[] offset,
+			final double[][] relativeScaleFactors,
+			final int[] maxNumEntries,
+			final boolean ignoreExisiting,
+			final boolean useShardedLabelBlockLookup) throws IOException
+	{
 
 		//		{"painteraData":{"type":"label"},
 		// "maxId":191985,
@@ -769,5 +833,8 @@ public class N5Data {
 				Arrays.setAll(accumulatedFactors, dim -> accumulatedFactors[dim] * scaleFactors[dim]);
 			}
 		}
+
+		if (useShardedLabelBlockLookup)
+			LabelBlockLookupSharded.create(n5, group, LabelBlockLookupSharded.DEFAULT_IDS_PER_SHARD);
 	}
 }
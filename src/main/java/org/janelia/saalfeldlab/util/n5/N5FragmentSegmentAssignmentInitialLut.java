@@ -10,7 +10,6 @@ import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.IntegerType;
 import net.imglib2.type.numeric.integer.UnsignedLongType;
 import net.imglib2.view.Views;
-import org.janelia.saalfeldlab.n5.DataType;
 import org.janelia.saalfeldlab.n5.N5Reader;
 import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
 import org.janelia.saalfeldlab.paintera.data.n5.N5Meta;
@@ -41,20 +40,19 @@ public class N5FragmentSegmentAssignmentInitialLut implements Supplier<TLongLong
 		return this.meta;
 	}
 
+	/**
+	 * Read the base lookup table in parallel and replay the log of changes on top of it, see
+	 * {@link N5FragmentSegmentAssignmentLog}.
+	 */
 	@Override
 	public TLongLongMap get() {
 		try {
-			RandomAccessibleInterval<UnsignedLongType> data = openDatasetSafe(meta.reader(), meta.dataset());
-			final long[] keys = new long[(int) data.dimension(0)];
-			final long[] values = new long[keys.length];
-			LOG.debug("Found {} assignments", keys.length);
-			final Cursor<UnsignedLongType> keyCursor = Views.flatIterable(Views.hyperSlice(data, 1, 0L)).cursor();
-			final Cursor<UnsignedLongType> valueCursor = Views.flatIterable(Views.hyperSlice(data, 1, 1L)).cursor();
-			for (int i = 0; i < keys.length; ++i) {
-				keys[i] = keyCursor.next().getIntegerLong();
-				values[i] = valueCursor.next().getIntegerLong();
-			}
-			return new TLongLongHashMap(keys, values);
+			final N5Reader reader = meta.reader();
+			final TLongLongMap base = N5FragmentSegmentAssignmentLog.readBase(reader, meta.dataset());
+			final TLongLongMap lut = base == null ? readConverted(reader, meta.dataset()) : base;
+			N5FragmentSegmentAssignmentLog.replayLog(reader, meta.dataset(), lut);
+			LOG.debug("Found {} assignments", lut.size());
+			return lut;
 		} catch (IOException e) {
 			LOG.debug("Exception while trying to return initial lut from N5", e);
 			LOG.info("Unable to read initial lut from {} -- returning empty map", meta);
@@ -62,13 +60,17 @@ public class N5FragmentSegmentAssignmentInitialLut implements Supplier<TLongLong
 		}
 	}
 
-	private static RandomAccessibleInterval<UnsignedLongType> openDatasetSafe(
-			final N5Reader reader,
-			final String dataset
-	) throws IOException {
-		return DataType.UINT64.equals(reader.getDatasetAttributes(dataset).getDataType())
-				? N5Utils.open(reader, dataset)
-				: openAnyIntegerTypeAsUnsignedLongType(reader, dataset);
+	private static TLongLongMap readConverted(final N5Reader reader, final String dataset) throws IOException {
+		final RandomAccessibleInterval<UnsignedLongType> data = openAnyIntegerTypeAsUnsignedLongType(reader, dataset);
+		final long[] keys = new long[(int) data.dimension(0)];
+		final long[] values = new long[keys.length];
+		final Cursor<UnsignedLongType> keyCursor = Views.flatIterable(Views.hyperSlice(data, 1, 0L)).cursor();
+		final Cursor<UnsignedLongType> valueCursor = Views.flatIterable(Views.hyperSlice(data, 1, 1L)).cursor();
+		for (int i = 0; i < keys.length; ++i) {
+			keys[i] = keyCursor.next().getIntegerLong();
+			values[i] = valueCursor.next().getIntegerLong();
+		}
+		return new TLongLongHashMap(keys, values);
 	}
 
 	private static <T extends IntegerType<T> & NativeType<T>> RandomAccessibleInterval<UnsignedLongType> openAnyIntegerTypeAsUnsignedLongType(
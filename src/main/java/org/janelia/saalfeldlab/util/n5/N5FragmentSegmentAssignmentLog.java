@@ -0,0 +1,372 @@
+package org.janelia.saalfeldlab.util.n5;
+
+import gnu.trove.iterator.TLongLongIterator;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TLongLongMap;
+import gnu.trove.map.hash.TLongLongHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.LongArrayDataBlock;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.hdf5.N5HDF5Reader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Storage layout of the fragment-segment assignment in N5: a sorted base lookup table and an append-only log of the
+ * assignments that changed since the base was written.
+ *
+ * The base is stored in {@code <dataset>} as a {@code [n, 2]} dataset of keys (column 0) and values (column 1), sorted
+ * by key and chunked into blocks of {@link #BASE_BLOCK_SIZE} entries so that it can be read in parallel. Lookup tables
+ * that were written as a single block by previous versions are read the same way.
+ *
+ * The log is stored in {@code <dataset>-log}, sharded by fragment id: all fragments {@code id} with the same
+ * {@code id >>> }{@link #SHARD_BITS} are appended to the same shard dataset. Each append adds blocks of up to
+ * {@link #LOG_BLOCK_SIZE} entries at the end of the shard and then increments the {@value #NUM_BLOCKS_KEY} attribute,
+ * so that readers never see a partially written append. Entries of a shard are applied in order, a fragment that is
+ * mapped onto itself is not assigned to any segment.
+ *
+ * {@link #compact(N5Writer, String, TLongLongMap) Compaction} first writes the new base into
+ * {@code <dataset>}{@value #COMPACTION_SUFFIX} and marks it {@value #COMPLETE_KEY}. While a complete compaction
+ * dataset exists, it replaces {@code <dataset>} as the base, so a compaction that is interrupted while it overwrites
+ * {@code <dataset>} or removes the log does not lose any assignments. Replaying the log on top of a base that already
+ * contains it does not change the result.
+ *
+ * Blocks and shards are read and written in parallel, except for HDF5 containers, which must not be accessed
+ * concurrently.
+ */
+public class N5FragmentSegmentAssignmentLog {
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	public static final String LOG_SUFFIX = "-log";
+
+	public static final String NUM_BLOCKS_KEY = "numBlocks";
+
+	public static final String NUM_ENTRIES_KEY = "numEntries";
+
+	public static final String COMPACTION_SUFFIX = "-compacting";
+
+	public static final String COMPLETE_KEY = "complete";
+
+	public static final int BASE_BLOCK_SIZE = 1 << 20;
+
+	public static final int LOG_BLOCK_SIZE = 1 << 16;
+
+	public static final int SHARD_BITS = 24;
+
+	private N5FragmentSegmentAssignmentLog() {
+	}
+
+	public static String logGroup(final String dataset) {
+		return dataset + LOG_SUFFIX;
+	}
+
+	public static String compactionDataset(final String dataset) {
+		return dataset + COMPACTION_SUFFIX;
+	}
+
+	/**
+	 * @return the complete {@link #compactionDataset(String) compaction dataset} if a compaction was interrupted,
+	 * {@code dataset} otherwise
+	 */
+	private static String baseDataset(final N5Reader reader, final String dataset) throws IOException {
+		final String compaction = compactionDataset(dataset);
+		return reader.datasetExists(compaction) && Boolean.TRUE.equals(reader.getAttribute(compaction, COMPLETE_KEY, Boolean.class))
+				? compaction
+				: dataset;
+	}
+
+	/**
+	 * Read the base lookup table block-wise, in parallel unless {@code reader} is an HDF5 container. The {@link #replayLog(N5Reader, String, TLongLongMap) log}
+	 * needs to be replayed on top of it.
+	 *
+	 * @return the base lookup table, or {@code null} if it is not stored as {@link DataType#UINT64} or
+	 * {@link DataType#INT64} and needs to be converted
+	 */
+	public static TLongLongMap readBase(final N5Reader reader, final String dataset) throws IOException {
+		final String base = baseDataset(reader, dataset);
+		if (!reader.datasetExists(base))
+			return new TLongLongHashMap();
+		final DatasetAttributes attributes = reader.getDatasetAttributes(base);
+		if (!DataType.UINT64.equals(attributes.getDataType()) && !DataType.INT64.equals(attributes.getDataType()))
+			return null;
+		final long size = attributes.getDimensions()[0];
+		final List<long[][]> blocks = readBlocks(reader, base, attributes);
+		final TLongLongHashMap lut = new TLongLongHashMap((int) Math.min(size, Integer.MAX_VALUE - 8));
+		for (final long[][] block : blocks)
+			for (int k = 0; k < block[0].length; ++k)
+				lut.put(block[0][k], block[1][k]);
+		return lut;
+	}
+
+	/**
+	 * @return keys and values of each block of the base lookup table {@code dataset}
+	 */
+	private static List<long[][]> readBlocks(final N5Reader reader, final String dataset, final DatasetAttributes attributes) throws IOException {
+		final long size = attributes.getDimensions()[0];
+		final int blockSize = attributes.getBlockSize()[0];
+		final int numBlocks = (int) ((size + blockSize - 1) / blockSize);
+		LOG.debug("Reading {} assignments in {} blocks from {}", size, numBlocks, dataset);
+		return parallel(reader, numBlocks, i -> new long[][] {
+				readLongs(reader, dataset, attributes, i, 0),
+				readLongs(reader, dataset, attributes, i, 1)});
+	}
+
+	/**
+	 * Apply all shards of the log to {@code lut}. The shards are read in parallel unless {@code reader} is an HDF5
+	 * container.
+	 */
+	public static void replayLog(final N5Reader reader, final String dataset, final TLongLongMap lut) throws IOException {
+		final String logGroup = logGroup(dataset);
+		if (!reader.exists(logGroup))
+			return;
+		final String[] shards = reader.list(logGroup);
+		LOG.debug("Replaying {} log shards from {}", shards.length, logGroup);
+		final List<TLongLongMap> shardLuts = parallel(reader, shards.length, i -> readShard(reader, logGroup + "/" + shards[i]));
+		for (final TLongLongMap shardLut : shardLuts) {
+			final TLongLongIterator it = shardLut.iterator();
+			while (it.hasNext()) {
+				it.advance();
+				if (it.key() == it.value())
+					lut.remove(it.key());
+				else
+					lut.put(it.key(), it.value());
+			}
+		}
+	}
+
+	private static TLongLongMap readShard(final N5Reader reader, final String shard) throws IOException {
+		final DatasetAttributes attributes = reader.getDatasetAttributes(shard);
+		final int numBlocks = numBlocks(reader, shard);
+		final TLongLongMap shardLut = new TLongLongHashMap();
+		for (int i = 0; i < numBlocks; ++i) {
+			final long[] keys = readLongs(reader, shard, attributes, i, 0);
+			final long[] values = readLongs(reader, shard, attributes, i, 1);
+			for (int k = 0; k < keys.length; ++k)
+				shardLut.put(keys[k], values[k]);
+		}
+		return shardLut;
+	}
+
+	/**
+	 * Append the {@code keys} and {@code values} to the shards of their keys.
+	 *
+	 * @return number of appended entries
+	 */
+	public static long append(final N5Writer writer, final String dataset, final long[] keys, final long[] values) throws IOException {
+		if (keys.length == 0)
+			return 0;
+		final String logGroup = logGroup(dataset);
+		final TLongObjectHashMap<TIntArrayList> indicesByShard = new TLongObjectHashMap<>();
+		for (int i = 0; i < keys.length; ++i) {
+			final long shard = keys[i] >>> SHARD_BITS;
+			TIntArrayList indices = indicesByShard.get(shard);
+			if (indices == null) {
+				indices = new TIntArrayList();
+				indicesByShard.put(shard, indices);
+			}
+			indices.add(i);
+		}
+		final long[] shards = indicesByShard.keys();
+		LOG.debug("Appending {} assignments to {} shards in {}", keys.length, shards.length, logGroup);
+		writer.createGroup(logGroup);
+		parallel(writer, shards.length, i -> {
+			final TIntArrayList indices = indicesByShard.get(shards[i]);
+			final long[] shardKeys = new long[indices.size()];
+			final long[] shardValues = new long[indices.size()];
+			for (int k = 0; k < shardKeys.length; ++k) {
+				shardKeys[k] = keys[indices.get(k)];
+				shardValues[k] = values[indices.get(k)];
+			}
+			appendToShard(writer, logGroup + "/" + shards[i], shardKeys, shardValues);
+			return null;
+		});
+		return keys.length;
+	}
+
+	private static void appendToShard(final N5Writer writer, final String shard, final long[] keys, final long[] values) throws IOException {
+		final DatasetAttributes attributes = logAttributes(1);
+		if (!writer.datasetExists(shard)) {
+			writer.createDataset(shard, attributes);
+			writer.setAttribute(shard, NUM_BLOCKS_KEY, 0);
+			writer.setAttribute(shard, NUM_ENTRIES_KEY, 0L);
+		}
+		final int numBlocks = numBlocks(writer, shard);
+		final Long numEntries = writer.getAttribute(shard, NUM_ENTRIES_KEY, Long.class);
+		int blockIndex = numBlocks;
+		for (int start = 0; start < keys.length; start += LOG_BLOCK_SIZE, ++blockIndex) {
+			final int stop = Math.min(start + LOG_BLOCK_SIZE, keys.length);
+			writeLongs(writer, shard, attributes, Arrays.copyOfRange(keys, start, stop), blockIndex, 0);
+			writeLongs(writer, shard, attributes, Arrays.copyOfRange(values, start, stop), blockIndex, 1);
+		}
+		// commit the append only after all blocks were written
+		final Map<String, Object> commit = new HashMap<>();
+		commit.put("dimensions", logAttributes(blockIndex).getDimensions());
+		commit.put(NUM_BLOCKS_KEY, blockIndex);
+		commit.put(NUM_ENTRIES_KEY, (numEntries == null ? 0 : numEntries) + keys.length);
+		writer.setAttributes(shard, commit);
+	}
+
+	/**
+	 * @return number of entries in the log, {@code 0} if there is no log
+	 */
+	public static long numLogEntries(final N5Reader reader, final String dataset) throws IOException {
+		final String logGroup = logGroup(dataset);
+		if (!reader.exists(logGroup))
+			return 0;
+		long numEntries = 0;
+		for (final String shard : reader.list(logGroup)) {
+			final Long shardEntries = reader.getAttribute(logGroup + "/" + shard, NUM_ENTRIES_KEY, Long.class);
+			numEntries += shardEntries == null ? 0 : shardEntries;
+		}
+		return numEntries;
+	}
+
+	/**
+	 * @return number of entries in the base lookup table, {@code 0} if there is none
+	 */
+	public static long baseSize(final N5Reader reader, final String dataset) throws IOException {
+		final String base = baseDataset(reader, dataset);
+		return reader.datasetExists(base) ? reader.getDatasetAttributes(base).getDimensions()[0] : 0;
+	}
+
+	/**
+	 * Write {@code lut} into a new, sorted base lookup table and remove the log. Fragments that are mapped onto
+	 * themselves are not written. The new base is written into the {@link #compactionDataset(String) compaction
+	 * dataset} first, and {@code dataset} is overwritten only after that is complete.
+	 */
+	public static void compact(final N5Writer writer, final String dataset, final TLongLongMap lut) throws IOException {
+		final String compaction = compactionDataset(dataset);
+		finishInterruptedCompaction(writer, dataset);
+
+		final long[][] sorted = sortedWithoutIdentities(lut);
+		LOG.debug("Compacting {} assignments into {}", sorted[0].length, dataset);
+		writeBase(writer, compaction, sorted);
+		writer.setAttribute(compaction, COMPLETE_KEY, true);
+
+		writeBase(writer, dataset, sorted);
+		// the base reflects the log now
+		final String logGroup = logGroup(dataset);
+		if (writer.exists(logGroup))
+			writer.remove(logGroup);
+		writer.remove(compaction);
+	}
+
+	/**
+	 * Copy the complete compaction dataset of an interrupted compaction into {@code dataset}, or remove an incomplete
+	 * one. The log is kept: it may have been appended to after the interruption, and replaying entries that are in the
+	 * base already does not change the result.
+	 */
+	private static void finishInterruptedCompaction(final N5Writer writer, final String dataset) throws IOException {
+		final String compaction = compactionDataset(dataset);
+		if (!writer.exists(compaction))
+			return;
+		if (baseDataset(writer, dataset).equals(compaction)) {
+			LOG.info("Finishing interrupted compaction of {}", dataset);
+			final List<long[][]> blocks = readBlocks(writer, compaction, writer.getDatasetAttributes(compaction));
+			final long[][] sorted = {
+					blocks.stream().flatMapToLong(block -> Arrays.stream(block[0])).toArray(),
+					blocks.stream().flatMapToLong(block -> Arrays.stream(block[1])).toArray()};
+			writeBase(writer, dataset, sorted);
+		}
+		writer.remove(compaction);
+	}
+
+	private static void writeBase(final N5Writer writer, final String dataset, final long[][] sorted) throws IOException {
+		final int size = sorted[0].length;
+		final DatasetAttributes attributes = new DatasetAttributes(
+				new long[] {size, 2},
+				new int[] {Math.max(Math.min(size, BASE_BLOCK_SIZE), 1), 1},
+				DataType.UINT64,
+				new GzipCompression());
+		writer.createDataset(dataset, attributes);
+		final int numBlocks = (size + BASE_BLOCK_SIZE - 1) / BASE_BLOCK_SIZE;
+		parallel(writer, numBlocks, i -> {
+			final int start = i * BASE_BLOCK_SIZE;
+			final int stop = Math.min(start + BASE_BLOCK_SIZE, size);
+			writeLongs(writer, dataset, attributes, Arrays.copyOfRange(sorted[0], start, stop), i, 0);
+			writeLongs(writer, dataset, attributes, Arrays.copyOfRange(sorted[1], start, stop), i, 1);
+			return null;
+		});
+	}
+
+	private static long[][] sortedWithoutIdentities(final TLongLongMap lut) {
+		final long[] keys = Arrays.stream(lut.keys()).filter(key -> lut.get(key) != key).toArray();
+		Arrays.parallelSort(keys);
+		final long[] values = new long[keys.length];
+		Arrays.setAll(values, i -> lut.get(keys[i]));
+		return new long[][] {keys, values};
+	}
+
+	private static DatasetAttributes logAttributes(final int numBlocks) {
+		return new DatasetAttributes(
+				new long[] {(long) numBlocks * LOG_BLOCK_SIZE, 2},
+				new int[] {LOG_BLOCK_SIZE, 1},
+				DataType.UINT64,
+				new GzipCompression());
+	}
+
+	private static int numBlocks(final N5Reader reader, final String shard) throws IOException {
+		final Integer numBlocks = reader.getAttribute(shard, NUM_BLOCKS_KEY, Integer.class);
+		return numBlocks == null ? 0 : numBlocks;
+	}
+
+	private static long[] readLongs(
+			final N5Reader reader,
+			final String dataset,
+			final DatasetAttributes attributes,
+			final long... gridPosition) throws IOException {
+		final DataBlock<?> block = reader.readBlock(dataset, attributes, gridPosition);
+		return block == null ? new long[0] : (long[]) block.getData();
+	}
+
+	private static void writeLongs(
+			final N5Writer writer,
+			final String dataset,
+			final DatasetAttributes attributes,
+			final long[] data,
+			final long... gridPosition) throws IOException {
+		writer.writeBlock(dataset, attributes, new LongArrayDataBlock(new int[] {data.length, 1}, gridPosition, data));
+	}
+
+	private interface IOFunction<T> {
+		T apply(int index) throws IOException;
+	}
+
+	/**
+	 * Run {@code function} for all indices in {@code [0, n)} and collect the results in order. Indices are processed in
+	 * parallel unless {@code n5} is an HDF5 container.
+	 */
+	private static <T> List<T> parallel(final N5Reader n5, final int n, final IOFunction<T> function) throws IOException {
+		final IntStream indices = IntStream.range(0, n);
+		try {
+			return (n5 instanceof N5HDF5Reader ? indices : indices.parallel())
+					.mapToObj(i -> {
+						try {
+							return function.apply(i);
+						} catch (final IOException e) {
+							throw new UncheckedIOException(e);
+						}
+					})
+					.collect(Collectors.toList());
+		} catch (final UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+}
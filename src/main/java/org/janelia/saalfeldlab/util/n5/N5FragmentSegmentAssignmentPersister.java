@@ -1,10 +1,7 @@
 package org.janelia.saalfeldlab.util.n5;
 
-import org.janelia.saalfeldlab.n5.DataBlock;
-import org.janelia.saalfeldlab.n5.DataType;
-import org.janelia.saalfeldlab.n5.DatasetAttributes;
-import org.janelia.saalfeldlab.n5.GzipCompression;
-import org.janelia.saalfeldlab.n5.LongArrayDataBlock;
+import gnu.trove.map.TLongLongMap;
+import gnu.trove.map.hash.TLongLongHashMap;
 import org.janelia.saalfeldlab.n5.N5Writer;
 import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignmentOnlyLocal;
 import org.janelia.saalfeldlab.paintera.control.assignment.UnableToPersist;
@@ -13,14 +10,25 @@ import org.slf4j.LoggerFactory;
 
 import java.lang.invoke.MethodHandles;
 
+/**
+ * Persist the fragment-segment assignment incrementally: changed assignments are appended to a sharded log that is
+ * periodically compacted into a sorted base lookup table, see {@link N5FragmentSegmentAssignmentLog}.
+ */
 public class N5FragmentSegmentAssignmentPersister implements FragmentSegmentAssignmentOnlyLocal.Persister {
 
 	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+	private static final long MIN_LOG_ENTRIES_FOR_COMPACTION = 1 << 20;
+
 	private final N5Writer writer;
 
 	private final String dataset;
 
+	/**
+	 * Number of entries in the log, {@code -1} if unknown.
+	 */
+	private long numLogEntries = -1;
+
 	public N5FragmentSegmentAssignmentPersister(N5Writer writer, String dataset) {
 		this.writer = writer;
 		this.dataset = dataset;
@@ -35,40 +43,47 @@ public class N5FragmentSegmentAssignmentPersister implements FragmentSegmentAssi
 		return this.dataset;
 	}
 
+	/**
+	 * Write the complete lookup table into a new base and remove the log.
+	 */
 	@Override
 	public void persist(long[] keys, long[] values) throws UnableToPersist {
 		try
 		{
-
 			LOG.debug("Persisting fragment-segment-lookup: {} {}", keys, values);
+			N5FragmentSegmentAssignmentLog.compact(writer, dataset, new TLongLongHashMap(keys, values));
+			numLogEntries = 0;
+		} catch (final Exception e)
+		{
+			throw new UnableToPersist(e);
+		}
+	}
+
+	/**
+	 * Append the changed assignments to the log. Once the log holds more than a quarter of the entries of the base (and
+	 * at least {@link #MIN_LOG_ENTRIES_FOR_COMPACTION}), {@code lut} is compacted into a new base instead.
+	 */
+	@Override
+	public void persist(final TLongLongMap lut, final long[] changedKeys, final long[] changedValues) throws UnableToPersist {
+		try
+		{
+			LOG.debug("Persisting {} changed assignments to {}", changedKeys.length, dataset);
+			if (numLogEntries < 0)
+				numLogEntries = N5FragmentSegmentAssignmentLog.numLogEntries(writer, dataset);
 
-			final DatasetAttributes attrs = new DatasetAttributes(
-					new long[] {keys.length, 2},
-					new int[] {Math.max(keys.length, 1), 1},
-					DataType.UINT64,
-					new GzipCompression()
-			);
-			writer.createDataset(dataset, attrs);
+			// append before compaction: the log must not contain anything that is older than the base
+			numLogEntries += N5FragmentSegmentAssignmentLog.append(writer, dataset, changedKeys, changedValues);
 
-			if (keys.length == 0)
+			final long baseSize = N5FragmentSegmentAssignmentLog.baseSize(writer, dataset);
+			if (numLogEntries > Math.max(MIN_LOG_ENTRIES_FOR_COMPACTION, baseSize / 4))
 			{
-				LOG.debug("Zero-length-lookup: Will not write any data.");
+				LOG.debug("Compacting {} log entries into base of size {}", numLogEntries, baseSize);
+				N5FragmentSegmentAssignmentLog.compact(writer, dataset, lut);
+				numLogEntries = 0;
 			}
-
-			final DataBlock<long[]> keyBlock = new LongArrayDataBlock(
-					new int[] {keys.length, 1},
-					new long[] {0, 0},
-					keys
-			);
-			final DataBlock<long[]> valueBlock = new LongArrayDataBlock(
-					new int[] {values.length, 1},
-					new long[] {0, 1},
-					values
-			);
-			writer.writeBlock(dataset, attrs, keyBlock);
-			writer.writeBlock(dataset, attrs, valueBlock);
 		} catch (final Exception e)
 		{
+			numLogEntries = -1;
 			throw new UnableToPersist(e);
 		}
 	}
@@ -27,7 +27,7 @@ import org.janelia.saalfeldlab.paintera.data.n5.ReflectionException;
 import org.janelia.saalfeldlab.paintera.exception.PainteraException;
 import org.janelia.saalfeldlab.paintera.id.IdService;
 import org.janelia.saalfeldlab.paintera.id.N5IdService;
-import org.janelia.saalfeldlab.util.NamedThreadFactory;
+import org.janelia.saalfeldlab.util.grids.LabelBlockLookupSharded;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,17 +36,16 @@ import java.lang.invoke.MethodHandles;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.function.BiFunction;
 import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 import java.util.function.LongSupplier;
 import java.util.function.Supplier;
 import java.util.regex.Pattern;
@@ -78,6 +77,14 @@ public class N5Helpers
 
 	public static final String LABEL_TO_BLOCK_MAPPING = "label-to-block-mapping";
 
+	private static final int DISCOVERY_PARALLELISM = 12;
+
+	private static final ForkJoinPool.ForkJoinWorkerThreadFactory DISCOVERY_THREAD_FACTORY = pool -> {
+		final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+		thread.setName("dataset-discovery-" + thread.getPoolIndex());
+		return thread;
+	};
+
 	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
 	/**
@@ -304,13 +311,38 @@ public class N5Helpers
 			final N5Reader n5,
 			final BooleanSupplier keepLooking)
 	{
-		final ExecutorService es = Executors.newFixedThreadPool(
-				n5 instanceof N5HDF5Reader ? 1 : 12,
-				new NamedThreadFactory("dataset-discovery-%d", true));
-		final List<String> datasets = discoverDatasets(n5, keepLooking, es);
-		LOG.debug("Shutting down discovery ExecutorService.");
-		es.shutdownNow();
-		return datasets;
+		return discoverDatasets(n5, keepLooking, dataset -> {});
+	}
+
+	/**
+	 * Find all datasets inside an n5 container, see {@link #discoverDatasets(N5Reader, BooleanSupplier)}.
+	 * Groups are crawled on a work-stealing pool. For file system containers, groups that did not change since the
+	 * last discovery are looked up in a persistent index instead of being read again (see {@link #getCachedDatasets(N5Reader)}).
+	 *
+	 * @param n5 container
+	 * @param keepLooking discover datasets while while {@code keepLooking.get() == true}
+	 * @param onDiscovered called for each dataset as soon as it is found, from the discovery threads
+	 * @return List of all contained datasets (paths wrt to the root of the container)
+	 */
+	public static List<String> discoverDatasets(
+			final N5Reader n5,
+			final BooleanSupplier keepLooking,
+			final Consumer<String> onDiscovered)
+	{
+		final ForkJoinPool pool = new ForkJoinPool(
+				n5 instanceof N5HDF5Reader ? 1 : DISCOVERY_PARALLELISM,
+				DISCOVERY_THREAD_FACTORY,
+				null,
+				true);
+		try
+		{
+			return new DatasetDiscovery(n5, keepLooking, pool, onDiscovered, getContainerIndex(n5).orElse(null)).discover();
+		}
+		finally
+		{
+			LOG.debug("Shutting down discovery ExecutorService.");
+			pool.shutdownNow();
+		}
 	}
 
 	/**
@@ -329,131 +361,34 @@ public class N5Helpers
 			final BooleanSupplier keepLooking,
 			final ExecutorService es)
 	{
-		final List<String> datasets = new ArrayList<>();
-		final AtomicInteger counter = new AtomicInteger(1);
-		Future<?> f = es.submit(() -> discoverSubdirectories(n5, "", datasets, es, counter, keepLooking));
-		while (true) {
-			try {
-				synchronized (counter) {
-					counter.wait();
-					final int count = counter.get();
-					LOG.debug("Current discovery task count is {}", count);
-					if (counter.get() <= 0) {
-						LOG.debug("Finished all discovery tasks.");
-						break;
-					}
-				}
-			} catch (InterruptedException e) {
-				LOG.debug("Was interrupted -- will stop dataset discovery.");
-				Thread.currentThread().interrupt();
-				break;
-			}
-		}
-		Collections.sort(datasets);
-		return datasets;
+		return new DatasetDiscovery(n5, keepLooking, es, dataset -> {}, null).discover();
 	}
 
-	private static void discoverSubdirectories(
-			final N5Reader n5,
-			final String pathName,
-			final Collection<String> datasets,
-			final ExecutorService exec,
-			final AtomicInteger counter,
-			final BooleanSupplier keepLooking)
+	/**
+	 * @param n5 container
+	 * @return datasets found by the last complete {@link #discoverDatasets(N5Reader, BooleanSupplier, Consumer) discovery}
+	 * in a file system container, without accessing the container. Empty if not available.
+	 */
+	public static List<String> getCachedDatasets(final N5Reader n5)
 	{
+		return getContainerIndex(n5).map(N5ContainerIndex::getDatasets).orElseGet(Collections::emptyList);
+	}
 
-		LOG.trace("Discovering subdirectory {}", pathName);
-
+	private static Optional<N5ContainerIndex> getContainerIndex(final N5Reader n5)
+	{
+		if (!(n5 instanceof N5FSReader))
+			return Optional.empty();
 		try
 		{
-			if (!keepLooking.getAsBoolean() || Thread.currentThread().isInterrupted())
-				return;
-
-			if (isPainteraDataset(n5, pathName))
-			{
-				synchronized (datasets)
-				{
-					datasets.add(pathName);
-				}
-			}
-			else if (n5.datasetExists(pathName))
-			{
-				synchronized (datasets)
-				{
-					datasets.add(pathName);
-				}
-			}
-			else
-			{
-
-				String[] groups = null;
-				/* based on attribute */
-
-				boolean isMipmapGroup = Optional.ofNullable(n5.getAttribute(
-						pathName,
-						MULTI_SCALE_KEY,
-						Boolean.class
-				                                                           )).orElse(false);
-
-				/* based on groupd content (the old way) */
-				if (!isMipmapGroup)
-				{
-					groups = n5.list(pathName);
-					isMipmapGroup = groups.length > 0;
-					for (final String group : groups)
-					{
-						if (!(group.matches("^s[0-9]+$") && n5.datasetExists(pathName + "/" + group)))
-						{
-							isMipmapGroup = false;
-							break;
-						}
-					}
-					if (isMipmapGroup)
-					{
-						LOG.warn(
-								"Found multi-scale group without {} tag. Implicit multi-scale detection will be " +
-										"removed in the future. Please add \"{}\":{} to attributes.json in group `{}'.",
-								MULTI_SCALE_KEY,
-								MULTI_SCALE_KEY,
-								true,
-								pathName
-						        );
-					}
-				}
-				if (isMipmapGroup)
-				{
-					synchronized (datasets)
-					{
-						LOG.debug("Adding dataset {}", pathName);
-						datasets.add(pathName);
-					}
-				}
-				else
-				{
-					if (keepLooking.getAsBoolean() && !Thread.currentThread().isInterrupted()) {
-						for (final String group : groups) {
-							final String groupPathName = pathName + "/" + group;
-							final int numThreads = counter.incrementAndGet();
-							LOG.debug("Entering {}, {} tasks created", groupPathName, numThreads);
-							exec.submit(() -> discoverSubdirectories(n5, groupPathName, datasets, exec, counter, keepLooking));
-						}
-					}
-				}
-			}
-		} catch (final IOException e)
-		{
-			LOG.debug(e.toString(), e);
+			return Optional.of(N5ContainerIndex.load(new N5FSMeta((N5FSReader) n5, "").basePath()));
 		}
-		finally {
-			synchronized(counter) {
-				final int numThreads = counter.decrementAndGet();
-				counter.notifyAll();
-				LOG.debug("Leaving {}, {} tasks remaining", pathName, numThreads);
-			}
+		catch (final ReflectionException e)
+		{
+			LOG.debug("Unable to determine base path of {}", n5, e);
+			return Optional.empty();
 		}
 	}
 
-
 	/**
 	 * Adjust {@link AffineTransform3D} by scaling and translating appropriately.
 	 * @param transform to be adjusted wrt to downsampling factors
@@ -937,6 +872,8 @@ public class N5Helpers
 						.filter(JsonElement::isJsonObject)
 						.map(obj -> gson.fromJson(obj, LabelBlockLookup.class))
 						.orElseGet(ThrowingSupplier.unchecked(() -> new LabelBlockLookupFromFile(Paths.get(n5fs.basePath(), group, "/", "label-to-block-mapping", "s%d", "%d").toString())));
+				if (lookup instanceof LabelBlockLookupSharded)
+					((LabelBlockLookupSharded) lookup).setRelativeTo(n5fs.basePath(), group);
 				LOG.debug("Got lookup type: {}", lookup.getClass());
 				return lookup;
 			} else
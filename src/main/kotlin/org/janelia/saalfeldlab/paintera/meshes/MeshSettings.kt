@@ -19,7 +19,7 @@ class MeshSettings @JvmOverloads constructor(
 
     // Currently, all source states use the default defaults, i.e. MeshSettings.Defaults.IMMUTABLE_INSTANCE
     interface Defaults {
-        val simplificationIterations: Int
+        val targetReduction: Double
         val smoothingIterations: Int
         val smoothingLambda: Double
         val opacity: Double
@@ -32,7 +32,9 @@ class MeshSettings @JvmOverloads constructor(
 
 
         object Values {
-            @JvmStatic val simplificationIterations = 0
+            @JvmStatic val targetReduction = 0.0
+            @JvmStatic val minTargetReduction = 0.0
+            @JvmStatic val maxTargetReduction = Simplify.MAX_TARGET_REDUCTION
             @JvmStatic val smoothingIterations = Smooth.DEFAULT_ITERATIONS
             @JvmStatic val smoothingLambda = Smooth.DEFAULT_LAMBDA
             @JvmStatic val opacity = 1.0
@@ -56,7 +58,7 @@ class MeshSettings @JvmOverloads constructor(
     }
 
     class MutableDefaults(): Defaults {
-        override var simplificationIterations: Int = Defaults.Values.simplificationIterations
+        override var targetReduction: Double = Defaults.Values.targetReduction
         override var smoothingIterations: Int = Defaults.Values.smoothingIterations
         override var smoothingLambda: Double = Defaults.Values.smoothingLambda
         override var opacity: Double = Defaults.Values.opacity
@@ -76,7 +78,7 @@ class MeshSettings @JvmOverloads constructor(
     // TODO should scaleLevel actually be part of the MeshSettings?
     private val _coarsestScaleLevel = SimpleIntegerProperty(Defaults.getDefaultCoarsestScaleLevel(numScaleLevels))
     private val _finestScaleLevel = SimpleIntegerProperty(Defaults.getDefaultFinestScaleLevel(numScaleLevels))
-    private val _simplificationIterations = SimpleIntegerProperty(defaults.simplificationIterations)
+    private val _targetReduction: DoubleProperty = SimpleDoubleProperty(defaults.targetReduction)
     private val _smoothingLambda: DoubleProperty = SimpleDoubleProperty(defaults.smoothingLambda)
     private val _smoothingIterations: IntegerProperty = SimpleIntegerProperty(defaults.smoothingIterations)
     private val _opacity: DoubleProperty = SimpleDoubleProperty(defaults.opacity)
@@ -89,7 +91,7 @@ class MeshSettings @JvmOverloads constructor(
 
     fun coarsestScaleLevelProperty(): IntegerProperty = _coarsestScaleLevel
     fun finestScaleLevelProperty(): IntegerProperty = _finestScaleLevel
-    fun simplificationIterationsProperty(): IntegerProperty = _simplificationIterations
+    fun targetReductionProperty(): DoubleProperty = _targetReduction
     fun smoothingLambdaProperty(): DoubleProperty = _smoothingLambda
     fun smoothingIterationsProperty(): IntegerProperty = _smoothingIterations
     fun opacityProperty(): DoubleProperty = _opacity
@@ -106,9 +108,9 @@ class MeshSettings @JvmOverloads constructor(
     var finestScaleLevel: Int
         get() = _finestScaleLevel.value
         set(level) = _finestScaleLevel.set(level)
-    var simplificationIterations: Int
-        get() = _simplificationIterations.value
-        set(iterations) = _simplificationIterations.set(iterations)
+    var targetReduction: Double
+        get() = _targetReduction.value
+        set(reduction) = _targetReduction.set(reduction)
     var smoothingLambda: Double
         get() = _smoothingLambda.value
         set(lambda) = _smoothingLambda.set(lambda)
@@ -138,6 +140,10 @@ class MeshSettings @JvmOverloads constructor(
         set(level) = _levelOfDetail.set(level)
 
     init {
+        _targetReduction.addListener { _, _, new ->
+            if (!targetReductionProperty().isBound)
+                targetReduction = min(Defaults.Values.maxTargetReduction, max(Defaults.Values.minTargetReduction, new.toDouble()))
+        }
         _levelOfDetail.addListener { _, _, new ->
             // TODO can we do this without the bound check?
             if (!levelOfDetailProperty().isBound)
@@ -156,7 +162,7 @@ class MeshSettings @JvmOverloads constructor(
         levelOfDetail = that.levelOfDetail
         coarsetsScaleLevel = that.coarsetsScaleLevel
         finestScaleLevel = that.finestScaleLevel
-        simplificationIterations = that.simplificationIterations
+        targetReduction = that.targetReduction
         smoothingLambda = that.smoothingLambda
         smoothingIterations = that.smoothingIterations
         opacity = that.opacity
@@ -172,7 +178,7 @@ class MeshSettings @JvmOverloads constructor(
         levelOfDetail = defaults.levelOfDetail
         coarsetsScaleLevel = numScaleLevels - 1
         finestScaleLevel = 0
-        simplificationIterations = defaults.simplificationIterations
+        targetReduction = defaults.targetReduction
         smoothingLambda = defaults.smoothingLambda
         smoothingIterations = defaults.smoothingIterations
         minLabelRatio = defaults.minLabelRatio
@@ -188,7 +194,7 @@ class MeshSettings @JvmOverloads constructor(
         _levelOfDetail.bind(that._levelOfDetail)
         _coarsestScaleLevel.bind(that._coarsestScaleLevel)
         _finestScaleLevel.bind(that._finestScaleLevel)
-        _simplificationIterations.bind(that._simplificationIterations)
+        _targetReduction.bind(that._targetReduction)
         _smoothingLambda.bind(that._smoothingLambda)
         _smoothingIterations.bind(that._smoothingIterations)
         _minLabelRatio.bind(that._minLabelRatio)
@@ -203,7 +209,7 @@ class MeshSettings @JvmOverloads constructor(
         _levelOfDetail.unbind()
         _coarsestScaleLevel.unbind()
         _finestScaleLevel.unbind()
-        _simplificationIterations.unbind()
+        _targetReduction.unbind()
         _smoothingLambda.unbind()
         _smoothingIterations.unbind()
         _minLabelRatio.unbind()
@@ -218,7 +224,7 @@ class MeshSettings @JvmOverloads constructor(
         _levelOfDetail.bindBidirectional(that._levelOfDetail)
         _coarsestScaleLevel.bindBidirectional(that._coarsestScaleLevel)
         _finestScaleLevel.bindBidirectional(that._finestScaleLevel)
-        _simplificationIterations.bindBidirectional(that._simplificationIterations)
+        _targetReduction.bindBidirectional(that._targetReduction)
         _smoothingLambda.bindBidirectional(that._smoothingLambda)
         _smoothingIterations.bindBidirectional(that._smoothingIterations)
         _minLabelRatio.bindBidirectional(that._minLabelRatio)
@@ -233,7 +239,7 @@ class MeshSettings @JvmOverloads constructor(
         _levelOfDetail.unbindBidirectional(that._levelOfDetail)
         _coarsestScaleLevel.unbindBidirectional(that._coarsestScaleLevel)
         _finestScaleLevel.unbindBidirectional(that._finestScaleLevel)
-        _simplificationIterations.unbindBidirectional(that._simplificationIterations)
+        _targetReduction.unbindBidirectional(that._targetReduction)
         _smoothingLambda.unbindBidirectional(that._smoothingLambda)
         _smoothingIterations.unbindBidirectional(that._smoothingIterations)
         _minLabelRatio.unbindBidirectional(that._minLabelRatio)
@@ -247,7 +253,7 @@ class MeshSettings @JvmOverloads constructor(
     fun hasOnlyDefaultValues(): Boolean {
         return coarsetsScaleLevel == Defaults.getDefaultCoarsestScaleLevel(numScaleLevels)
             && finestScaleLevel == Defaults.getDefaultFinestScaleLevel(numScaleLevels)
-            && simplificationIterations == defaults.simplificationIterations
+            && targetReduction == defaults.targetReduction
             && smoothingLambda == defaults.smoothingLambda
             && smoothingIterations == defaults.smoothingIterations
             && opacity == defaults.opacity
@@ -2,6 +2,11 @@ package org.janelia.saalfeldlab.paintera.meshes
 
 import net.imglib2.util.Pair
 
+/**
+ * Triangle mesh with per-vertex [normals]. If [indices] is `null`, [vertices] and [normals] hold three vertices
+ * (nine floats) per triangle. Otherwise, [vertices] and [normals] hold three floats per (shared) vertex and [indices]
+ * holds three vertex indices per triangle.
+ */
 data class PainteraTriangleMesh @JvmOverloads constructor(
     val vertices: FloatArray,
     val normals: FloatArray,
@@ -11,6 +16,16 @@ data class PainteraTriangleMesh @JvmOverloads constructor(
     val isEmpty: Boolean = vertices.isEmpty() && normals.isEmpty()
     val isNotEmpty: Boolean = !isEmpty
 
+    val isIndexed: Boolean
+        get() = indices != null
+
+    /**
+     * @return flat representation with three vertices (nine floats) per triangle, `this` if not [isIndexed]
+     */
+    fun unindexed(): PainteraTriangleMesh = indices
+        ?.let { PainteraTriangleMesh(Convert.unindex(vertices, it), Convert.unindex(normals, it)) }
+        ?: this
+
     companion object {
         @JvmStatic
         fun fromVerticesAndNormals(vertices: FloatArray?, normals: FloatArray?): PainteraTriangleMesh? {
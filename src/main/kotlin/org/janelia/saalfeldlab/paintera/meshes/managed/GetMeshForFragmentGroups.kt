@@ -0,0 +1,148 @@
+package org.janelia.saalfeldlab.paintera.meshes.managed
+
+import gnu.trove.list.array.TLongArrayList
+import gnu.trove.map.hash.TLongObjectHashMap
+import gnu.trove.set.hash.TLongHashSet
+import net.imglib2.Interval
+import net.imglib2.img.cell.CellGrid
+import net.imglib2.util.Intervals
+import org.janelia.saalfeldlab.paintera.meshes.PainteraTriangleMesh
+import org.janelia.saalfeldlab.paintera.meshes.ShapeKey
+import org.janelia.saalfeldlab.util.grids.Grids
+import org.slf4j.LoggerFactory
+import java.lang.invoke.MethodHandles
+import java.util.Collections
+import java.util.IdentityHashMap
+import java.util.LinkedList
+
+/**
+ * Look up the block meshes of a segment through the fragments of the segment that are present in each block: the mesh
+ * of a segment in a block only depends on the fragments that marching cubes sees in that block. For blocks that
+ * contain a single fragment (or a small group of fragments), the block mesh is shared by all segments that contain
+ * the fragment (or group) and is cached by [getMeshFor] under the key of the fragment (or group). After a merge or a
+ * detach, only blocks in which fragments of both sides meet are re-meshed, all other block meshes are composed from
+ * the cache.
+ *
+ * The fragments of a segment per block are indexed once per scale level for segments that were [register]ed.
+ * Segments are identified by reference, i.e. [ShapeKey.shapeId] must be the same set instance for all blocks of a
+ * segment. [release] the index when a segment is removed and [invalidateAll] when the label block lookup changes.
+ * Indices of segments that are not registered, e.g. segments that are exported without being shown, are kept for the
+ * few most recently requested segments.
+ *
+ * @param getMeshFor block meshes for fragment groups
+ * @param getBlocksForFragment blocks that contain a fragment at a scale level
+ * @param grids grids of the label data at each scale level
+ */
+class GetMeshForFragmentGroups(
+    private val getMeshFor: GetMeshFor<TLongHashSet>,
+    private val getBlocksForFragment: (Int, Long) -> Array<Interval>,
+    private val grids: Array<CellGrid>) : GetMeshFor<TLongHashSet> {
+
+    private val indices = Collections.synchronizedMap(IdentityHashMap<TLongHashSet, Array<TLongObjectHashMap<TLongArrayList>?>>())
+
+    // most recently requested first
+    private val unregisteredIndices = LinkedList<Pair<TLongHashSet, Array<TLongObjectHashMap<TLongArrayList>?>>>()
+
+    override fun getMeshFor(key: ShapeKey<TLongHashSet>): PainteraTriangleMesh? {
+        val fragments = key.shapeId()
+        if (fragments.size() <= 1)
+            return getMeshFor.getMeshFor(key)
+        val group = fragmentsInBlock(fragments, key.scaleIndex(), key.interval())
+        LOG.trace("Fragments {} of {} contribute to block {}", group, fragments, key)
+        if (group.isEmpty)
+            return EMPTY_MESH
+        return getMeshFor.getMeshFor(ShapeKey(
+            group,
+            key.scaleIndex(),
+            key.targetReduction(),
+            key.smoothingLambda(),
+            key.smoothingIterations(),
+            key.minLabelRatio(),
+            key.min(),
+            key.max()))
+    }
+
+    /**
+     * @return all [fragments] that are present in [interval] at [level] or close enough to it to affect the mesh
+     */
+    fun fragmentsInBlock(fragments: TLongHashSet, level: Int, interval: Interval): TLongHashSet {
+        val index = indexFor(fragments, level)
+        // marching cubes reads up to two voxels beyond the block
+        val expanded = Intervals.expand(interval, MARCHING_CUBES_MARGIN)
+        val group = TLongHashSet()
+        Grids.getIntersectingBlocks(Intervals.minAsLongArray(expanded), Intervals.maxAsLongArray(expanded), grids[level])
+            .forEach { block -> index[block]?.let { group.addAll(it) } }
+        return group
+    }
+
+    /**
+     * Index the blocks of [fragments] when they are first requested and keep the index until [release]d.
+     */
+    fun register(fragments: TLongHashSet) {
+        indices.putIfAbsent(fragments, arrayOfNulls(grids.size))
+    }
+
+    /**
+     * Forget the index of [fragments], e.g. when the mesh of a segment was removed.
+     */
+    fun release(fragments: TLongHashSet) {
+        indices.remove(fragments)
+    }
+
+    /**
+     * Forget all indexed blocks, e.g. when the label block lookup was invalidated.
+     */
+    fun invalidateAll() {
+        synchronized(indices) { indices.replaceAll { _, _ -> arrayOfNulls(grids.size) } }
+        synchronized(unregisteredIndices) { unregisteredIndices.clear() }
+    }
+
+    private fun indexFor(fragments: TLongHashSet, level: Int): TLongObjectHashMap<TLongArrayList> {
+        val levels = indices[fragments] ?: unregisteredLevelsFor(fragments)
+        return synchronized(levels) {
+            levels[level] ?: createIndex(fragments, level).also { levels[level] = it }
+        }
+    }
+
+    private fun unregisteredLevelsFor(fragments: TLongHashSet): Array<TLongObjectHashMap<TLongArrayList>?> = synchronized(unregisteredIndices) {
+        val iterator = unregisteredIndices.iterator()
+        var levels: Array<TLongObjectHashMap<TLongArrayList>?>? = null
+        while (levels == null && iterator.hasNext()) {
+            val (set, setLevels) = iterator.next()
+            if (set === fragments) {
+                iterator.remove()
+                levels = setLevels
+            }
+        }
+        (levels ?: arrayOfNulls<TLongObjectHashMap<TLongArrayList>>(grids.size)).also {
+            unregisteredIndices.addFirst(Pair(fragments, it))
+            if (unregisteredIndices.size > MAX_NUM_UNREGISTERED_INDICES)
+                unregisteredIndices.removeLast()
+        }
+    }
+
+    private fun createIndex(fragments: TLongHashSet, level: Int): TLongObjectHashMap<TLongArrayList> {
+        val grid = grids[level]
+        val index = TLongObjectHashMap<TLongArrayList>()
+        fragments.forEach { fragment ->
+            getBlocksForFragment(level, fragment).forEach { interval ->
+                Grids.getIntersectingBlocks(Intervals.minAsLongArray(interval), Intervals.maxAsLongArray(interval), grid).forEach { block ->
+                    (index[block] ?: TLongArrayList().also { index.put(block, it) }).add(fragment)
+                }
+            }
+            true
+        }
+        LOG.debug("Indexed {} fragments in {} blocks at level {}", fragments.size(), index.size(), level)
+        return index
+    }
+
+    companion object {
+        private val LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass())
+
+        private const val MARCHING_CUBES_MARGIN = 2L
+
+        private const val MAX_NUM_UNREGISTERED_INDICES = 8
+
+        private val EMPTY_MESH = PainteraTriangleMesh(FloatArray(0), FloatArray(0), IntArray(0))
+    }
+}
@@ -12,6 +12,7 @@ import javafx.scene.Group
 import javafx.scene.paint.Color
 import net.imglib2.FinalInterval
 import net.imglib2.Interval
+import net.imglib2.cache.CacheLoader
 import net.imglib2.cache.Invalidate
 import net.imglib2.realtransform.AffineTransform3D
 import net.imglib2.type.logic.BoolType
@@ -24,6 +25,7 @@ import org.janelia.saalfeldlab.paintera.control.selection.SelectedSegments
 import org.janelia.saalfeldlab.paintera.data.DataSource
 import org.janelia.saalfeldlab.paintera.data.mask.MaskedSource
 import org.janelia.saalfeldlab.paintera.meshes.*
+import org.janelia.saalfeldlab.paintera.meshes.cache.PersistentMeshCache
 import org.janelia.saalfeldlab.paintera.meshes.cache.SegmentMaskGenerators
 import org.janelia.saalfeldlab.paintera.meshes.cache.SegmentMeshCacheLoader
 import org.janelia.saalfeldlab.paintera.meshes.managed.adaptive.AdaptiveResolutionMeshManager
@@ -96,6 +98,12 @@ class MeshManagerWithAssignmentForSegments(
         }
     }
 
+    // block meshes are cached per group of fragments that are present in a block, and shared between segments
+    private val getMeshForFragmentGroups = GetMeshForFragmentGroups(
+        getMeshFor,
+        { level, id -> labelBlockLookup.read(level, id) },
+        source.grids)
+
     // setMeshesCompleted is only visible to enclosing manager if
     // _meshUpdateObservable is private
     // https://kotlinlang.org/docs/reference/object-declarations.html
@@ -121,7 +129,7 @@ class MeshManagerWithAssignmentForSegments(
     private val manager: AdaptiveResolutionMeshManager<TLongHashSet> = AdaptiveResolutionMeshManager(
         source,
         getBlockList,
-        getMeshFor,
+        getMeshForFragmentGroups,
         viewFrustumProperty,
         eyeToWorldTransformProperty,
         viewerEnabled,
@@ -220,6 +228,7 @@ class MeshManagerWithAssignmentForSegments(
             ?.let { fragments ->
                 segmentFragmentMap[key] = fragments
                 fragmentSegmentMap[fragments] = key
+                getMeshForFragmentGroups.register(fragments)
                 manager.createMeshFor(fragments, false) { setupGeneratorState(key, it) }
             }
     }
@@ -246,6 +255,7 @@ class MeshManagerWithAssignmentForSegments(
     private fun removeMeshFor(key: Long) {
         segmentFragmentMap.remove(key)?.let { fragmentSet ->
             fragmentSegmentMap.remove(fragmentSet)
+            getMeshForFragmentGroups.release(fragmentSet)
             manager.removeMeshFor(fragmentSet) {
                 it.release()
                 relevantBindingsAndPropertiesMap.remove(key)?.release()
@@ -256,7 +266,10 @@ class MeshManagerWithAssignmentForSegments(
     private fun removeMeshesFor(keys: Iterable<Long>) {
         val fragmentSetKeys = keys.mapNotNull { key ->
             relevantBindingsAndPropertiesMap.remove(key)?.release()
-            segmentFragmentMap.remove(key)?.also { fragmentSegmentMap.remove(it) }
+            segmentFragmentMap.remove(key)?.also {
+                fragmentSegmentMap.remove(it)
+                getMeshForFragmentGroups.release(it)
+            }
         }
         manager.removeMeshesFor(fragmentSetKeys) { it.release() }
     }
@@ -283,6 +296,7 @@ class MeshManagerWithAssignmentForSegments(
             this.removeAllMeshesImpl()
             if (labelBlockLookup is Invalidate<*>) labelBlockLookup.invalidateAll()
             if (getMeshFor is Invalidate<*>) getMeshFor.invalidateAll()
+            getMeshForFragmentGroups.invalidateAll()
             this.setMeshesToSelectionImpl(isCanceled)
         }
         updateExecutors.submit(task)
@@ -295,6 +309,7 @@ class MeshManagerWithAssignmentForSegments(
         fun LabelBlockLookup.read(level: Int, id: Long) = read(LabelBlockLookupKey(level, id))
 
         @JvmStatic
+        @JvmOverloads
         fun <D : IntegerType<D>> fromBlockLookup(
             dataSource: DataSource<D, *>,
             selectedSegments: SelectedSegments,
@@ -303,7 +318,8 @@ class MeshManagerWithAssignmentForSegments(
             eyeToWorldTransformProperty: ObservableValue<AffineTransform3D>,
             labelBlockLookup: LabelBlockLookup,
             meshManagerExecutors: ExecutorService,
-            meshWorkersExecutors: HashPriorityQueueBasedTaskExecutor<MeshWorkerPriority>): MeshManagerWithAssignmentForSegments {
+            meshWorkersExecutors: HashPriorityQueueBasedTaskExecutor<MeshWorkerPriority>,
+            persistentMeshCache: PersistentMeshCache? = null): MeshManagerWithAssignmentForSegments {
             LOG.debug("Data source is type {}", dataSource.javaClass)
             val actualLookup = when (dataSource) {
                 is MaskedSource<D, *> -> LabeLBlockLookupWithMaskedSource.create(labelBlockLookup, dataSource)
@@ -318,7 +334,9 @@ class MeshManagerWithAssignmentForSegments(
                     segmentMaskGenerators[it],
                     dataSource.getSourceTransformCopy(0, it))
             }
-            val getMeshFor = GetMeshFor.FromCache.fromPairLoaders(*loaders)
+            val getMeshFor = persistentMeshCache
+                ?.let { GetMeshFor.FromCache.fromLoader(it.withLoader(CacheLoader { key -> loaders[key.scaleIndex()][key] })) }
+                ?: GetMeshFor.FromCache.fromLoaders(*loaders)
 
             return MeshManagerWithAssignmentForSegments(
                 dataSource,
@@ -396,10 +414,10 @@ class MeshManagerWithAssignmentForSegments(
 
     val getMeshForLongKey: GetMeshFor<Long>
         get() = object : GetMeshFor<Long> {
-            override fun getMeshFor(key: ShapeKey<Long>): PainteraTriangleMesh? = getMeshFor.getMeshFor(ShapeKey(
+            override fun getMeshFor(key: ShapeKey<Long>): PainteraTriangleMesh? = getMeshForFragmentGroups.getMeshFor(ShapeKey(
                 getContainedFragmentsFor(key.shapeId()) ?: TLongHashSet(),
                 key.scaleIndex(),
-                key.simplificationIterations(),
+                key.targetReduction(),
                 key.smoothingLambda(),
                 key.smoothingIterations(),
                 key.minLabelRatio(),
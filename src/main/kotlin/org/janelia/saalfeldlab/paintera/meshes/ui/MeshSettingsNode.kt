@@ -43,6 +43,7 @@ class MeshSettingsNode @JvmOverloads constructor(
     private val finestScaleLevel: IntegerProperty,
     private val smoothingLambda: DoubleProperty,
     private val smoothingIterations: IntegerProperty,
+    private val targetReduction: DoubleProperty,
     private val minLabelRatio: DoubleProperty,
     private val inflate: DoubleProperty,
     private val drawMode: Property<DrawMode>,
@@ -59,6 +60,7 @@ class MeshSettingsNode @JvmOverloads constructor(
         meshSettings.finestScaleLevelProperty(),
         meshSettings.smoothingLambdaProperty(),
         meshSettings.smoothingIterationsProperty(),
+        meshSettings.targetReductionProperty(),
         meshSettings.minLabelRatioProperty(),
         meshSettings.inflateProperty(),
         meshSettings.drawModeProperty(),
@@ -80,6 +82,7 @@ class MeshSettingsNode @JvmOverloads constructor(
             NumericSliderWithField(0, this.numScaleLevels - 1, finestScaleLevel.value).also { it.slider.valueProperty().bindBidirectional(finestScaleLevel) },
             NumericSliderWithField(0.0, 1.00, .05).also { it.slider.valueProperty().bindBidirectional(smoothingLambda) },
             NumericSliderWithField(0, 10, 5).also { it.slider.valueProperty().bindBidirectional(smoothingIterations) },
+            NumericSliderWithField(MeshSettings.Defaults.Values.minTargetReduction, MeshSettings.Defaults.Values.maxTargetReduction, targetReduction.value).also { it.slider.valueProperty().bindBidirectional(targetReduction) },
             NumericSliderWithField(0.0, 1.0, 0.5).also { it.slider.valueProperty().bindBidirectional(minLabelRatio) },
             NumericSliderWithField(0.5, 2.0, inflate.value).also { it.slider.valueProperty().bindBidirectional(inflate) },
             ComboBox(FXCollections.observableArrayList(*DrawMode.values())).also { it.valueProperty().bindBidirectional(drawMode) },
@@ -146,6 +149,7 @@ class MeshSettingsNode @JvmOverloads constructor(
             finestScaleLevelSlider: NumericSliderWithField,
             smoothingLambdaSlider: NumericSliderWithField,
             smoothingIterationsSlider: NumericSliderWithField,
+            targetReductionSlider: NumericSliderWithField,
             minLabelRatioSlider: NumericSliderWithField,
             inflateSlider: NumericSliderWithField,
             drawModeChoice: ComboBox<DrawMode>,
@@ -221,6 +225,15 @@ class MeshSettingsNode @JvmOverloads constructor(
             setupSlider(smoothingIterationsSlider, "Smoothing Iterations")
             ++row
 
+            contents.add(Labels.withTooltip("Reduction"), 0, row)
+            contents.add(targetReductionSlider.slider, 1, row)
+            GridPane.setColumnSpan(targetReductionSlider.slider, 2)
+            contents.add(targetReductionSlider.textField, 3, row)
+            setupSlider(targetReductionSlider, "Fraction of triangles removed by mesh simplification of coarse scale levels." + System.lineSeparator() +
+                "Meshes at full resolution are never simplified." + System.lineSeparator() +
+                "0.0 disables simplification, 0.9 leaves 10% of the triangles.")
+            ++row
+
             // min label ratio slider only makes sense for sources of label multiset type
             if (addMinLabelratioSlider)
             {
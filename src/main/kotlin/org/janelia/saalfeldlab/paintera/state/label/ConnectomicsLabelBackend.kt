@@ -4,6 +4,7 @@ import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookup
 import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignmentState
 import org.janelia.saalfeldlab.paintera.data.DataSource
 import org.janelia.saalfeldlab.paintera.id.IdService
+import org.janelia.saalfeldlab.paintera.meshes.cache.PersistentMeshCache
 import org.janelia.saalfeldlab.paintera.state.SourceStateBackend
 
 interface ConnectomicsLabelBackend<D, T> : SourceStateBackend<D, T> {
@@ -17,4 +18,9 @@ interface ConnectomicsLabelBackend<D, T> : SourceStateBackend<D, T> {
 
 	fun createIdService(source: DataSource<D, T>): IdService
 
+	/**
+	 * @return cache that persists meshes across sessions, or `null` if not supported by this backend
+	 */
+	fun createPersistentMeshCache(source: DataSource<D, T>): PersistentMeshCache? = null
+
 }
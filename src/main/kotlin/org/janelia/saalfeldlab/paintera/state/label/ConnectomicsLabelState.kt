@@ -53,6 +53,7 @@ import org.janelia.saalfeldlab.paintera.control.selection.SelectedSegments
 import org.janelia.saalfeldlab.paintera.data.DataSource
 import org.janelia.saalfeldlab.paintera.data.axisorder.AxisOrder
 import org.janelia.saalfeldlab.paintera.data.mask.MaskedSource
+import org.janelia.saalfeldlab.paintera.id.IdService
 import org.janelia.saalfeldlab.paintera.meshes.ManagedMeshSettings
 import org.janelia.saalfeldlab.paintera.meshes.MeshWorkerPriority
 import org.janelia.saalfeldlab.paintera.meshes.managed.MeshManagerWithAssignmentForSegments
@@ -93,7 +94,8 @@ class ConnectomicsLabelState<D: IntegerType<D>, T>(
 	SourceStateWithBackend<D, T>,
 	HasHighlightingStreamConverter<T>,
 	HasFragmentSegmentAssignments,
-	HasFloodFillState {
+	HasFloodFillState,
+	HasIdService {
 
 	init {
 		// NOTE: this is needed to properly bind mesh info list and progress to the mesh manager.
@@ -116,6 +118,7 @@ class ConnectomicsLabelState<D: IntegerType<D>, T>(
 	val selectedSegments = SelectedSegments(selectedIds, fragmentSegmentAssignment)
 
 	private val idService = backend.createIdService(source)
+	override fun idService(): IdService = idService
 
 	private val labelBlockLookup = labelBlockLookup ?: backend.createLabelBlockLookup(source)
 
@@ -133,7 +136,8 @@ class ConnectomicsLabelState<D: IntegerType<D>, T>(
         eyeToWorldTransformProperty,
         this.labelBlockLookup,
         meshManagerExecutors,
-        meshWorkersExecutors)
+        meshWorkersExecutors,
+        backend.createPersistentMeshCache(source))
 
 	private val paintHandler = LabelSourceStatePaintHandler(selectedIds, maskForLabel as LongFunction<Converter<*, BoolType>>)
 
@@ -345,6 +349,11 @@ class ConnectomicsLabelState<D: IntegerType<D>, T>(
 			},
 			false,
 			"_Skip")
+		try {
+			idService.flush()
+		} catch (e: RuntimeException) {
+			LOG.error("Unable to flush id service for source {}", nameProperty().get(), e)
+		}
 	}
 
 	override fun createKeyAndMouseBindings(): KeyAndMouseBindings {
@@ -438,7 +447,8 @@ class ConnectomicsLabelState<D: IntegerType<D>, T>(
 			InvokeOnJavaFXApplicationThread.invoke {
 				if (newv != null) {
 					paintingProgressIndicator.isVisible = true
-					paintingProgressIndicatorTooltip.text = "Flood-filling, label ID: " + newv.labelId
+					paintingProgressIndicatorTooltip.text = newv.progressText()
+					paintingProgressIndicatorTooltip.setOnShowing { paintingProgressIndicatorTooltip.text = newv.progressText() }
 
 					val floodFillContextMenuCancelItem = MenuItem("Cancel")
 					if (newv.interrupt != null) {
@@ -449,6 +459,7 @@ class ConnectomicsLabelState<D: IntegerType<D>, T>(
 					setProgressIndicatorContextMenu.accept(ContextMenu(floodFillContextMenuCancelItem))
 				} else {
 					paintingProgressIndicator.isVisible = false
+					paintingProgressIndicatorTooltip.onShowing = null
 					resetProgressIndicatorContextMenu.run()
 				}
 			}
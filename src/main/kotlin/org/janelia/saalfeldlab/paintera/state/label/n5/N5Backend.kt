@@ -12,14 +12,51 @@ import org.janelia.saalfeldlab.n5.N5FSReader
 import org.janelia.saalfeldlab.n5.N5Reader
 import org.janelia.saalfeldlab.n5.N5Writer
 import org.janelia.saalfeldlab.n5.hdf5.N5HDF5Reader
+import org.janelia.saalfeldlab.paintera.data.DataSource
+import org.janelia.saalfeldlab.paintera.data.mask.MaskedSource
+import org.janelia.saalfeldlab.paintera.data.n5.CommitCanvasN5
+import org.janelia.saalfeldlab.paintera.data.n5.N5BlockModificationTimes
+import org.janelia.saalfeldlab.paintera.meshes.cache.PersistentMeshCache
 import org.janelia.saalfeldlab.paintera.state.SourceStateBackendN5
 import org.janelia.saalfeldlab.paintera.state.label.ConnectomicsLabelBackend
 import org.janelia.saalfeldlab.util.n5.N5Helpers
+import org.slf4j.LoggerFactory
+import java.io.IOException
+import java.lang.invoke.MethodHandles
+import java.nio.file.Paths
+import java.util.UUID
 import java.util.concurrent.ExecutorService
+import java.util.function.BiPredicate
+import java.util.function.IntFunction
 import java.util.function.Supplier
 
 interface N5Backend<D, T> : ConnectomicsLabelBackend<D, T>, SourceStateBackendN5<D, T> {
 
+	val projectDirectory: Supplier<String>
+
+	/**
+	 * Meshes are persisted in the project directory, separately for each container and dataset. Persisted meshes
+	 * are invalidated when the underlying blocks are re-written, either by committing the canvas or, for N5 file system
+	 * containers, externally.
+	 */
+	override fun createPersistentMeshCache(source: DataSource<D, T>): PersistentMeshCache? {
+		val stamps = try {
+			N5BlockModificationTimes.forDataset(container, dataset)
+		} catch (e: IOException) {
+			LOG.warn("Unable to persist meshes for dataset `{}' in container `{}': {}", dataset, container.urlRepresentation(), e.message)
+			return null
+		}
+		val maskedSource = source as? MaskedSource<*, *>
+		val cache = PersistentMeshCache(
+			Supplier { Paths.get(projectDirectory.get(), MESH_CACHE_DIRECTORY, datasetId(container, dataset)) },
+			source.numMipmapLevels,
+			IntFunction { source.getGrid(it) },
+			stamps,
+			BiPredicate { level, interval -> maskedSource?.containsCanvasData(level, interval)?.not() ?: true })
+		(maskedSource?.persister as? CommitCanvasN5)?.addBlocksWrittenListener(CommitCanvasN5.BlocksWrittenListener { level, blocks -> cache.invalidateBlocks(level, blocks) })
+		return cache
+	}
+
 	override fun createMetaDataNode(): Node {
 		val containerLabel = Labels.withTooltip("Container", "N5 container of source dataset `$dataset'")
 		val datasetLabel = Labels.withTooltip("Dataset", "Dataset path inside container `${container.urlRepresentation()}'")
@@ -37,12 +74,28 @@ interface N5Backend<D, T> : ConnectomicsLabelBackend<D, T>, SourceStateBackendN5
 
 	companion object {
 
+		private val LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass())
+
+		private const val MESH_CACHE_DIRECTORY = "mesh-cache"
+
+		private const val COMMIT_JOURNAL_DIRECTORY = "commit-journal"
+
 		private fun N5Reader.urlRepresentation() = when(this) {
 			is N5FSReader -> "n5://$basePath"
 			is N5HDF5Reader -> "h5://${filename.absolutePath}"
 			else -> "??://${toString()}"
 		}
 
+		private fun datasetId(container: N5Reader, dataset: String) = UUID.nameUUIDFromBytes("${container.urlRepresentation()}:$dataset".toByteArray()).toString()
+
+		/**
+		 * Commits are journaled in the project directory so that a cancelled or interrupted commit can be resumed or
+		 * rolled back, also after a crash.
+		 */
+		@JvmStatic
+		fun createCommitCanvas(container: N5Writer, dataset: String, projectDirectory: Supplier<String>) = CommitCanvasN5(container, dataset)
+			.also { it.setJournalDirectory(Supplier { Paths.get(projectDirectory.get(), COMMIT_JOURNAL_DIRECTORY, datasetId(container, dataset)) }) }
+
 		@JvmStatic
 		fun <D, T> createFrom(
 				container: N5Writer,
@@ -15,7 +15,6 @@ import org.janelia.saalfeldlab.paintera.control.lock.LockedSegmentsOnlyLocal
 import org.janelia.saalfeldlab.paintera.control.lock.LockedSegmentsState
 import org.janelia.saalfeldlab.paintera.data.DataSource
 import org.janelia.saalfeldlab.paintera.data.mask.Masks
-import org.janelia.saalfeldlab.paintera.data.n5.CommitCanvasN5
 import org.janelia.saalfeldlab.paintera.data.n5.N5DataSource
 import org.janelia.saalfeldlab.paintera.data.n5.N5Meta
 import org.janelia.saalfeldlab.paintera.serialization.GsonExtensions
@@ -42,7 +41,7 @@ import java.util.function.Supplier
 class N5BackendPainteraDataset<D, T> constructor(
 	override val container: N5Writer,
 	override val dataset: String,
-	private val projectDirectory: Supplier<String>,
+	override val projectDirectory: Supplier<String>,
 	private val propagationExecutorService: ExecutorService,
     private val backupLookupAttributesIfMakingRelative: Boolean) : N5Backend<D, T>
 		where D: NativeType<D>, D: IntegerType<D>, T: net.imglib2.Volatile<D>, T: NativeType<T> {
@@ -93,7 +92,7 @@ class N5BackendPainteraDataset<D, T> constructor(
 			val dataSource = N5DataSource<D, T>(N5Meta.fromReader(container, dataset), transform, name, queue, priority)
 			return if (container is N5Writer) {
 				val tmpDir = Masks.canvasTmpDirDirectorySupplier(projectDirectory)
-				Masks.mask(dataSource, queue, tmpDir.get(), tmpDir, CommitCanvasN5(container, dataset), propagationExecutorService)
+				Masks.mask(dataSource, queue, tmpDir.get(), tmpDir, N5Backend.createCommitCanvas(container, dataset, projectDirectory), propagationExecutorService)
 			} else
 				dataSource
 		}
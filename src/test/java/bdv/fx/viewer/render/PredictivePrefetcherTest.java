@@ -0,0 +1,69 @@
+package bdv.fx.viewer.render;
+
+import net.imglib2.realtransform.AffineTransform3D;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public class PredictivePrefetcherTest
+{
+
+	@Test
+	public void testExtrapolateTranslation()
+	{
+		final long[] time = {0};
+		final PredictivePrefetcher prefetcher = new PredictivePrefetcher(() -> time[0]);
+		final AffineTransform3D transform = new AffineTransform3D();
+		transform.set(
+				2, 0, 0, 5,
+				0, 2, 0, 7,
+				0, 0, 2, 1);
+
+		prefetcher.transformChanged(transform.copy());
+		Assert.assertTrue(prefetcher.getPredictedSteps().isEmpty());
+
+		// a single step is extrapolated once
+		transform.set(-2.0, 2, 3);
+		prefetcher.transformChanged(transform.copy());
+		Assert.assertEquals(1, prefetcher.getPredictedSteps().size());
+
+		// the same step twice in a row is extrapolated further
+		transform.set(-5.0, 2, 3);
+		prefetcher.transformChanged(transform.copy());
+		final List<AffineTransform3D> steps = prefetcher.getPredictedSteps();
+		Assert.assertEquals(prefetcher.getNumSteps(), steps.size());
+		for (int i = 0; i < steps.size(); ++i)
+		{
+			final AffineTransform3D predicted = transform.copy().concatenate(steps.get(i));
+			Assert.assertEquals(-5.0 - 3.0 * (i + 1), predicted.get(2, 3), 1e-9);
+			Assert.assertEquals(5.0, predicted.get(0, 3), 1e-9);
+			Assert.assertEquals(2.0, predicted.get(2, 2), 1e-9);
+		}
+
+		transform.set(-8.0, 2, 3);
+		prefetcher.transformChanged(transform.copy());
+		Assert.assertEquals(2, prefetcher.getStatistics().numPredictions);
+		Assert.assertEquals(2, prefetcher.getStatistics().numPredictionHits);
+
+		// stale predictions are not used
+		time[0] += 10000;
+		Assert.assertTrue(prefetcher.getPredictedSteps().isEmpty());
+	}
+
+	@Test
+	public void testNoExtrapolationOfRotation()
+	{
+		final PredictivePrefetcher prefetcher = new PredictivePrefetcher(() -> 0);
+		final AffineTransform3D transform = new AffineTransform3D();
+		prefetcher.transformChanged(transform.copy());
+		transform.rotate(2, 0.1);
+		prefetcher.transformChanged(transform.copy());
+		Assert.assertTrue(prefetcher.getPredictedSteps().isEmpty());
+
+		// unchanged transforms are ignored
+		prefetcher.transformChanged(transform.copy());
+		Assert.assertEquals(0, prefetcher.getStatistics().numPredictions);
+	}
+
+}
@@ -0,0 +1,76 @@
+package bdv.fx.viewer.render;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+
+public class RenderTraceTest
+{
+
+	@Test
+	public void testRingBuffer()
+	{
+		final RenderTrace trace = new RenderTrace(4);
+		Assert.assertTrue(trace.getFrames().isEmpty());
+		Assert.assertNull(trace.summarize().last);
+
+		for (int i = 0; i < 6; ++i)
+			trace.record(frame(trace, i % 2 == 0, i == 0 ? 5_000_000 : -1));
+		trace.recordUpload(2_000_000);
+
+		final List<RenderTrace.Frame> frames = trace.getFrames();
+		Assert.assertEquals(4, frames.size());
+		for (int i = 0; i < frames.size(); ++i)
+			Assert.assertEquals(i + 2, frames.get(i).sequence);
+		Assert.assertEquals(-1, frames.get(2).getUploadNanos());
+		Assert.assertEquals(2_000_000, frames.get(3).getUploadNanos());
+
+		final RenderTrace.Summary summary = trace.summarize();
+		Assert.assertEquals(4, summary.numFrames);
+		Assert.assertEquals(0.5, summary.completeRatio, 0.0);
+		Assert.assertEquals(1.0, summary.meanMapMillis, 1e-9);
+		Assert.assertEquals(2.0, summary.meanUploadMillis, 1e-9);
+		// the only frame with a time to first pixel was overwritten
+		Assert.assertTrue(Double.isNaN(summary.meanTimeToFirstPixelMillis));
+		Assert.assertSame(frames.get(3), summary.last);
+	}
+
+	@Test
+	public void testCsv() throws IOException
+	{
+		final RenderTrace trace = new RenderTrace(2);
+		trace.record(frame(trace, true, 5_000_000));
+		trace.recordRejectedExecution();
+
+		final StringWriter writer = new StringWriter();
+		trace.writeCsv(writer);
+		final String[] lines = writer.toString().split("\n");
+		Assert.assertEquals(2, lines.length);
+		Assert.assertEquals(lines[0].split(",").length, lines[1].split(",").length);
+		Assert.assertEquals("0,100,1,2,true,true,true,300000,1000000,600000,400000,5000000,0,3,-1", lines[1]);
+		Assert.assertEquals(1, trace.getNumRejectedExecutions());
+	}
+
+	private static RenderTrace.Frame frame(final RenderTrace trace, final boolean complete, final long timeToFirstPixelNanos)
+	{
+		return new RenderTrace.Frame(
+				trace.nextSequence(),
+				100,
+				1,
+				2,
+				true,
+				true,
+				complete,
+				300_000,
+				1_000_000,
+				600_000,
+				400_000,
+				timeToFirstPixelNanos,
+				0,
+				3);
+	}
+
+}
@@ -0,0 +1,208 @@
+package org.janelia.saalfeldlab.paintera.cache;
+
+import net.imglib2.cache.LoaderCache;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class GlobalBlockCacheTest
+{
+
+	private static final long BLOCK_BYTES = 10;
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+	@After
+	public void shutdown() throws InterruptedException
+	{
+		executor.shutdownNow();
+		Assert.assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testEvictionUnderBudget() throws ExecutionException
+	{
+		final GlobalBlockCache globalCache = new GlobalBlockCache(10 * BLOCK_BYTES);
+		final LoaderCache<Long, Long> cache1 = globalCache.createCache("cache1", v -> BLOCK_BYTES);
+		final LoaderCache<Long, Long> cache2 = globalCache.createCache("cache2", v -> BLOCK_BYTES);
+
+		for (long key = 0; key < 10; ++key)
+			Assert.assertEquals(key, (long) cache1.get(key, k -> k));
+		Assert.assertEquals(10 * BLOCK_BYTES, globalCache.getUsedBytes());
+		Assert.assertEquals(10, globalCache.getNumBlocks());
+		Assert.assertEquals(0, globalCache.getEvictions());
+
+		// a recently used block survives eviction
+		cache1.get(0L, k -> k);
+		for (long key = 0; key < 5; ++key)
+			cache2.get(key, k -> -k);
+
+		Assert.assertEquals(10 * BLOCK_BYTES, globalCache.getUsedBytes());
+		Assert.assertEquals(10, globalCache.getNumBlocks());
+		Assert.assertEquals(5, globalCache.getEvictions());
+		Assert.assertNotNull(cache1.getIfPresent(0L));
+		for (long key = 0; key < 5; ++key)
+			Assert.assertEquals(-key, (long) cache2.getIfPresent(key));
+	}
+
+	@Test
+	public void testWeight() throws ExecutionException
+	{
+		final GlobalBlockCache globalCache = new GlobalBlockCache(10 * BLOCK_BYTES);
+		final LoaderCache<Long, Long> cache = globalCache.createCache("cache", v -> BLOCK_BYTES);
+		final LoaderCache<Long, Long> cheapCache = globalCache.createCache("cheap", v -> BLOCK_BYTES, 2.0);
+
+		cache.get(0L, k -> k);
+		cheapCache.get(0L, k -> k);
+		Assert.assertEquals(3 * BLOCK_BYTES, globalCache.getUsedBytes());
+
+		cache.invalidateAll();
+		Assert.assertEquals(2 * BLOCK_BYTES, globalCache.getUsedBytes());
+	}
+
+	@Test
+	public void testShrinkBudget() throws ExecutionException
+	{
+		final GlobalBlockCache globalCache = new GlobalBlockCache(10 * BLOCK_BYTES);
+		final LoaderCache<Long, Long> cache = globalCache.createCache("cache", v -> BLOCK_BYTES);
+		for (long key = 0; key < 10; ++key)
+			cache.get(key, k -> k);
+
+		globalCache.setMaxBytes(3 * BLOCK_BYTES);
+		Assert.assertEquals(3 * BLOCK_BYTES, globalCache.getMaxBytes());
+		Assert.assertEquals(3 * BLOCK_BYTES, globalCache.getUsedBytes());
+		Assert.assertEquals(3, globalCache.getNumBlocks());
+		Assert.assertEquals(7, globalCache.getEvictions());
+		Assert.assertNotNull(cache.getIfPresent(9L));
+
+		// growing the budget does not evict
+		globalCache.setMaxBytes(10 * BLOCK_BYTES);
+		Assert.assertEquals(3, globalCache.getNumBlocks());
+	}
+
+	@Test
+	public void testCounters() throws ExecutionException
+	{
+		final GlobalBlockCache globalCache = new GlobalBlockCache(2 * BLOCK_BYTES);
+		final LoaderCache<Long, Long> cache = globalCache.createCache("cache", v -> BLOCK_BYTES);
+
+		cache.get(0L, k -> k);
+		cache.get(0L, k -> k);
+		cache.get(1L, k -> k);
+		cache.get(0L, k -> k);
+		cache.get(2L, k -> k);
+		Assert.assertEquals(2, globalCache.getHits());
+		Assert.assertEquals(3, globalCache.getMisses());
+		Assert.assertEquals(1, globalCache.getEvictions());
+
+		// invalidation is not eviction
+		cache.invalidate(0L);
+		Assert.assertEquals(1, globalCache.getEvictions());
+		Assert.assertEquals(BLOCK_BYTES, globalCache.getUsedBytes());
+	}
+
+	@Test
+	public void testConcurrentGetLoadsOnce() throws InterruptedException, ExecutionException
+	{
+		final GlobalBlockCache globalCache = new GlobalBlockCache(10 * BLOCK_BYTES);
+		final LoaderCache<Long, Long> cache = globalCache.createCache("cache", v -> BLOCK_BYTES);
+		final AtomicInteger numLoads = new AtomicInteger();
+		final CountDownLatch loading = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+
+		final List<Future<Long>> results = new ArrayList<>();
+		for (int i = 0; i < 8; ++i)
+			results.add(executor.submit(() -> cache.get(1L, k -> {
+				numLoads.incrementAndGet();
+				loading.countDown();
+				release.await();
+				return 42L;
+			})));
+
+		Assert.assertTrue(loading.await(1, TimeUnit.SECONDS));
+		release.countDown();
+		for (final Future<Long> result : results)
+			Assert.assertEquals(42L, (long) result.get());
+		Assert.assertEquals(1, numLoads.get());
+		Assert.assertEquals(1, globalCache.getMisses());
+		Assert.assertEquals(7, globalCache.getHits());
+		Assert.assertEquals(BLOCK_BYTES, globalCache.getUsedBytes());
+	}
+
+	@Test
+	public void testFailedLoadDoesNotPoisonKey() throws InterruptedException, ExecutionException
+	{
+		final GlobalBlockCache globalCache = new GlobalBlockCache(10 * BLOCK_BYTES);
+		final LoaderCache<Long, Long> cache = globalCache.createCache("cache", v -> BLOCK_BYTES);
+
+		try
+		{
+			cache.get(1L, k -> {
+				throw new IOException("failed");
+			});
+			Assert.fail("Expected ExecutionException");
+		}
+		catch (final ExecutionException e)
+		{
+			Assert.assertTrue(e.getCause() instanceof IOException);
+		}
+		Assert.assertNull(cache.getIfPresent(1L));
+		Assert.assertEquals(1L, (long) cache.get(1L, k -> k));
+
+		// errors release the key and the threads waiting for it, too
+		final CountDownLatch loading = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Future<Long> failing = executor.submit(() -> cache.get(2L, k -> {
+			loading.countDown();
+			release.await();
+			throw new NoClassDefFoundError("failed");
+		}));
+		Assert.assertTrue(loading.await(1, TimeUnit.SECONDS));
+		final Future<Long> waiting = executor.submit(() -> cache.get(2L, k -> k));
+		release.countDown();
+
+		try
+		{
+			failing.get(1, TimeUnit.SECONDS);
+			Assert.fail("Expected NoClassDefFoundError");
+		}
+		catch (final ExecutionException e)
+		{
+			Assert.assertTrue(e.getCause() instanceof NoClassDefFoundError);
+		}
+		catch (final TimeoutException e)
+		{
+			Assert.fail("Failing load did not return");
+		}
+
+		// the waiting thread either joined the failed load or loaded the block itself after the key was released
+		try
+		{
+			Assert.assertEquals(2L, (long) waiting.get(1, TimeUnit.SECONDS));
+		}
+		catch (final ExecutionException e)
+		{
+			Assert.assertTrue(e.getCause() instanceof ExecutionException);
+		}
+		catch (final TimeoutException e)
+		{
+			Assert.fail("Waiting thread did not return");
+		}
+
+		Assert.assertEquals(2L, (long) cache.get(2L, k -> k));
+		Assert.assertEquals(2 * BLOCK_BYTES, globalCache.getUsedBytes());
+	}
+
+}
@@ -0,0 +1,271 @@
+package org.janelia.saalfeldlab.paintera.control;
+
+import bdv.util.volatiles.SharedQueue;
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.RealRandomAccess;
+import net.imglib2.RealRandomAccessible;
+import net.imglib2.cache.Invalidate;
+import net.imglib2.cache.img.CachedCellImg;
+import net.imglib2.converter.Converters;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileLongArray;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.interpolation.randomaccess.NearestNeighborInterpolatorFactory;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.label.Label;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.type.volatiles.VolatileUnsignedLongType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+import org.janelia.saalfeldlab.paintera.data.RandomAccessibleIntervalDataSource;
+import org.janelia.saalfeldlab.paintera.data.mask.MaskInfo;
+import org.janelia.saalfeldlab.paintera.data.mask.MaskedSource;
+import org.janelia.saalfeldlab.paintera.data.mask.Masks;
+import org.janelia.saalfeldlab.paintera.data.mask.exception.MaskInUse;
+import org.janelia.saalfeldlab.util.grids.Grids;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Predicate;
+
+public class ShapeInterpolationModeTest
+{
+
+	private static final long[] DIMENSIONS = {40, 40, 24};
+
+	private static final int[] BLOCK_SIZE = {8, 8, 8};
+
+	private static final long[] SECTION_SIZE = {16, 16};
+
+	/**
+	 * The sections are ten voxels apart in z.
+	 */
+	private static final double DISTANCE_BETWEEN_SECTIONS = -10;
+
+	private static final long NEW_LABEL = 5;
+
+	private static final Predicate<UnsignedLongType> FOREGROUND_CHECK = t -> Label.isForeground(t.get());
+
+	private static final Invalidate<Long> NO_OP_INVALIDATE = new Invalidate<Long>() {
+		@Override
+		public void invalidate(final Long key) {
+
+		}
+
+		@Override
+		public void invalidateIf(final long parallelismThreshold, final Predicate<Long> condition) {
+
+		}
+
+		@Override
+		public void invalidateAll(final long parallelismThreshold) {
+
+		}
+	};
+
+	@Rule
+	public final TemporaryFolder tmp = new TemporaryFolder();
+
+	private RealRandomAccessible<UnsignedLongType> interpolatedShape;
+
+	private Interval shapeSourceInterval;
+
+	private ExecutorService propagationExecutor;
+
+	@Before
+	public void setUp()
+	{
+		// a disk of radius 5 shrinks to a disk of radius 3 with a slightly shifted center
+		final AffineTransform3D transformToSource = new AffineTransform3D();
+		transformToSource.setTranslation(10, 12, 4);
+		interpolatedShape = ShapeInterpolationMode.getInterpolatedDistanceTransformMask(
+				diskDistanceTransform(7, 7, 5),
+				diskDistanceTransform(8, 8, 3),
+				DISTANCE_BETWEEN_SECTIONS,
+				new UnsignedLongType(1),
+				transformToSource);
+		shapeSourceInterval = ShapeInterpolationMode.interpolatedShapeSourceInterval(
+				new FinalInterval(SECTION_SIZE),
+				DISTANCE_BETWEEN_SECTIONS,
+				transformToSource);
+		propagationExecutor = Executors.newSingleThreadExecutor();
+	}
+
+	@After
+	public void tearDown()
+	{
+		propagationExecutor.shutdown();
+	}
+
+	@Test
+	public void testRasterizedCellsMatchInterpolatedMask()
+	{
+		final CachedCellImg<UnsignedLongType, VolatileLongArray> rasterized = ShapeInterpolationMode.rasterizeInterpolatedMask(
+				interpolatedShape,
+				shapeSourceInterval,
+				new CellGrid(DIMENSIONS, BLOCK_SIZE));
+
+		final RealRandomAccess<UnsignedLongType> expected = interpolatedShape.realRandomAccess();
+		final Cursor<UnsignedLongType> cursor = Views.flatIterable(rasterized).localizingCursor();
+		long numForeground = 0;
+		while (cursor.hasNext())
+		{
+			cursor.fwd();
+			expected.setPosition(cursor);
+			Assert.assertEquals("Voxel " + Util.printCoordinates(cursor), expected.get().getIntegerLong(), cursor.get().getIntegerLong());
+			numForeground += cursor.get().getIntegerLong();
+		}
+
+		// the center of the first section and of all sections in between is inside of the shape, nothing beyond the sections
+		Assert.assertTrue(numForeground > 0);
+		for (long z = 4; z < 14; ++z)
+			Assert.assertEquals(1, valueAt(rasterized, 17, 19, z));
+		Assert.assertEquals(0, valueAt(rasterized, 17, 19, 3));
+		Assert.assertEquals(0, valueAt(rasterized, 17, 19, 15));
+	}
+
+	@Test
+	public void testCellsClearedOnDiscard() throws MaskInUse, ExecutionException
+	{
+		final MaskedSource<UnsignedLongType, VolatileUnsignedLongType> source = maskedSource();
+		final ShapeInterpolationMode<UnsignedLongType> mode = new ShapeInterpolationMode<>(source, () -> {}, null, null, null, null);
+		final CachedCellImg<UnsignedLongType, VolatileLongArray> rasterized = ShapeInterpolationMode.rasterizeInterpolatedMask(
+				interpolatedShape,
+				shapeSourceInterval,
+				source.getCanvasGrid(0));
+
+		mode.setInterpolatedMask(new MaskInfo<>(0, 0, new UnsignedLongType(NEW_LABEL)), rasterized);
+		generateCells(rasterized);
+		assertCellsCached(rasterized, true);
+
+		mode.interruptInterpolation();
+		assertCellsCached(rasterized, false);
+	}
+
+	@Test
+	public void testCellsClearedAfterApply() throws MaskInUse, ExecutionException, InterruptedException
+	{
+		final MaskedSource<UnsignedLongType, VolatileUnsignedLongType> source = maskedSource();
+		final ShapeInterpolationMode<UnsignedLongType> mode = new ShapeInterpolationMode<>(source, () -> {}, null, null, null, null);
+		final CachedCellImg<UnsignedLongType, VolatileLongArray> rasterized = ShapeInterpolationMode.rasterizeInterpolatedMask(
+				interpolatedShape,
+				shapeSourceInterval,
+				source.getCanvasGrid(0));
+
+		mode.setInterpolatedMask(new MaskInfo<>(0, 0, new UnsignedLongType(NEW_LABEL)), rasterized);
+		generateCells(rasterized);
+		assertCellsCached(rasterized, true);
+
+		source.applyMask(source.getCurrentMask(), shapeSourceInterval, FOREGROUND_CHECK);
+		// wait for the mask to be applied and propagated
+		propagationExecutor.submit(() -> {}).get();
+		Assert.assertFalse(source.isApplyingMaskProperty().get());
+		Assert.assertNull(source.getCurrentMask());
+		assertCellsCached(rasterized, false);
+
+		// the canvas holds the interpolated shape
+		final RealRandomAccess<UnsignedLongType> expected = interpolatedShape.realRandomAccess();
+		final Cursor<UnsignedLongType> cursor = Views.flatIterable(source.getDataSource(0, 0)).localizingCursor();
+		while (cursor.hasNext())
+		{
+			cursor.fwd();
+			expected.setPosition(cursor);
+			Assert.assertEquals(expected.get().getIntegerLong() == 1 ? NEW_LABEL : 0, cursor.get().getIntegerLong());
+		}
+	}
+
+	private MaskedSource<UnsignedLongType, VolatileUnsignedLongType> maskedSource()
+	{
+		final RandomAccessibleInterval<UnsignedLongType> background = new CellImgFactory<>(new UnsignedLongType(), BLOCK_SIZE).create(DIMENSIONS);
+		final RandomAccessibleInterval<VolatileUnsignedLongType> volatileBackground = Converters.convert(
+				background,
+				(s, t) -> {
+					t.get().set(s);
+					t.setValid(true);
+				},
+				new VolatileUnsignedLongType());
+		final RandomAccessibleIntervalDataSource<UnsignedLongType, VolatileUnsignedLongType> source = new RandomAccessibleIntervalDataSource<>(
+				background,
+				volatileBackground,
+				new AffineTransform3D(),
+				NO_OP_INVALIDATE,
+				i -> new NearestNeighborInterpolatorFactory<>(),
+				i -> new NearestNeighborInterpolatorFactory<>(),
+				"labels");
+		return Masks.fromIntegerType(
+				source,
+				new SharedQueue(1),
+				newCanvasDirectory(),
+				this::newCanvasDirectory,
+				null,
+				propagationExecutor);
+	}
+
+	private String newCanvasDirectory()
+	{
+		try
+		{
+			return tmp.newFolder().getAbsolutePath();
+		} catch (final IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void assertCellsCached(final CachedCellImg<?, ?> img, final boolean cached) throws ExecutionException
+	{
+		final long[] cells = Grids.getIntersectingBlocks(shapeSourceInterval, img.getCellGrid());
+		Assert.assertTrue(cells.length > 1);
+		for (final long cell : cells)
+			Assert.assertEquals("Cell " + cell, cached, img.getCache().getIfPresent(cell) != null);
+	}
+
+	private static void generateCells(final CachedCellImg<?, ?> img) throws ExecutionException
+	{
+		for (long cell = 0; cell < Intervals.numElements(img.getCellGrid().getGridDimensions()); ++cell)
+			img.getCache().get(cell);
+	}
+
+	private static long valueAt(final RandomAccessibleInterval<UnsignedLongType> img, final long... position)
+	{
+		final RandomAccess<UnsignedLongType> access = img.randomAccess();
+		access.setPosition(position);
+		return access.get().getIntegerLong();
+	}
+
+	/**
+	 * Signed distance to the boundary of a disk, negative inside.
+	 */
+	private static ArrayImg<FloatType, FloatArray> diskDistanceTransform(final double centerX, final double centerY, final double radius)
+	{
+		final ArrayImg<FloatType, FloatArray> distanceTransform = ArrayImgs.floats(SECTION_SIZE);
+		final Cursor<FloatType> cursor = distanceTransform.localizingCursor();
+		while (cursor.hasNext())
+		{
+			cursor.fwd();
+			final double dx = cursor.getDoublePosition(0) - centerX;
+			final double dy = cursor.getDoublePosition(1) - centerY;
+			cursor.get().setReal(Math.sqrt(dx * dx + dy * dy) - radius);
+		}
+		return distanceTransform;
+	}
+
+}
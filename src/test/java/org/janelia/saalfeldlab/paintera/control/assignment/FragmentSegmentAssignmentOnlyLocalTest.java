@@ -0,0 +1,122 @@
+package org.janelia.saalfeldlab.paintera.control.assignment;
+
+import gnu.trove.map.hash.TLongLongHashMap;
+import org.janelia.saalfeldlab.paintera.control.assignment.action.AssignmentAction;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * Compare an assignment after random merges, detaches, and toggles of arbitrary actions against an assignment that
+ * applies only the enabled actions in order.
+ */
+public class FragmentSegmentAssignmentOnlyLocalTest
+{
+
+	private static final int NUM_FRAGMENTS = 50;
+
+	@Test
+	public void testToggleActions()
+	{
+		final TLongLongHashMap initialLut = new TLongLongHashMap();
+		for (long id = 0; id < 10; ++id)
+			initialLut.put(id, id - id % 3);
+		final FragmentSegmentAssignmentOnlyLocal assignment = new FragmentSegmentAssignmentOnlyLocal(
+				() -> new TLongLongHashMap(initialLut),
+				(keys, values) -> {});
+		final Random rng = new Random(100);
+		final long[] nextSegmentId = {1000};
+		final long[] numChangedFragments = {0};
+		assignment.addFragmentsChangedListener(changed -> numChangedFragments[0] += changed.length);
+
+		for (int i = 0; i < 1000; ++i)
+		{
+			final long id1 = rng.nextInt(NUM_FRAGMENTS);
+			final long id2 = rng.nextInt(NUM_FRAGMENTS);
+			switch (rng.nextInt(5))
+			{
+				case 0:
+				case 1:
+					assignment.getMergeAction(id1, id2, () -> nextSegmentId[0]++).ifPresent(assignment::apply);
+					break;
+				case 2:
+					assignment.getDetachAction(id1, id2).ifPresent(assignment::apply);
+					break;
+				case 3:
+				case 4:
+					// undo or redo any action
+					if (assignment.events().size() > 0)
+					{
+						final int index = rng.nextInt(assignment.events().size());
+						final boolean wasEnabled = assignment.events().get(index).getValue().get();
+						numChangedFragments[0] = 0;
+						assignment.events().get(index).getValue().set(!wasEnabled);
+						// untouched fragments must not be reported as changed
+						Assert.assertTrue(numChangedFragments[0] <= NUM_FRAGMENTS);
+					}
+					break;
+			}
+			if (rng.nextInt(5) == 0)
+				assertConsistent(assignment, initialLut);
+		}
+		assertConsistent(assignment, initialLut);
+	}
+
+	@Test
+	public void testManySmallPublishes()
+	{
+		// many merges that are published one by one stack up layers of the snapshot before they are folded into its base
+		final int numFragments = 20000;
+		final TLongLongHashMap initialLut = new TLongLongHashMap();
+		for (long id = 0; id < numFragments; id += 2)
+			initialLut.put(id, id + 1);
+		final FragmentSegmentAssignmentOnlyLocal assignment = new FragmentSegmentAssignmentOnlyLocal(
+				() -> new TLongLongHashMap(initialLut),
+				(keys, values) -> {});
+		final Random rng = new Random(100);
+		final long[] nextSegmentId = {numFragments};
+		for (int i = 0; i < 5000; ++i)
+		{
+			final long id1 = rng.nextInt(numFragments);
+			final long id2 = rng.nextInt(numFragments);
+			if (rng.nextInt(4) == 0)
+				assignment.getDetachAction(id1, id2).ifPresent(assignment::apply);
+			else
+				assignment.getMergeAction(id1, id2, () -> nextSegmentId[0]++).ifPresent(assignment::apply);
+		}
+
+		final FragmentSegmentAssignmentOnlyLocal expected = new FragmentSegmentAssignmentOnlyLocal(
+				() -> new TLongLongHashMap(initialLut),
+				(keys, values) -> {});
+		expected.apply(assignment.events().stream().map(p -> p.getKey()).collect(Collectors.toList()));
+		for (long id = 0; id < numFragments; ++id)
+			Assert.assertEquals(expected.getSegment(id), assignment.getSegment(id));
+	}
+
+	private static void assertConsistent(final FragmentSegmentAssignmentOnlyLocal assignment, final TLongLongHashMap initialLut)
+	{
+		final FragmentSegmentAssignmentOnlyLocal expected = new FragmentSegmentAssignmentOnlyLocal(
+				() -> new TLongLongHashMap(initialLut),
+				(keys, values) -> {});
+		final List<AssignmentAction> enabledActions = assignment
+				.events()
+				.stream()
+				.filter(p -> p.getValue().get())
+				.map(p -> p.getKey())
+				.collect(Collectors.toList());
+		expected.apply(enabledActions);
+
+		for (long id = 0; id < NUM_FRAGMENTS; ++id)
+		{
+			final long segment = expected.getSegment(id);
+			Assert.assertEquals(segment, assignment.getSegment(id));
+			Assert.assertTrue(assignment.getFragments(segment).contains(id));
+			Assert.assertEquals(expected.getFragments(segment), assignment.getFragments(segment));
+			Assert.assertTrue(assignment.isSegmentConsistent(segment, expected.getFragments(segment)));
+		}
+	}
+
+}
@@ -0,0 +1,138 @@
+package org.janelia.saalfeldlab.paintera.control.paint;
+
+import gnu.trove.list.array.TLongArrayList;
+import net.imglib2.Cursor;
+import net.imglib2.Point;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Intervals;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class BlockParallelFloodFillTest
+{
+
+	private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(4);
+
+	@AfterClass
+	public static void shutdown()
+	{
+		EXECUTOR.shutdown();
+	}
+
+	@Test
+	public void testSameAsSequentialFill() throws Exception
+	{
+		final long[] dimensions = {47, 35, 29};
+		final ArrayImg<UnsignedLongType, LongArray> labels = ArrayImgs.unsignedLongs(dimensions);
+		final Random rng = new Random(100);
+		// label 1 occupies more than the site percolation threshold: the filled component spans most blocks
+		for (final UnsignedLongType l : labels)
+			l.set(rng.nextDouble() < 0.6 ? 1 : 2);
+
+		final Point seed = new Point(20, 17, 14);
+		final RandomAccess<UnsignedLongType> seedAccess = labels.randomAccess();
+		seedAccess.setPosition(seed);
+		seedAccess.get().set(1);
+
+		final ArrayImg<UnsignedLongType, LongArray> expected = sequentialFill(labels, seed, 1);
+
+		for (final int[] blockSize : new int[][] {{1, 1, 1}, {8, 8, 8}, {5, 7, 3}, {64, 64, 64}})
+		{
+			final ArrayImg<UnsignedLongType, LongArray> filled = ArrayImgs.unsignedLongs(dimensions);
+			final BlockParallelFloodFill<UnsignedLongType> floodFill = new BlockParallelFloodFill<>(
+					labels,
+					filled,
+					new CellGrid(dimensions, blockSize),
+					l -> l.getIntegerLong() == 1);
+			floodFill.fill(seed, EXECUTOR).get();
+
+			Assert.assertArrayEquals(expected.update(null).getCurrentStorageArray(), filled.update(null).getCurrentStorageArray());
+
+			long numFilled = 0;
+			final long[] min = new long[3];
+			final long[] max = new long[3];
+			for (int d = 0; d < 3; ++d)
+			{
+				min[d] = Long.MAX_VALUE;
+				max[d] = Long.MIN_VALUE;
+			}
+			for (final Cursor<UnsignedLongType> c = expected.localizingCursor(); c.hasNext(); )
+				if (c.next().getIntegerLong() == 1)
+				{
+					++numFilled;
+					for (int d = 0; d < 3; ++d)
+					{
+						min[d] = Math.min(min[d], c.getLongPosition(d));
+						max[d] = Math.max(max[d], c.getLongPosition(d));
+					}
+				}
+			Assert.assertEquals(numFilled, floodFill.getNumFilledVoxels());
+			Assert.assertArrayEquals(min, Intervals.minAsLongArray(floodFill.getFilledInterval()));
+			Assert.assertArrayEquals(max, Intervals.maxAsLongArray(floodFill.getFilledInterval()));
+		}
+	}
+
+	@Test
+	public void testSeedDoesNotMatch() throws Exception
+	{
+		final long[] dimensions = {10, 10, 10};
+		final ArrayImg<UnsignedLongType, LongArray> labels = ArrayImgs.unsignedLongs(dimensions);
+		final ArrayImg<UnsignedLongType, LongArray> filled = ArrayImgs.unsignedLongs(dimensions);
+		final BlockParallelFloodFill<UnsignedLongType> floodFill = new BlockParallelFloodFill<>(
+				labels,
+				filled,
+				new CellGrid(dimensions, new int[] {4, 4, 4}),
+				l -> l.getIntegerLong() == 1);
+		floodFill.fill(new Point(3, 3, 3), EXECUTOR).get();
+		Assert.assertEquals(0, floodFill.getNumFilledVoxels());
+		Assert.assertEquals(0, floodFill.getNumTouchedBlocks());
+		Assert.assertNull(floodFill.getFilledInterval());
+	}
+
+	private static ArrayImg<UnsignedLongType, LongArray> sequentialFill(
+			final ArrayImg<UnsignedLongType, LongArray> labels,
+			final Point seed,
+			final long label)
+	{
+		final long[] dimensions = Intervals.dimensionsAsLongArray(labels);
+		final ArrayImg<UnsignedLongType, LongArray> filled = ArrayImgs.unsignedLongs(dimensions);
+		final RandomAccess<UnsignedLongType> labelAccess = labels.randomAccess();
+		final RandomAccess<UnsignedLongType> filledAccess = filled.randomAccess();
+		final TLongArrayList stack = new TLongArrayList();
+		final long[] position = new long[3];
+		seed.localize(position);
+		stack.add(IntervalIndexer.positionToIndex(position, dimensions));
+		while (!stack.isEmpty())
+		{
+			IntervalIndexer.indexToPosition(stack.removeAt(stack.size() - 1), dimensions, position);
+			if (!Intervals.contains(labels, new Point(position)))
+				continue;
+			labelAccess.setPosition(position);
+			filledAccess.setPosition(position);
+			if (labelAccess.get().getIntegerLong() != label || filledAccess.get().getIntegerLong() != 0)
+				continue;
+			filledAccess.get().set(1);
+			for (int d = 0; d < 3; ++d)
+				for (final long offset : new long[] {-1, 1})
+				{
+					position[d] += offset;
+					if (position[d] >= 0 && position[d] < dimensions[d])
+						stack.add(IntervalIndexer.positionToIndex(position, dimensions));
+					position[d] -= offset;
+				}
+		}
+		return filled;
+	}
+
+}
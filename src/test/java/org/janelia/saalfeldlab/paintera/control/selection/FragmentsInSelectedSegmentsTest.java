@@ -0,0 +1,83 @@
+package org.janelia.saalfeldlab.paintera.control.selection;
+
+import gnu.trove.set.hash.TLongHashSet;
+import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignmentOnlyLocal;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Compare incrementally updated {@link SelectedSegments} and {@link FragmentsInSelectedSegments} against segments and
+ * fragments that are re-generated from scratch after random merges, detaches, undos, redos, and selections.
+ */
+public class FragmentsInSelectedSegmentsTest
+{
+
+	private static final int NUM_FRAGMENTS = 50;
+
+	@Test
+	public void testIncrementalUpdates()
+	{
+		final FragmentSegmentAssignmentOnlyLocal assignment = new FragmentSegmentAssignmentOnlyLocal((keys, values) -> {});
+		final SelectedIds selectedIds = new SelectedIds();
+		final SelectedSegments selectedSegments = new SelectedSegments(selectedIds, assignment);
+		final FragmentsInSelectedSegments fragments = new FragmentsInSelectedSegments(selectedSegments);
+		final Random rng = new Random(100);
+		final long[] nextSegmentId = {NUM_FRAGMENTS};
+
+		for (int i = 0; i < 1000; ++i)
+		{
+			final long id1 = rng.nextInt(NUM_FRAGMENTS);
+			final long id2 = rng.nextInt(NUM_FRAGMENTS);
+			switch (rng.nextInt(7))
+			{
+				case 0:
+				case 1:
+					assignment.getMergeAction(id1, id2, () -> nextSegmentId[0]++).ifPresent(assignment::apply);
+					break;
+				case 2:
+					assignment.getDetachAction(id1, id2).ifPresent(assignment::apply);
+					break;
+				case 3:
+					selectedIds.activate(id1, id2);
+					break;
+				case 4:
+					selectedIds.activateAlso(id1);
+					break;
+				case 5:
+					selectedIds.deactivate(id1);
+					break;
+				case 6:
+					// undo or redo any action
+					if (assignment.events().size() > 0)
+						assignment.events().get(rng.nextInt(assignment.events().size())).getValue().set(rng.nextBoolean());
+					break;
+			}
+			// only look at the fragments occasionally to accumulate changes
+			if (rng.nextInt(3) == 0)
+				assertConsistent(assignment, selectedIds, selectedSegments, fragments);
+		}
+		assertConsistent(assignment, selectedIds, selectedSegments, fragments);
+	}
+
+	private static void assertConsistent(
+			final FragmentSegmentAssignmentOnlyLocal assignment,
+			final SelectedIds selectedIds,
+			final SelectedSegments selectedSegments,
+			final FragmentsInSelectedSegments fragments)
+	{
+		final TLongHashSet expectedSegments = new TLongHashSet();
+		for (final long id : selectedIds.getActiveIdsCopyAsArray())
+			expectedSegments.add(assignment.getSegment(id));
+		final TLongHashSet expectedFragments = new TLongHashSet();
+		for (final long segment : expectedSegments.toArray())
+			expectedFragments.addAll(assignment.getFragments(segment));
+
+		Assert.assertEquals(expectedSegments, new TLongHashSet(selectedSegments.getSelectedSegmentsCopyAsArray()));
+		Assert.assertEquals(expectedFragments, new TLongHashSet(fragments.getFragments()));
+		for (long id = 0; id < NUM_FRAGMENTS; ++id)
+			Assert.assertEquals(expectedFragments.contains(id), fragments.contains(id));
+	}
+
+}
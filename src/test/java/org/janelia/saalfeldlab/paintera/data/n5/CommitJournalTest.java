@@ -0,0 +1,339 @@
+package org.janelia.saalfeldlab.paintera.data.n5;
+
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.label.Label;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Pair;
+import net.imglib2.view.Views;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.LongArrayDataBlock;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.janelia.saalfeldlab.paintera.data.mask.persist.PersistCanvas.BlockDiff;
+import org.janelia.saalfeldlab.paintera.data.mask.persist.UnableToPersistCanvas;
+import org.janelia.saalfeldlab.util.n5.N5Helpers;
+import org.janelia.saalfeldlab.util.n5.N5TestUtil;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+public class CommitJournalTest
+{
+
+	private static final long[] DIMENSIONS = {10, 12, 14};
+
+	private static final int[] BLOCK_SIZE = {5, 6, 7};
+
+	private static final CellGrid GRID = new CellGrid(DIMENSIONS, BLOCK_SIZE);
+
+	private static final long BACKGROUND = 1;
+
+	private static final String DATASET = "labels";
+
+	private static final String PAINTERA_DATASET = "paintera-labels";
+
+	@Rule
+	public final TemporaryFolder tmp = new TemporaryFolder();
+
+	private Path directory;
+
+	private ArrayImg<UnsignedLongType, LongArray> canvas;
+
+	private long[] blocks;
+
+	@Before
+	public void setUp()
+	{
+		directory = tmp.getRoot().toPath().resolve("journal");
+		canvas = ArrayImgs.unsignedLongs(DIMENSIONS);
+		final Random rng = new Random(100);
+		canvas.forEach(px -> px.setInteger(rng.nextDouble() > 0.5 ? 2 + rng.nextInt(50) : Label.INVALID));
+		blocks = new long[(int) Intervals.numElements(GRID.getGridDimensions())];
+		Arrays.setAll(blocks, i -> i);
+	}
+
+	@Test
+	public void testTornRecordIsDropped() throws IOException
+	{
+		final CommitJournal journal = begin();
+		journal.blockWritten(0, 1, blockDiff(3, 4));
+		journal.blockWritten(0, 5, blockDiff(6));
+		journal.lookupUpdateStarted(0);
+		journal.close();
+
+		// crash while appending the last record
+		truncateLog(3);
+
+		final CommitJournal reopened = CommitJournal.open(directory);
+		Assert.assertNotNull(reopened);
+		Assert.assertArrayEquals(blocks, reopened.blocks());
+		Assert.assertArrayEquals(GRID.getImgDimensions(), reopened.canvasGrid().getImgDimensions());
+		Assert.assertTrue(reopened.isBlockWritten(0, 1));
+		Assert.assertTrue(reopened.isBlockWritten(0, 5));
+		Assert.assertFalse(reopened.isBlockWritten(0, 2));
+		Assert.assertArrayEquals(new long[] {3, 4}, sorted(reopened.getBlockDiff(0, 1).getNewUniqueIds()));
+		Assert.assertFalse(reopened.isLookupUpdateStarted(0));
+		assertEquals(canvas, reopened.canvas());
+
+		// records appended after re-opening follow the last valid record
+		reopened.lookupUpdateStarted(0);
+		reopened.close();
+		final CommitJournal reopenedAgain = CommitJournal.open(directory);
+		Assert.assertTrue(reopenedAgain.isLookupUpdateStarted(0));
+		Assert.assertTrue(reopenedAgain.isBlockWritten(0, 5));
+		reopenedAgain.finish();
+		Assert.assertFalse(Files.exists(directory));
+	}
+
+	@Test
+	public void testTornHeaderDiscardsJournal() throws IOException
+	{
+		begin().close();
+		truncateLog(1);
+		Assert.assertNull(CommitJournal.open(directory));
+		Assert.assertFalse(Files.exists(directory));
+	}
+
+	@Test
+	public void testResume() throws IOException, UnableToPersistCanvas
+	{
+		final N5FSWriter container = createBackground();
+		final DatasetAttributes attributes = container.getDatasetAttributes(DATASET);
+
+		// interrupted after the first two blocks were written
+		final CommitJournal journal = begin();
+		for (final long block : new long[] {0, 1})
+		{
+			journal.backupBlock(0, block, container, DATASET, attributes, gridPosition(block));
+			writeBlock(container, attributes, block, canvasBlock(block));
+			journal.blockWritten(0, block, new BlockDiff());
+		}
+		journal.close();
+		truncateLog(5);
+
+		final CommitCanvasN5 commit = new CommitCanvasN5(container, DATASET);
+		commit.setJournalDirectory(() -> directory);
+		Assert.assertTrue(commit.hasIncompleteCommit());
+		commit.resumeIncompleteCommit((level, message) -> {});
+		Assert.assertFalse(commit.hasIncompleteCommit());
+
+		final RandomAccessibleInterval<UnsignedLongType> labels = N5Utils.open(container, DATASET);
+		for (final Pair<UnsignedLongType, UnsignedLongType> pair : Views.interval(Views.pair(canvas, labels), labels))
+		{
+			final long expected = pair.getA().getIntegerLong() == Label.INVALID ? BACKGROUND : pair.getA().getIntegerLong();
+			Assert.assertEquals(expected, pair.getB().getIntegerLong());
+		}
+	}
+
+	@Test
+	public void testRollback() throws IOException, UnableToPersistCanvas
+	{
+		final N5FSWriter container = createBackground();
+		final DatasetAttributes attributes = container.getDatasetAttributes(DATASET);
+
+		// interrupted while writing the third block, after it was backed up
+		final CommitJournal journal = begin();
+		for (final long block : new long[] {0, 3, 6})
+		{
+			journal.backupBlock(0, block, container, DATASET, attributes, gridPosition(block));
+			writeBlock(container, attributes, block, canvasBlock(block));
+			journal.blockWritten(0, block, new BlockDiff());
+		}
+		journal.close();
+		truncateLog(5);
+
+		final CommitCanvasN5 commit = new CommitCanvasN5(container, DATASET);
+		commit.setJournalDirectory(() -> directory);
+		Assert.assertTrue(commit.hasIncompleteCommit());
+		commit.rollbackIncompleteCommit();
+		Assert.assertFalse(commit.hasIncompleteCommit());
+
+		final RandomAccessibleInterval<UnsignedLongType> labels = N5Utils.open(container, DATASET);
+		for (final UnsignedLongType label : Views.flatIterable(labels))
+			Assert.assertEquals(BACKGROUND, label.getIntegerLong());
+	}
+
+	@Test
+	public void testRollbackMultiscalePainteraDataset() throws IOException, UnableToPersistCanvas
+	{
+		final N5FSWriter container = createPainteraBackground();
+		final String s0 = PAINTERA_DATASET + "/data/s0";
+		final DatasetAttributes attributes = container.getDatasetAttributes(s0);
+
+		// rolling back a commit that did not write any block yet
+		begin().close();
+		final CommitCanvasN5 commit = new CommitCanvasN5(container, PAINTERA_DATASET);
+		commit.setJournalDirectory(() -> directory);
+		Assert.assertTrue(commit.supportsLabelBlockLookupUpdate());
+		Assert.assertTrue(commit.hasIncompleteCommit());
+		commit.rollbackIncompleteCommit();
+		Assert.assertFalse(commit.hasIncompleteCommit());
+
+		// cancelled after some, but not all, blocks at level 0 were written, before any block at level 1
+		final CommitJournal journal = begin();
+		for (final long block : new long[] {0, 3})
+		{
+			journal.backupBlock(0, block, container, s0, attributes, gridPosition(block));
+			writeBlock(container, s0, attributes, block, canvasBlock(block));
+			journal.blockWritten(0, block, blockDiff(2, 3));
+		}
+		journal.close();
+
+		Assert.assertTrue(commit.hasIncompleteCommit());
+		commit.rollbackIncompleteCommit();
+		Assert.assertFalse(commit.hasIncompleteCommit());
+
+		final RandomAccessibleInterval<UnsignedLongType> labels = N5Utils.open(container, s0);
+		for (final UnsignedLongType label : Views.flatIterable(labels))
+			Assert.assertEquals(BACKGROUND, label.getIntegerLong());
+	}
+
+	private CommitJournal begin() throws IOException
+	{
+		return CommitJournal.begin(directory, canvas, GRID, blocks, (snapshotBlocks, task) -> {
+			for (final long block : snapshotBlocks)
+				task.run(block);
+		});
+	}
+
+	private void truncateLog(final long numBytes) throws IOException
+	{
+		try (final FileChannel log = FileChannel.open(directory.resolve("journal"), StandardOpenOption.WRITE))
+		{
+			log.truncate(log.size() - numBytes);
+		}
+	}
+
+	private N5FSWriter createBackground() throws IOException
+	{
+		final N5FSWriter container = N5TestUtil.fileSystemWriterAtTmpDir();
+		writeBackground(container, DATASET);
+		return container;
+	}
+
+	private N5FSWriter createPainteraBackground() throws IOException
+	{
+		final N5FSWriter container = N5TestUtil.fileSystemWriterAtTmpDir();
+		final String dataGroup = PAINTERA_DATASET + "/data";
+		final String uniqueLabelsGroup = PAINTERA_DATASET + "/unique-labels";
+		container.createGroup(dataGroup);
+		container.createGroup(uniqueLabelsGroup);
+		container.setAttribute(PAINTERA_DATASET, N5Helpers.PAINTERA_DATA_KEY, Collections.singletonMap("type", "label"));
+		container.setAttribute(dataGroup, N5Helpers.MULTI_SCALE_KEY, true);
+		container.setAttribute(uniqueLabelsGroup, N5Helpers.MULTI_SCALE_KEY, true);
+
+		final long[] scaledDimensions = DIMENSIONS.clone();
+		for (int level = 0; level < 2; ++level)
+		{
+			final String levelDataset = dataGroup + "/s" + level;
+			final String uniqueLabelsDataset = uniqueLabelsGroup + "/s" + level;
+			container.createDataset(uniqueLabelsDataset, new DatasetAttributes(scaledDimensions, BLOCK_SIZE, DataType.UINT64, new GzipCompression()));
+			if (level == 0)
+				writeBackground(container, levelDataset);
+			else
+			{
+				container.createDataset(levelDataset, new DatasetAttributes(scaledDimensions, BLOCK_SIZE, DataType.UINT64, new GzipCompression()));
+				container.setAttribute(levelDataset, N5Helpers.DOWNSAMPLING_FACTORS_KEY, new double[] {2.0, 2.0, 2.0});
+			}
+			Arrays.setAll(scaledDimensions, d -> (scaledDimensions[d] + 1) / 2);
+		}
+		return container;
+	}
+
+	private void writeBackground(final N5FSWriter container, final String dataset) throws IOException
+	{
+		final DatasetAttributes attributes = new DatasetAttributes(DIMENSIONS, BLOCK_SIZE, DataType.UINT64, new GzipCompression());
+		container.createDataset(dataset, attributes);
+		for (final long block : blocks)
+		{
+			final long[] data = new long[numElements(block)];
+			Arrays.fill(data, BACKGROUND);
+			writeBlock(container, dataset, attributes, block, data);
+		}
+	}
+
+	private long[] canvasBlock(final long block)
+	{
+		final long[] min = new long[GRID.numDimensions()];
+		final int[] size = new int[GRID.numDimensions()];
+		GRID.getCellDimensions(block, min, size);
+		final long[] max = new long[min.length];
+		Arrays.setAll(max, d -> min[d] + size[d] - 1);
+		final long[] data = new long[numElements(block)];
+		int i = 0;
+		for (final UnsignedLongType px : Views.flatIterable(Views.interval(canvas, min, max)))
+			data[i++] = px.getIntegerLong() == Label.INVALID ? BACKGROUND : px.getIntegerLong();
+		return data;
+	}
+
+	private static void writeBlock(final N5FSWriter container, final DatasetAttributes attributes, final long block, final long[] data) throws IOException
+	{
+		writeBlock(container, DATASET, attributes, block, data);
+	}
+
+	private static void writeBlock(
+			final N5FSWriter container,
+			final String dataset,
+			final DatasetAttributes attributes,
+			final long block,
+			final long[] data) throws IOException
+	{
+		final int[] size = new int[GRID.numDimensions()];
+		GRID.getCellDimensions(block, new long[GRID.numDimensions()], size);
+		container.writeBlock(dataset, attributes, new LongArrayDataBlock(size, gridPosition(block), data));
+	}
+
+	private static long[] gridPosition(final long block)
+	{
+		final long[] position = new long[GRID.numDimensions()];
+		GRID.getCellGridPositionFlat(block, position);
+		return position;
+	}
+
+	private static int numElements(final long block)
+	{
+		final int[] size = new int[GRID.numDimensions()];
+		GRID.getCellDimensions(block, new long[GRID.numDimensions()], size);
+		return size[0] * size[1] * size[2];
+	}
+
+	private static BlockDiff blockDiff(final long... newIds)
+	{
+		final BlockDiff blockDiff = new BlockDiff();
+		for (final long id : newIds)
+			blockDiff.addToNewUniqueLabels(id);
+		return blockDiff;
+	}
+
+	private static long[] sorted(final long[] values)
+	{
+		Arrays.sort(values);
+		return values;
+	}
+
+	private static void assertEquals(final RandomAccessibleInterval<UnsignedLongType> expected, final RandomAccessibleInterval<UnsignedLongType> actual)
+	{
+		Assert.assertArrayEquals(Intervals.dimensionsAsLongArray(expected), Intervals.dimensionsAsLongArray(actual));
+		for (final Pair<UnsignedLongType, UnsignedLongType> pair : Views.interval(Views.pair(expected, actual), expected))
+			Assert.assertEquals(pair.getA().getIntegerLong(), pair.getB().getIntegerLong());
+	}
+
+}
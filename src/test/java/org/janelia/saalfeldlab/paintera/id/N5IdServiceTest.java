@@ -0,0 +1,131 @@
+package org.janelia.saalfeldlab.paintera.id;
+
+import gnu.trove.set.hash.TLongHashSet;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.util.n5.N5TestUtil;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class N5IdServiceTest
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	private static final String DATASET = "labels";
+
+	@Test
+	public void testLeases() throws IOException
+	{
+		final N5Writer writer = writerWithMaxId(10);
+		final N5IdService idService = new N5IdService(writer, DATASET, 10, 100);
+
+		Assert.assertEquals(11, idService.next());
+		Assert.assertEquals(110, maxId(writer));
+		for (long id = 12; id <= 260; ++id)
+			Assert.assertEquals(id, idService.next());
+		Assert.assertArrayEquals(new long[] {261, 262, 263}, idService.next(3));
+		Assert.assertEquals(310, maxId(writer));
+
+		idService.flush();
+		Assert.assertEquals(263, maxId(writer));
+		Assert.assertEquals(264, new N5IdService(writer, DATASET, maxId(writer), 100).next());
+
+		idService.invalidate(1000);
+		Assert.assertTrue(idService.isInvalidated(1000));
+		Assert.assertTrue(maxId(writer) > 1000);
+		Assert.assertEquals(1002, idService.next());
+	}
+
+	@Test
+	public void testSharedContainer() throws IOException, InterruptedException, ExecutionException
+	{
+		final N5Writer writer = writerWithMaxId(0);
+		final int numIdsPerTask = 2000;
+		final List<N5IdService> idServices = new ArrayList<>();
+		for (int i = 0; i < 3; ++i)
+			idServices.add(new N5IdService(writer, DATASET, 0, 7 + i));
+
+		final ExecutorService es = Executors.newFixedThreadPool(2 * idServices.size());
+		final List<Future<long[]>> futures = new ArrayList<>();
+		for (final N5IdService idService : idServices)
+		{
+			futures.add(es.submit(() -> idService.next(numIdsPerTask)));
+			futures.add(es.submit(() -> {
+				final long[] ids = new long[numIdsPerTask];
+				for (int i = 0; i < ids.length; ++i)
+					ids[i] = idService.next();
+				return ids;
+			}));
+		}
+		es.shutdown();
+
+		final TLongHashSet ids = new TLongHashSet();
+		for (final Future<long[]> future : futures)
+			for (final long id : future.get())
+				Assert.assertTrue("Duplicate id " + id, ids.add(id));
+		Assert.assertEquals(futures.size() * numIdsPerTask, ids.size());
+		Assert.assertFalse(ids.contains(0));
+
+		idServices.forEach(IdService::flush);
+		LOG.debug("Handed out {} ids up to maxId={}", ids.size(), maxId(writer));
+		Assert.assertTrue(maxId(writer) >= IdService.max(ids.toArray()));
+	}
+
+	@Test
+	public void testLeftoverLockFile() throws IOException
+	{
+		// left behind by an instance that was killed while holding the lock
+		final N5Writer writer = writerWithMaxId(10);
+		final Path lockFile = Paths.get(((N5FSWriter) writer).getBasePath(), DATASET, N5IdService.LOCK_FILE);
+		Files.createFile(lockFile);
+
+		final N5IdService idService = new N5IdService(writer, DATASET, 10, 100);
+		Assert.assertEquals(11, idService.next());
+		Assert.assertEquals(110, maxId(writer));
+		idService.flush();
+		Assert.assertEquals(11, maxId(writer));
+		Assert.assertTrue(Files.exists(lockFile));
+	}
+
+	@Test
+	public void testUnsignedInvalidation() throws IOException
+	{
+		final N5IdService idService = new N5IdService(writerWithMaxId(0), DATASET, 0, 100);
+		Assert.assertFalse(idService.isInvalidated(-1L));
+
+		// ids are uint64: invalidating an id at or above 2^63 invalidates all smaller ids
+		idService.invalidate(Long.MAX_VALUE);
+		Assert.assertTrue(idService.isInvalidated(5));
+		Assert.assertTrue(idService.isInvalidated(Long.MAX_VALUE));
+		Assert.assertFalse(idService.isInvalidated(-1L));
+	}
+
+	private static N5Writer writerWithMaxId(final long maxId) throws IOException
+	{
+		final N5Writer writer = N5TestUtil.fileSystemWriterAtTmpDir(!LOG.isDebugEnabled());
+		writer.createGroup(DATASET);
+		writer.setAttribute(DATASET, N5IdService.MAX_ID_KEY, maxId);
+		return writer;
+	}
+
+	private static long maxId(final N5Writer writer) throws IOException
+	{
+		return writer.getAttribute(DATASET, N5IdService.MAX_ID_KEY, Long.class);
+	}
+
+}
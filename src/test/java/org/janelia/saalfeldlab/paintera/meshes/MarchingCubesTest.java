@@ -0,0 +1,125 @@
+package org.janelia.saalfeldlab.paintera.meshes;
+
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Pair;
+import net.imglib2.view.Views;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compare generated meshes against golden meshes of the original, cursor based implementation: number of vertices and
+ * indices, and {@link Arrays#hashCode(float[])}/{@link Arrays#hashCode(int[])} of vertices and indices.
+ */
+public class MarchingCubesTest
+{
+
+	private static final class GoldenMesh
+	{
+		final int numVertexFloats;
+
+		final int numIndices;
+
+		final int verticesHash;
+
+		final int indicesHash;
+
+		GoldenMesh(final int numVertexFloats, final int numIndices, final int verticesHash, final int indicesHash)
+		{
+			this.numVertexFloats = numVertexFloats;
+			this.numIndices = numIndices;
+			this.verticesHash = verticesHash;
+			this.indicesHash = indicesHash;
+		}
+	}
+
+	@Test
+	public void testSphere()
+	{
+		final ArrayImg<BitType, LongArray> mask = ArrayImgs.bits(40, 40, 40);
+		final long[] position = new long[3];
+		final Cursor<BitType> cursor = mask.localizingCursor();
+		while (cursor.hasNext())
+		{
+			cursor.fwd();
+			cursor.localize(position);
+			final double dx = position[0] - 15.5, dy = position[1] - 17.0, dz = position[2] - 14.25;
+			cursor.get().set(dx * dx + dy * dy + dz * dz < 100.0);
+		}
+		assertGolden(mask, new FinalInterval(32, 32, 32), new AffineTransform3D(), new GoldenMesh(5628, 11244, 1438869633, 1878809793));
+	}
+
+	@Test
+	public void testRandomWithOffsetAndTransform()
+	{
+		final ArrayImg<BitType, LongArray> mask = random(new long[] {30, 27, 35}, 0.3, 1);
+		final AffineTransform3D transform = new AffineTransform3D();
+		transform.set(
+				2.0, 0.1, 0.0, -3.5,
+				0.0, 1.5, 0.2, 7.25,
+				0.3, 0.0, 4.0, 0.5);
+		assertGolden(mask, Intervals.createMinSize(3, 2, 5, 20, 17, 23), transform, new GoldenMesh(43089, 71565, -619003266, -750986101));
+	}
+
+	@Test
+	public void testFullBlockTouchesInterval()
+	{
+		final ArrayImg<BitType, LongArray> mask = ArrayImgs.bits(10, 12, 14);
+		mask.forEach(BitType::setOne);
+		assertGolden(mask, new FinalInterval(10, 12, 14), new AffineTransform3D(), new GoldenMesh(2568, 5124, 374288129, -717871986));
+	}
+
+	@Test
+	public void testManySlabs()
+	{
+		final ArrayImg<BitType, LongArray> mask = random(new long[] {70, 40, 90}, 0.5, 2);
+		assertGolden(mask, new FinalInterval(70, 40, 90), new AffineTransform3D(), new GoldenMesh(1151868, 2437344, -1490438015, -1990988707));
+	}
+
+	@Test
+	public void testEmpty()
+	{
+		final ArrayImg<BitType, LongArray> mask = ArrayImgs.bits(8, 8, 8);
+		final Pair<float[], int[]> mesh = new MarchingCubes<>(Views.extendZero(mask), mask, new AffineTransform3D()).generateIndexedMesh();
+		Assert.assertEquals(0, mesh.getA().length);
+		Assert.assertEquals(0, mesh.getB().length);
+	}
+
+	private static void assertGolden(
+			final RandomAccessibleInterval<BitType> mask,
+			final Interval interval,
+			final AffineTransform3D transform,
+			final GoldenMesh golden)
+	{
+		for (final ForkJoinPool pool : new ForkJoinPool[] {new ForkJoinPool(1), new ForkJoinPool(4)})
+		{
+			final Pair<float[], int[]> mesh = new MarchingCubes<>(Views.extendZero(mask), interval, transform, pool).generateIndexedMesh();
+			Assert.assertEquals(golden.numVertexFloats, mesh.getA().length);
+			Assert.assertEquals(golden.numIndices, mesh.getB().length);
+			Assert.assertEquals(golden.verticesHash, Arrays.hashCode(mesh.getA()));
+			Assert.assertEquals(golden.indicesHash, Arrays.hashCode(mesh.getB()));
+			pool.shutdown();
+		}
+	}
+
+	private static ArrayImg<BitType, LongArray> random(final long[] dimensions, final double probability, final long seed)
+	{
+		final ArrayImg<BitType, LongArray> mask = ArrayImgs.bits(dimensions);
+		final Random rng = new Random(seed);
+		mask.forEach(b -> b.set(rng.nextDouble() < probability));
+		return mask;
+	}
+
+}
@@ -0,0 +1,74 @@
+package org.janelia.saalfeldlab.paintera.meshes;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MeshWelderTest
+{
+
+	@Test
+	public void testWeldAcrossBlocks()
+	{
+		// two triangles of a quad in neighboring blocks, sharing the edge (1, 0, 0) - (1, 1, 0)
+		final PainteraTriangleMesh left = new PainteraTriangleMesh(
+				new float[] {0, 0, 0, 1, 0, 0, 1, 1, 0},
+				new float[] {0, 0, 1, 0, 0, 1, 0, 0, 1});
+		final PainteraTriangleMesh right = new PainteraTriangleMesh(
+				new float[] {1, 0, 0, 2, 0, 0, 1, 1, -0.0f},
+				new float[] {0, 0, 1, 0, 0, 1, 0, 0, 1});
+
+		final MeshWelder welder = new MeshWelder();
+		welder.add(left);
+		welder.add(right);
+
+		Assert.assertEquals(4, welder.numVertices());
+		Assert.assertEquals(2, welder.numTriangles());
+		final PainteraTriangleMesh mesh = welder.mesh();
+		Assert.assertArrayEquals(new float[] {0, 0, 0, 1, 0, 0, 1, 1, 0, 2, 0, 0}, mesh.getVertices(), 0.0f);
+		Assert.assertArrayEquals(new int[] {0, 1, 2, 1, 3, 2}, mesh.getIndices());
+		for (int n = 0; n < mesh.getNormals().length; n += 3)
+			Assert.assertArrayEquals(new float[] {0, 0, 1}, new float[] {mesh.getNormals()[n], mesh.getNormals()[n + 1], mesh.getNormals()[n + 2]}, 1e-6f);
+	}
+
+	@Test
+	public void testDropDegenerateTriangles()
+	{
+		final PainteraTriangleMesh indexed = new PainteraTriangleMesh(
+				new float[] {0, 0, 0, 1, 0, 0, 1, 0, 0, 0, 1, 0},
+				new float[] {0, 0, 1, 0, 0, 1, 0, 0, 1, 0, 0, 1},
+				new int[] {0, 1, 2, 0, 1, 3});
+
+		final MeshWelder welder = new MeshWelder(1);
+		welder.add(indexed);
+
+		Assert.assertEquals(3, welder.numVertices());
+		Assert.assertEquals(1, welder.numTriangles());
+		Assert.assertArrayEquals(new int[] {0, 1, 2}, welder.mesh().getIndices());
+	}
+
+	@Test
+	public void testGrow()
+	{
+		final int numTriangles = 10000;
+		final float[] vertices = new float[numTriangles * 9];
+		for (int t = 0, k = 0; t < numTriangles; ++t)
+		{
+			vertices[k++] = t;
+			vertices[k++] = 0;
+			vertices[k++] = 0;
+			vertices[k++] = t + 1;
+			vertices[k++] = 0;
+			vertices[k++] = 0;
+			vertices[k++] = t;
+			vertices[k++] = 1;
+			vertices[k++] = 0;
+		}
+		final MeshWelder welder = new MeshWelder(16);
+		welder.add(new PainteraTriangleMesh(vertices, new float[vertices.length]));
+
+		// (t, 0, 0) is shared by triangles t - 1 and t
+		Assert.assertEquals(2 * numTriangles + 1, welder.numVertices());
+		Assert.assertEquals(numTriangles, welder.numTriangles());
+	}
+
+}
@@ -0,0 +1,144 @@
+package org.janelia.saalfeldlab.paintera.meshes;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import net.imglib2.util.Pair;
+import net.imglib2.util.ValuePair;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SimplifyTest
+{
+
+	private static final int GRID_SIZE = 24;
+
+	@Test
+	public void testTriangleBudget()
+	{
+		final Pair<float[], int[]> grid = heightField(GRID_SIZE);
+		final int numTriangles = grid.getB().length / 3;
+		for (final double reduction : new double[] {0.25, 0.5, 0.75})
+		{
+			final Pair<float[], int[]> simplified = Simplify.simplify(grid.getA(), grid.getB(), reduction);
+			final int budget = (int) Math.ceil(numTriangles * (1.0 - reduction));
+			Assert.assertTrue(
+					String.format("%d triangles exceed budget %d for reduction %f", simplified.getB().length / 3, budget, reduction),
+					simplified.getB().length / 3 <= budget);
+			Assert.assertEquals(0, simplified.getA().length % 3);
+			for (final int index : simplified.getB())
+				Assert.assertTrue(index >= 0 && index < simplified.getA().length / 3);
+		}
+	}
+
+	@Test
+	public void testNoReduction()
+	{
+		final Pair<float[], int[]> grid = heightField(4);
+		final Pair<float[], int[]> simplified = Simplify.simplify(grid.getA(), grid.getB(), 0.0);
+		Assert.assertSame(grid.getA(), simplified.getA());
+		Assert.assertSame(grid.getB(), simplified.getB());
+	}
+
+	@Test
+	public void testBoundaryEdgesLocked()
+	{
+		final Pair<float[], int[]> grid = heightField(GRID_SIZE);
+		final Pair<float[], int[]> simplified = Simplify.simplify(grid.getA(), grid.getB(), 0.75);
+		Assert.assertEquals(boundaryEdges(grid.getA(), grid.getB()), boundaryEdges(simplified.getA(), simplified.getB()));
+	}
+
+	@Test
+	public void testNoNormalFlips()
+	{
+		// every triangle of the height field faces up, and so should every triangle of the simplified mesh
+		final Pair<float[], int[]> grid = heightField(GRID_SIZE);
+		final Pair<float[], int[]> simplified = Simplify.simplify(grid.getA(), grid.getB(), 0.9);
+		final float[] vertices = simplified.getA();
+		final int[] indices = simplified.getB();
+		Assert.assertTrue(indices.length < grid.getB().length);
+		for (int t = 0; t < indices.length; t += 3)
+			Assert.assertTrue("Triangle " + t / 3 + " is flipped", normalZ(vertices, indices[t], indices[t + 1], indices[t + 2]) > 0);
+	}
+
+	@Test
+	public void testTargetReductionAtScaleLevel()
+	{
+		Assert.assertEquals(0.0, Simplify.targetReductionAtScaleLevel(0.5, 0), 0.0);
+		Assert.assertEquals(0.5, Simplify.targetReductionAtScaleLevel(0.5, 1), 0.0);
+		Assert.assertEquals(0.5, Simplify.targetReductionAtScaleLevel(0.5, 3), 0.0);
+	}
+
+	/**
+	 * Open, smoothly bumped height field over {@code [0, size]^2} with counter-clockwise triangles seen from above.
+	 */
+	private static Pair<float[], int[]> heightField(final int size)
+	{
+		final int numVertices = (size + 1) * (size + 1);
+		final float[] vertices = new float[3 * numVertices];
+		for (int y = 0, k = 0; y <= size; ++y)
+			for (int x = 0; x <= size; ++x)
+			{
+				vertices[k++] = x;
+				vertices[k++] = y;
+				vertices[k++] = (float) (0.5 * Math.sin(x * Math.PI / size) * Math.sin(y * Math.PI / size));
+			}
+		final int[] indices = new int[6 * size * size];
+		for (int y = 0, k = 0; y < size; ++y)
+			for (int x = 0; x < size; ++x)
+			{
+				final int v00 = y * (size + 1) + x;
+				final int v10 = v00 + 1;
+				final int v01 = v00 + size + 1;
+				final int v11 = v01 + 1;
+				indices[k++] = v00;
+				indices[k++] = v10;
+				indices[k++] = v11;
+				indices[k++] = v00;
+				indices[k++] = v11;
+				indices[k++] = v01;
+			}
+		return new ValuePair<>(vertices, indices);
+	}
+
+	/**
+	 * @return edges that belong to a single triangle, as sorted pairs of vertex coordinates
+	 */
+	private static Set<String> boundaryEdges(final float[] vertices, final int[] indices)
+	{
+		final Map<String, Integer> counts = new HashMap<>();
+		for (int t = 0; t < indices.length; t += 3)
+			for (int e = 0; e < 3; ++e)
+				counts.merge(edge(vertices, indices[t + e], indices[t + (e + 1) % 3]), 1, Integer::sum);
+		final Set<String> boundary = new HashSet<>();
+		counts.forEach((edge, count) -> {
+			if (count == 1)
+				boundary.add(edge);
+		});
+		return boundary;
+	}
+
+	private static String edge(final float[] vertices, final int vertex1, final int vertex2)
+	{
+		final String p1 = position(vertices, vertex1);
+		final String p2 = position(vertices, vertex2);
+		return p1.compareTo(p2) < 0 ? p1 + "-" + p2 : p2 + "-" + p1;
+	}
+
+	private static String position(final float[] vertices, final int vertex)
+	{
+		return vertices[3 * vertex] + "," + vertices[3 * vertex + 1] + "," + vertices[3 * vertex + 2];
+	}
+
+	private static double normalZ(final float[] vertices, final int v1, final int v2, final int v3)
+	{
+		final double ax = vertices[3 * v2] - vertices[3 * v1];
+		final double ay = vertices[3 * v2 + 1] - vertices[3 * v1 + 1];
+		final double bx = vertices[3 * v3] - vertices[3 * v1];
+		final double by = vertices[3 * v3 + 1] - vertices[3 * v1 + 1];
+		return ax * by - ay * bx;
+	}
+
+}
@@ -0,0 +1,155 @@
+package org.janelia.saalfeldlab.paintera.meshes.cache;
+
+import gnu.trove.set.hash.TLongHashSet;
+import net.imglib2.cache.CacheLoader;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.util.IntervalIndexer;
+import org.janelia.saalfeldlab.paintera.data.n5.CommitCanvasN5;
+import org.janelia.saalfeldlab.paintera.meshes.PainteraTriangleMesh;
+import org.janelia.saalfeldlab.paintera.meshes.ShapeKey;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PersistentMeshCacheTest
+{
+
+	private static final CellGrid GRID = new CellGrid(new long[] {40, 40, 40}, new int[] {10, 10, 10});
+
+	private static final PainteraTriangleMesh MESH = new PainteraTriangleMesh(
+			new float[] {0, 0, 0, 1, 0, 0, 0, 1, 0},
+			new float[] {0, 0, 1, 0, 0, 1, 0, 0, 1},
+			new int[] {0, 1, 2});
+
+	@Rule
+	public final TemporaryFolder tmp = new TemporaryFolder();
+
+	private Path meshes;
+
+	private Path blocks;
+
+	private final AtomicInteger numGenerated = new AtomicInteger();
+
+	private final CacheLoader<ShapeKey<TLongHashSet>, PainteraTriangleMesh> generator = key -> {
+		numGenerated.incrementAndGet();
+		return MESH;
+	};
+
+	@Before
+	public void setUp() throws IOException
+	{
+		meshes = tmp.newFolder("meshes").toPath();
+		blocks = tmp.newFolder("blocks").toPath();
+		for (long z = 0; z < 4; ++z)
+			for (long y = 0; y < 4; ++y)
+				for (long x = 0; x < 4; ++x)
+					Files.createFile(block(new long[] {x, y, z}));
+		numGenerated.set(0);
+	}
+
+	@Test
+	public void testPersistedMeshIsReused() throws Exception
+	{
+		Assert.assertEquals(MESH, openCache().withLoader(generator).get(key(1, 1, 1)));
+		Assert.assertEquals(1, numGenerated.get());
+
+		// re-open
+		final PainteraTriangleMesh persisted = openCache().withLoader(generator).get(key(1, 1, 1));
+		Assert.assertEquals(1, numGenerated.get());
+		Assert.assertArrayEquals(MESH.getVertices(), persisted.getVertices(), 0.0f);
+		Assert.assertArrayEquals(MESH.getNormals(), persisted.getNormals(), 0.0f);
+		Assert.assertArrayEquals(MESH.getIndices(), persisted.getIndices());
+	}
+
+	@Test
+	public void testModificationTimeInvalidates() throws Exception
+	{
+		openCache().withLoader(generator).get(key(1, 1, 1));
+		openCache().withLoader(generator).get(key(3, 3, 3));
+		Assert.assertEquals(2, numGenerated.get());
+
+		// modified outside of Paintera while the project was closed: only meshes of the block and its neighbors depend on it
+		touch(new long[] {2, 2, 2});
+		final PersistentMeshCache reopened = openCache();
+		reopened.withLoader(generator).get(key(1, 1, 1));
+		Assert.assertEquals(3, numGenerated.get());
+		reopened.withLoader(generator).get(key(3, 3, 3));
+		Assert.assertEquals(4, numGenerated.get());
+
+		// unrelated block
+		touch(new long[] {0, 0, 0});
+		openCache().withLoader(generator).get(key(3, 3, 3));
+		Assert.assertEquals(4, numGenerated.get());
+	}
+
+	@Test
+	public void testBlocksWrittenInvalidates() throws Exception
+	{
+		final PersistentMeshCache cache = openCache();
+		final CommitCanvasN5.BlocksWrittenListener listener = cache::invalidateBlocks;
+		final CacheLoader<ShapeKey<TLongHashSet>, PainteraTriangleMesh> loader = cache.withLoader(generator);
+		loader.get(key(1, 1, 1));
+		loader.get(key(2, 1, 1));
+		loader.get(key(3, 3, 3));
+		Assert.assertEquals(3, numGenerated.get());
+
+		// the listener is notified during the commit, before modification times could be observed
+		listener.blocksWritten(0, new long[] {IntervalIndexer.positionToIndex(new long[] {1, 1, 1}, GRID.getGridDimensions())});
+		loader.get(key(1, 1, 1));
+		loader.get(key(2, 1, 1));
+		Assert.assertEquals(5, numGenerated.get());
+		loader.get(key(3, 3, 3));
+		Assert.assertEquals(5, numGenerated.get());
+
+		// re-generated meshes are persisted again
+		openCache().withLoader(generator).get(key(1, 1, 1));
+		Assert.assertEquals(5, numGenerated.get());
+	}
+
+	private PersistentMeshCache openCache()
+	{
+		return new PersistentMeshCache(
+				() -> meshes,
+				1,
+				level -> GRID,
+				(level, position) -> {
+					try
+					{
+						return Files.getLastModifiedTime(block(position)).toMillis();
+					}
+					catch (final NoSuchFileException e)
+					{
+						return 0L;
+					}
+				},
+				(level, interval) -> true);
+	}
+
+	private Path block(final long[] position)
+	{
+		return blocks.resolve(position[0] + "-" + position[1] + "-" + position[2]);
+	}
+
+	private void touch(final long[] position) throws IOException
+	{
+		final Path block = block(position);
+		Files.setLastModifiedTime(block, FileTime.fromMillis(Files.getLastModifiedTime(block).toMillis() + 1000));
+	}
+
+	private static ShapeKey<TLongHashSet> key(final long x, final long y, final long z)
+	{
+		final long[] min = {10 * x, 10 * y, 10 * z};
+		final long[] max = {10 * x + 9, 10 * y + 9, 10 * z + 9};
+		return new ShapeKey<>(new TLongHashSet(new long[] {1, 2}), 0, 0.0, 0.5, 5, 0.25, min, max);
+	}
+
+}
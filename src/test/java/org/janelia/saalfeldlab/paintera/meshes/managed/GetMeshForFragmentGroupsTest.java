@@ -0,0 +1,196 @@
+package org.janelia.saalfeldlab.paintera.meshes.managed;
+
+import gnu.trove.set.hash.TLongHashSet;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+import org.janelia.saalfeldlab.paintera.meshes.PainteraTriangleMesh;
+import org.janelia.saalfeldlab.paintera.meshes.ShapeKey;
+import org.janelia.saalfeldlab.paintera.meshes.cache.SegmentMeshCacheLoader;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class GetMeshForFragmentGroupsTest
+{
+
+	private static final long[] DIMENSIONS = {40, 30, 10};
+
+	private static final CellGrid GRID = new CellGrid(DIMENSIONS, new int[] {10, 10, 10});
+
+	private static final long FRAGMENT_1 = 1;
+
+	private static final long FRAGMENT_2 = 2;
+
+	private ArrayImg<UnsignedLongType, LongArray> labels;
+
+	private SegmentMeshCacheLoader<UnsignedLongType> loader;
+
+	private final List<TLongHashSet> requestedGroups = new ArrayList<>();
+
+	private int numBlockLookups;
+
+	@Before
+	public void setUp()
+	{
+		// the fragments meet between x = 10 and x = 11, inside the margin of block (0, 0, 0) but outside of it
+		labels = ArrayImgs.unsignedLongs(DIMENSIONS);
+		Views.interval(labels, new long[] {3, 3, 3}, new long[] {10, 6, 6}).forEach(px -> px.set(FRAGMENT_1));
+		Views.interval(labels, new long[] {11, 3, 3}, new long[] {35, 6, 6}).forEach(px -> px.set(FRAGMENT_2));
+		loader = new SegmentMeshCacheLoader<>(
+				new int[] {1, 1, 1},
+				() -> labels,
+				(fragments, minLabelRatio) -> (s, t) -> t.set(fragments.contains(s.getIntegerLong())),
+				new AffineTransform3D());
+		requestedGroups.clear();
+		numBlockLookups = 0;
+	}
+
+	@Test
+	public void testComposedMeshEqualsSegmentMesh()
+	{
+		final TLongHashSet segment = new TLongHashSet(new long[] {FRAGMENT_1, FRAGMENT_2});
+		final GetMeshForFragmentGroups getMeshForFragmentGroups = getMeshForFragmentGroups();
+		getMeshForFragmentGroups.register(segment);
+
+		int numNonEmpty = 0;
+		for (long block = 0; block < Intervals.numElements(GRID.getGridDimensions()); ++block)
+		{
+			final ShapeKey<TLongHashSet> key = key(segment, block);
+			final PainteraTriangleMesh composed = getMeshForFragmentGroups.getMeshFor(key);
+			final PainteraTriangleMesh expected = mesh(key);
+			Assert.assertNotNull(composed);
+			Assert.assertArrayEquals("Vertices of block " + block, expected.getVertices(), composed.getVertices(), 0.0f);
+			Assert.assertArrayEquals("Normals of block " + block, expected.getNormals(), composed.getNormals(), 0.0f);
+			Assert.assertArrayEquals("Indices of block " + block, expected.getIndices(), composed.getIndices());
+			if (expected.isNotEmpty())
+				++numNonEmpty;
+		}
+		Assert.assertEquals(4, numNonEmpty);
+	}
+
+	@Test
+	public void testFragmentsInMargin()
+	{
+		final TLongHashSet segment = new TLongHashSet(new long[] {FRAGMENT_1, FRAGMENT_2});
+		final GetMeshForFragmentGroups getMeshForFragmentGroups = getMeshForFragmentGroups();
+		final TLongHashSet both = new TLongHashSet(new long[] {FRAGMENT_1, FRAGMENT_2});
+		final TLongHashSet second = new TLongHashSet(new long[] {FRAGMENT_2});
+
+		// fragment 2 is only in the margin of block (0, 0, 0) but changes its mesh
+		final ShapeKey<TLongHashSet> marginKey = key(segment, 0);
+		Assert.assertEquals(both, getMeshForFragmentGroups.fragmentsInBlock(segment, 0, marginKey.interval()));
+		Assert.assertNotEquals(
+				mesh(key(new TLongHashSet(new long[] {FRAGMENT_1}), 0)).getIndices().length,
+				mesh(marginKey).getIndices().length);
+
+		// only fragment 2 is close to block (3, 0, 0), its mesh is shared with all segments that contain fragment 2
+		final ShapeKey<TLongHashSet> singleKey = key(segment, 3);
+		Assert.assertEquals(second, getMeshForFragmentGroups.fragmentsInBlock(segment, 0, singleKey.interval()));
+		getMeshForFragmentGroups.getMeshFor(singleKey);
+		Assert.assertEquals(second, requestedGroups.get(requestedGroups.size() - 1));
+
+		// no fragment is close to block (0, 2, 0)
+		requestedGroups.clear();
+		final long emptyBlock = 2 * GRID.getGridDimensions()[0];
+		final PainteraTriangleMesh empty = getMeshForFragmentGroups.getMeshFor(key(segment, emptyBlock));
+		Assert.assertNotNull(empty);
+		Assert.assertTrue(empty.isEmpty());
+		Assert.assertTrue(requestedGroups.isEmpty());
+	}
+
+	@Test
+	public void testUnregisteredSegmentIsIndexedOnce()
+	{
+		final TLongHashSet segment = new TLongHashSet(new long[] {FRAGMENT_1, FRAGMENT_2});
+		final GetMeshForFragmentGroups getMeshForFragmentGroups = getMeshForFragmentGroups();
+
+		// e.g. exporting a segment that is not shown
+		for (long block = 0; block < Intervals.numElements(GRID.getGridDimensions()); ++block)
+			getMeshForFragmentGroups.getMeshFor(key(segment, block));
+		Assert.assertEquals(2, numBlockLookups);
+
+		getMeshForFragmentGroups.invalidateAll();
+		getMeshForFragmentGroups.getMeshFor(key(segment, 0));
+		Assert.assertEquals(4, numBlockLookups);
+
+		// only the most recently requested unregistered segments keep their index
+		for (int i = 0; i < 8; ++i)
+			getMeshForFragmentGroups.getMeshFor(key(new TLongHashSet(new long[] {FRAGMENT_1, FRAGMENT_2}), 0));
+		numBlockLookups = 0;
+		getMeshForFragmentGroups.getMeshFor(key(segment, 0));
+		Assert.assertEquals(2, numBlockLookups);
+	}
+
+	private GetMeshForFragmentGroups getMeshForFragmentGroups()
+	{
+		return new GetMeshForFragmentGroups(
+				key -> {
+					requestedGroups.add(key.shapeId());
+					return mesh(key);
+				},
+				(level, fragment) -> {
+					++numBlockLookups;
+					return blocksContaining(fragment);
+				},
+				new CellGrid[] {GRID});
+	}
+
+	private PainteraTriangleMesh mesh(final ShapeKey<TLongHashSet> key)
+	{
+		try
+		{
+			return loader.get(key);
+		} catch (final Exception e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Same as the label block lookup.
+	 */
+	private Interval[] blocksContaining(final long fragment)
+	{
+		final List<Interval> blocks = new ArrayList<>();
+		for (long block = 0; block < Intervals.numElements(GRID.getGridDimensions()); ++block)
+		{
+			final Interval interval = blockInterval(block);
+			for (final UnsignedLongType label : Views.interval(labels, interval))
+				if (label.getIntegerLong() == fragment)
+				{
+					blocks.add(interval);
+					break;
+				}
+		}
+		return blocks.toArray(new Interval[0]);
+	}
+
+	private static ShapeKey<TLongHashSet> key(final TLongHashSet fragments, final long block)
+	{
+		final Interval interval = blockInterval(block);
+		return new ShapeKey<>(fragments, 0, 0.0, 0.5, 0, 0.0, Intervals.minAsLongArray(interval), Intervals.maxAsLongArray(interval));
+	}
+
+	private static Interval blockInterval(final long block)
+	{
+		final long[] min = new long[GRID.numDimensions()];
+		final int[] size = new int[GRID.numDimensions()];
+		GRID.getCellDimensions(block, min, size);
+		final long[] max = new long[min.length];
+		for (int d = 0; d < min.length; ++d)
+			max[d] = min[d] + size[d] - 1;
+		return new FinalInterval(min, max);
+	}
+
+}
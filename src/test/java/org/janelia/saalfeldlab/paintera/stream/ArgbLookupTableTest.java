@@ -0,0 +1,125 @@
+package org.janelia.saalfeldlab.paintera.stream;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ArgbLookupTableTest
+{
+
+	private final AtomicInteger seed = new AtomicInteger(0);
+
+	private final AtomicInteger numRequests = new AtomicInteger(0);
+
+	private final ARGBStream stream = id -> {
+		numRequests.incrementAndGet();
+		final long h = (id + seed.get()) * 0x9e3779b97f4a7c15L;
+		return (int) (h ^ (h >>> 32));
+	};
+
+	@Test
+	public void testMatchesStream()
+	{
+		final ArgbLookupTable table = new ArgbLookupTable();
+		final Random rng = new Random(100);
+		for (int frame = 0; frame < 5; ++frame)
+		{
+			table.newFrame();
+			// more labels than the initial capacity, with repeats and ids that collide in the low bits
+			for (int i = 0; i < 10000; ++i)
+			{
+				final long id = rng.nextBoolean() ? rng.nextInt(3000) : (long) rng.nextInt(100) << 32;
+				Assert.assertEquals(stream.argb(id), table.argb(id, 0, stream));
+			}
+		}
+	}
+
+	@Test
+	public void testColorsAreRequestedOncePerFrame()
+	{
+		final ArgbLookupTable table = new ArgbLookupTable();
+		table.newFrame();
+		for (int i = 0; i < 3; ++i)
+			for (long id = 0; id < 2000; ++id)
+				table.argb(id, 0, stream);
+		Assert.assertEquals(2000, numRequests.get());
+
+		table.newFrame();
+		table.argb(1, 0, stream);
+		Assert.assertEquals(2001, numRequests.get());
+	}
+
+	@Test
+	public void testStateChangesWithinFrame()
+	{
+		final ArgbLookupTable table = new ArgbLookupTable();
+		table.newFrame();
+		Assert.assertEquals(stream.argb(1), table.argb(1, 0, stream));
+
+		// stream changes start a new frame
+		seed.incrementAndGet();
+		Assert.assertEquals(stream.argb(1), table.argb(1, 1, stream));
+
+		// so do new frames
+		seed.incrementAndGet();
+		table.newFrame();
+		Assert.assertEquals(stream.argb(1), table.argb(1, 1, stream));
+	}
+
+	@Test
+	public void testCapacityIsBoundedAndShrinks()
+	{
+		final ArgbLookupTable table = new ArgbLookupTable();
+		final int initialCapacity = table.capacity();
+		table.newFrame();
+		for (long id = 0; id < 1 << 18; ++id)
+			Assert.assertEquals(stream.argb(id), table.argb(id, 0, stream));
+		final int maxCapacity = table.capacity();
+		Assert.assertTrue(maxCapacity <= 1 << 17);
+
+		// a frame that fills the table does not shrink it
+		table.newFrame();
+		Assert.assertEquals(maxCapacity, table.capacity());
+
+		// a frame with few labels shrinks it for the next frame
+		for (long id = 0; id < 10; ++id)
+			table.argb(id, 0, stream);
+		table.newFrame();
+		Assert.assertEquals(initialCapacity, table.capacity());
+		for (long id = 0; id < 10; ++id)
+			Assert.assertEquals(stream.argb(id), table.argb(id, 0, stream));
+	}
+
+	@Test
+	public void testNoCachingBeforeFirstFrame()
+	{
+		final ArgbLookupTable table = new ArgbLookupTable();
+		Assert.assertEquals(stream.argb(1), table.argb(1, 0, stream));
+		seed.incrementAndGet();
+		Assert.assertEquals(stream.argb(1), table.argb(1, 0, stream));
+		Assert.assertEquals(4, numRequests.get());
+	}
+
+	@Test
+	public void testFramesAreIndependentPerTable()
+	{
+		// tables of different rendering threads, e.g. of different viewers
+		final ArgbLookupTable table1 = new ArgbLookupTable();
+		final ArgbLookupTable table2 = new ArgbLookupTable();
+		table1.newFrame();
+		table2.newFrame();
+		table1.argb(1, 0, stream);
+		table2.argb(1, 0, stream);
+		Assert.assertEquals(2, numRequests.get());
+
+		// a new frame of one table does not reset the other
+		table2.newFrame();
+		table1.argb(1, 0, stream);
+		Assert.assertEquals(2, numRequests.get());
+		table2.argb(1, 0, stream);
+		Assert.assertEquals(3, numRequests.get());
+	}
+
+}
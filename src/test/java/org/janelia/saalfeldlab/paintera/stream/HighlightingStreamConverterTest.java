@@ -0,0 +1,102 @@
+package org.janelia.saalfeldlab.paintera.stream;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.type.volatiles.VolatileUnsignedLongType;
+import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignmentOnlyLocal;
+import org.janelia.saalfeldlab.paintera.control.lock.LockedSegmentsOnlyLocal;
+import org.janelia.saalfeldlab.paintera.control.selection.SelectedIds;
+import org.janelia.saalfeldlab.paintera.control.selection.SelectedSegments;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HighlightingStreamConverterTest
+{
+
+	private static final int NUM_FRAGMENTS = 3000;
+
+	private SelectedIds selectedIds;
+
+	private FragmentSegmentAssignmentOnlyLocal assignment;
+
+	private ModalGoldenAngleSaturatedHighlightingARGBStream stream;
+
+	private HighlightingStreamConverterIntegerType<UnsignedLongType, VolatileUnsignedLongType> converter;
+
+	private HighlightingStreamConverterIntegerType<UnsignedLongType, VolatileUnsignedLongType> frameAwareConverter;
+
+	@Before
+	public void setUp()
+	{
+		selectedIds = new SelectedIds();
+		assignment = new FragmentSegmentAssignmentOnlyLocal((k, v) -> {});
+		stream = new ModalGoldenAngleSaturatedHighlightingARGBStream(
+				new SelectedSegments(selectedIds, assignment),
+				new LockedSegmentsOnlyLocal(locked -> {}));
+		converter = new HighlightingStreamConverterIntegerType<>(stream);
+		frameAwareConverter = new HighlightingStreamConverterIntegerType<>(stream);
+	}
+
+	@Test
+	public void testLookupTableMatchesStream()
+	{
+		selectedIds.activate(1, 2, 3);
+		frameAwareConverter.newFrame();
+		assertSameColors();
+
+		// stream changes invalidate the current frame
+		stream.incSeed();
+		assertSameColors();
+
+		// selection changes are picked up in the next frame
+		selectedIds.activate(4, 5);
+		frameAwareConverter.newFrame();
+		assertSameColors();
+	}
+
+	@Test
+	public void testFramesOfOtherThreads() throws InterruptedException, ExecutionException
+	{
+		// rendering threads of another viewer that shares the converter
+		final ExecutorService otherViewer = Executors.newSingleThreadExecutor();
+		try
+		{
+			frameAwareConverter.newFrame();
+			assertSameColors();
+			selectedIds.activate(1, 2, 3);
+			otherViewer.submit(() -> {
+				frameAwareConverter.newFrame();
+				assertSameColors();
+			}).get();
+			frameAwareConverter.newFrame();
+			assertSameColors();
+		}
+		finally
+		{
+			otherViewer.shutdown();
+		}
+	}
+
+	private void assertSameColors()
+	{
+		final VolatileUnsignedLongType input = new VolatileUnsignedLongType();
+		input.setValid(true);
+		final ARGBType expected = new ARGBType();
+		final ARGBType actual = new ARGBType();
+		// every id twice, the second time from the table
+		for (int i = 0; i < 2; ++i)
+			for (long id = 0; id < NUM_FRAGMENTS; ++id)
+			{
+				input.get().set(id);
+				converter.convert(input, expected);
+				frameAwareConverter.convert(input, actual);
+				Assert.assertEquals("Color of " + id, expected.get(), actual.get());
+			}
+	}
+
+}
@@ -3,7 +3,11 @@ package org.janelia.saalfeldlab.util;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
 import java.util.TreeSet;
 
 public class HashPriorityQueueTest
@@ -50,4 +54,70 @@ public class HashPriorityQueueTest
 		);
 		Assert.assertTrue(pqOther.isEmpty());
 	}
+
+	@Test
+	public void testRandomOperations()
+	{
+		final Random rng = new Random(100);
+		final HashPriorityQueue<Integer, Integer> pq = new HashPriorityQueue<>(Comparator.naturalOrder());
+		final Map<Integer, Integer> reference = new HashMap<>();
+		for (int i = 0; i < 20000; ++i)
+		{
+			final int operation = rng.nextInt(10);
+			if (operation < 5)
+			{
+				final int element = rng.nextInt(1000), priority = rng.nextInt(100);
+				Assert.assertEquals(reference.containsKey(element), pq.addOrUpdate(priority, element));
+				reference.put(element, priority);
+			}
+			else if (operation < 6)
+			{
+				final Map<Integer, Integer> batch = new HashMap<>();
+				for (int k = rng.nextInt(500); k > 0; --k)
+					batch.put(rng.nextInt(1000), rng.nextInt(100));
+				if (rng.nextBoolean())
+				{
+					pq.addOrUpdateAll(batch);
+					reference.putAll(batch);
+				}
+				else
+				{
+					batch.keySet().retainAll(reference.keySet());
+					batch.put(-1, 0);
+					Assert.assertEquals(batch.size() - 1, pq.updateAllIfPresent(batch));
+					batch.remove(-1);
+					reference.putAll(batch);
+				}
+			}
+			else if (operation < 8)
+			{
+				final int element = rng.nextInt(1000);
+				Assert.assertEquals(reference.remove(element) != null, pq.remove(element));
+			}
+			else
+			{
+				final Integer element = pq.poll();
+				if (reference.isEmpty())
+					Assert.assertNull(element);
+				else
+				{
+					Assert.assertEquals(Collections.min(reference.values()), reference.remove(element));
+				}
+			}
+			Assert.assertEquals(reference.size(), pq.size());
+		}
+		reference.forEach((element, priority) -> Assert.assertEquals(priority, pq.getPriority(element)));
+	}
+
+	@Test
+	public void testEqualPrioritiesInInsertionOrder()
+	{
+		final HashPriorityQueue<Integer, String> pq = new HashPriorityQueue<>(Comparator.naturalOrder());
+		pq.addOrUpdate(1, "a");
+		pq.addOrUpdate(1, "b");
+		pq.addOrUpdate(0, "c");
+		pq.addOrUpdate(1, "d");
+		pq.addOrUpdate(1, "a");
+		Assert.assertArrayEquals(new String[] {"c", "b", "d", "a"}, pq.poll(4).toArray(new String[0]));
+	}
 }
@@ -0,0 +1,194 @@
+package org.janelia.saalfeldlab.util.concurrent;
+
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class PaintTaskSchedulerTest
+{
+
+	private final PaintTaskScheduler scheduler = new PaintTaskScheduler("test", 1, 2, new NamedThreadFactory("paint-task-scheduler-test-%d", true));
+
+	@After
+	public void shutdown() throws InterruptedException
+	{
+		scheduler.shutdownNow();
+		Assert.assertTrue(scheduler.awaitTermination(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testCoalesce() throws InterruptedException
+	{
+		final CountDownLatch block = new CountDownLatch(1);
+		final CountDownLatch started = new CountDownLatch(1);
+		scheduler.submit("block", token -> {
+			started.countDown();
+			awaitUninterruptibly(block);
+		});
+		started.await();
+
+		final List<List<Integer>> runs = Collections.synchronizedList(new ArrayList<>());
+		final PaintTaskScheduler.ScheduledTask<List<Integer>> first = submitSegment("a", 1, runs);
+		Assert.assertSame(first, submitSegment("a", 2, runs));
+		Assert.assertSame(first, submitSegment("a", 3, runs));
+		final PaintTaskScheduler.ScheduledTask<List<Integer>> other = submitSegment("b", 4, runs);
+		Assert.assertNotSame(first, other);
+		Assert.assertEquals(2, scheduler.getQueueSize());
+
+		block.countDown();
+		other.join();
+		Assert.assertEquals(2, runs.size());
+		Assert.assertEquals(listOf(1, 2, 3), runs.get(0));
+		Assert.assertEquals(listOf(4), runs.get(1));
+
+		final PaintTaskScheduler.TaskStatistics statistics = scheduler.getStatistics().get("segment");
+		Assert.assertEquals(2, statistics.getNumTasks());
+		Assert.assertEquals(2, statistics.getNumCoalesced());
+	}
+
+	@Test
+	public void testCancel() throws InterruptedException
+	{
+		final CountDownLatch started = new CountDownLatch(1);
+		final AtomicBoolean sawCancellation = new AtomicBoolean(false);
+		final PaintTaskScheduler.ScheduledTask<Void> running = scheduler.submit("running", token -> {
+			started.countDown();
+			while (!token.isCancelled())
+				Thread.yield();
+			sawCancellation.set(true);
+		});
+		final AtomicBoolean queuedRan = new AtomicBoolean(false);
+		final PaintTaskScheduler.ScheduledTask<Void> queued = scheduler.submit("queued", token -> queuedRan.set(true));
+
+		started.await();
+		Assert.assertTrue(queued.cancel(false));
+		Assert.assertEquals(0, scheduler.getQueueSize());
+		queued.join();
+
+		running.cancel(false);
+		running.join();
+		Assert.assertTrue(sawCancellation.get());
+		Assert.assertFalse(queuedRan.get());
+		Assert.assertEquals(1, scheduler.getStatistics().get("queued").getNumCancelled());
+		Assert.assertEquals(1, scheduler.getStatistics().get("running").getNumCancelled());
+	}
+
+	@Test
+	public void testBounded() throws InterruptedException
+	{
+		final CountDownLatch block = new CountDownLatch(1);
+		final CountDownLatch started = new CountDownLatch(1);
+		scheduler.submit("block", token -> {
+			started.countDown();
+			awaitUninterruptibly(block);
+		});
+		started.await();
+		scheduler.execute(() -> {});
+		scheduler.execute(() -> {});
+
+		final CountDownLatch submitted = new CountDownLatch(1);
+		final Thread producer = new Thread(() -> {
+			scheduler.execute(() -> {});
+			submitted.countDown();
+		});
+		producer.start();
+		Assert.assertFalse(submitted.await(100, TimeUnit.MILLISECONDS));
+
+		block.countDown();
+		Assert.assertTrue(submitted.await(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testNonBlockingSubmitter() throws InterruptedException
+	{
+		final Thread[] ui = {null};
+		final PaintTaskScheduler nonBlocking = new PaintTaskScheduler(
+				"test",
+				1,
+				1,
+				new NamedThreadFactory("paint-task-scheduler-test-non-blocking-%d", true),
+				() -> Thread.currentThread() != ui[0]);
+		try
+		{
+			final CountDownLatch block = new CountDownLatch(1);
+			final CountDownLatch started = new CountDownLatch(1);
+			nonBlocking.submit("block", token -> {
+				started.countDown();
+				awaitUninterruptibly(block);
+			});
+			started.await();
+			nonBlocking.execute(() -> {});
+
+			// e.g. the JavaFX application thread: queued beyond capacity instead of waiting
+			final CountDownLatch submitted = new CountDownLatch(2);
+			final List<Integer> runs = Collections.synchronizedList(new ArrayList<>());
+			ui[0] = new Thread(() -> {
+				nonBlocking.submit("ui", token -> runs.add(1));
+				submitted.countDown();
+				nonBlocking.submit("ui", token -> runs.add(2));
+				submitted.countDown();
+			});
+			ui[0].start();
+			Assert.assertTrue(submitted.await(1, TimeUnit.SECONDS));
+			Assert.assertEquals(3, nonBlocking.getQueueSize());
+
+			// other threads still wait for space
+			final CountDownLatch otherSubmitted = new CountDownLatch(1);
+			new Thread(() -> {
+				nonBlocking.execute(() -> {});
+				otherSubmitted.countDown();
+			}).start();
+			Assert.assertFalse(otherSubmitted.await(100, TimeUnit.MILLISECONDS));
+
+			block.countDown();
+			Assert.assertTrue(otherSubmitted.await(1, TimeUnit.SECONDS));
+			nonBlocking.shutdown();
+			Assert.assertTrue(nonBlocking.awaitTermination(1, TimeUnit.SECONDS));
+			Assert.assertEquals(listOf(1, 2), runs);
+		}
+		finally
+		{
+			nonBlocking.shutdownNow();
+		}
+	}
+
+	private PaintTaskScheduler.ScheduledTask<List<Integer>> submitSegment(final String key, final int segment, final List<List<Integer>> runs)
+	{
+		return scheduler.submit("segment", key, listOf(segment), PaintTaskSchedulerTest::concatenate, (segments, token) -> runs.add(segments));
+	}
+
+	private static List<Integer> concatenate(final List<Integer> l1, final List<Integer> l2)
+	{
+		final List<Integer> concatenated = new ArrayList<>(l1);
+		concatenated.addAll(l2);
+		return concatenated;
+	}
+
+	private static List<Integer> listOf(final Integer... values)
+	{
+		final List<Integer> list = new ArrayList<>();
+		Collections.addAll(list, values);
+		return list;
+	}
+
+	private static void awaitUninterruptibly(final CountDownLatch latch)
+	{
+		try
+		{
+			latch.await();
+		}
+		catch (final InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
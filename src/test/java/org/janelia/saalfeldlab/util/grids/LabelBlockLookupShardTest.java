@@ -0,0 +1,53 @@
+package org.janelia.saalfeldlab.util.grids;
+
+import gnu.trove.set.hash.TLongHashSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class LabelBlockLookupShardTest
+{
+
+	@Test
+	public void testEncodeDecode() throws IOException
+	{
+		final LabelBlockLookupShard shard = new LabelBlockLookupShard();
+		shard.set(4097, new long[] {300, 3, 3, 0, 1L << 40});
+		shard.set(4096, new long[] {7});
+		shard.set(-2, new long[] {1, 2});
+		shard.set(5000, new long[] {});
+
+		final LabelBlockLookupShard decoded = LabelBlockLookupShard.decode(shard.encode());
+		Assert.assertEquals(3, decoded.size());
+		Assert.assertArrayEquals(new long[] {0, 3, 300, 1L << 40}, decoded.get(4097));
+		Assert.assertArrayEquals(new long[] {7}, decoded.get(4096));
+		Assert.assertArrayEquals(new long[] {1, 2}, decoded.get(-2));
+		Assert.assertArrayEquals(new long[] {}, decoded.get(5000));
+	}
+
+	@Test
+	public void testUpdate() throws IOException
+	{
+		final LabelBlockLookupShard shard = new LabelBlockLookupShard();
+		shard.set(1, new long[] {1, 2, 3});
+		shard.update(1, new TLongHashSet(new long[] {2, 3}), new TLongHashSet(new long[] {3, 4}));
+		shard.update(2, null, new TLongHashSet(new long[] {5}));
+		shard.update(3, new TLongHashSet(new long[] {5}), null);
+
+		Assert.assertArrayEquals(new long[] {1, 3, 4}, shard.get(1));
+		Assert.assertArrayEquals(new long[] {5}, shard.get(2));
+		Assert.assertEquals(2, shard.size());
+
+		shard.update(2, new TLongHashSet(new long[] {5}), null);
+		Assert.assertEquals(1, LabelBlockLookupShard.decode(shard.encode()).size());
+	}
+
+	@Test(expected = IOException.class)
+	public void testCorrupt() throws IOException
+	{
+		final byte[] bytes = new byte[] {1, 5, 1};
+		LabelBlockLookupShard.decode(bytes);
+	}
+
+}
@@ -0,0 +1,160 @@
+package org.janelia.saalfeldlab.util.grids;
+
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.hash.TLongHashSet;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.util.Intervals;
+import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookup;
+import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookupKey;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.util.n5.N5Helpers;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class LabelBlockLookupShardedTest
+{
+
+	private static final long[][] DIMS = {{100, 100, 100}, {50, 50, 50}};
+
+	private static final int[][] BLOCK_SIZES = {{10, 10, 10}, {10, 10, 10}};
+
+	private static final String GROUP = "labels";
+
+	@Rule
+	public final TemporaryFolder tmp = new TemporaryFolder();
+
+	private ExecutorService executor;
+
+	private LabelBlockLookupSharded lookup;
+
+	@Before
+	public void setUp()
+	{
+		executor = Executors.newFixedThreadPool(3);
+		// few ids per shard so that updates span several shards
+		lookup = new LabelBlockLookupSharded(DIMS, BLOCK_SIZES, 4, LabelBlockLookupSharded.DEFAULT_DIRECTORY);
+		lookup.setRelativeTo(tmp.getRoot().getAbsolutePath(), GROUP);
+	}
+
+	@After
+	public void tearDown()
+	{
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testUpdateRead() throws IOException
+	{
+		final TLongObjectMap<TLongHashSet> added = new TLongObjectHashMap<>();
+		added.put(1, new TLongHashSet(new long[] {0, 1, 999}));
+		added.put(2, new TLongHashSet(new long[] {1}));
+		added.put(9, new TLongHashSet(new long[] {500}));
+		added.put(-1, new TLongHashSet(new long[] {11}));
+		lookup.update(0, new TLongObjectHashMap<>(), added, executor);
+
+		assertBlocks(new long[][] {{0, 0, 0}, {10, 0, 0}, {90, 90, 90}}, lookup.read(new LabelBlockLookupKey(0, 1)));
+		assertBlocks(new long[][] {{10, 0, 0}}, lookup.read(new LabelBlockLookupKey(0, 2)));
+		assertBlocks(new long[][] {{0, 0, 50}}, lookup.read(new LabelBlockLookupKey(0, 9)));
+		assertBlocks(new long[][] {{10, 10, 0}}, lookup.read(new LabelBlockLookupKey(0, -1)));
+		assertBlocks(new long[][] {}, lookup.read(new LabelBlockLookupKey(0, 3)));
+		assertBlocks(new long[][] {}, lookup.read(new LabelBlockLookupKey(1, 1)));
+
+		final TLongObjectMap<TLongHashSet> removed = new TLongObjectHashMap<>();
+		removed.put(1, new TLongHashSet(new long[] {0, 999}));
+		removed.put(9, new TLongHashSet(new long[] {500}));
+		final TLongObjectMap<TLongHashSet> addedAgain = new TLongObjectHashMap<>();
+		addedAgain.put(1, new TLongHashSet(new long[] {2}));
+		lookup.update(0, removed, addedAgain, executor);
+		// updating again with the same arguments, e.g. when resuming an interrupted commit, does not change anything
+		lookup.update(0, removed, addedAgain, executor);
+
+		assertBlocks(new long[][] {{10, 0, 0}, {20, 0, 0}}, lookup.read(new LabelBlockLookupKey(0, 1)));
+		assertBlocks(new long[][] {{10, 0, 0}}, lookup.read(new LabelBlockLookupKey(0, 2)));
+		assertBlocks(new long[][] {}, lookup.read(new LabelBlockLookupKey(0, 9)));
+
+		// the shard of id 9 is empty and removed
+		Assert.assertFalse(Files.exists(shardDirectory(0).resolve("2")));
+		Assert.assertTrue(Files.exists(shardDirectory(0).resolve("0")));
+	}
+
+	@Test
+	public void testWriteRead() throws IOException
+	{
+		lookup.write(new LabelBlockLookupKey(1, 5), new FinalInterval(new long[] {40, 0, 0}, new long[] {49, 9, 9}), new FinalInterval(new long[] {0, 0, 10}, new long[] {9, 9, 19}));
+		lookup.write(new LabelBlockLookupKey(1, 6), new FinalInterval(new long[] {0, 0, 0}, new long[] {9, 9, 9}));
+		assertBlocks(new long[][] {{40, 0, 0}, {0, 0, 10}}, lookup.read(new LabelBlockLookupKey(1, 5)));
+		assertBlocks(new long[][] {{0, 0, 0}}, lookup.read(new LabelBlockLookupKey(1, 6)));
+		assertBlocks(new long[][] {}, lookup.read(new LabelBlockLookupKey(0, 5)));
+
+		lookup.write(new LabelBlockLookupKey(1, 5));
+		assertBlocks(new long[][] {}, lookup.read(new LabelBlockLookupKey(1, 5)));
+		assertBlocks(new long[][] {{0, 0, 0}}, lookup.read(new LabelBlockLookupKey(1, 6)));
+	}
+
+	@Test
+	public void testCreate() throws IOException, N5Helpers.NotAPainteraDataset
+	{
+		final N5FSWriter n5 = new N5FSWriter(tmp.getRoot().getAbsolutePath());
+		n5.createGroup(GROUP);
+		n5.setAttribute(GROUP, N5Helpers.PAINTERA_DATA_KEY, Collections.singletonMap("type", "label"));
+		for (int level = 0; level < DIMS.length; ++level)
+			n5.createDataset(GROUP + "/unique-labels/s" + level, DIMS[level], BLOCK_SIZES[level], DataType.UINT64, new GzipCompression());
+
+		// left over from a previous dataset in the same group
+		lookup.update(0, new TLongObjectHashMap<>(), singleton(1, 0), executor);
+
+		final LabelBlockLookupSharded created = LabelBlockLookupSharded.create(n5, GROUP, LabelBlockLookupSharded.DEFAULT_IDS_PER_SHARD);
+		assertBlocks(new long[][] {}, created.read(new LabelBlockLookupKey(0, 1)));
+
+		final LabelBlockLookup opened = N5Helpers.getLabelBlockLookup(n5, GROUP);
+		Assert.assertTrue(opened instanceof LabelBlockLookupSharded);
+		((LabelBlockLookupSharded) opened).update(1, new TLongObjectHashMap<>(), singleton(3, 124), executor);
+		assertBlocks(new long[][] {{40, 40, 40}}, created.read(new LabelBlockLookupKey(1, 3)));
+	}
+
+	private Path shardDirectory(final int level)
+	{
+		return tmp.getRoot().toPath().resolve(GROUP).resolve(LabelBlockLookupSharded.DEFAULT_DIRECTORY).resolve("s" + level);
+	}
+
+	private static TLongObjectMap<TLongHashSet> singleton(final long id, final long block)
+	{
+		final TLongObjectMap<TLongHashSet> map = new TLongObjectHashMap<>();
+		map.put(id, new TLongHashSet(new long[] {block}));
+		return map;
+	}
+
+	private static void assertBlocks(final long[][] expectedMins, final Interval[] actual)
+	{
+		final Set<String> expected = new HashSet<>();
+		for (final long[] min : expectedMins)
+			expected.add(Arrays.toString(min));
+		final Set<String> actualMins = new HashSet<>();
+		for (final Interval interval : actual)
+		{
+			actualMins.add(Arrays.toString(Intervals.minAsLongArray(interval)));
+			Assert.assertArrayEquals(new long[] {10, 10, 10}, Intervals.dimensionsAsLongArray(interval));
+		}
+		Assert.assertEquals(expected, actualMins);
+		Assert.assertEquals(expectedMins.length, actual.length);
+	}
+
+}
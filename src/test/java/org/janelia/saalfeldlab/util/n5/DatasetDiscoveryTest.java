@@ -0,0 +1,142 @@
+package org.janelia.saalfeldlab.util.n5;
+
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.RawCompression;
+import org.janelia.saalfeldlab.util.PainteraCache;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class DatasetDiscoveryTest
+{
+
+	@Rule
+	public final TemporaryFolder tmp = new TemporaryFolder();
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+	private Path cacheRoot;
+
+	private Path container;
+
+	private N5Writer writer;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		// container indices must not end up in the cache of the user running the tests
+		cacheRoot = PainteraCache.getCacheRoot();
+		PainteraCache.setCacheRoot(tmp.newFolder("cache").toPath());
+		container = tmp.newFolder("container").toPath();
+		writer = new N5FSWriter(container.toString());
+	}
+
+	@After
+	public void tearDown() throws InterruptedException
+	{
+		PainteraCache.setCacheRoot(cacheRoot);
+		executor.shutdownNow();
+		Assert.assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testReuse() throws IOException
+	{
+		createDataset("group/s0");
+		createDataset("group/s1");
+		createDataset("some_group/one");
+		writer.createGroup("some_group/empty");
+		setModifiedInPast("");
+
+		Assert.assertEquals(Arrays.asList("/group", "/some_group/one"), discover(0));
+		// root, group, some_group, some_group/one, some_group/empty
+		Assert.assertEquals(Arrays.asList("/group", "/some_group/one"), discover(5));
+
+		// only the modified group is read again
+		createDataset("some_group/empty/two");
+		setModifiedInPast("some_group/empty/two");
+		Assert.assertEquals(Arrays.asList("/group", "/some_group/empty/two", "/some_group/one"), discover(4));
+	}
+
+	@Test
+	public void testRecentModificationsAreNotReused() throws IOException
+	{
+		createDataset("group/s0");
+
+		Assert.assertEquals(Collections.singletonList("/group"), discover(0));
+		Assert.assertEquals(Collections.singletonList("/group"), discover(0));
+	}
+
+	@Test
+	public void testChildAttributesInvalidateGroup() throws IOException
+	{
+		writer.createGroup("group/s0");
+		writer.createGroup("group/s1");
+		writer.setAttribute("group/s0", "key", "value");
+		setModifiedInPast("");
+
+		Assert.assertEquals(Collections.emptyList(), discover(0));
+		Assert.assertEquals(Collections.emptyList(), discover(4));
+
+		// turn the children into datasets without touching the directory or attributes of their parent
+		final FileTime groupModified = Files.getLastModifiedTime(container.resolve("group"));
+		writer.createDataset("group/s0", new long[] {1}, new int[] {1}, DataType.UINT8, new RawCompression());
+		writer.createDataset("group/s1", new long[] {1}, new int[] {1}, DataType.UINT8, new RawCompression());
+		Files.setLastModifiedTime(container.resolve("group"), groupModified);
+
+		// group is a multi-scale group now and its children are not listed
+		Assert.assertEquals(Collections.singletonList("/group"), discover(1));
+	}
+
+	private List<String> discover(final int expectedNumGroupsFromIndex)
+	{
+		final DatasetDiscovery discovery = new DatasetDiscovery(
+				writer,
+				() -> true,
+				executor,
+				dataset -> {},
+				N5ContainerIndex.load(container.toString()));
+		final List<String> datasets = discovery.discover();
+		Assert.assertEquals(expectedNumGroupsFromIndex, discovery.getNumGroupsFromIndex());
+		return datasets;
+	}
+
+	private void createDataset(final String dataset) throws IOException
+	{
+		writer.createDataset(dataset, new long[] {1}, new int[] {1}, DataType.UINT8, new RawCompression());
+	}
+
+	/**
+	 * Move modification times of {@code group} and everything below it past the time resolution of the index.
+	 */
+	private void setModifiedInPast(final String group) throws IOException
+	{
+		final FileTime past = FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1));
+		final List<Path> paths;
+		try (final Stream<Path> walk = Files.walk(container.resolve(group)))
+		{
+			paths = walk.collect(Collectors.toList());
+		}
+		for (final Path path : paths)
+			Files.setLastModifiedTime(path, past);
+	}
+
+}
@@ -0,0 +1,139 @@
+package org.janelia.saalfeldlab.util.n5;
+
+import gnu.trove.map.TLongLongMap;
+import gnu.trove.map.hash.TLongLongHashMap;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.LongArrayDataBlock;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignmentOnlyLocal;
+import org.janelia.saalfeldlab.paintera.control.assignment.UnableToPersist;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.util.Random;
+import java.util.function.Supplier;
+
+public class N5FragmentSegmentAssignmentPersisterTest {
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	private static final String DATASET = "fragment-segment-assignment";
+
+	private static final int NUM_FRAGMENTS = 200;
+
+	@Test
+	public void testIncrementalPersist() throws IOException, UnableToPersist {
+		final N5Writer writer = N5TestUtil.fileSystemWriterAtTmpDir(!LOG.isDebugEnabled());
+		final Supplier<TLongLongMap> initialLut = () -> {
+			try {
+				return read(writer);
+			} catch (final IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		};
+		final N5FragmentSegmentAssignmentPersister persister = new N5FragmentSegmentAssignmentPersister(writer, DATASET);
+		final FragmentSegmentAssignmentOnlyLocal assignment = new FragmentSegmentAssignmentOnlyLocal(initialLut, persister);
+		final Random rng = new Random(100);
+		final long[] nextSegmentId = {NUM_FRAGMENTS};
+
+		for (int save = 0; save < 20; ++save) {
+			for (int i = 0; i < 30; ++i) {
+				final long id1 = rng.nextInt(NUM_FRAGMENTS);
+				final long id2 = rng.nextInt(NUM_FRAGMENTS);
+				if (rng.nextInt(3) == 0)
+					assignment.getDetachAction(id1, id2).ifPresent(assignment::apply);
+				else
+					assignment.getMergeAction(id1, id2, () -> nextSegmentId[0]++).ifPresent(assignment::apply);
+			}
+			if (save == 10)
+				// rewrite everything at once
+				N5FragmentSegmentAssignmentLog.compact(writer, DATASET, initialLut.get());
+			assignment.persist();
+
+			Assert.assertTrue(writer.exists(N5FragmentSegmentAssignmentLog.logGroup(DATASET)));
+			final FragmentSegmentAssignmentOnlyLocal loaded = new FragmentSegmentAssignmentOnlyLocal(initialLut, persister);
+			for (long id = 0; id < NUM_FRAGMENTS; ++id)
+				Assert.assertEquals(assignment.getSegment(id), loaded.getSegment(id));
+		}
+
+		final TLongLongMap lut = initialLut.get();
+		persister.persist(lut.keys(), lut.values());
+		Assert.assertFalse(writer.exists(N5FragmentSegmentAssignmentLog.logGroup(DATASET)));
+		Assert.assertEquals(lut, read(writer));
+	}
+
+	@Test
+	public void testReadSingleBlockLut() throws IOException {
+		final N5Writer writer = N5TestUtil.fileSystemWriterAtTmpDir(!LOG.isDebugEnabled());
+		final long[] keys = {3, 1, 2};
+		final long[] values = {10, 10, 11};
+		final DatasetAttributes attributes = new DatasetAttributes(new long[] {3, 2}, new int[] {3, 1}, DataType.UINT64, new GzipCompression());
+		writer.createDataset(DATASET, attributes);
+		writer.writeBlock(DATASET, attributes, new LongArrayDataBlock(new int[] {3, 1}, new long[] {0, 0}, keys));
+		writer.writeBlock(DATASET, attributes, new LongArrayDataBlock(new int[] {3, 1}, new long[] {0, 1}, values));
+
+		N5FragmentSegmentAssignmentLog.append(writer, DATASET, new long[] {2, 4, 1L << 40}, new long[] {2, 10, 12});
+		N5FragmentSegmentAssignmentLog.append(writer, DATASET, new long[] {1L << 40}, new long[] {13});
+
+		final TLongLongMap expected = new TLongLongHashMap(new long[] {3, 1, 4, 1L << 40}, new long[] {10, 10, 10, 13});
+		Assert.assertEquals(expected, read(writer));
+		Assert.assertEquals(4, N5FragmentSegmentAssignmentLog.numLogEntries(writer, DATASET));
+	}
+
+	@Test
+	public void testInterruptedCompaction() throws IOException {
+		final N5Writer writer = N5TestUtil.fileSystemWriterAtTmpDir(!LOG.isDebugEnabled());
+		final String compaction = N5FragmentSegmentAssignmentLog.compactionDataset(DATASET);
+		N5FragmentSegmentAssignmentLog.compact(writer, DATASET, new TLongLongHashMap(new long[] {1, 2, 3}, new long[] {10, 10, 11}));
+		N5FragmentSegmentAssignmentLog.append(writer, DATASET, new long[] {2, 4}, new long[] {2, 11});
+		final TLongLongMap expected = new TLongLongHashMap(new long[] {1, 3, 4}, new long[] {10, 11, 11});
+		Assert.assertEquals(expected, read(writer));
+
+		// interrupted while writing the compaction dataset: ignored
+		writeTable(writer, compaction, new long[] {1}, new long[] {12});
+		Assert.assertEquals(expected, read(writer));
+
+		// interrupted while overwriting the base: the complete compaction dataset is used instead
+		writeTable(writer, compaction, new long[] {1, 3, 4}, new long[] {10, 11, 11});
+		writer.setAttribute(compaction, N5FragmentSegmentAssignmentLog.COMPLETE_KEY, true);
+		writeTable(writer, DATASET, new long[] {1}, new long[] {12});
+		Assert.assertEquals(expected, read(writer));
+		Assert.assertEquals(3, N5FragmentSegmentAssignmentLog.baseSize(writer, DATASET));
+
+		// interrupted after removing the log
+		writer.remove(N5FragmentSegmentAssignmentLog.logGroup(DATASET));
+		Assert.assertEquals(expected, read(writer));
+
+		// appends after the interruption are replayed on top of the compaction dataset
+		N5FragmentSegmentAssignmentLog.append(writer, DATASET, new long[] {5}, new long[] {10});
+		expected.put(5, 10);
+		Assert.assertEquals(expected, read(writer));
+
+		// the next compaction finishes the interrupted one first
+		N5FragmentSegmentAssignmentLog.compact(writer, DATASET, read(writer));
+		Assert.assertFalse(writer.exists(compaction));
+		Assert.assertFalse(writer.exists(N5FragmentSegmentAssignmentLog.logGroup(DATASET)));
+		Assert.assertEquals(expected, read(writer));
+	}
+
+	private static void writeTable(final N5Writer writer, final String dataset, final long[] keys, final long[] values) throws IOException {
+		final DatasetAttributes attributes = new DatasetAttributes(new long[] {keys.length, 2}, new int[] {keys.length, 1}, DataType.UINT64, new GzipCompression());
+		writer.createDataset(dataset, attributes);
+		writer.writeBlock(dataset, attributes, new LongArrayDataBlock(new int[] {keys.length, 1}, new long[] {0, 0}, keys));
+		writer.writeBlock(dataset, attributes, new LongArrayDataBlock(new int[] {keys.length, 1}, new long[] {0, 1}, values));
+	}
+
+	private static TLongLongMap read(final N5Writer writer) throws IOException {
+		final TLongLongMap lut = N5FragmentSegmentAssignmentLog.readBase(writer, DATASET);
+		N5FragmentSegmentAssignmentLog.replayLog(writer, DATASET, lut);
+		return lut;
+	}
+
+}
@@ -10,13 +10,21 @@ import org.janelia.saalfeldlab.n5.DatasetAttributes;
 import org.janelia.saalfeldlab.n5.GzipCompression;
 import org.janelia.saalfeldlab.n5.N5Writer;
 import org.janelia.saalfeldlab.n5.RawCompression;
+import org.janelia.saalfeldlab.util.PainteraCache;
+import org.junit.After;
 import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -31,6 +39,23 @@ public class N5HelpersTest {
 
 	private static final Gson gsonWithCompression = new GsonBuilder().registerTypeHierarchyAdapter(Compression.class, CompressionAdapter.getJsonAdapter()).create();
 
+	@Rule
+	public final TemporaryFolder tmp = new TemporaryFolder();
+
+	private Path cacheRoot;
+
+	@Before
+	public void setUp() {
+		// container indices must not end up in the cache of the user running the tests
+		cacheRoot = PainteraCache.getCacheRoot();
+		PainteraCache.setCacheRoot(tmp.getRoot().toPath());
+	}
+
+	@After
+	public void tearDown() {
+		PainteraCache.setCacheRoot(cacheRoot);
+	}
+
 	@Test
 	public void testAsCellGrid()
 	{
@@ -107,6 +132,31 @@ public class N5HelpersTest {
 
 	}
 
+	@Test
+	public void testDiscoverDatasetsWithIndex() throws IOException {
+		final N5Writer writer = N5TestUtil.fileSystemWriterAtTmpDir(!LOG.isDebugEnabled());
+		final DatasetAttributes attrs = new DatasetAttributes(new long[]{1}, new int[]{1}, DataType.UINT8, new RawCompression());
+		writer.createDataset("group/s0", attrs);
+		writer.createDataset("some_group/two", attrs);
+		Assert.assertEquals(Collections.emptyList(), N5Helpers.getCachedDatasets(writer));
+
+		final List<String> streamed = Collections.synchronizedList(new ArrayList<>());
+		Assert.assertEquals(Arrays.asList("/group", "/some_group/two"), N5Helpers.discoverDatasets(writer, () -> true, streamed::add));
+		Collections.sort(streamed);
+		Assert.assertEquals(Arrays.asList("/group", "/some_group/two"), streamed);
+		Assert.assertEquals(Arrays.asList("/group", "/some_group/two"), N5Helpers.getCachedDatasets(writer));
+		Assert.assertTrue(Files.isDirectory(tmp.getRoot().toPath().resolve(N5ContainerIndex.class.getName())));
+
+		writer.createDataset("some_group/three", attrs);
+		writer.remove("group");
+		Assert.assertEquals(Arrays.asList("/some_group/three", "/some_group/two"), N5Helpers.discoverDatasets(writer, () -> true));
+		Assert.assertEquals(Arrays.asList("/some_group/three", "/some_group/two"), N5Helpers.getCachedDatasets(writer));
+
+		// incomplete discoveries do not update the index
+		Assert.assertEquals(Collections.emptyList(), N5Helpers.discoverDatasets(writer, () -> false));
+		Assert.assertEquals(Arrays.asList("/some_group/three", "/some_group/two"), N5Helpers.getCachedDatasets(writer));
+	}
+
 	@Test
 	public void testGetDatasetAttributes() throws IOException {
 		final N5Writer writer = N5TestUtil.fileSystemWriterAtTmpDir(!LOG.isDebugEnabled());